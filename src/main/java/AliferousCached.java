@@ -7,6 +7,7 @@ import java.util.Set;
 
 import org.ggp.base.player.gamer.exception.GamePreviewException;
 import org.ggp.base.player.gamer.statemachine.StateMachineGamer;
+import org.ggp.base.player.gamer.statemachine.mcts.MctsNode;
 import org.ggp.base.util.game.Game;
 import org.ggp.base.util.gdl.grammar.GdlSentence;
 import org.ggp.base.util.statemachine.MachineState;
@@ -40,7 +41,7 @@ public class AliferousCached extends StateMachineGamer {
 	private Boolean singlePlayer;
 
 	//Keeps track of the node corresponding to the current state
-	private Node currNode;
+	private MctsNode currNode;
 	//Whether or not currNode needs to be found. This should only be false if we just exited metagame
 	private Boolean findNode;
 
@@ -91,7 +92,7 @@ public class AliferousCached extends StateMachineGamer {
 			throws TransitionDefinitionException, MoveDefinitionException, GoalDefinitionException {
 		StateMachine machine = getStateMachine();
 		MachineState state = machine.getInitialState();
-		currNode = new Node(state, null, null, true);
+		currNode = new MctsNode(state, null, null, true);
 
 
 		if (machine.getRoles().size() == 1) {
@@ -103,7 +104,7 @@ public class AliferousCached extends StateMachineGamer {
 			monteCarlo(timeout);
 		}
 		findNode = false;
-		//Node.printTree(currNode);
+		//MctsNode.printTree(currNode);
 	}
 
 	/*
@@ -276,21 +277,21 @@ public class AliferousCached extends StateMachineGamer {
 		return depthCharge(nextState, timeout, false, index);
 	}
 
-	private float selectionScore(Node node, Node parentNode) {
+	private float selectionScore(MctsNode node, MctsNode parentNode) {
 		float score = node.getScore();
 
 		score += Math.sqrt(1000*log2(parentNode.getNumVisits())/node.getNumVisits());
 		return score;
 	}
 
-	private Node select(Node node, long timeout) throws MoveDefinitionException,
+	private MctsNode select(MctsNode node, long timeout) throws MoveDefinitionException,
 														GoalDefinitionException, TransitionDefinitionException {
 		if (node.getNumVisits() == 0 || node.getChildren().size() == 0) {
 			return node;
 		}
 
-		ArrayList<Node> childNodes = node.getChildren();
-		for (Node childNode : childNodes) {
+		List<MctsNode> childNodes = node.getChildren();
+		for (MctsNode childNode : childNodes) {
 			if (childNode.getNumVisits() == 0) {
 				return childNode;
 			}
@@ -300,9 +301,9 @@ public class AliferousCached extends StateMachineGamer {
 		float childMax = 0;
 		float childMin = 100;
 		Boolean allTerminal = true;
-		Node bestNode = childNodes.get(random.nextInt(childNodes.size()));
+		MctsNode bestNode = childNodes.get(random.nextInt(childNodes.size()));
 
-		for (Node childNode : childNodes) {
+		for (MctsNode childNode : childNodes) {
 			float newScore = selectionScore(childNode, node);
 			if (newScore > maxScore && !(childNode.isTerminal() || childNode.canSeeTerminal())) {
 				maxScore = newScore;
@@ -326,7 +327,7 @@ public class AliferousCached extends StateMachineGamer {
 		return select(bestNode, timeout);
 	}
 
-	private void expand(Node node) throws MoveDefinitionException, TransitionDefinitionException, GoalDefinitionException {
+	private void expand(MctsNode node) throws MoveDefinitionException, TransitionDefinitionException, GoalDefinitionException {
 
 		StateMachine machine = getStateMachine();
 		MachineState state = node.getState();
@@ -338,47 +339,55 @@ public class AliferousCached extends StateMachineGamer {
 			node.setMin(score);
 			return;
 		}
-		if (node.getNumVisits() != 0) {
+		//Only one thread gets to create the children
+		if (!node.tryClaimExpansion()) {
 			return;
 		}
-		//branch for max node vs min node
-		if (node.isMaxNode()) {
-			for (Move move : machine.getLegalMoves(node.getState(), getRole())) {
-				Node childNode;
-				MachineState childState = node.getState();
-				if (singlePlayer) {
-					List<Move> moves = new ArrayList<Move>();
-					moves.add(move);
-					childState = machine.getNextState(node.getState(), moves);
+		try {
+			List<MctsNode> children = new ArrayList<MctsNode>();
+			//branch for max node vs min node
+			if (node.isMaxNode()) {
+				for (Move move : machine.getLegalMoves(node.getState(), getRole())) {
+					MctsNode childNode;
+					MachineState childState = node.getState();
+					if (singlePlayer) {
+						List<Move> moves = new ArrayList<Move>();
+						moves.add(move);
+						childState = machine.getNextState(node.getState(), moves);
+					}
+					childNode = new MctsNode(childState, node, move, singlePlayer); //if singlePlayer, it stays max nodes
+					children.add(childNode);
 				}
-				childNode = new Node(childState, node, move, singlePlayer); //if singlePlayer, it stays max nodes
-				node.addChild(childNode);
 			}
-		}
-		else {
-			List< List<Move> > jointMoves = machine.getLegalJointMoves(state, getRole(), node.getMove());
+			else {
+				List< List<Move> > jointMoves = machine.getLegalJointMoves(state, getRole(), node.getMove());
 
-			HashSet<MachineState> childStates = new HashSet<MachineState>();
+				HashSet<MachineState> childStates = new HashSet<MachineState>();
 
-			for (List<Move> jointMove : jointMoves) {
-				MachineState nextState = machine.getNextState(state, jointMove);
-				if (childStates.contains(nextState)){
-					continue;
-				}
+				for (List<Move> jointMove : jointMoves) {
+					MachineState nextState = machine.getNextState(state, jointMove);
+					if (childStates.contains(nextState)){
+						continue;
+					}
 
-				childStates.add(nextState);
+					childStates.add(nextState);
 
-				Node childNode;
-				childNode = new Node(nextState, node, node.getMove(), true);
-				node.addChild(childNode);
+					MctsNode childNode;
+					childNode = new MctsNode(nextState, node, node.getMove(), true);
+					children.add(childNode);
+				}
 			}
+			node.publishChildren(children);
+		} finally {
+			//Lets another thread expand the node if building the children failed
+			node.releaseExpansion();
 		}
 	}
 
-	private float simulate(Node node, long timeout) throws GoalDefinitionException, MoveDefinitionException, TransitionDefinitionException {
+	private float simulate(MctsNode node, long timeout) throws GoalDefinitionException, MoveDefinitionException, TransitionDefinitionException {
 		float total = 0;
 		final float[] results = new float[NUM_CHARGES];
-		final Node currNode = node;
+		final MctsNode currNode = node;
 		final long time = timeout;
 		ArrayList<Thread> threads = new ArrayList<Thread>();
 		for (int i = 0; i < NUM_CHARGES; i++) {
@@ -409,7 +418,7 @@ public class AliferousCached extends StateMachineGamer {
 		return total / NUM_CHARGES;
 	}
 
-	private void backpropagate(Node node, float score) {
+	private void backpropagate(MctsNode node, float score) {
 		node.addScore(score);
 		if (node.getParent() != null){
 			backpropagate(node.getParent(), score);
@@ -423,7 +432,7 @@ public class AliferousCached extends StateMachineGamer {
 			return;
 		}
 
-		Node selected = select(currNode, timeout);
+		MctsNode selected = select(currNode, timeout);
 		expand(selected);
 		float score = simulate(selected, timeout);
 		backpropagate(selected, score);
@@ -452,7 +461,7 @@ public class AliferousCached extends StateMachineGamer {
 	 * If it's a single player game it continues calling this recursively. If it's a multiplayer game it calls minScore
 	 * next to see which opponent move would minimize our score.
 	 */
-	private int monteCarloMaxScore(Node node, int alpha, int beta, int level, int max_level, long timeout) throws TransitionDefinitionException,
+	private int monteCarloMaxScore(MctsNode node, int alpha, int beta, int level, int max_level, long timeout) throws TransitionDefinitionException,
 						MoveDefinitionException, GoalDefinitionException{
 
 		StateMachine machine = getStateMachine();
@@ -482,7 +491,7 @@ public class AliferousCached extends StateMachineGamer {
 		}
 
 		//Continue searching through all the child nodes
-		for(Node childNode: node.getChildren()) {
+		for(MctsNode childNode: node.getChildren()) {
 			if (singlePlayer) {
 				alpha = Math.max(monteCarloMaxScore(childNode, alpha, beta, level + 1, max_level, timeout), alpha);
 			}
@@ -498,7 +507,7 @@ public class AliferousCached extends StateMachineGamer {
 	/*
 	 * Similar to max score in that it continues searching the tree. Assumes the opponents always take the move that minimizes our player
 	 */
-	private int monteCarloMinScore(Node node, int alpha, int beta, int level, int max_level, long timeout) throws TransitionDefinitionException,
+	private int monteCarloMinScore(MctsNode node, int alpha, int beta, int level, int max_level, long timeout) throws TransitionDefinitionException,
 			MoveDefinitionException, GoalDefinitionException{
 		StateMachine machine = getStateMachine();
 
@@ -514,7 +523,7 @@ public class AliferousCached extends StateMachineGamer {
 			return (int)node.getScore();
 		}
 
-		for(Node childNode : node.getChildren()) {
+		for(MctsNode childNode : node.getChildren()) {
 			beta = Math.min(monteCarloMaxScore(childNode, alpha, beta, level + 1, max_level, timeout), beta);
 			if (beta <= alpha) {
 				return alpha;
@@ -647,7 +656,7 @@ public class AliferousCached extends StateMachineGamer {
 
 		//Determines the amount of time available to search, which is half of totalTime - bufTime
 		//Chose a random move in case we can't decide
-		Node bestNode = currNode.getChildren().get(random.nextInt(currNode.getChildren().size()));
+		MctsNode bestNode = currNode.getChildren().get(random.nextInt(currNode.getChildren().size()));
 		int max_depth = 1;
 		doneSearching = true;
 
@@ -657,7 +666,7 @@ public class AliferousCached extends StateMachineGamer {
 		System.out.println("Searching with " + (timeout - System.currentTimeMillis()) + " milli left");
 		while (timeout - System.currentTimeMillis() > BUF_TIME) {
 			//Find the maximum of all the children
-			for(Node childNode: currNode.getChildren()) {
+			for(MctsNode childNode: currNode.getChildren()) {
 				int score;
 				if (singlePlayer) {
 					score = monteCarloMaxScore(childNode, 0, 100, 0, max_depth, timeout);
@@ -692,13 +701,13 @@ public class AliferousCached extends StateMachineGamer {
 		//if there was no previous state, create one
 		if (currNode == null) {
 			System.out.println("No curr node");
-			currNode = new Node(getCurrentState(), null, null, true);
+			currNode = new MctsNode(getCurrentState(), null, null, true);
 		}
 		else {
 			Boolean foundNode = false;
 			//If it's single player then each state is the child of the previous state as there are no opponent moves
 			if (singlePlayer) {
-				for (Node childNode : currNode.getChildren()) {
+				for (MctsNode childNode : currNode.getChildren()) {
 					if (childNode.getState().equals(getCurrentState())) {
 						currNode = childNode;
 						foundNode = true;
@@ -709,13 +718,13 @@ public class AliferousCached extends StateMachineGamer {
 				}
 				if (!foundNode) {
 					System.out.println("currnode, but couldn't find state single player");
-					currNode = new Node(getCurrentState(), null, null, true);
+					currNode = new MctsNode(getCurrentState(), null, null, true);
 				}
 			}
 			//In multiplayer games each state is the grandchild of the previous state due to opponent nodes in between
 			else {
-				for (Node childNode : currNode.getChildren()) {
-					for (Node grandChildNode : childNode.getChildren()) {
+				for (MctsNode childNode : currNode.getChildren()) {
+					for (MctsNode grandChildNode : childNode.getChildren()) {
 						if (grandChildNode.getState().equals(getCurrentState())) {
 							currNode = grandChildNode;
 							foundNode = true;
@@ -727,7 +736,7 @@ public class AliferousCached extends StateMachineGamer {
 				}
 				if (!foundNode) {
 					System.out.println("currnode, but couldn't find state, multi");
-					currNode = new Node(getCurrentState(), null, null, true);
+					currNode = new MctsNode(getCurrentState(), null, null, true);
 				}
 			}
 		}
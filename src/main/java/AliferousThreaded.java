@@ -7,8 +7,11 @@ import java.util.Set;
 
 import org.ggp.base.player.gamer.exception.GamePreviewException;
 import org.ggp.base.player.gamer.statemachine.StateMachineGamer;
+import org.ggp.base.player.gamer.statemachine.mcts.MctsNode;
+import org.ggp.base.player.gamer.statemachine.mcts.MctsTree;
 import org.ggp.base.util.game.Game;
 import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.statemachine.InternalMachineStatePool;
 import org.ggp.base.util.statemachine.MachineState;
 import org.ggp.base.util.statemachine.Move;
 import org.ggp.base.util.statemachine.Role;
@@ -40,8 +43,10 @@ public class AliferousThreaded extends StateMachineGamer {
 	//Is it a single player game?
 	private Boolean singlePlayer;
 
+	//The search tree shared by all worker threads
+	private MctsTree tree;
 	//Keeps track of the node corresponding to the current state
-	private Node currNode;
+	private MctsNode currNode;
 	//Whether or not currNode needs to be found. This should only be false if we just exited metagame
 	private Boolean findNode;
 
@@ -56,6 +61,8 @@ public class AliferousThreaded extends StateMachineGamer {
 	private HashSet<MachineState> totalStates;
 	private ArrayList<MachineState> terminalStates;
 	private HashSet<MachineState> terminalStatesSeen;
+	//Keeps a single instance of each state held in the collections above
+	private InternalMachineStatePool statePool;
 	private MachineState savedState;
 
 	/*During getInitialStateMachine() we initialize all the global data*/
@@ -65,7 +72,7 @@ public class AliferousThreaded extends StateMachineGamer {
 		totalStates = new HashSet<MachineState>();
 		terminalStates = new ArrayList<MachineState>();
 		terminalStatesSeen = new HashSet<MachineState>();
-
+		statePool = new InternalMachineStatePool();
 
 		savedState = null;
 		findNode = true;
@@ -88,7 +95,8 @@ public class AliferousThreaded extends StateMachineGamer {
 			throws TransitionDefinitionException, MoveDefinitionException, GoalDefinitionException {
 		StateMachine machine = getStateMachine();
 		MachineState state = machine.getInitialState();
-		currNode = new Node(state, null, null, true);
+		tree = new MctsTree(machine, getRole(), state);
+		currNode = tree.getRoot();
 
 
 		if (machine.getRoles().size() == 1) {
@@ -96,11 +104,9 @@ public class AliferousThreaded extends StateMachineGamer {
 		}
 
 		//Call montecarlo until we're out of search time
-		while(!searchTime(timeout)) {
-			monteCarlo(timeout);
-		}
+		monteCarlo(timeout - MIN_TIME);
 		findNode = false;
-		//Node.printTree(currNode);
+		//MctsNode.printTree(currNode);
 	}
 
 	/*
@@ -141,6 +147,7 @@ public class AliferousThreaded extends StateMachineGamer {
 		}
 		int score = machine.getGoal(useState, getRole());
 		if (!terminalStatesSeen.contains(useState)) {
+			useState = statePool.intern(useState);
 			terminalStates.add(useState);
 			terminalStatesSeen.add(useState);
 			totalScores += score;
@@ -275,159 +282,12 @@ public class AliferousThreaded extends StateMachineGamer {
 		return depthCharge(nextState, timeout);
 	}
 
-	private float selectionScore(Node node, Node parentNode) {
-		float score = node.getScore();
-
-		score += Math.sqrt(1000*log2(parentNode.getNumVisits())/node.getNumVisits());
-		return score;
-	}
-
-	private Node select(Node node, long timeout) throws MoveDefinitionException,
-														GoalDefinitionException, TransitionDefinitionException {
-
-		Random random = new Random();
-		if (node.getNumVisits() == 0 || node.getChildren().size() == 0) {
-			return node;
-		}
-
-		ArrayList<Node> childNodes = node.getChildren();
-		for (Node childNode : childNodes) {
-			if (childNode.getNumVisits() == 0) {
-				return childNode;
-			}
-		}
-
-		float maxScore = 0;
-		float childMax = 0;
-		float childMin = 100;
-		Boolean allTerminal = true;
-		Node bestNode = childNodes.get(random.nextInt(childNodes.size()));
-
-		for (Node childNode : childNodes) {
-			float newScore = selectionScore(childNode, node);
-			if (newScore > maxScore && !(childNode.isTerminal() || childNode.canSeeTerminal())) {
-				maxScore = newScore;
-				bestNode = childNode;
-			}
-			if (allTerminal) {
-				if (childNode.isTerminal() || childNode.canSeeTerminal()) {
-					childMax = Math.max(childMax, childNode.getMax());
-					childMin = Math.min(childMin, childNode.getMin());
-				}
-				else {
-					allTerminal = false;
-				}
-			}
-		}
-		if (allTerminal) {
-			node.setMax(childMax);
-			node.setMin(childMin);
-			return node;
-		}
-		return select(bestNode, timeout);
-	}
-
-	private void expand(Node node) throws MoveDefinitionException, TransitionDefinitionException, GoalDefinitionException {
-
-		StateMachine machine = getStateMachine();
-		MachineState state = node.getState();
-
-		if (machine.isTerminal(state)) {
-			node.setTerminal();
-			float score = machine.getGoal(state, getRole());
-			node.setMax(score);
-			node.setMin(score);
-			return;
-		}
-		if (node.getNumVisits() != 0) {
-			return;
-		}
-		//branch for max node vs min node
-		if (node.isMaxNode()) {
-			for (Move move : machine.getLegalMoves(node.getState(), getRole())) {
-				Node childNode;
-				MachineState childState = node.getState();
-				if (singlePlayer) {
-					List<Move> moves = new ArrayList<Move>();
-					moves.add(move);
-					childState = machine.getNextState(node.getState(), moves);
-				}
-				childNode = new Node(childState, node, move, singlePlayer); //if singlePlayer, it stays max nodes
-				node.addChild(childNode);
-			}
-		}
-		else {
-			List< List<Move> > jointMoves = machine.getLegalJointMoves(state, getRole(), node.getMove());
-
-			HashSet<MachineState> childStates = new HashSet<MachineState>();
-
-			for (List<Move> jointMove : jointMoves) {
-				MachineState nextState = machine.getNextState(state, jointMove);
-				if (childStates.contains(nextState)){
-					continue;
-				}
-
-				childStates.add(nextState);
-
-				Node childNode;
-				childNode = new Node(nextState, node, node.getMove(), true);
-				node.addChild(childNode);
-			}
-		}
-	}
-
-	private float simulate(Node node, long timeout) throws GoalDefinitionException, MoveDefinitionException, TransitionDefinitionException {
-		float total = 0;
-		final float[] results = new float[NUM_CHARGES];
-		final Node currNode = node;
-		final long time = timeout;
-		ArrayList<Thread> threads = new ArrayList<Thread>();
-		for (int i = 0; i < NUM_CHARGES; i++) {
-			final int index = i;
-			threads.add(new Thread() {
-				int x = index;
-				@Override
-				public void run() {
-					try {
-						results[x] = depthCharge(currNode.getState(), time);
-					} catch (GoalDefinitionException | MoveDefinitionException | TransitionDefinitionException e) {
-						e.printStackTrace();
-					}
-				}
-
-			});
-			threads.get(i).start();
-		}
-
-		for (int i = 0; i < NUM_CHARGES; i++) {
-			try {
-				threads.get(i).join();
-				total += results[i];
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-		return total / NUM_CHARGES;
-	}
-
-	private void backpropagate(Node node, float score) {
-		node.addScore(score);
-		if (node.getParent() != null){
-			backpropagate(node.getParent(), score);
-		}
-	}
-
-
-	private void monteCarlo(long timeout) throws MoveDefinitionException,
-																GoalDefinitionException, TransitionDefinitionException {
-		if (outOfTime(timeout)) {
-			return;
-		}
-
-		Node selected = select(currNode, timeout);
-		expand(selected);
-		float score = simulate(selected, timeout);
-		backpropagate(selected, score);
+	/*
+	 * Runs MCTS iterations on every worker of the gamer's pool until stopTime. Each worker selects, expands, simulates and
+	 * backpropagates on its own; virtual loss keeps them from all searching the same leaf.
+	 */
+	private int monteCarlo(long stopTime) {
+		return tree.search(getDepthChargeExecutor(), stopTime);
 	}
 
 	private int monteCarloSearch(MachineState state, long timeout) throws GoalDefinitionException,
@@ -453,7 +313,7 @@ public class AliferousThreaded extends StateMachineGamer {
 	 * If it's a single player game it continues calling this recursively. If it's a multiplayer game it calls minScore
 	 * next to see which opponent move would minimize our score.
 	 */
-	private int monteCarloMaxScore(Node node, int alpha, int beta, int level, int max_level, long timeout) throws TransitionDefinitionException,
+	private int monteCarloMaxScore(MctsNode node, int alpha, int beta, int level, int max_level, long timeout) throws TransitionDefinitionException,
 						MoveDefinitionException, GoalDefinitionException{
 
 		StateMachine machine = getStateMachine();
@@ -483,7 +343,7 @@ public class AliferousThreaded extends StateMachineGamer {
 		}
 
 		//Continue searching through all the child nodes
-		for(Node childNode: node.getChildren()) {
+		for(MctsNode childNode: node.getChildren()) {
 			if (singlePlayer) {
 				alpha = Math.max(monteCarloMaxScore(childNode, alpha, beta, level + 1, max_level, timeout), alpha);
 			}
@@ -499,7 +359,7 @@ public class AliferousThreaded extends StateMachineGamer {
 	/*
 	 * Similar to max score in that it continues searching the tree. Assumes the opponents always take the move that minimizes our player
 	 */
-	private int monteCarloMinScore(Node node, int alpha, int beta, int level, int max_level, long timeout) throws TransitionDefinitionException,
+	private int monteCarloMinScore(MctsNode node, int alpha, int beta, int level, int max_level, long timeout) throws TransitionDefinitionException,
 			MoveDefinitionException, GoalDefinitionException{
 		StateMachine machine = getStateMachine();
 
@@ -515,7 +375,7 @@ public class AliferousThreaded extends StateMachineGamer {
 			return (int)node.getScore();
 		}
 
-		for(Node childNode : node.getChildren()) {
+		for(MctsNode childNode : node.getChildren()) {
 			beta = Math.min(monteCarloMaxScore(childNode, alpha, beta, level + 1, max_level, timeout), beta);
 			if (beta <= alpha) {
 				return alpha;
@@ -652,7 +512,7 @@ public class AliferousThreaded extends StateMachineGamer {
 
 		//Determines the amount of time available to search, which is half of totalTime - bufTime
 		//Chose a random move in case we can't decide
-		Node bestNode = currNode.getChildren().get(random.nextInt(currNode.getChildren().size()));
+		MctsNode bestNode = currNode.getChildren().get(random.nextInt(currNode.getChildren().size()));
 		int max_depth = 1;
 		doneSearching = true;
 
@@ -661,7 +521,7 @@ public class AliferousThreaded extends StateMachineGamer {
 		int maxScore = 0;
 		while (timeout - System.currentTimeMillis() > BUF_TIME) {
 			//Find the maximum of all the children
-			for(Node childNode: currNode.getChildren()) {
+			for(MctsNode childNode: currNode.getChildren()) {
 				int score;
 				if (singlePlayer) {
 					score = monteCarloMaxScore(childNode, 0, 100, 0, max_depth, timeout);
@@ -695,13 +555,14 @@ public class AliferousThreaded extends StateMachineGamer {
 		//if there was no previous state, create one
 		if (currNode == null) {
 			System.out.println("No curr node");
-			currNode = new Node(getCurrentState(), null, null, true);
+			tree = new MctsTree(machine, getRole(), getCurrentState());
+			currNode = tree.getRoot();
 		}
 		else {
 			Boolean foundNode = false;
 			//If it's single player then each state is the child of the previous state as there are no opponent moves
 			if (singlePlayer) {
-				for (Node childNode : currNode.getChildren()) {
+				for (MctsNode childNode : currNode.getChildren()) {
 					if (childNode.getState().equals(getCurrentState())) {
 						currNode = childNode;
 						foundNode = true;
@@ -710,13 +571,13 @@ public class AliferousThreaded extends StateMachineGamer {
 				}
 				if (!foundNode) {
 					System.out.println("currnode, but couldn't find state single player");
-					currNode = new Node(getCurrentState(), null, null, true);
+					currNode = new MctsNode(getCurrentState(), null, null, true);
 				}
 			}
 			//In multiplayer games each state is the grandchild of the previous state due to opponent nodes in between
 			else {
-				for (Node childNode : currNode.getChildren()) {
-					for (Node grandChildNode : childNode.getChildren()) {
+				for (MctsNode childNode : currNode.getChildren()) {
+					for (MctsNode grandChildNode : childNode.getChildren()) {
 						if (grandChildNode.getState().equals(getCurrentState())) {
 							currNode = grandChildNode;
 							foundNode = true;
@@ -726,13 +587,13 @@ public class AliferousThreaded extends StateMachineGamer {
 				}
 				if (!foundNode) {
 					System.out.println("currnode, but couldn't find state, multi");
-					currNode = new Node(getCurrentState(), null, null, true);
+					currNode = new MctsNode(getCurrentState(), null, null, true);
 				}
 			}
 		}
-		//To stop backpropagation at a reasonable point, set the parent to null
-		currNode.setParent(null);
-		monteCarlo(timeout);
+		//To stop backpropagation at a reasonable point, make the node the root of the tree
+		tree.setRoot(currNode);
+		tree.iterate(timeout);
 	}
 
 	@Override
@@ -762,10 +623,7 @@ public class AliferousThreaded extends StateMachineGamer {
 		//start by doing MCTS on our current node
 		long startTime = System.currentTimeMillis();
 		long searchTime = (timeout - startTime - MIN_TIME) / 2;
-		while (timeout - System.currentTimeMillis() > searchTime) {
-			monteCarlo(timeout);
-			totalCharges += 4;
-		}
+		totalCharges += monteCarlo(timeout - searchTime);
 		long timeTaken = System.currentTimeMillis() - startTime;
 		float averageCharges = totalCharges/(timeTaken/1000);
 		System.out.println("\nTime taken in milliseconds: " + timeTaken);
@@ -785,10 +643,7 @@ public class AliferousThreaded extends StateMachineGamer {
 		searchTime = (timeout - startTime - BUF_TIME) / 2;
 		long remainingTime = (timeout - System.currentTimeMillis() - BUF_TIME) / 1000;
 		System.out.println("\nRemaining time: " + remainingTime);
-		while (timeout - System.currentTimeMillis() > BUF_TIME) {
-			monteCarlo(timeout);
-			totalCharges += 4;
-		}
+		totalCharges += monteCarlo(timeout - BUF_TIME);
 		findNode = true;
 		return result;
 
@@ -800,6 +655,7 @@ public class AliferousThreaded extends StateMachineGamer {
 		totalStates.clear();
 		terminalStates.clear();
 		terminalStatesSeen.clear();
+		statePool.clear();
 
 		savedState = null;
 		singlePlayer = false;
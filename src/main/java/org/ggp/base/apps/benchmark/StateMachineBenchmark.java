@@ -0,0 +1,287 @@
+package org.ggp.base.apps.benchmark;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.ggp.base.util.files.FileUtils;
+import org.ggp.base.util.game.Game;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousCachedBitSetStateMachine;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousCachedForwardPropNetStateMachine;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousCompiledPropNetStateMachine;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousDifferentialPropNetStateMachine;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousFlatPropNetStateMachine;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousForwardPropNetStateMachine;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousParallelPropNetStateMachine;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousPropNetStateMachine;
+import org.ggp.base.util.statemachine.implementation.propnet.SamplePropNetStateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.ggp.base.util.statemachine.implementation.reasoner.ForwardChainingStateMachine;
+
+/**
+ * StateMachineBenchmark measures every state machine implementation on
+ * every .kif rulesheet under games/, and prints one row per game and
+ * engine with:
+ *
+ * - depth charges per second from the initial state,
+ * - the average latency of getNextState and getLegalMoves, measured over a
+ *   fixed sample of states and joint moves taken from random playouts,
+ * - the number of bytes allocated per depth charge.
+ *
+ * Each measurement follows the usual microbenchmark discipline: a number of
+ * timed warmup iterations whose results are thrown away, then measurement
+ * iterations reported as mean and standard deviation, with every result
+ * folded into a sink so the JIT cannot drop the work. Allocation is read
+ * from the HotSpot per-thread allocation counter, and is left blank on JVMs
+ * without one.
+ *
+ * Engines that fail to initialize within the time limit, or that throw
+ * while being measured (SamplePropNetStateMachine is a skeleton), get a row
+ * saying so instead of numbers.
+ *
+ * Usage: StateMachineBenchmark [iteration seconds] [game key...]
+ * where game keys are file names without the .kif extension; rows are
+ * labelled with the path under games/. Run it through
+ * the stateMachineBenchmark Gradle task to get the player JVM flags.
+ */
+public final class StateMachineBenchmark {
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int MEASUREMENT_ITERATIONS = 5;
+	private static final int SAMPLED_STATES = 1000;
+	private static final long INITIALIZE_TIMEOUT = 60000;
+
+	@SuppressWarnings("unchecked")
+	private static final List<Class<? extends StateMachine>> ENGINES = Arrays.asList(
+			ProverStateMachine.class,
+			ForwardChainingStateMachine.class,
+			SamplePropNetStateMachine.class,
+			AliferousPropNetStateMachine.class,
+			AliferousForwardPropNetStateMachine.class,
+			AliferousCachedForwardPropNetStateMachine.class,
+			AliferousCachedBitSetStateMachine.class,
+			AliferousFlatPropNetStateMachine.class,
+			AliferousDifferentialPropNetStateMachine.class,
+			AliferousCompiledPropNetStateMachine.class,
+			AliferousParallelPropNetStateMachine.class);
+
+	// Every measured result is folded in here so that the work cannot be optimized away.
+	private static volatile long sink;
+
+	private StateMachineBenchmark() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		long iterationMillis = 1000;
+		List<String> gameKeys = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (i == 0 && args[i].matches("\\d+")) {
+				iterationMillis = Long.parseLong(args[i]) * 1000;
+			} else {
+				gameKeys.add(args[i]);
+			}
+		}
+
+		System.out.println(String.format(Locale.US, "%-32s %-44s %14s %14s %14s %12s",
+				"game", "engine", "charges/s", "next ns/op", "legal ns/op", "B/charge"));
+		for (File rulesheet : findRulesheets(new File("games"))) {
+			String gameKey = rulesheet.getName().replace(".kif", "");
+			if (!gameKeys.isEmpty() && !gameKeys.contains(gameKey)) {
+				continue;
+			}
+			// Some games are in both the repository and the tests, so rows are labelled by path.
+			String label = rulesheet.getPath().substring("games/".length());
+			List<Gdl> rules;
+			try {
+				rules = Game.createEphemeralGame(Game.preprocessRulesheet(FileUtils.readFileAsString(rulesheet))).getRules();
+			} catch (Exception e) {
+				System.out.println(String.format(Locale.US, "%-32s could not be parsed: %s", label, e));
+				continue;
+			}
+			for (Class<? extends StateMachine> engine : ENGINES) {
+				System.out.println(String.format(Locale.US, "%-32s %-44s %s", label, engine.getSimpleName(),
+						benchmark(engine, rules, iterationMillis)));
+			}
+		}
+		// Engines that timed out may have left their initialization running.
+		System.exit(0);
+	}
+
+	private static List<File> findRulesheets(File directory) {
+		List<File> rulesheets = new ArrayList<File>();
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return rulesheets;
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			if (file.isDirectory()) {
+				rulesheets.addAll(findRulesheets(file));
+			} else if (file.getName().endsWith(".kif")) {
+				rulesheets.add(file);
+			}
+		}
+		return rulesheets;
+	}
+
+	/**
+	 * Runs all the measurements for one engine on one game, and returns them
+	 * formatted as the rest of a table row.
+	 */
+	private static String benchmark(Class<? extends StateMachine> engine, final List<Gdl> rules, long iterationMillis) {
+		final StateMachine machine;
+		ExecutorService initializer = Executors.newSingleThreadExecutor();
+		try {
+			machine = engine.newInstance();
+			Future<?> initialized = initializer.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					machine.initialize(rules);
+					return null;
+				}
+			});
+			initialized.get(INITIALIZE_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (Exception e) {
+			return "initialization failed: " + e;
+		} finally {
+			initializer.shutdownNow();
+		}
+
+		try {
+			final MachineState initial = machine.getInitialState();
+			final int[] goals = new int[machine.getRoles().size()];
+			final List<MachineState> states = new ArrayList<MachineState>(SAMPLED_STATES);
+			final List<List<Move>> jointMoves = new ArrayList<List<Move>>(SAMPLED_STATES);
+			while (states.size() < SAMPLED_STATES) {
+				MachineState state = initial;
+				while (!machine.isTerminal(state) && states.size() < SAMPLED_STATES) {
+					List<Move> jointMove = machine.getRandomJointMove(state);
+					states.add(state);
+					jointMoves.add(jointMove);
+					state = machine.getNextState(state, jointMove);
+				}
+				if (states.isEmpty()) {
+					return "initial state is terminal";
+				}
+			}
+			final List<Role> roles = machine.getRoles();
+
+			Operation depthCharge = new Operation() {
+				@Override
+				public long run(int i) throws Exception {
+					return machine.performDepthChargeForGoals(initial, goals);
+				}
+			};
+			Operation nextState = new Operation() {
+				@Override
+				public long run(int i) throws Exception {
+					int k = i % SAMPLED_STATES;
+					return machine.getNextState(states.get(k), jointMoves.get(k)).hashCode();
+				}
+			};
+			Operation legalMoves = new Operation() {
+				@Override
+				public long run(int i) throws Exception {
+					int k = i % SAMPLED_STATES;
+					return machine.getLegalMoves(states.get(k), roles.get(i % roles.size())).size();
+				}
+			};
+
+			double[] charges = measure(depthCharge, iterationMillis);
+			double[] next = measure(nextState, iterationMillis);
+			double[] legal = measure(legalMoves, iterationMillis);
+			long allocated = allocatedBytesPerOperation(depthCharge, iterationMillis);
+			return String.format(Locale.US, "%14s %14s %14s %12s",
+					format(charges[0], charges[1]),
+					format(1e9 / next[0], 1e9 * next[1] / (next[0] * next[0])),
+					format(1e9 / legal[0], 1e9 * legal[1] / (legal[0] * legal[0])),
+					(allocated < 0) ? "-" : Long.toString(allocated));
+		} catch (Exception | Error e) {
+			return "failed: " + e;
+		}
+	}
+
+	private interface Operation {
+		/** Runs the i-th operation and returns something derived from its result. */
+		long run(int i) throws Exception;
+	}
+
+	/**
+	 * Runs the operation in warmup and then measurement iterations of the
+	 * given length, and returns the mean and standard deviation of the
+	 * operations per second over the measurement iterations.
+	 */
+	private static double[] measure(Operation operation, long iterationMillis) throws Exception {
+		double[] throughputs = new double[MEASUREMENT_ITERATIONS];
+		for (int iteration = -WARMUP_ITERATIONS; iteration < MEASUREMENT_ITERATIONS; iteration++) {
+			long result = 0;
+			int count = 0;
+			long start = System.nanoTime();
+			long end = start + iterationMillis * 1000000;
+			long now;
+			do {
+				result += operation.run(count++);
+				now = System.nanoTime();
+			} while (now < end);
+			sink += result;
+			if (iteration >= 0) {
+				throughputs[iteration] = count * 1e9 / (now - start);
+			}
+		}
+		double mean = 0;
+		for (double throughput : throughputs) {
+			mean += throughput;
+		}
+		mean /= throughputs.length;
+		double variance = 0;
+		for (double throughput : throughputs) {
+			variance += (throughput - mean) * (throughput - mean);
+		}
+		return new double[] { mean, Math.sqrt(variance / throughputs.length) };
+	}
+
+	/**
+	 * Returns the bytes allocated by this thread per run of the operation,
+	 * over one iteration, or -1 if the JVM does not count allocations.
+	 */
+	private static long allocatedBytesPerOperation(Operation operation, long iterationMillis) throws Exception {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		long threadId = Thread.currentThread().getId();
+		long result = 0;
+		int count = 0;
+		long end = System.currentTimeMillis() + iterationMillis;
+		long before = allocations.getThreadAllocatedBytes(threadId);
+		do {
+			result += operation.run(count++);
+		} while (System.currentTimeMillis() < end);
+		long after = allocations.getThreadAllocatedBytes(threadId);
+		sink += result;
+		return (after - before) / count;
+	}
+
+	private static String format(double mean, double error) {
+		if (mean >= 100) {
+			return String.format(Locale.US, "%.0f+-%.0f", mean, error);
+		}
+		return String.format(Locale.US, "%.2f+-%.2f", mean, error);
+	}
+}
@@ -246,7 +246,7 @@ public final class IIServer extends JPanel implements ActionListener
 
 				synchronized (scheduler) {
 					for (int i = 0; i < (Integer)repetitionsSpinner.getValue(); i++) {
-						scheduler.addPendingMatch(new PendingMatch("Base", theGame, new ArrayList<PlayerPresence>(thePlayers), -1, startClock, playClock, shouldScramble.isSelected(), shouldQueue.isSelected(), shouldDetail.isSelected(), shouldSave.isSelected(), shouldPublish.isSelected()));
+						scheduler.addPendingMatch(new PendingMatch("Base", theGame, new ArrayList<PlayerPresence>(thePlayers), -1, startClock, playClock, shouldScramble.isSelected(), shouldQueue.isSelected(), shouldDetail.isSelected(), shouldSave.isSelected(), shouldPublish.isSelected(), false));
 						thePlayers.add(thePlayers.remove(0));  // rotate player roster for repeated matches
 						try {
 							Thread.sleep(10);
@@ -267,7 +267,7 @@ public final class IIServer extends JPanel implements ActionListener
 					Game testGame = GameRepository.getDefaultRepository().getGame("maze");
 					String playerName = playerSelectorList.getSelectedValue().toString();
 					List<PlayerPresence> thePlayers = Arrays.asList(new PlayerPresence[]{playerSelector.getPlayerPresence(playerName)});
-					scheduler.addPendingMatch(new PendingMatch("Test", testGame, thePlayers, -1, 10, 5, false, false, true, false, false));
+					scheduler.addPendingMatch(new PendingMatch("Test", testGame, thePlayers, -1, 10, 5, false, false, true, false, false, false));
 				}
 			}
 		};
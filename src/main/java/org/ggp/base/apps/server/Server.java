@@ -98,6 +98,7 @@ public final class Server extends JPanel implements ActionListener
 	private final JCheckBox shouldDetail;
 	private final JCheckBox shouldPublish;
 	private final JCheckBox shouldSave;
+	private final JCheckBox shouldUsePropNet;
 
 	private final GameSelector gameSelector;
 	private final PlayerSelector playerSelector;
@@ -128,6 +129,7 @@ public final class Server extends JPanel implements ActionListener
 		shouldDetail = new JCheckBox("Show match details?", true);
 		shouldSave = new JCheckBox("Save match to disk?", false);
 		shouldPublish = new JCheckBox("Publish match to the web?", false);
+		shouldUsePropNet = new JCheckBox("Referee with a propnet?", false);
 
 		runButton.setEnabled(false);
 
@@ -151,7 +153,8 @@ public final class Server extends JPanel implements ActionListener
 		gamePanel.add(shouldQueue, new GridBagConstraints(1, nRowCount++, 1, 1, 0.0, 0.0, GridBagConstraints.EAST, GridBagConstraints.HORIZONTAL, new Insets(0, 5, 0, 5), 5, 0));
 		gamePanel.add(shouldDetail, new GridBagConstraints(1, nRowCount++, 1, 1, 0.0, 0.0, GridBagConstraints.EAST, GridBagConstraints.HORIZONTAL, new Insets(0, 5, 0, 5), 5, 0));
 		gamePanel.add(shouldSave, new GridBagConstraints(1, nRowCount++, 1, 1, 0.0, 0.0, GridBagConstraints.EAST, GridBagConstraints.HORIZONTAL, new Insets(0, 5, 0, 5), 5, 0));
-		gamePanel.add(shouldPublish, new GridBagConstraints(1, nRowCount++, 1, 1, 0.0, 0.0, GridBagConstraints.EAST, GridBagConstraints.HORIZONTAL, new Insets(0, 5, 5, 5), 5, 0));
+		gamePanel.add(shouldPublish, new GridBagConstraints(1, nRowCount++, 1, 1, 0.0, 0.0, GridBagConstraints.EAST, GridBagConstraints.HORIZONTAL, new Insets(0, 5, 0, 5), 5, 0));
+		gamePanel.add(shouldUsePropNet, new GridBagConstraints(1, nRowCount++, 1, 1, 0.0, 0.0, GridBagConstraints.EAST, GridBagConstraints.HORIZONTAL, new Insets(0, 5, 5, 5), 5, 0));
 		gamePanel.add(runButton, new GridBagConstraints(1, nRowCount, 1, 1, 0.0, 1.0, GridBagConstraints.SOUTH, GridBagConstraints.HORIZONTAL, new Insets(5, 5, 5, 5), 0, 0));
 
 		nRowCount = 0;
@@ -246,7 +249,7 @@ public final class Server extends JPanel implements ActionListener
 
 				synchronized (scheduler) {
 					for (int i = 0; i < (Integer)repetitionsSpinner.getValue(); i++) {
-						scheduler.addPendingMatch(new PendingMatch("Base", theGame, new ArrayList<PlayerPresence>(thePlayers), -1, startClock, playClock, shouldScramble.isSelected(), shouldQueue.isSelected(), shouldDetail.isSelected(), shouldSave.isSelected(), shouldPublish.isSelected()));
+						scheduler.addPendingMatch(new PendingMatch("Base", theGame, new ArrayList<PlayerPresence>(thePlayers), -1, startClock, playClock, shouldScramble.isSelected(), shouldQueue.isSelected(), shouldDetail.isSelected(), shouldSave.isSelected(), shouldPublish.isSelected(), shouldUsePropNet.isSelected()));
 						thePlayers.add(thePlayers.remove(0));  // rotate player roster for repeated matches
 						try {
 							Thread.sleep(10);
@@ -267,7 +270,7 @@ public final class Server extends JPanel implements ActionListener
 					Game testGame = GameRepository.getDefaultRepository().getGame("maze");
 					String playerName = playerSelectorList.getSelectedValue().toString();
 					List<PlayerPresence> thePlayers = Arrays.asList(new PlayerPresence[]{playerSelector.getPlayerPresence(playerName)});
-					scheduler.addPendingMatch(new PendingMatch("Test", testGame, thePlayers, -1, 10, 5, false, false, true, false, false));
+					scheduler.addPendingMatch(new PendingMatch("Test", testGame, thePlayers, -1, 10, 5, false, false, true, false, false, false));
 				}
 			}
 		};
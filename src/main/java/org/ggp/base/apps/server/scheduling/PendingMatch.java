@@ -18,8 +18,9 @@ public final class PendingMatch
 	public final boolean shouldDetail;
 	public final boolean shouldSave;
 	public final boolean shouldPublish;
+	public final boolean shouldUsePropNet;
 
-	public PendingMatch(String matchIdPrefix, Game theGame, List<PlayerPresence> thePlayers, int previewClock, int startClock, int playClock, boolean shouldScramble, boolean shouldQueue, boolean shouldDetail, boolean shouldSave, boolean shouldPublish) {
+	public PendingMatch(String matchIdPrefix, Game theGame, List<PlayerPresence> thePlayers, int previewClock, int startClock, int playClock, boolean shouldScramble, boolean shouldQueue, boolean shouldDetail, boolean shouldSave, boolean shouldPublish, boolean shouldUsePropNet) {
 		this.matchID = matchIdPrefix + "." + theGame.getKey() + "." + System.currentTimeMillis();
 		this.theGame = theGame;
 		this.thePlayers = thePlayers;
@@ -31,5 +32,6 @@ public final class PendingMatch
 		this.shouldDetail = shouldDetail;
 		this.shouldSave = shouldSave;
 		this.shouldPublish = shouldPublish;
+		this.shouldUsePropNet = shouldUsePropNet;
 	}
 }
\ No newline at end of file
@@ -133,7 +133,12 @@ public final class Scheduler implements Observer
 				match.enableScrambling();
 			}
 
-			GameServer gameServer = new GameServer(match, hosts, ports);
+			GameServer gameServer;
+			if (spec.shouldUsePropNet) {
+				gameServer = new GameServer(match, hosts, ports, GameServer.createPropNetStateMachine(GameServer.DEFAULT_SAMPLE_RATE));
+			} else {
+				gameServer = new GameServer(match, hosts, ports);
+			}
 			if (spec.shouldDetail) {
 				gameServer.addObserver(errorPanel);
 				gameServer.addObserver(historyPanel);
@@ -11,6 +11,7 @@ import org.ggp.base.server.GameServer;
 import org.ggp.base.util.game.Game;
 import org.ggp.base.util.game.GameRepository;
 import org.ggp.base.util.gdl.factory.exceptions.GdlFormatException;
+import org.ggp.base.util.http.HttpRequest;
 import org.ggp.base.util.match.Match;
 import org.ggp.base.util.statemachine.Role;
 import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
@@ -28,11 +29,19 @@ import org.ggp.base.util.symbol.factory.exceptions.SymbolFormatException;
  * args[7,8,9] = host, port, name for player 2
  * etc...
  *
+ * The match is refereed with the prover, unless the ggp.server.propnet
+ * system property is set, in which case it is refereed with a propnet and
+ * the value of the property is the fraction of its answers checked against
+ * the prover, for example -Dggp.server.propnet=0.1.
+ *
  * @author Evan Cox
  * @author Sam Schreiber
  */
 public final class GameServerRunner
 {
+	/** The system property that turns on refereeing with a propnet. */
+	public static final String PROPNET_PROPERTY = "ggp.server.propnet";
+
 	public static void main(String[] args) throws IOException, SymbolFormatException, GdlFormatException, InterruptedException, GoalDefinitionException
 	{
 		// Extract the desired configuration from the command line.
@@ -65,9 +74,16 @@ public final class GameServerRunner
 		match.setPlayerNamesFromHost(playerNames);
 
 		// Actually run the match, using the desired configuration.
-		GameServer server = new GameServer(match, hostNames, portNumbers);
+		String sampleRate = System.getProperty(PROPNET_PROPERTY);
+		GameServer server;
+		if (sampleRate == null) {
+			server = new GameServer(match, hostNames, portNumbers);
+		} else {
+			server = new GameServer(match, hostNames, portNumbers, GameServer.createPropNetStateMachine(Double.parseDouble(sampleRate)));
+		}
 		server.start();
 		server.join();
+		HttpRequest.closePooledConnections();
 
 		// Open up the directory for this tournament.
 		// Create a "scores" file if none exists.
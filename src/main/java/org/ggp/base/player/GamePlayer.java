@@ -3,8 +3,15 @@ package org.ggp.base.player;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.ggp.base.player.event.PlayerDroppedPacketEvent;
 import org.ggp.base.player.event.PlayerReceivedMessageEvent;
@@ -12,6 +19,7 @@ import org.ggp.base.player.event.PlayerSentMessageEvent;
 import org.ggp.base.player.gamer.Gamer;
 import org.ggp.base.player.gamer.statemachine.random.RandomGamer;
 import org.ggp.base.player.request.factory.RequestFactory;
+import org.ggp.base.player.request.grammar.InfoRequest;
 import org.ggp.base.player.request.grammar.Request;
 import org.ggp.base.util.http.HttpReader;
 import org.ggp.base.util.http.HttpWriter;
@@ -20,17 +28,44 @@ import org.ggp.base.util.observer.Event;
 import org.ggp.base.util.observer.Observer;
 import org.ggp.base.util.observer.Subject;
 
-
+/**
+ * GamePlayer accepts connections on its own thread and hands each of them
+ * to a worker thread, which reads the request, processes it and writes the
+ * response. A slow or half-open client therefore only holds up its own
+ * worker, and is dropped once the read timeout passes, rather than keeping
+ * the player from seeing the next request.
+ *
+ * Requests that change the state of the gamer are processed one at a time,
+ * in the order they finish arriving. Info requests only read the gamer, so
+ * they are answered straight away even while a move is being selected.
+ *
+ * A client that asks for keep-alive, such as the game server, can send
+ * further requests on the same connection.
+ */
 public final class GamePlayer extends Thread implements Subject
 {
+    /** How long a client gets to send its whole request, in milliseconds. */
+    public static final int READ_TIMEOUT = 10000;
+    /**
+     * How long a kept-alive connection may wait for the next request, in
+     * milliseconds. This is longer than HttpRequest.POOL_IDLE_TIMEOUT, so the
+     * server normally retires the connection before the player does.
+     */
+    public static final int KEEP_ALIVE_TIMEOUT = 60000;
+
     private final int port;
     private final Gamer gamer;
     private ServerSocket listener;
     private final List<Observer> observers;
+    private final ExecutorService workers;
+    // Fair, so that requests waiting for the gamer take turns in the order
+    // they came in, and a STOP or ABORT cannot overtake a PLAY.
+    private final ReentrantLock gamerLock = new ReentrantLock(true);
 
     public GamePlayer(int port, Gamer gamer) throws IOException
     {
-        observers = new ArrayList<Observer>();
+        // Events are sent from the worker threads.
+        observers = new CopyOnWriteArrayList<Observer>();
         listener = null;
 
         while(listener == null) {
@@ -45,6 +80,18 @@ public final class GamePlayer extends Thread implements Subject
 
         this.port = port;
         this.gamer = gamer;
+
+        final int workerPort = port;
+        workers = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadCounter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "GamePlayer-" + workerPort + "-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
 
 	@Override
@@ -77,6 +124,7 @@ public final class GamePlayer extends Thread implements Subject
 		} catch (IOException e) {
 			;
 		}
+		workers.shutdown();
 	}
 
 	@Override
@@ -84,27 +132,77 @@ public final class GamePlayer extends Thread implements Subject
 	{
 		while (listener != null) {
 			try {
-				Socket connection = listener.accept();
-				String in = HttpReader.readAsServer(connection);
-				if (in.length() == 0) {
-				    throw new IOException("Empty message received.");
+				final Socket connection = listener.accept();
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						handle(connection);
+					}
+				});
+			} catch (Exception e) {
+				GamerLogger.log("GamePlayer", "[Dropped data at " + System.currentTimeMillis() + "] Due to " + e, GamerLogger.LOG_LEVEL_DATA_DUMP);
+				notifyObservers(new PlayerDroppedPacketEvent());
+			}
+		}
+	}
+
+	private void handle(Socket connection)
+	{
+		try {
+			Map<String, String> headers = new HashMap<String, String>();
+			String in = HttpReader.readAsServer(connection, READ_TIMEOUT, headers);
+			while (true) {
+				boolean keepAlive = "keep-alive".equalsIgnoreCase(headers.get("connection"));
+				respond(connection, in, keepAlive);
+				if (!keepAlive) {
+					break;
+				}
+				headers.clear();
+				try {
+					in = HttpReader.readAsServer(connection, KEEP_ALIVE_TIMEOUT, headers);
+				} catch (IOException e) {
+					// The client closed the connection, or left it idle for too long.
+					break;
 				}
+			}
+		} catch (Exception e) {
+			GamerLogger.log("GamePlayer", "[Dropped data at " + System.currentTimeMillis() + "] Due to " + e, GamerLogger.LOG_LEVEL_DATA_DUMP);
+			notifyObservers(new PlayerDroppedPacketEvent());
+		} finally {
+			try {
+				connection.close();
+			} catch (IOException e) {
+				;
+			}
+		}
+	}
 
-				notifyObservers(new PlayerReceivedMessageEvent(in));
-				GamerLogger.log("GamePlayer", "[Received at " + System.currentTimeMillis() + "] " + in, GamerLogger.LOG_LEVEL_DATA_DUMP);
+	private void respond(Socket connection, String in, boolean keepAlive) throws Exception
+	{
+		if (in.length() == 0) {
+		    throw new IOException("Empty message received.");
+		}
+		long receptionTime = System.currentTimeMillis();
 
-				Request request = new RequestFactory().create(gamer, in);
-				String out = request.process(System.currentTimeMillis());
+		notifyObservers(new PlayerReceivedMessageEvent(in));
+		GamerLogger.log("GamePlayer", "[Received at " + receptionTime + "] " + in, GamerLogger.LOG_LEVEL_DATA_DUMP);
 
-				HttpWriter.writeAsServer(connection, out);
-				connection.close();
-				notifyObservers(new PlayerSentMessageEvent(out));
-				GamerLogger.log("GamePlayer", "[Sent at " + System.currentTimeMillis() + "] " + out, GamerLogger.LOG_LEVEL_DATA_DUMP);
-			} catch (Exception e) {
-				GamerLogger.log("GamePlayer", "[Dropped data at " + System.currentTimeMillis() + "] Due to " + e, GamerLogger.LOG_LEVEL_DATA_DUMP);
-				notifyObservers(new PlayerDroppedPacketEvent());
+		Request request = new RequestFactory().create(gamer, in);
+		String out;
+		if (request instanceof InfoRequest) {
+			out = request.process(receptionTime);
+		} else {
+			gamerLock.lock();
+			try {
+				out = request.process(receptionTime);
+			} finally {
+				gamerLock.unlock();
 			}
 		}
+
+		HttpWriter.writeAsServer(connection, out, keepAlive);
+		notifyObservers(new PlayerSentMessageEvent(out));
+		GamerLogger.log("GamePlayer", "[Sent at " + System.currentTimeMillis() + "] " + out, GamerLogger.LOG_LEVEL_DATA_DUMP);
 	}
 
 	// Simple main function that starts a RandomGamer on a specified port.
@@ -0,0 +1,154 @@
+package org.ggp.base.player.gamer.statemachine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ggp.base.util.logging.GamerLogger;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+
+/**
+ * A pool of long-lived worker threads for running depth charges and other
+ * search work in parallel. Work is taken from one shared queue, so starting
+ * a batch costs a queue insertion per task instead of a thread start.
+ *
+ * Because the workers live as long as the pool, state machines that keep
+ * per-thread scratch buffers (such as the flat propnet machines) keep them
+ * warm from one batch to the next. The state machine must be safe to use
+ * from several threads.
+ *
+ * Every batch takes a deadline, normally derived from the timeout passed to
+ * stateMachineSelectMove: tasks that are still running at the deadline are
+ * abandoned, and depth charges stop at the first step past it.
+ */
+public final class DepthChargeExecutor
+{
+    private static final AtomicInteger poolCounter = new AtomicInteger();
+
+    private final ExecutorService executor;
+    private final int numThreads;
+
+    /**
+     * Creates a pool with one worker per available processor.
+     */
+    public DepthChargeExecutor()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public DepthChargeExecutor(int numThreads)
+    {
+        this.numThreads = numThreads;
+        final int poolId = poolCounter.incrementAndGet();
+        executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            private final AtomicInteger threadCounter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "DepthCharge-" + poolId + "-" + threadCounter.incrementAndGet());
+                // Idle workers should never keep the player from exiting.
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public int getNumThreads()
+    {
+        return numThreads;
+    }
+
+    /**
+     * Runs the given tasks on the pool and waits for them until the deadline.
+     * Tasks still running at the deadline are cancelled. Returns the results
+     * of the tasks that completed normally; failures are logged.
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<T>> tasks, long deadline)
+    {
+        List<T> results = new ArrayList<T>(tasks.size());
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return results;
+        }
+        List<Future<T>> futures;
+        try {
+            futures = executor.invokeAll(tasks, remaining, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return results;
+        }
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (CancellationException e) {
+                // Still running at the deadline.
+            } catch (ExecutionException e) {
+                GamerLogger.logStackTrace("GamePlayer", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs numCharges depth charges from the given state in parallel, and
+     * returns the average goal value for the given role over the charges that
+     * reached a terminal state before the deadline, or 0 if none did.
+     */
+    public float runDepthCharges(final StateMachine machine, final MachineState state, final Role role,
+            int numCharges, final long deadline)
+    {
+        List<Callable<Integer>> charges = new ArrayList<Callable<Integer>>(numCharges);
+        for (int i = 0; i < numCharges; i++) {
+            charges.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return depthCharge(machine, state, role, deadline);
+                }
+            });
+        }
+        int total = 0;
+        int finished = 0;
+        for (Integer goal : invokeAll(charges, deadline)) {
+            if (goal != null) {
+                total += goal;
+                finished++;
+            }
+        }
+        return (finished == 0) ? 0 : (float) total / finished;
+    }
+
+    /**
+     * Plays random moves from the given state until a terminal state and
+     * returns its goal value for the given role, or null if the deadline
+     * passed or the thread was interrupted before the charge finished.
+     */
+    public static Integer depthCharge(StateMachine machine, MachineState state, Role role, long deadline) throws Exception
+    {
+        int[] goals = new int[machine.getRoles().size()];
+        if (machine.performDepthChargeForGoals(state, goals, deadline) < 0) {
+            return null;
+        }
+        return goals[machine.getRoleIndices().get(role)];
+    }
+
+    /**
+     * Stops the workers. Tasks that are already running are interrupted.
+     */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+}
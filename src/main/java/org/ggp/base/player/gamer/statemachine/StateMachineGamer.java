@@ -101,6 +101,19 @@ public abstract class StateMachineGamer extends Gamer
 		return stateMachine;
 	}
 
+    /**
+     * Returns the worker pool shared by this gamer's searches, creating it
+     * with one worker per processor on first use. The pool outlives single
+     * moves and matches, so its threads are only started once.
+     */
+    public final synchronized DepthChargeExecutor getDepthChargeExecutor()
+    {
+        if (depthChargeExecutor == null) {
+            depthChargeExecutor = new DepthChargeExecutor();
+        }
+        return depthChargeExecutor;
+    }
+
     /**
      * Cleans up the role, currentState and stateMachine. This should only be
      * used when a match is over, and even then only when you really need to
@@ -273,4 +286,5 @@ public abstract class StateMachineGamer extends Gamer
     private Role role;
     private MachineState currentState;
     private StateMachine stateMachine;
+    private DepthChargeExecutor depthChargeExecutor;
 }
\ No newline at end of file
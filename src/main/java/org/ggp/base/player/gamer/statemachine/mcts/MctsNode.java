@@ -0,0 +1,280 @@
+package org.ggp.base.player.gamer.statemachine.mcts;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.ggp.base.util.logging.GamerLogger;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+
+/**
+ * A node of a Monte Carlo search tree that can be searched by many threads
+ * at once without locks.
+ *
+ * - The visit count and the average score are packed into a single long and
+ *   updated together with a compare-and-set loop, so readers always see a
+ *   consistent pair.
+ * - Children are published all at once: one thread wins the right to expand
+ *   the node with {@link #tryClaimExpansion()}, builds the children and
+ *   publishes them with {@link #publishChildren(List)}. Until then the node
+ *   looks like a leaf to every other thread.
+ * - Threads that are on their way through a node add a virtual loss to it,
+ *   which counts as a visit with a score of 0 until the real result is
+ *   backpropagated. Other threads then prefer different branches instead of
+ *   all piling into the same leaf.
+ *
+ * Scores are from the point of view of our role, between 0 and 100.
+ */
+public final class MctsNode {
+	private static final AtomicLongFieldUpdater<MctsNode> STATS =
+			AtomicLongFieldUpdater.newUpdater(MctsNode.class, "stats");
+	private static final AtomicIntegerFieldUpdater<MctsNode> VIRTUAL_LOSSES =
+			AtomicIntegerFieldUpdater.newUpdater(MctsNode.class, "virtualLosses");
+	private static final AtomicIntegerFieldUpdater<MctsNode> EXPANSION =
+			AtomicIntegerFieldUpdater.newUpdater(MctsNode.class, "expansion");
+	private static final AtomicReferenceFieldUpdater<MctsNode, MctsNode[]> CHILDREN =
+			AtomicReferenceFieldUpdater.newUpdater(MctsNode.class, MctsNode[].class, "children");
+
+	private static final int UNEXPANDED = 0;
+	private static final int EXPANDING = 1;
+
+	//Visit count in the high 32 bits, float bits of the average score in the low 32 bits
+	private volatile long stats;
+	private volatile int virtualLosses;
+	private volatile int expansion;
+	private volatile MctsNode[] children;
+
+	private volatile MctsNode parentNode;
+	private final MachineState state;
+	private final boolean maxNode;
+	private final Move move;
+	private final int depth;
+	private volatile boolean isTerminal;
+
+	//For use in propagating deterministic information up. Only set if terminal or if all children are terminal
+	private volatile float min;
+	private volatile float max;
+	private volatile boolean seenTerminal;
+
+	public MctsNode(MachineState newState, MctsNode parent, Move newMove, boolean max) {
+		state = newState;
+		parentNode = parent;
+		move = newMove;
+		maxNode = max; //if newMove is null, then this is a max node
+		depth = (parent == null) ? 0 : parent.getDepth() + 1;
+		stats = pack(0, 0);
+	}
+
+	private static long pack(int visits, float score) {
+		return ((long) visits << 32) | (Float.floatToRawIntBits(score) & 0xFFFFFFFFL);
+	}
+
+	private static int unpackVisits(long stats) {
+		return (int) (stats >>> 32);
+	}
+
+	private static float unpackScore(long stats) {
+		return Float.intBitsToFloat((int) stats);
+	}
+
+	//get/set methods
+	public int getNumVisits() {
+		return unpackVisits(stats);
+	}
+
+	/**
+	 * Adds one visit with the given score to the running average.
+	 */
+	public void addScore(float newScore) {
+		while (true) {
+			long current = stats;
+			int visits = unpackVisits(current);
+			float score = unpackScore(current);
+			float updated = Math.min(100, (score * visits + newScore) / (visits + 1));
+			if (STATS.compareAndSet(this, current, pack(visits + 1, updated))) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the average score, or the proven value if the node is solved.
+	 */
+	public float getScore() {
+		if (isTerminal || seenTerminal) {
+			if (maxNode) {
+				return (int) max;
+			}
+			else {
+				return (int) min;
+			}
+		}
+		return Math.max(Math.min(unpackScore(stats), 99), 1);
+	}
+
+	public void addVirtualLoss() {
+		VIRTUAL_LOSSES.incrementAndGet(this);
+	}
+
+	public void removeVirtualLoss() {
+		VIRTUAL_LOSSES.decrementAndGet(this);
+	}
+
+	public int getVirtualLosses() {
+		return virtualLosses;
+	}
+
+	/**
+	 * Returns the visit count including the threads currently searching below
+	 * this node.
+	 */
+	public int getEffectiveVisits() {
+		return getNumVisits() + virtualLosses;
+	}
+
+	/**
+	 * Returns the average score counting every pending virtual loss as a
+	 * visit that scored 0.
+	 */
+	public float getEffectiveScore() {
+		long current = stats;
+		int visits = unpackVisits(current);
+		int pending = virtualLosses;
+		float score = getScore();
+		if (pending <= 0 || isTerminal || seenTerminal) {
+			return score;
+		}
+		return score * visits / (visits + pending);
+	}
+
+	/**
+	 * Tries to become the thread that expands this node. Returns true for
+	 * exactly one caller, which must then call publishChildren or
+	 * releaseExpansion.
+	 */
+	public boolean tryClaimExpansion() {
+		return EXPANSION.compareAndSet(this, UNEXPANDED, EXPANDING);
+	}
+
+	/**
+	 * Gives up the claim taken by tryClaimExpansion if the children were not
+	 * published, for example because building them failed, so that another
+	 * thread can expand the node.
+	 */
+	public void releaseExpansion() {
+		if (children == null) {
+			EXPANSION.set(this, UNEXPANDED);
+		}
+	}
+
+	/**
+	 * Publishes the children of this node. Only the first call has an effect;
+	 * returns whether this call published the children.
+	 */
+	public boolean publishChildren(List<MctsNode> newChildren) {
+		return CHILDREN.compareAndSet(this, null, newChildren.toArray(new MctsNode[newChildren.size()]));
+	}
+
+	public boolean isExpanded() {
+		return children != null;
+	}
+
+	/**
+	 * Returns the published children, or an empty list if the node has not
+	 * been expanded yet. The list cannot be modified.
+	 */
+	public List<MctsNode> getChildren() {
+		MctsNode[] current = children;
+		if (current == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(Arrays.asList(current));
+	}
+
+	public MctsNode getParent() {
+		return parentNode;
+	}
+
+	public void setParent(MctsNode parent) {
+		parentNode = parent;
+	}
+
+	public MachineState getState() {
+		return state;
+	}
+
+	public boolean isMaxNode() {
+		return maxNode;
+	}
+
+	public Move getMove() {
+		return move;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public void setTerminal() {
+		isTerminal = true;
+	}
+
+	public boolean isTerminal() {
+		return isTerminal;
+	}
+
+	public void setMin(float newMin) {
+		min = newMin;
+		seenTerminal = true;
+	}
+
+	public float getMin() {
+		return min;
+	}
+
+	public void setMax(float newMax) {
+		max = newMax;
+		seenTerminal = true;
+	}
+
+	public float getMax() {
+		return max;
+	}
+
+	public boolean canSeeTerminal() {
+		return seenTerminal;
+	}
+
+	/** Logs the statistics of this node to the GamePlayer log. */
+	public void printNode() {
+		GamerLogger.log("GamePlayer", "Node: " + state + "\nMove: " + move + "\nScore: " + getScore()
+				+ "\nDepth: " + depth + "\nVisits: " + getNumVisits() + "\nChildren: " + getChildren().size()
+				+ "\nMax?: " + maxNode + "\nSee? " + seenTerminal);
+	}
+
+	/** Logs every node of the given subtree, level by level. */
+	public static void printTree(MctsNode node) {
+		Queue<MctsNode> toPrint = new LinkedList<MctsNode>();
+		int depth = -1;
+		toPrint.add(node);
+		while(!toPrint.isEmpty()) {
+			MctsNode curr = toPrint.poll();
+			if (curr.getDepth() != depth) {
+				depth = curr.getDepth();
+				GamerLogger.log("GamePlayer", "depth: " + depth);
+			}
+
+			curr.printNode();
+
+			for (MctsNode child : curr.getChildren()) {
+				toPrint.add(child);
+			}
+		}
+	}
+}
@@ -0,0 +1,279 @@
+package org.ggp.base.player.gamer.statemachine.mcts;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.ggp.base.player.gamer.statemachine.DepthChargeExecutor;
+import org.ggp.base.util.logging.GamerLogger;
+import org.ggp.base.util.statemachine.InternalMachineStatePool;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
+import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
+import org.ggp.base.util.statemachine.exceptions.TransitionDefinitionException;
+
+/**
+ * A Monte Carlo search tree of {@link MctsNode}s that any number of threads
+ * can search at the same time: each thread runs whole select, expand,
+ * simulate and backpropagate iterations on its own, and the threads only
+ * meet through the atomic updates of the nodes.
+ *
+ * The tree alternates max nodes, where we pick our move, and min nodes,
+ * whose children are the states reached by every joint move that contains
+ * our move. In single player games every node is a max node.
+ *
+ * The states of the nodes are interned, so that a state reached along
+ * several paths is held once. Whenever the root moves, the pool is rebuilt
+ * from the nodes that are still in the tree, which lets the states of the
+ * pruned branches be collected.
+ *
+ * The state machine must be safe to use from several threads.
+ */
+public final class MctsTree {
+	//Weight of the exploration term in the selection score
+	private static final float EXPLORATION = 1000;
+
+	private final StateMachine machine;
+	private final Role role;
+	private final int roleIndex;
+	private final boolean singlePlayer;
+	private volatile InternalMachineStatePool statePool = new InternalMachineStatePool();
+	private volatile MctsNode root;
+
+	public MctsTree(StateMachine machine, Role role, MachineState rootState) {
+		this.machine = machine;
+		this.role = role;
+		this.roleIndex = machine.getRoleIndices().get(role);
+		this.singlePlayer = machine.getRoles().size() == 1;
+		this.root = new MctsNode(statePool.intern(rootState), null, null, true);
+	}
+
+	public MctsNode getRoot() {
+		return root;
+	}
+
+	/**
+	 * Moves the root of the tree to the given node, which is detached from its
+	 * parent so that backpropagation stops there, and keeps only the states of
+	 * its subtree in the pool.
+	 */
+	public void setRoot(MctsNode newRoot) {
+		newRoot.setParent(null);
+		root = newRoot;
+		InternalMachineStatePool retained = new InternalMachineStatePool();
+		Deque<MctsNode> pending = new ArrayDeque<MctsNode>();
+		pending.push(newRoot);
+		while (!pending.isEmpty()) {
+			MctsNode node = pending.pop();
+			retained.intern(node.getState());
+			for (MctsNode child : node.getChildren()) {
+				pending.push(child);
+			}
+		}
+		statePool = retained;
+	}
+
+	InternalMachineStatePool getStatePool() {
+		return statePool;
+	}
+
+	public boolean isSinglePlayer() {
+		return singlePlayer;
+	}
+
+	/**
+	 * Runs search iterations on every worker of the given pool until the
+	 * timeout, and returns the number of iterations completed. Iterations
+	 * that fail on a state machine error are skipped, and only the first
+	 * error of the search is logged.
+	 */
+	public int search(DepthChargeExecutor pool, final long timeout) {
+		final AtomicBoolean errorLogged = new AtomicBoolean();
+		List<Callable<Integer>> workers = new ArrayList<Callable<Integer>>(pool.getNumThreads());
+		for (int i = 0; i < pool.getNumThreads(); i++) {
+			workers.add(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					int iterations = 0;
+					while (System.currentTimeMillis() < timeout && !Thread.currentThread().isInterrupted()) {
+						try {
+							if (iterate(timeout)) {
+								iterations++;
+							}
+						} catch (GoalDefinitionException | MoveDefinitionException | TransitionDefinitionException e) {
+							if (errorLogged.compareAndSet(false, true)) {
+								GamerLogger.logError("GamePlayer", "Search iteration failed: " + e);
+								GamerLogger.logStackTrace("GamePlayer", e);
+							}
+						}
+					}
+					return iterations;
+				}
+			});
+		}
+		int total = 0;
+		//Give the workers a moment past the timeout to notice it and report their counts
+		for (int iterations : pool.invokeAll(workers, timeout + 100)) {
+			total += iterations;
+		}
+		return total;
+	}
+
+	/**
+	 * Runs one select, expand, simulate and backpropagate iteration. Returns
+	 * false if the timeout was reached or the thread was interrupted before
+	 * the simulation ended, in which case no score is backpropagated.
+	 */
+	public boolean iterate(long timeout) throws MoveDefinitionException,
+			GoalDefinitionException, TransitionDefinitionException {
+		MctsNode selected = select();
+		float score = 0;
+		boolean finished = false;
+		try {
+			expand(selected);
+			int[] goals = new int[machine.getRoles().size()];
+			if (machine.performDepthChargeForGoals(selected.getState(), goals, timeout) < 0) {
+				return false;
+			}
+			score = goals[roleIndex];
+			finished = true;
+			return true;
+		} finally {
+			//Always release the virtual losses, even if the simulation failed
+			backpropagate(selected, score, finished);
+		}
+	}
+
+	/**
+	 * Walks down from the root to the node to search next, adding a virtual
+	 * loss to every node on the way. The caller must backpropagate from the
+	 * returned node to remove them.
+	 */
+	public MctsNode select() {
+		MctsNode node = root;
+		while (true) {
+			node.addVirtualLoss();
+			List<MctsNode> childNodes = node.getChildren();
+			if (node.getNumVisits() == 0 || childNodes.isEmpty()) {
+				return node;
+			}
+
+			float maxScore = 0;
+			float childMax = 0;
+			float childMin = 100;
+			boolean allTerminal = true;
+			MctsNode bestNode = childNodes.get(ThreadLocalRandom.current().nextInt(childNodes.size()));
+			MctsNode unvisited = null;
+			for (MctsNode childNode : childNodes) {
+				if (childNode.getEffectiveVisits() == 0) {
+					unvisited = childNode;
+					break;
+				}
+				boolean solved = childNode.isTerminal() || childNode.canSeeTerminal();
+				float newScore = selectionScore(childNode, node);
+				if (newScore > maxScore && !solved) {
+					maxScore = newScore;
+					bestNode = childNode;
+				}
+				if (allTerminal) {
+					if (solved) {
+						childMax = Math.max(childMax, childNode.getMax());
+						childMin = Math.min(childMin, childNode.getMin());
+					}
+					else {
+						allTerminal = false;
+					}
+				}
+			}
+			if (unvisited != null) {
+				unvisited.addVirtualLoss();
+				return unvisited;
+			}
+			if (allTerminal) {
+				node.setMax(childMax);
+				node.setMin(childMin);
+				return node;
+			}
+			node = bestNode;
+		}
+	}
+
+	private static float selectionScore(MctsNode node, MctsNode parentNode) {
+		float score = node.getEffectiveScore();
+		score += Math.sqrt(EXPLORATION * log2(parentNode.getEffectiveVisits()) / node.getEffectiveVisits());
+		return score;
+	}
+
+	/**
+	 * Creates the children of the given node, unless another thread already
+	 * did or is doing it.
+	 */
+	public void expand(MctsNode node) throws MoveDefinitionException, TransitionDefinitionException, GoalDefinitionException {
+		MachineState state = node.getState();
+		if (machine.isTerminal(state)) {
+			node.setTerminal();
+			float score = machine.getGoal(state, role);
+			node.setMax(score);
+			node.setMin(score);
+			return;
+		}
+		if (!node.tryClaimExpansion()) {
+			return;
+		}
+		try {
+			List<MctsNode> children = new ArrayList<MctsNode>();
+			//branch for max node vs min node
+			if (node.isMaxNode()) {
+				for (Move move : machine.getLegalMoves(state, role)) {
+					MachineState childState = state;
+					if (singlePlayer) {
+						List<Move> moves = new ArrayList<Move>();
+						moves.add(move);
+						childState = statePool.intern(machine.getNextState(state, moves));
+					}
+					children.add(new MctsNode(childState, node, move, singlePlayer)); //if singlePlayer, it stays max nodes
+				}
+			}
+			else {
+				Set<MachineState> childStates = new HashSet<MachineState>();
+				for (List<Move> jointMove : machine.getLegalJointMoves(state, role, node.getMove())) {
+					MachineState nextState = statePool.intern(machine.getNextState(state, jointMove));
+					if (childStates.add(nextState)) {
+						children.add(new MctsNode(nextState, node, node.getMove(), true));
+					}
+				}
+			}
+			node.publishChildren(children);
+		} finally {
+			//Lets another thread expand the node if building the children failed
+			node.releaseExpansion();
+		}
+	}
+
+	/**
+	 * Walks up from the given node to the root, removing the virtual losses
+	 * added by select and, if the simulation finished, recording its score.
+	 */
+	public void backpropagate(MctsNode node, float score, boolean finished) {
+		while (node != null) {
+			if (finished) {
+				node.addScore(score);
+			}
+			node.removeVirtualLoss();
+			node = node.getParent();
+		}
+	}
+
+	public static int log2(int n) {
+		return 31 - Integer.numberOfLeadingZeros(n);
+	}
+}
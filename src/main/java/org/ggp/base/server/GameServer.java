@@ -27,20 +27,27 @@ import org.ggp.base.server.threads.RandomPlayRequestThread;
 import org.ggp.base.server.threads.StartRequestThread;
 import org.ggp.base.server.threads.StopRequestThread;
 import org.ggp.base.util.match.Match;
+import org.ggp.base.util.match.MatchJournal;
 import org.ggp.base.util.match.MatchPublisher;
 import org.ggp.base.util.observer.Event;
 import org.ggp.base.util.observer.Observer;
 import org.ggp.base.util.observer.Subject;
+import org.ggp.base.util.statemachine.FailsafeStateMachine;
 import org.ggp.base.util.statemachine.MachineState;
 import org.ggp.base.util.statemachine.Move;
 import org.ggp.base.util.statemachine.Role;
 import org.ggp.base.util.statemachine.StateMachine;
 import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
 import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousFlatPropNetStateMachine;
 import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.ggp.base.util.statemachine.verifier.SamplingVerifierStateMachine;
 
 public class GameServer extends Thread implements Subject
 {
+    /** The fraction of propnet answers checked against the prover by the apps. */
+    public static final double DEFAULT_SAMPLE_RATE = 0.1;
+
     protected final Match match;
     protected final StateMachine stateMachine;
     protected MachineState currentState;
@@ -56,11 +63,23 @@ public class GameServer extends Thread implements Subject
     private Map<Role,String> mostRecentErrors;
 
     private String saveToFilename;
+    private MatchJournal journal;
+    private final Object saveLock = new Object();
     private String spectatorServerURL;
     private String spectatorServerKey;
     protected boolean forceUsingEntireClock;
 
     public GameServer(Match match, List<String> hosts, List<Integer> ports) {
+        this(match, hosts, ports, new ProverStateMachine());
+    }
+
+    /**
+     * Creates a game server that referees the match with the given state
+     * machine, which it initializes with the rules of the game.
+     *
+     * @see #createPropNetStateMachine(double)
+     */
+    public GameServer(Match match, List<String> hosts, List<Integer> ports, StateMachine stateMachine) {
         this.match = match;
 
         this.hosts = hosts;
@@ -72,7 +91,7 @@ public class GameServer extends Thread implements Subject
         playerPlaysRandomly = new Boolean[hosts.size()];
         Arrays.fill(playerPlaysRandomly, Boolean.FALSE);
 
-        stateMachine = new ProverStateMachine();
+        this.stateMachine = stateMachine;
         stateMachine.initialize(match.getGame().getRules());
         currentState = stateMachine.getInitialState();
         previousMoves = null;
@@ -87,6 +106,21 @@ public class GameServer extends Thread implements Subject
         forceUsingEntireClock = false;
     }
 
+    /**
+     * Returns a faster state machine for refereeing than the prover: a flat
+     * propnet machine, which falls back to the prover if it fails. With a
+     * positive sample rate, that fraction of its answers is also checked
+     * against the prover in the background, and the match continues on the
+     * prover once they disagree.
+     */
+    public static StateMachine createPropNetStateMachine(double sampleRate) {
+        StateMachine theMachine = new FailsafeStateMachine(new AliferousFlatPropNetStateMachine());
+        if (sampleRate > 0) {
+            theMachine = new SamplingVerifierStateMachine(theMachine, new ProverStateMachine(), sampleRate);
+        }
+        return theMachine;
+    }
+
     public void startSavingToFilename(String theFilename) {
     	saveToFilename = theFilename;
     }
@@ -215,26 +249,53 @@ public class GameServer extends Thread implements Subject
     	}
     }
 
+    /**
+     * Saves the match. While it is in progress, only what changed since the
+     * last save is appended to a journal next to the save file (see
+     * MatchJournal); once it is completed or aborted, the whole match is
+     * written to the save file and the journal is deleted.
+     */
     protected void saveWhenNecessary() {
     	if (saveToFilename == null) {
     		return;
     	}
 
-    	try {
-			File file = new File(saveToFilename);
-			if (!file.exists()) {
-				file.createNewFile();
-			}
-			FileWriter fw = new FileWriter(file);
-			BufferedWriter bw = new BufferedWriter(fw);
-			bw.write(match.toJSON().toString());
-			bw.close();
-			fw.close();
-    	} catch (IOException ie) {
-    		ie.printStackTrace();
+    	synchronized (saveLock) {
+    		try {
+    			if (!match.isCompleted() && !match.isAborted()) {
+    				if (journal == null) {
+    					journal = new MatchJournal(getJournalFile(saveToFilename));
+    				}
+    				journal.append(match);
+    				return;
+    			}
+
+    			File file = new File(saveToFilename);
+    			if (!file.exists()) {
+    				file.createNewFile();
+    			}
+    			FileWriter fw = new FileWriter(file);
+    			BufferedWriter bw = new BufferedWriter(fw);
+    			bw.write(match.toJSON().toString());
+    			bw.close();
+    			fw.close();
+
+    			if (journal != null) {
+    				journal.close();
+    				journal = null;
+    			}
+    			getJournalFile(saveToFilename).delete();
+    		} catch (IOException ie) {
+    			ie.printStackTrace();
+    		}
     	}
     }
 
+    /** Returns the journal kept while a match saved to the given file is in progress. */
+    public static File getJournalFile(String saveToFilename) {
+    	return new File(saveToFilename + ".journal");
+    }
+
     protected String publishWhenNecessary() {
         if (spectatorServerURL == null) {
         	return null;
@@ -270,7 +331,7 @@ public class GameServer extends Thread implements Subject
             }
         }
         for (PlayRequestThread thread : threads) {
-            thread.start();
+            thread.submit();
         }
 
         if (forceUsingEntireClock) {
@@ -279,7 +340,7 @@ public class GameServer extends Thread implements Subject
 
         List<Move> moves = new ArrayList<Move>();
         for (PlayRequestThread thread : threads) {
-            thread.join();
+            thread.await();
             moves.add(thread.getMove());
         }
 
@@ -294,13 +355,13 @@ public class GameServer extends Thread implements Subject
         	}
         }
         for (PreviewRequestThread thread : threads) {
-            thread.start();
+            thread.submit();
         }
         if (forceUsingEntireClock) {
             Thread.sleep(match.getStartClock() * 1000);
         }
         for (PreviewRequestThread thread : threads) {
-            thread.join();
+            thread.await();
         }
     }
 
@@ -312,13 +373,13 @@ public class GameServer extends Thread implements Subject
         	}
         }
         for (StartRequestThread thread : threads) {
-            thread.start();
+            thread.submit();
         }
         if (forceUsingEntireClock) {
             Thread.sleep(match.getStartClock() * 1000);
         }
         for (StartRequestThread thread : threads) {
-            thread.join();
+            thread.await();
         }
     }
 
@@ -330,10 +391,10 @@ public class GameServer extends Thread implements Subject
         	}
         }
         for (StopRequestThread thread : threads) {
-            thread.start();
+            thread.submit();
         }
         for (StopRequestThread thread : threads) {
-            thread.join();
+            thread.await();
         }
     }
 
@@ -345,10 +406,10 @@ public class GameServer extends Thread implements Subject
         	}
         }
         for (AbortRequestThread thread : threads) {
-            thread.start();
+            thread.submit();
         }
         for (AbortRequestThread thread : threads) {
-            thread.join();
+            thread.await();
         }
         interrupt();
     }
@@ -102,10 +102,10 @@ public class IIGameServer extends GameServer implements Subject {
         	}
         }
         for (IIStopRequestThread thread : threads) {
-            thread.start();
+            thread.submit();
         }
         for (IIStopRequestThread thread : threads) {
-            thread.join();
+            thread.await();
         }
     }
 
@@ -120,7 +120,7 @@ public class IIGameServer extends GameServer implements Subject {
             }
         }
 		for (SeesRequestThread thread : threads) {
-			thread.start();
+			thread.submit();
 		}
 
 		if (forceUsingEntireClock) {
@@ -129,7 +129,7 @@ public class IIGameServer extends GameServer implements Subject {
 
 		List<Move> moves = new ArrayList<Move>();
         for (SeesRequestThread thread : threads) {
-            thread.join();
+            thread.await();
             moves.add(thread.getMove());
         }
 
@@ -3,11 +3,21 @@ package org.ggp.base.server.threads;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.ggp.base.server.GameServer;
 import org.ggp.base.server.event.ServerConnectionErrorEvent;
 import org.ggp.base.server.event.ServerTimeoutEvent;
 import org.ggp.base.util.http.HttpRequest;
+import org.ggp.base.util.logging.GamerLogger;
 import org.ggp.base.util.statemachine.Role;
 
 
@@ -20,10 +30,34 @@ import org.ggp.base.util.statemachine.Role;
  * that the concrete RequestThread subclasses can focus on request-specific
  * business logic.
  *
+ * Requests are not threads of their own: submit() runs them on a pool shared
+ * by every game server, so the number of threads is bounded however many
+ * matches are running, and await() waits for them until their deadline. The
+ * deadline is the timeout counted from submission, so time spent waiting for
+ * a free thread comes out of the player's clock, as it would on the network.
+ *
  * @author schreib
  */
-public abstract class RequestThread extends Thread
+public abstract class RequestThread implements Runnable
 {
+	/** Extra time allowed past the deadline for the response to be handled, in milliseconds. */
+	private static final int DEADLINE_GRACE = 1000;
+
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(128, 128, 60, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+		private final AtomicInteger threadCounter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "RequestThread-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	static {
+		executor.allowCoreThreadTimeOut(true);
+	}
+
 	private final GameServer gameServer;
 	private final String host;
 	private final int port;
@@ -32,6 +66,11 @@ public abstract class RequestThread extends Thread
 	private final Role role;
 	private final String request;
 
+	/** Set by whichever comes first: the request finishing or its deadline passing. */
+	private final AtomicBoolean finished = new AtomicBoolean();
+	private long deadline;
+	private Future<?> future;
+
 	public RequestThread(GameServer gameServer, Role role, String host, int port, String playerName, int timeout, String request)
 	{
 		this.gameServer = gameServer;
@@ -43,20 +82,102 @@ public abstract class RequestThread extends Thread
 		this.request = request;
 	}
 
+	/** Sets the number of threads that requests run on. The default is 128. */
+	public static void setMaxThreads(int maxThreads)
+	{
+		if (maxThreads > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(maxThreads);
+			executor.setCorePoolSize(maxThreads);
+		} else {
+			executor.setCorePoolSize(maxThreads);
+			executor.setMaximumPoolSize(maxThreads);
+		}
+	}
+
 	protected abstract void handleResponse(String response);
 
+	/** Starts sending the request on the shared pool. */
+	public final void submit()
+	{
+		deadline = (timeout < 0) ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
+		future = executor.submit(this);
+	}
+
+	/**
+	 * Waits until the request has been handled, or until its deadline. A
+	 * request still running at its deadline counts as timed out, and its
+	 * response is ignored if it comes in later.
+	 */
+	public final void await() throws InterruptedException
+	{
+		try {
+			if (deadline == Long.MAX_VALUE) {
+				future.get();
+			} else {
+				future.get(Math.max(deadline - System.currentTimeMillis(), 0) + DEADLINE_GRACE, TimeUnit.MILLISECONDS);
+			}
+		} catch (TimeoutException e) {
+			if (finished.compareAndSet(false, true)) {
+				future.cancel(true);
+				gameServer.notifyObservers(new ServerTimeoutEvent(role));
+			} else {
+				// The response came in just now, and is being handled.
+				awaitHandled();
+			}
+		} catch (InterruptedException e) {
+			finished.set(true);
+			future.cancel(true);
+			throw e;
+		} catch (ExecutionException e) {
+			reportHandlingError(e.getCause());
+		}
+	}
+
+	private void awaitHandled() throws InterruptedException
+	{
+		try {
+			future.get();
+		} catch (ExecutionException e) {
+			reportHandlingError(e.getCause());
+		}
+	}
+
+	/** Handling the response failed, so the player is treated as having sent none. */
+	private void reportHandlingError(Throwable cause)
+	{
+		GamerLogger.logError("GameServer", "Could not handle the response of " + playerName + " for " + role + ": " + cause);
+		if (cause instanceof Exception) {
+			GamerLogger.logStackTrace("GameServer", (Exception) cause);
+		} else if (cause instanceof Error) {
+			GamerLogger.logStackTrace("GameServer", (Error) cause);
+		}
+		gameServer.notifyObservers(new ServerConnectionErrorEvent(role));
+	}
+
 	@Override
 	public void run()
 	{
 		try {
-			String response = HttpRequest.issueRequest(host, port, playerName, request, timeout);
-			handleResponse(response);
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				throw new SocketTimeoutException("Deadline passed before the request was sent.");
+			}
+			String response = HttpRequest.issuePooledRequest(host, port, playerName, request, (timeout < 0) ? -1 : (int) remaining);
+			if (finished.compareAndSet(false, true)) {
+				handleResponse(response);
+			}
 		} catch (SocketTimeoutException e) {
-			gameServer.notifyObservers(new ServerTimeoutEvent(role));
+			if (finished.compareAndSet(false, true)) {
+				gameServer.notifyObservers(new ServerTimeoutEvent(role));
+			}
 		} catch (UnknownHostException e) {
-			gameServer.notifyObservers(new ServerConnectionErrorEvent(role));
+			if (finished.compareAndSet(false, true)) {
+				gameServer.notifyObservers(new ServerConnectionErrorEvent(role));
+			}
 		} catch (IOException e) {
-			gameServer.notifyObservers(new ServerConnectionErrorEvent(role));
+			if (finished.compareAndSet(false, true)) {
+				gameServer.notifyObservers(new ServerConnectionErrorEvent(role));
+			}
 		}
 	}
-}
\ No newline at end of file
+}
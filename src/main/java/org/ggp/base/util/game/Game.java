@@ -1,14 +1,11 @@
 package org.ggp.base.util.game;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import org.ggp.base.util.gdl.factory.GdlFactory;
 import org.ggp.base.util.gdl.factory.exceptions.GdlFormatException;
 import org.ggp.base.util.gdl.grammar.Gdl;
-import org.ggp.base.util.symbol.factory.SymbolFactory;
 import org.ggp.base.util.symbol.factory.exceptions.SymbolFormatException;
-import org.ggp.base.util.symbol.grammar.SymbolList;
 
 import external.JSON.JSONObject;
 
@@ -142,13 +139,7 @@ public final class Game {
      */
     public List<Gdl> getRules() {
     	try {
-	        List<Gdl> rules = new ArrayList<Gdl>();
-	        SymbolList list = (SymbolList) SymbolFactory.create(theRulesheet);
-	        for (int i = 0; i < list.size(); i++)
-	        {
-	            rules.add(GdlFactory.create(list.get(i)));
-	        }
-	        return rules;
+	        return GdlFactory.createFromList(theRulesheet);
     	} catch (GdlFormatException e) {
     		e.printStackTrace();
     		return null;
@@ -30,7 +30,15 @@ public final class GdlFactory
 
 	public static Gdl create(String string) throws GdlFormatException, SymbolFormatException
 	{
-		return create(SymbolFactory.create(string));
+		try
+		{
+			return new GdlParser(string).parseGdl();
+		}
+		catch (RuntimeException e)
+		{
+			// Let the Symbol route report what is wrong with it.
+			return create(SymbolFactory.create(string));
+		}
 	}
 
 	public static Gdl create(Symbol symbol) throws GdlFormatException
@@ -49,6 +57,14 @@ public final class GdlFactory
 	/* general version of create() that returns a List of Gdl's instead of a single instance */
 	public static List<Gdl> createList(String string) throws GdlFormatException, SymbolFormatException
 	{
+		try
+		{
+			return new GdlParser(string).parseGdlList();
+		}
+		catch (RuntimeException e)
+		{
+			// Let the Symbol route report what is wrong with it.
+		}
 		List<Gdl> terms = new ArrayList<Gdl>();
 		List<Symbol> listOfSymbols = SymbolFactory.createList(string);
 		for (int i = 0; i < listOfSymbols.size(); i++) {
@@ -57,6 +73,29 @@ public final class GdlFactory
 		return terms;
 	}
 
+	/**
+	 * Creates the Gdl in a parenthesized list, such as a rulesheet in the
+	 * form kept by {@link org.ggp.base.util.game.Game}.
+	 */
+	public static List<Gdl> createFromList(String string) throws GdlFormatException, SymbolFormatException
+	{
+		try
+		{
+			return new GdlParser(string).parseGdlInList();
+		}
+		catch (RuntimeException e)
+		{
+			// Let the Symbol route report what is wrong with it.
+		}
+		List<Gdl> gdls = new ArrayList<Gdl>();
+		SymbolList list = (SymbolList) SymbolFactory.create(string);
+		for (int i = 0; i < list.size(); i++)
+		{
+			gdls.add(create(list.get(i)));
+		}
+		return gdls;
+	}
+
 	private static GdlConstant createConstant(SymbolAtom atom)
 	{
         return GdlPool.getConstant(atom.getValue());
@@ -185,7 +224,15 @@ public final class GdlFactory
 
 	public static GdlTerm createTerm(String string) throws SymbolFormatException
 	{
-		return createTerm(SymbolFactory.create(string));
+		try
+		{
+			return new GdlParser(string).parseTerm();
+		}
+		catch (RuntimeException e)
+		{
+			// Let the Symbol route report what is wrong with it.
+			return createTerm(SymbolFactory.create(string));
+		}
 	}
 
 	public static GdlTerm createTerm(Symbol symbol)
@@ -211,6 +258,14 @@ public final class GdlFactory
 	/* 	general version of createTerm() that returns a List of Gdl's instead of a single instance */
 	public static List<GdlTerm> createTermList(String string) throws SymbolFormatException
 	{
+		try
+		{
+			return new GdlParser(string).parseTermList();
+		}
+		catch (RuntimeException e)
+		{
+			// Let the Symbol route report what is wrong with it.
+		}
 		List<GdlTerm> terms = new ArrayList<GdlTerm>();
 		List<Symbol> listOfSymbols = SymbolFactory.createList(string);
 		for (int i = 0; i < listOfSymbols.size(); i++) {
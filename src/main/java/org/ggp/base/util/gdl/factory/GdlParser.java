@@ -0,0 +1,319 @@
+package org.ggp.base.util.gdl.factory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.gdl.grammar.GdlConstant;
+import org.ggp.base.util.gdl.grammar.GdlLiteral;
+import org.ggp.base.util.gdl.grammar.GdlPool;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.gdl.grammar.GdlTerm;
+
+
+/**
+ * GdlParser reads Gdl straight from text in a single pass, creating every
+ * object through the GdlPool, instead of building a Symbol tree with the
+ * SymbolFactory and then converting it. It accepts the same text and gives
+ * the same Gdl as that route: tokens are parentheses and runs of other
+ * non-whitespace characters, and expressions are interpreted as in
+ * {@link GdlFactory#create(org.ggp.base.util.symbol.grammar.Symbol)}.
+ *
+ * Malformed text makes the parser throw an IllegalArgumentException with no
+ * details; GdlFactory then parses it through Symbols to report the problem
+ * the way it always has.
+ *
+ * A GdlParser is used for a single piece of text, by a single thread.
+ */
+final class GdlParser
+{
+	private static final IllegalArgumentException MALFORMED = new IllegalArgumentException("Malformed GDL");
+
+	private final String text;
+	private int position;
+
+	// Argument lists are reused between expressions at the same depth.
+	private final List<List<GdlTerm>> termLists = new ArrayList<List<GdlTerm>>();
+	private int termDepth;
+
+	GdlParser(String text)
+	{
+		this.text = text;
+		this.position = 0;
+	}
+
+	/** Parses a rule or sentence, ignoring any text after it. */
+	Gdl parseGdl()
+	{
+		if (!nextIsOpen())
+		{
+			return GdlPool.getProposition(GdlPool.getConstant(readAtom()));
+		}
+		position++;
+		String head = readAtom();
+		if (head.equals("<="))
+		{
+			GdlSentence ruleHead = parseSentence();
+			List<GdlLiteral> body = new ArrayList<GdlLiteral>();
+			while (!nextIsClose())
+			{
+				body.add(parseLiteral());
+			}
+			position++;
+			return GdlPool.getRule(ruleHead, body);
+		}
+		return finishRelation(head);
+	}
+
+	/**
+	 * Parses a sequence of parenthesized rules and sentences up to the end of
+	 * the text, or a single sentence if the text starts with an atom.
+	 */
+	List<Gdl> parseGdlList()
+	{
+		List<Gdl> gdls = new ArrayList<Gdl>();
+		if (!nextIsOpen())
+		{
+			gdls.add(parseGdl());
+			return gdls;
+		}
+		while (!atEnd())
+		{
+			if (!nextIsOpen())
+			{
+				throw MALFORMED;
+			}
+			gdls.add(parseGdl());
+		}
+		return gdls;
+	}
+
+	/** Parses a parenthesized list of rules and sentences, such as a rulesheet. */
+	List<Gdl> parseGdlInList()
+	{
+		if (!nextIsOpen())
+		{
+			throw MALFORMED;
+		}
+		position++;
+		List<Gdl> gdls = new ArrayList<Gdl>();
+		while (!nextIsClose())
+		{
+			gdls.add(parseGdl());
+		}
+		position++;
+		return gdls;
+	}
+
+	/** Parses a term, ignoring any text after it. */
+	GdlTerm parseTerm()
+	{
+		if (!nextIsOpen())
+		{
+			String atom = readAtom();
+			if (atom.charAt(0) == '?')
+			{
+				return GdlPool.getVariable(atom);
+			}
+			return GdlPool.getConstant(atom);
+		}
+		position++;
+		GdlConstant name = GdlPool.getConstant(readAtom());
+		List<GdlTerm> body = readTerms();
+		try
+		{
+			return GdlPool.getFunction(name, body);
+		}
+		finally
+		{
+			termDepth--;
+		}
+	}
+
+	/**
+	 * Parses a sequence of terms up to the end of the text, or a single term
+	 * if the text starts with an atom.
+	 */
+	List<GdlTerm> parseTermList()
+	{
+		List<GdlTerm> terms = new ArrayList<GdlTerm>();
+		if (!nextIsOpen())
+		{
+			terms.add(parseTerm());
+			return terms;
+		}
+		while (!atEnd())
+		{
+			if (!nextIsOpen())
+			{
+				throw MALFORMED;
+			}
+			terms.add(parseTerm());
+		}
+		return terms;
+	}
+
+	private GdlSentence parseSentence()
+	{
+		if (!nextIsOpen())
+		{
+			return GdlPool.getProposition(GdlPool.getConstant(readAtom()));
+		}
+		position++;
+		return finishRelation(readAtom());
+	}
+
+	private GdlLiteral parseLiteral()
+	{
+		if (!nextIsOpen())
+		{
+			return GdlPool.getProposition(GdlPool.getConstant(readAtom()));
+		}
+		position++;
+		String head = readAtom();
+		String type = head.toLowerCase();
+		if (type.equals("distinct"))
+		{
+			GdlTerm arg1 = parseTerm();
+			GdlTerm arg2 = parseTerm();
+			skipRest();
+			return GdlPool.getDistinct(arg1, arg2);
+		}
+		else if (type.equals("not"))
+		{
+			GdlLiteral body = parseLiteral();
+			skipRest();
+			return GdlPool.getNot(body);
+		}
+		else if (type.equals("or"))
+		{
+			List<GdlLiteral> disjuncts = new ArrayList<GdlLiteral>();
+			while (!nextIsClose())
+			{
+				disjuncts.add(parseLiteral());
+			}
+			position++;
+			return GdlPool.getOr(disjuncts);
+		}
+		return finishRelation(head);
+	}
+
+	/** Parses the arguments and closing parenthesis of a relation. */
+	private GdlSentence finishRelation(String name)
+	{
+		GdlConstant constant = GdlPool.getConstant(name);
+		List<GdlTerm> body = readTerms();
+		try
+		{
+			return GdlPool.getRelation(constant, body);
+		}
+		finally
+		{
+			termDepth--;
+		}
+	}
+
+	/**
+	 * Reads terms up to and including the next closing parenthesis, into the
+	 * argument list for the current depth. The caller must decrement
+	 * termDepth once it is done with the list.
+	 */
+	private List<GdlTerm> readTerms()
+	{
+		if (termDepth == termLists.size())
+		{
+			termLists.add(new ArrayList<GdlTerm>());
+		}
+		List<GdlTerm> terms = termLists.get(termDepth++);
+		terms.clear();
+		while (!nextIsClose())
+		{
+			terms.add(parseTerm());
+		}
+		position++;
+		return terms;
+	}
+
+	/** Skips the remaining expressions of a list, and its closing parenthesis. */
+	private void skipRest()
+	{
+		int depth = 0;
+		while (true)
+		{
+			skipWhitespace();
+			if (position == text.length())
+			{
+				throw MALFORMED;
+			}
+			char c = text.charAt(position++);
+			if (c == '(')
+			{
+				depth++;
+			}
+			else if (c == ')')
+			{
+				if (depth == 0)
+				{
+					return;
+				}
+				depth--;
+			}
+		}
+	}
+
+	private String readAtom()
+	{
+		skipWhitespace();
+		int start = position;
+		while (position < text.length() && !isDelimiter(text.charAt(position)))
+		{
+			position++;
+		}
+		if (position == start)
+		{
+			throw MALFORMED;
+		}
+		return text.substring(start, position);
+	}
+
+	private boolean nextIsOpen()
+	{
+		skipWhitespace();
+		return position < text.length() && text.charAt(position) == '(';
+	}
+
+	private boolean nextIsClose()
+	{
+		skipWhitespace();
+		if (position == text.length())
+		{
+			throw MALFORMED;
+		}
+		return text.charAt(position) == ')';
+	}
+
+	private boolean atEnd()
+	{
+		skipWhitespace();
+		return position == text.length();
+	}
+
+	private void skipWhitespace()
+	{
+		while (position < text.length() && isWhitespace(text.charAt(position)))
+		{
+			position++;
+		}
+	}
+
+	private static boolean isDelimiter(char c)
+	{
+		return c == '(' || c == ')' || isWhitespace(c);
+	}
+
+	// The characters matched by \s, which is what the SymbolFactory splits on.
+	private static boolean isWhitespace(char c)
+	{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+}
@@ -7,8 +7,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -21,22 +21,34 @@ import com.google.common.collect.MapMaker;
  * objects may be checked for equality with an instance-equality check (==) rather
  * than a more expensive recursive equality check.
  * <p>
- * A long-lived game player may accumulate lots of objects in its pool. To remove
- * them, it may call {@link #drainPool()} in between games. Note that if this
- * method is called while references to Gdl objects other than keyword constants
- * are held elsewhere, bad things will happen.
+ * A long-lived game player does not need to clean up its pool: see below. It may
+ * still call {@link #drainPool()} in between games to release everything at once.
+ * Note that if this method is called while references to Gdl objects other than
+ * keyword constants are held elsewhere, bad things will happen.
+ * <p>
+ * Every term also gets an int id (see {@link GdlTerm#getId()}). Compound
+ * objects are pooled in one flat map per kind, keyed by an array of their
+ * parts that is hashed by those ids.
+ * <p>
+ * The pools only hold their objects softly, so the Gdl of a match that has
+ * ended, and of the intermediate sentences built while reasoning about it, is
+ * released once nothing refers to it any more and the memory is needed. This
+ * is safe while other matches are running in the same JVM, since an object
+ * can only leave the pool when nobody can compare it to a new one, so several
+ * matches and players can share the pool without ever draining it.
  */
 public final class GdlPool
 {
-	private static final ConcurrentMap<GdlTerm, ConcurrentMap<GdlTerm, GdlDistinct>> distinctPool = new ConcurrentHashMap<GdlTerm, ConcurrentMap<GdlTerm, GdlDistinct>>();
-	private static final ConcurrentMap<GdlConstant, ConcurrentMap<List<GdlTerm>, GdlFunction>> functionPool = new ConcurrentHashMap<GdlConstant, ConcurrentMap<List<GdlTerm>, GdlFunction>>();
-	private static final ConcurrentMap<GdlLiteral, GdlNot> notPool = new ConcurrentHashMap<GdlLiteral, GdlNot>();
-	private static final ConcurrentMap<List<GdlLiteral>, GdlOr> orPool = new ConcurrentHashMap<List<GdlLiteral>, GdlOr>();
-	private static final ConcurrentMap<GdlConstant, GdlProposition> propositionPool = new ConcurrentHashMap<GdlConstant, GdlProposition>();
-	private static final ConcurrentMap<GdlConstant, ConcurrentMap<List<GdlTerm>, GdlRelation>> relationPool = new ConcurrentHashMap<GdlConstant, ConcurrentMap<List<GdlTerm>, GdlRelation>>();
-	private static final ConcurrentMap<GdlSentence, ConcurrentMap<List<GdlLiteral>, GdlRule>> rulePool = new ConcurrentHashMap<GdlSentence, ConcurrentMap<List<GdlLiteral>, GdlRule>>();
-	private static final ConcurrentMap<String, GdlVariable> variablePool = new ConcurrentHashMap<String, GdlVariable>();
-    private static final ConcurrentMap<String, GdlConstant> constantPool = new ConcurrentHashMap<String, GdlConstant>();
+	private static final AtomicInteger termIds = new AtomicInteger();
+	private static final ConcurrentMap<PoolKey, GdlDistinct> distinctPool = new MapMaker().softValues().makeMap();
+	private static final ConcurrentMap<PoolKey, GdlFunction> functionPool = new MapMaker().softValues().makeMap();
+	private static final ConcurrentMap<GdlLiteral, GdlNot> notPool = new MapMaker().softValues().makeMap();
+	private static final ConcurrentMap<PoolKey, GdlOr> orPool = new MapMaker().softValues().makeMap();
+	private static final ConcurrentMap<GdlConstant, GdlProposition> propositionPool = new MapMaker().softValues().makeMap();
+	private static final ConcurrentMap<PoolKey, GdlRelation> relationPool = new MapMaker().softValues().makeMap();
+	private static final ConcurrentMap<PoolKey, GdlRule> rulePool = new MapMaker().softValues().makeMap();
+	private static final ConcurrentMap<String, GdlVariable> variablePool = new MapMaker().softValues().makeMap();
+    private static final ConcurrentMap<String, GdlConstant> constantPool = new MapMaker().softValues().makeMap();
     //Access to constantCases and variableCases should be synchronized using their monitor locks.
     private static final Map<String,String> constantCases = new TreeMap<String,String>(String.CASE_INSENSITIVE_ORDER);
     private static final Map<String,String> variableCases = new TreeMap<String,String>(String.CASE_INSENSITIVE_ORDER);
@@ -69,13 +81,95 @@ public final class GdlPool
      */
     public static final GdlConstant UNDERSCORE = getConstant("_");
 
+    /**
+     * The parts of a compound Gdl object, such as the name and arguments of
+     * a function or the head and body of a rule. Since the parts are
+     * themselves pooled, they are compared by identity. Terms are hashed by
+     * their ids.
+     *
+     * Keys stored in the pools are never changed. Lookups go through a
+     * per-thread probe key that is refilled each time, so that finding an
+     * object that is already pooled allocates nothing.
+     */
+    private static final class PoolKey
+    {
+    	private Gdl[] parts;
+    	private int length;
+    	private int hash;
+
+    	private PoolKey()
+    	{
+    		parts = new Gdl[8];
+    	}
+
+    	private PoolKey(Gdl first, List<? extends Gdl> rest)
+    	{
+    		parts = new Gdl[rest.size() + 1];
+    		set(first, rest);
+    	}
+
+    	private PoolKey set(Gdl first, List<? extends Gdl> rest)
+    	{
+    		length = rest.size() + 1;
+    		if (parts.length < length) {
+    			parts = new Gdl[length];
+    		}
+    		parts[0] = first;
+    		int h = hash(first);
+    		for (int i = 0; i < rest.size(); i++) {
+    			Gdl part = rest.get(i);
+    			parts[i + 1] = part;
+    			h = 31 * h + hash(part);
+    		}
+    		hash = h;
+    		return this;
+    	}
+
+    	private static int hash(Gdl part)
+    	{
+    		return (part instanceof GdlTerm) ? ((GdlTerm) part).getId() : System.identityHashCode(part);
+    	}
+
+    	@Override
+    	public int hashCode()
+    	{
+    		return hash;
+    	}
+
+    	@Override
+    	public boolean equals(Object o)
+    	{
+    		if (!(o instanceof PoolKey)) {
+    			return false;
+    		}
+    		PoolKey other = (PoolKey) o;
+    		if (other.length != length) {
+    			return false;
+    		}
+    		for (int i = 0; i < length; i++) {
+    			if (other.parts[i] != parts[i]) {
+    				return false;
+    			}
+    		}
+    		return true;
+    	}
+    }
+
+    private static final ThreadLocal<PoolKey> probeKeys = new ThreadLocal<PoolKey>() {
+    	@Override
+    	protected PoolKey initialValue() {
+    		return new PoolKey();
+    	}
+    };
+
     private GdlPool() {
     	// Not instantiable
     }
 
     /**
-	 * Drains the contents of the GdlPool. Useful to control memory usage
-	 * once you have finished playing a large game.
+	 * Drains the contents of the GdlPool. Objects nobody refers to are
+	 * released without this, so it is only useful to release everything at
+	 * once after finishing a large game.
 	 *
 	 * WARNING: Should only be called *between games*, when there are no
 	 * references to Gdl objects (other than keyword constants) outside the
@@ -115,6 +209,10 @@ public final class GdlPool
 	    }
 	}
 
+	static int nextTermId() {
+		return termIds.getAndIncrement();
+	}
+
 	/**
 	 * If the pool does not have a mapping for the given key, adds a mapping from key to value
 	 * to the pool.
@@ -174,13 +272,10 @@ public final class GdlPool
 
 	public static GdlDistinct getDistinct(GdlTerm arg1, GdlTerm arg2)
 	{
-		ConcurrentMap<GdlTerm, GdlDistinct> bucket = distinctPool.get(arg1);
-		if(bucket == null)
-			bucket = addToPool(arg1, new ConcurrentHashMap<GdlTerm, GdlDistinct>(), distinctPool);
-
-		GdlDistinct ret = bucket.get(arg2);
+		List<GdlTerm> rest = Collections.singletonList(arg2);
+		GdlDistinct ret = distinctPool.get(probeKeys.get().set(arg1, rest));
 		if(ret == null)
-			ret = addToPool(arg2, new GdlDistinct(arg1, arg2), bucket);
+			ret = addToPool(new PoolKey(arg1, rest), new GdlDistinct(arg1, arg2), distinctPool);
 
 		return ret;
 	}
@@ -198,17 +293,9 @@ public final class GdlPool
 
 	public static GdlFunction getFunction(GdlConstant name, List<GdlTerm> body)
 	{
-		ConcurrentMap<List<GdlTerm>, GdlFunction> bucket = functionPool.get(name);
-		if(bucket == null) {
-			ConcurrentMap<List<GdlTerm>, GdlFunction> newMap = new MapMaker().softValues().makeMap();
-			bucket = addToPool(name, newMap, functionPool);
-		}
-
-		GdlFunction ret = bucket.get(body);
-		if(ret == null) {
-		    ImmutableList<GdlTerm> immutableBody = ImmutableList.copyOf(body);
-			ret = addToPool(immutableBody, new GdlFunction(name, immutableBody), bucket);
-		}
+		GdlFunction ret = functionPool.get(probeKeys.get().set(name, body));
+		if(ret == null)
+			ret = addToPool(new PoolKey(name, body), new GdlFunction(name, ImmutableList.copyOf(body)), functionPool);
 
 		return ret;
 	}
@@ -229,11 +316,9 @@ public final class GdlPool
 
 	public static GdlOr getOr(List<GdlLiteral> disjuncts)
 	{
-		GdlOr ret = orPool.get(disjuncts);
-		if(ret == null) {
-		    ImmutableList<GdlLiteral> immutableDisjuncts = ImmutableList.copyOf(disjuncts);
-			ret = addToPool(immutableDisjuncts, new GdlOr(immutableDisjuncts), orPool);
-		}
+		GdlOr ret = orPool.get(probeKeys.get().set(null, disjuncts));
+		if(ret == null)
+			ret = addToPool(new PoolKey(null, disjuncts), new GdlOr(ImmutableList.copyOf(disjuncts)), orPool);
 
 		return ret;
 	}
@@ -260,17 +345,9 @@ public final class GdlPool
 
 	public static GdlRelation getRelation(GdlConstant name, List<GdlTerm> body)
 	{
-		ConcurrentMap<List<GdlTerm>, GdlRelation> bucket = relationPool.get(name);
-		if(bucket == null) {
-			ConcurrentMap<List<GdlTerm>, GdlRelation> newMap = new MapMaker().softValues().makeMap();
-			bucket = addToPool(name, newMap, relationPool);
-		}
-
-		GdlRelation ret = bucket.get(body);
-		if(ret == null) {
-		    ImmutableList<GdlTerm> immutableBody = ImmutableList.copyOf(body);
-			ret = addToPool(immutableBody, new GdlRelation(name, immutableBody), bucket);
-		}
+		GdlRelation ret = relationPool.get(probeKeys.get().set(name, body));
+		if(ret == null)
+			ret = addToPool(new PoolKey(name, body), new GdlRelation(name, ImmutableList.copyOf(body)), relationPool);
 
 		return ret;
 	}
@@ -288,15 +365,9 @@ public final class GdlPool
 
 	public static GdlRule getRule(GdlSentence head, List<GdlLiteral> body)
 	{
-		ConcurrentMap<List<GdlLiteral>, GdlRule> bucket = rulePool.get(head);
-		if(bucket == null)
-			bucket = addToPool(head, new ConcurrentHashMap<List<GdlLiteral>, GdlRule>(), rulePool);
-
-		GdlRule ret = bucket.get(body);
-		if(ret == null) {
-		    ImmutableList<GdlLiteral> immutableBody = ImmutableList.copyOf(body);
-			ret = addToPool(immutableBody, new GdlRule(head, immutableBody), bucket);
-		}
+		GdlRule ret = rulePool.get(probeKeys.get().set(head, body));
+		if(ret == null)
+			ret = addToPool(new PoolKey(head, body), new GdlRule(head, ImmutableList.copyOf(body)), rulePool);
 
 		return ret;
 	}
@@ -4,6 +4,20 @@ package org.ggp.base.util.gdl.grammar;
 public abstract class GdlTerm extends Gdl
 {
 
+	private final transient int id = GdlPool.nextTermId();
+
+	/**
+	 * Returns the id of this term in the GdlPool. Ids are small integers
+	 * handed out in creation order, so they are distinct for every term
+	 * created in the lifetime of the JVM until the counter wraps around. They
+	 * make cheap, well-distributed hash codes and array indexes; use == to
+	 * compare terms.
+	 */
+	public final int getId()
+	{
+		return id;
+	}
+
 	@Override
 	public abstract boolean isGround();
 
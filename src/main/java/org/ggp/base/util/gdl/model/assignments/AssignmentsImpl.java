@@ -84,43 +84,27 @@ public class AssignmentsImpl implements Assignments {
 			GdlRule rule, Map<GdlVariable, Set<GdlConstant>> varDomains,
 			Map<SentenceForm, ? extends FunctionInfo> functionInfoMap,
 			Map<SentenceForm, ? extends Collection<GdlSentence>> completedSentenceFormValues) {
+		this(headAssignment, rule, varDomains, functionInfoMap, completedSentenceFormValues,
+				getBestIterationOrder(headAssignment, rule, varDomains, functionInfoMap, completedSentenceFormValues));
+	}
+
+	/**
+	 * Like the constructor above, but iterates in the given order instead of
+	 * searching for the best one. The order must come from
+	 * {@link #getBestIterationOrder(Map, GdlRule, Map, Map, Map)} for the same
+	 * rule and head variables, with the same sentence forms present in
+	 * completedSentenceFormValues and the same dependent slots in their
+	 * function info; the values themselves may differ. This lets callers that
+	 * run the same rule many times skip the search.
+	 */
+	public AssignmentsImpl(Map<GdlVariable, GdlConstant> headAssignment,
+			GdlRule rule, Map<GdlVariable, Set<GdlConstant>> varDomains,
+			Map<SentenceForm, ? extends FunctionInfo> functionInfoMap,
+			Map<SentenceForm, ? extends Collection<GdlSentence>> completedSentenceFormValues,
+			IterationOrderCandidate bestOrdering) {
 		empty = false;
 		this.headAssignment = headAssignment;
 
-		//We first have to find the remaining variables in the body
-		varsToAssign = GdlUtils.getVariables(rule);
-		//Remove all the duplicates; we do, however, want to keep the ordering
-		List<GdlVariable> newVarsToAssign = new ArrayList<GdlVariable>();
-		for(GdlVariable v : varsToAssign)
-			if(!newVarsToAssign.contains(v))
-				newVarsToAssign.add(v);
-		varsToAssign = newVarsToAssign;
-		varsToAssign.removeAll(headAssignment.keySet());
-		//varsToAssign is set at this point
-
-		//We see if iterating over entire tuples will give us a
-		//better result, and we look for the best way of doing that.
-
-		//Let's get the domains of the variables
-		//Map<GdlVariable, Set<GdlConstant>> varDomains = model.getVarDomains(rule);
-		//Since we're looking at a particular rule, we can do this one step better
-		//by looking at the domain of the head, which may be more restrictive
-		//and taking the intersections of the two domains where applicable
-		//Map<GdlVariable, Set<GdlConstant>> headVarDomains = model.getVarDomainsInSentence(rule.getHead());
-
-		//We can run the A* search for a good set of source conjuncts
-		//at this point, then use the result to build the rest.
-		Map<SentenceForm, Integer> completedSentenceFormSizes = new HashMap<SentenceForm, Integer>();
-		if(completedSentenceFormValues != null)
-			for(SentenceForm form : completedSentenceFormValues.keySet())
-				completedSentenceFormSizes.put(form, completedSentenceFormValues.get(form).size());
-		Map<GdlVariable, Integer> varDomainSizes = new HashMap<GdlVariable, Integer>();
-		for(GdlVariable var : varDomains.keySet())
-			varDomainSizes.put(var, varDomains.get(var).size());
-
-		IterationOrderCandidate bestOrdering;
-		bestOrdering = getBestIterationOrderCandidate(rule, varDomains,/*model,*/ functionInfoMap, completedSentenceFormSizes, headAssignment, false); //TODO: True here?
-
 		//Want to replace next few things with order
 		//Need a few extra things to handle the use of iteration over existing tuples
 		varsToAssign = bestOrdering.getVariableOrdering();
@@ -307,6 +291,23 @@ public class AssignmentsImpl implements Assignments {
 //		System.out.println("sourceDefiningSlot: " + sourceDefiningSlot);
 	}
 
+	/**
+	 * Searches for the best order in which to assign the variables of the
+	 * rule, as the constructor does.
+	 */
+	public static IterationOrderCandidate getBestIterationOrder(Map<GdlVariable, GdlConstant> headAssignment,
+			GdlRule rule, Map<GdlVariable, Set<GdlConstant>> varDomains,
+			Map<SentenceForm, ? extends FunctionInfo> functionInfoMap,
+			Map<SentenceForm, ? extends Collection<GdlSentence>> completedSentenceFormValues) {
+		//We can run the A* search for a good set of source conjuncts
+		//at this point, then use the result to build the rest.
+		Map<SentenceForm, Integer> completedSentenceFormSizes = new HashMap<SentenceForm, Integer>();
+		if(completedSentenceFormValues != null)
+			for(SentenceForm form : completedSentenceFormValues.keySet())
+				completedSentenceFormSizes.put(form, completedSentenceFormValues.get(form).size());
+		return getBestIterationOrderCandidate(rule, varDomains,/*model,*/ functionInfoMap, completedSentenceFormSizes, headAssignment, false); //TODO: True here?
+	}
+
 	private GdlVariable getRightmostVar(Collection<GdlVariable> vars) {
 		GdlVariable rightmostVar = null;
 		for(GdlVariable var : varsToAssign)
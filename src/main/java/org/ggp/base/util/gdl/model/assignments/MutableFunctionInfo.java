@@ -44,6 +44,23 @@ public class MutableFunctionInfo implements AddibleFunctionInfo {
 		return create(form, ImmutableSet.<GdlSentence>of());
 	}
 
+	/**
+	 * Returns an independent copy of the given function info, which is
+	 * cheaper than recreating it from the same sentences.
+	 */
+	public static MutableFunctionInfo copyOf(MutableFunctionInfo other) {
+		MutableFunctionInfo functionInfo = new MutableFunctionInfo(other.form);
+		for (int i = 0; i < other.dependentSlots.size(); i++) {
+			functionInfo.dependentSlots.set(i, other.dependentSlots.get(i));
+			if (other.dependentSlots.get(i)) {
+				functionInfo.valueMaps.get(i).putAll(other.valueMaps.get(i));
+			} else {
+				functionInfo.valueMaps.set(i, other.valueMaps.get(i));
+			}
+		}
+		return functionInfo;
+	}
+
 	public static MutableFunctionInfo create(SentenceForm form, Collection<GdlSentence> initialSentences) {
 		MutableFunctionInfo functionInfo = new MutableFunctionInfo(form);
 		for (GdlSentence sentence : initialSentences) {
@@ -6,6 +6,7 @@ import java.io.InputStreamReader;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.net.URLDecoder;
+import java.util.Map;
 
 public final class HttpReader
 {
@@ -23,6 +24,30 @@ public final class HttpReader
         return readAsServer(socket);
     }
 
+    // Variants that also collect the headers of the message, with the header
+    // names in lower case. The headers of GET requests are not read, and so
+    // are never collected.
+
+    public static String readAsClient(Socket socket, int timeout, Map<String, String> headers) throws IOException, SocketTimeoutException
+    {
+        socket.setSoTimeout(timeout);
+        BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        return readContentFromPOST(br, headers);
+    }
+
+    // Reads the response from a reader on the socket that the caller has
+    // already started, for example to look at the first character.
+    static String readAsClient(BufferedReader br, Map<String, String> headers) throws IOException
+    {
+        return readContentFromPOST(br, headers);
+    }
+
+    public static String readAsServer(Socket socket, int timeout, Map<String, String> headers) throws IOException, SocketTimeoutException
+    {
+        socket.setSoTimeout(timeout);
+        return readAsServer(socket, headers);
+    }
+
     // Implementations of reading HTTP responses (readAsClient) and
     // HTTP requests (readAsServer) for the purpose of communicating
     // with other general game playing systems.
@@ -30,15 +55,25 @@ public final class HttpReader
 	public static String readAsClient(Socket socket) throws IOException
 	{
 		BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-		return readContentFromPOST(br);
+		return readContentFromPOST(br, null);
 	}
 
 	public static String readAsServer(Socket socket) throws IOException
+	{
+		return readAsServer(socket, (Map<String, String>) null);
+	}
+
+	private static String readAsServer(Socket socket, Map<String, String> headers) throws IOException
 	{
 		BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
 
-		// The first line of the HTTP request is the request line.
+		// The first line of the HTTP request is the request line. Blank lines
+		// before it, left over from a previous request on a kept-alive
+		// connection, are skipped.
 		String requestLine = br.readLine();
+		while (requestLine != null && requestLine.length() == 0) {
+			requestLine = br.readLine();
+		}
 		if (requestLine == null) {
 			throw new IOException("The HTTP request was empty.");
 		}
@@ -48,7 +83,7 @@ public final class HttpReader
 		    message = URLDecoder.decode(message, "UTF-8");
 		    message = message.replace((char)13, ' ');
 		} else if (requestLine.toUpperCase().startsWith("POST ")) {
-		    message = readContentFromPOST(br);
+		    message = readContentFromPOST(br, headers);
 		} else if (requestLine.toUpperCase().startsWith("OPTIONS ")) {
 		    // Web browsers can send an OPTIONS request in advance of sending
 		    // real XHR requests, to discover whether they should have permission
@@ -67,11 +102,15 @@ public final class HttpReader
 		return message;
 	}
 
-	private static String readContentFromPOST(BufferedReader br) throws IOException {
+	private static String readContentFromPOST(BufferedReader br, Map<String, String> headers) throws IOException {
 	    String line;
         int theContentLength = -1;
         StringBuilder theContent = new StringBuilder();
         while ((line = br.readLine()) != null) {
+            int colon = line.indexOf(':');
+            if (headers != null && colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+            }
             if (line.toLowerCase().startsWith("content-length:")) {
                 try {
                     theContentLength = Integer.parseInt(line.toLowerCase().replace("content-length:", "").trim());
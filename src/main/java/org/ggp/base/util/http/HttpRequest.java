@@ -1,19 +1,83 @@
 package org.ggp.base.util.http;
 
+import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * HttpRequest is a helper class that encapsulates all of the code necessary
  * for a match host to issue a long-lived HTTP request to a player, wait for
  * the response, and return it. This is a key part of the GGP gaming protocol.
  *
+ * Pooled requests ask the player to keep the connection alive, and reuse
+ * it for the next request to the same host and port, which saves the host
+ * lookup and the connection setup on every message of a match. Players that
+ * do not answer with keep-alive get a new connection for every request, as
+ * with issueRequest. A request is only sent again on a new connection when
+ * the reused one fails before any of the response has come back. Pooled
+ * connections that have been idle for POOL_IDLE_TIMEOUT are closed, whether
+ * or not the player is contacted again, and closePooledConnections closes
+ * all of them on shutdown.
+ *
  * @author schreib
  */
 public final class HttpRequest
 {
+	/** Idle pooled connections are closed after this long, in milliseconds. */
+	public static final int POOL_IDLE_TIMEOUT = 30000;
+
+	/** How often idle pooled connections are checked for expiry, in milliseconds. */
+	private static final int POOL_SWEEP_INTERVAL = 5000;
+
+	/** Idle connections by host:port, the most recently used first. */
+	private static final Map<String, Deque<PooledConnection>> pool = new HashMap<String, Deque<PooledConnection>>();
+
+	private static final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "HttpRequest-PoolSweeper");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	static {
+		sweeper.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				closeExpiredConnections(System.currentTimeMillis());
+			}
+		}, POOL_SWEEP_INTERVAL, POOL_SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	private static final class PooledConnection
+	{
+		private final Socket socket;
+		private final String hostName;
+		private long lastUsed;
+
+		PooledConnection(Socket socket, String hostName)
+		{
+			this.socket = socket;
+			this.hostName = hostName;
+		}
+	}
+
 	public static String issueRequest(String targetHost, int targetPort, String forPlayerName, String requestContent, int timeoutClock) throws IOException {
 		Socket socket = new Socket();
     	InetAddress theHost = InetAddress.getByName(targetHost);
@@ -23,4 +87,158 @@ public final class HttpRequest
     	socket.close();
     	return response;
 	}
+
+	/**
+	 * Issues the request like issueRequest, but over a kept-alive connection
+	 * to the player when one is available.
+	 */
+	public static String issuePooledRequest(String targetHost, int targetPort, String forPlayerName, String requestContent, int timeoutClock) throws IOException {
+		String key = targetHost + ":" + targetPort;
+		PooledConnection connection = takeConnection(key);
+		if (connection != null) {
+			try {
+				return issueRequest(key, connection, forPlayerName, requestContent, timeoutClock, true);
+			} catch (StaleConnectionException e) {
+				// The player closed the idle connection before our request
+				// reached it, so send the request again on a new connection.
+			}
+		}
+		Socket socket = new Socket();
+		InetAddress theHost = InetAddress.getByName(targetHost);
+		socket.connect(new InetSocketAddress(theHost.getHostAddress(), targetPort), 5000);
+		return issueRequest(key, new PooledConnection(socket, theHost.getHostName()), forPlayerName, requestContent, timeoutClock, false);
+	}
+
+	/**
+	 * Thrown when a reused connection turns out to have been closed by the
+	 * player: writing the request failed, or the connection was closed or
+	 * reset before the first character of the response. Any other failure
+	 * may come after the player started on the request, which must then not
+	 * be sent again.
+	 */
+	private static final class StaleConnectionException extends IOException
+	{
+		private static final long serialVersionUID = 1L;
+
+		StaleConnectionException(Throwable cause)
+		{
+			super(cause);
+		}
+	}
+
+	private static String issueRequest(String key, PooledConnection connection, String forPlayerName, String requestContent, int timeoutClock, boolean reused) throws IOException {
+		Socket socket = connection.socket;
+		Map<String, String> headers = new HashMap<String, String>();
+		String response;
+		try {
+			try {
+				HttpWriter.writeAsClient(socket, connection.hostName, requestContent, forPlayerName, true);
+			} catch (SocketException e) {
+				throw reused ? new StaleConnectionException(e) : e;
+			}
+			socket.setSoTimeout(Math.max(timeoutClock, 0));
+			BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			int first;
+			try {
+				br.mark(1);
+				first = br.read();
+			} catch (SocketException e) {
+				throw reused ? new StaleConnectionException(e) : e;
+			}
+			if (first < 0) {
+				IOException closed = new EOFException("The connection was closed before the response.");
+				throw reused ? new StaleConnectionException(closed) : closed;
+			}
+			br.reset();
+			response = HttpReader.readAsClient(br, headers);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+		if ("keep-alive".equalsIgnoreCase(headers.get("connection"))) {
+			connection.lastUsed = System.currentTimeMillis();
+			closeExpiredConnections(connection.lastUsed);
+			synchronized (pool) {
+				Deque<PooledConnection> connections = pool.get(key);
+				if (connections == null) {
+					connections = new ArrayDeque<PooledConnection>();
+					pool.put(key, connections);
+				}
+				connections.addFirst(connection);
+			}
+		} else {
+			socket.close();
+		}
+		return response;
+	}
+
+	private static PooledConnection takeConnection(String key) throws IOException {
+		long now = System.currentTimeMillis();
+		closeExpiredConnections(now);
+		while (true) {
+			PooledConnection connection;
+			synchronized (pool) {
+				Deque<PooledConnection> connections = pool.get(key);
+				connection = (connections == null) ? null : connections.pollFirst();
+			}
+			if (connection == null) {
+				return null;
+			}
+			if (now - connection.lastUsed < POOL_IDLE_TIMEOUT && !connection.socket.isClosed()) {
+				return connection;
+			}
+			connection.socket.close();
+		}
+	}
+
+	/**
+	 * Closes the pooled connections to every player that have been idle for
+	 * POOL_IDLE_TIMEOUT at the given time, or that are already closed.
+	 */
+	static void closeExpiredConnections(long now) {
+		List<PooledConnection> expired = new ArrayList<PooledConnection>();
+		synchronized (pool) {
+			Iterator<Deque<PooledConnection>> keys = pool.values().iterator();
+			while (keys.hasNext()) {
+				Deque<PooledConnection> connections = keys.next();
+				Iterator<PooledConnection> it = connections.iterator();
+				while (it.hasNext()) {
+					PooledConnection connection = it.next();
+					if (now - connection.lastUsed >= POOL_IDLE_TIMEOUT || connection.socket.isClosed()) {
+						it.remove();
+						expired.add(connection);
+					}
+				}
+				if (connections.isEmpty()) {
+					keys.remove();
+				}
+			}
+		}
+		closeAll(expired);
+	}
+
+	/**
+	 * Closes every pooled connection. Call this when the host shuts down, so
+	 * that the kept-alive connections to the players are not left open.
+	 */
+	public static void closePooledConnections() {
+		List<PooledConnection> connections = new ArrayList<PooledConnection>();
+		synchronized (pool) {
+			for (Deque<PooledConnection> forKey : pool.values()) {
+				connections.addAll(forKey);
+			}
+			pool.clear();
+		}
+		closeAll(connections);
+	}
+
+	private static void closeAll(List<PooledConnection> connections) {
+		for (PooledConnection connection : connections) {
+			try {
+				connection.socket.close();
+			} catch (IOException e) {
+				// The connection is being discarded anyway.
+			}
+		}
+	}
 }
@@ -23,6 +23,15 @@ public final class HttpWriter
     }
 
 	public static void writeAsClient(Socket socket, String hostField, String data, String playerName) throws IOException
+	{
+		writeAsClient(socket, hostField, data, playerName, false);
+	}
+
+	/**
+	 * Writes a POST request. With keepAlive, the request asks the player to
+	 * leave the connection open for further requests.
+	 */
+	public static void writeAsClient(Socket socket, String hostField, String data, String playerName, boolean keepAlive) throws IOException
 	{
 		PrintWriter pw = new PrintWriter(socket.getOutputStream());
 
@@ -33,6 +42,9 @@ public final class HttpWriter
 		pw.print("Receiver: "+playerName + "\r\n");
 		pw.print("Content-Type: text/acl\r\n");
 		pw.print("Content-Length: " + data.length() + "\r\n");
+		if (keepAlive) {
+			pw.print("Connection: keep-alive\r\n");
+		}
 		pw.print("\r\n");
 		pw.print(data);
 
@@ -40,6 +52,15 @@ public final class HttpWriter
 	}
 
 	public static void writeAsServer(Socket socket, String data) throws IOException
+	{
+		writeAsServer(socket, data, false);
+	}
+
+	/**
+	 * Writes a response. With keepAlive, the response tells the client that
+	 * the connection stays open for its next request.
+	 */
+	public static void writeAsServer(Socket socket, String data, boolean keepAlive) throws IOException
 	{
 		PrintWriter pw = new PrintWriter(socket.getOutputStream());
 
@@ -50,6 +71,9 @@ public final class HttpWriter
 		pw.print("Access-Control-Allow-Methods: POST, GET, OPTIONS\r\n");
 		pw.print("Access-Control-Allow-Headers: Content-Type\r\n");
 		pw.print("Access-Control-Allow-Age: 86400\r\n");
+		if (keepAlive) {
+			pw.print("Connection: keep-alive\r\n");
+		}
 		pw.print("\r\n");
 		pw.print(data);
 
@@ -0,0 +1,158 @@
+package org.ggp.base.util.match;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+
+import external.JSON.JSONArray;
+import external.JSON.JSONException;
+import external.JSON.JSONObject;
+
+/**
+ * MatchJournal saves a match in progress by appending to a file, one line of
+ * JSON at a time, instead of rewriting the whole match after every move.
+ * The first line is the match as it was when the journal was started, in
+ * the format of Match.toJSON(). Every line after that holds the states,
+ * moves, state times and errors added to the match since the line before,
+ * rendered the same way, plus the completion fields once they are set.
+ *
+ * replay() puts the lines back together into the JSON of the whole match,
+ * for example after the match host crashed. A last line that was only
+ * partly written is ignored.
+ */
+public final class MatchJournal {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final List<String> APPENDED_FIELDS = Arrays.asList("states", "moves", "stateTimes", "errors");
+
+    private final File file;
+    private Writer writer;
+    private int nStates;
+    private int nMoves;
+    private int nErrors;
+
+    public MatchJournal(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Records everything added to the match since the last call. The first
+     * call starts a new journal, replacing any file already there.
+     */
+    public synchronized void append(Match match) throws IOException {
+        JSONObject theRecord;
+        try {
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8));
+                theRecord = new JSONObject(match.toJSON());
+                // The signature covers the match as it is now, and would not
+                // match the replayed match.
+                theRecord.remove("matchHostPK");
+                theRecord.remove("matchHostSignature");
+            } else {
+                theRecord = new JSONObject();
+                List<Set<GdlSentence>> theStates = match.getStateHistory();
+                if (theStates.size() > nStates) {
+                    theRecord.put("states", new JSONArray(Match.renderArrayAsJSON(Match.renderStateHistory(theStates.subList(nStates, theStates.size())), true)));
+                    theRecord.put("stateTimes", new JSONArray(Match.renderArrayAsJSON(match.getStateTimeHistory().subList(nStates, theStates.size()), false)));
+                }
+                if (match.getMoveHistory().size() > nMoves) {
+                    theRecord.put("moves", new JSONArray(Match.renderArrayAsJSON(Match.renderMoveHistory(match.getMoveHistory().subList(nMoves, match.getMoveHistory().size())), false)));
+                }
+                if (match.getErrorHistory().size() > nErrors) {
+                    theRecord.put("errors", new JSONArray(Match.renderArrayAsJSON(Match.renderErrorHistory(match.getErrorHistory().subList(nErrors, match.getErrorHistory().size())), false)));
+                }
+                if (match.isCompleted()) {
+                    theRecord.put("isCompleted", true);
+                    theRecord.put("goalValues", match.getGoalValues());
+                }
+                if (match.isAborted()) {
+                    theRecord.put("isAborted", true);
+                }
+                if (theRecord.length() == 0) {
+                    return;
+                }
+            }
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        nStates = match.getStateHistory().size();
+        nMoves = match.getMoveHistory().size();
+        nErrors = match.getErrorHistory().size();
+
+        writer.write(theRecord.toString());
+        writer.write('\n');
+        writer.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * Returns the JSON of the match recorded in the journal, which can be
+     * loaded with the Match(String, Game, String) constructor.
+     */
+    public static String replay(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException("Match journal is empty: " + file);
+            }
+            JSONObject theMatch = new JSONObject(line);
+            while ((line = reader.readLine()) != null) {
+                JSONObject theRecord;
+                try {
+                    theRecord = new JSONObject(line);
+                } catch (JSONException e) {
+                    // Only the last line can have been cut off.
+                    if (reader.readLine() == null) {
+                        break;
+                    }
+                    throw e;
+                }
+                Iterator<?> keys = theRecord.keys();
+                while (keys.hasNext()) {
+                    String key = (String) keys.next();
+                    if (APPENDED_FIELDS.contains(key)) {
+                        if (!theMatch.has(key)) {
+                            theMatch.put(key, new JSONArray());
+                        }
+                        JSONArray theValues = theMatch.getJSONArray(key);
+                        JSONArray theNewValues = theRecord.getJSONArray(key);
+                        for (int i = 0; i < theNewValues.length(); i++) {
+                            theValues.put(theNewValues.get(i));
+                        }
+                    } else {
+                        theMatch.put(key, theRecord.get(key));
+                    }
+                }
+            }
+            return theMatch.toString();
+        } catch (JSONException e) {
+            throw new IOException("Could not replay match journal " + file, e);
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.ggp.base.util.propnet.architecture;
+
+/**
+ * The evaluation code of a {@link FlatPropNet}, generated as bytecode by
+ * PropNetCompiler. Each method is the ordering of the flat propnet unrolled
+ * into straight-line assignments over the value array, so there is no loop,
+ * no type dispatch and no offset lookup left for the JIT to get through.
+ *
+ * The value array uses the component ids of the flat propnet, and follows
+ * the same conventions as FlatPropNet.propagate: sources are set by the
+ * caller, and only evaluated components are written.
+ */
+public abstract class CompiledPropNet
+{
+	/**
+	 * Computes every component that depends only on the bases, which must
+	 * already be set in values.
+	 */
+	public abstract void propagateState(boolean[] values);
+
+	/**
+	 * Computes every component that depends on an input proposition. The
+	 * bases and inputs must be set in values, and propagateState must have
+	 * been run for the current bases.
+	 */
+	public abstract void propagateMoves(boolean[] values);
+}
@@ -0,0 +1,505 @@
+package org.ggp.base.util.propnet.architecture;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ggp.base.util.gdl.grammar.GdlConstant;
+import org.ggp.base.util.gdl.grammar.GdlRelation;
+import org.ggp.base.util.propnet.architecture.components.And;
+import org.ggp.base.util.propnet.architecture.components.Constant;
+import org.ggp.base.util.propnet.architecture.components.Not;
+import org.ggp.base.util.propnet.architecture.components.Or;
+import org.ggp.base.util.propnet.architecture.components.Proposition;
+import org.ggp.base.util.propnet.architecture.components.Transition;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+
+/**
+ * The FlatPropNet class is a lowered, read-only copy of a PropNet in which
+ * every component is identified by a dense integer id and the structure of
+ * the network is stored in flat primitive arrays.
+ *
+ * Components are laid out so that the base propositions occupy the ids
+ * [0, numBases), the input propositions occupy [numBases, numBases + numInputs)
+ * and every other component follows. The inputs and outputs of component c
+ * are stored in getInputIds()/getOutputIds() between getInputOffsets()[c] and
+ * getInputOffsets()[c + 1] (resp. the output offsets), so evaluating a gate
+ * is a loop over a slice of an int array rather than a walk over Component
+ * objects and HashSets.
+ *
+ * Gates are evaluated in the order given by getOrdering(), which is a
+ * topological ordering of every component that is neither a source (base,
+ * input, init, constant) nor a transition, grouped into the levels given by
+ * getLevelOffsets() (see PropNetOrdering). Transitions are not evaluated:
+ * the next value of base i is simply the value of getTransitionInputIds()[i].
+ *
+ * None of the arrays returned by the getters may be modified.
+ */
+public final class FlatPropNet
+{
+	/** Component type codes, stored in getTypes(). */
+	public static final int TYPE_BASE = 0;
+	public static final int TYPE_INPUT = 1;
+	public static final int TYPE_INIT = 2;
+	public static final int TYPE_TRUE = 3;
+	public static final int TYPE_FALSE = 4;
+	public static final int TYPE_VIEW = 5;
+	public static final int TYPE_AND = 6;
+	public static final int TYPE_OR = 7;
+	public static final int TYPE_NOT = 8;
+	public static final int TYPE_TRANSITION = 9;
+
+	/** The components, indexed by id. */
+	private final Component[] components;
+	/** The type code of every component, indexed by id. */
+	private final int[] types;
+
+	/** Adjacency in compressed row form. */
+	private final int[] inputOffsets;
+	private final int[] inputIds;
+	private final int[] outputOffsets;
+	private final int[] outputIds;
+
+	/** Topological ordering of the components that must be evaluated. */
+	private final int[] ordering;
+	/** The start of every level of the ordering, as in PropNetOrdering. */
+	private final int[] levelOffsets;
+	/** The part of the ordering that does not depend on any input proposition. */
+	private final int[] stateOrdering;
+	private final int[] stateLevelOffsets;
+	/** The part of the ordering that depends on at least one input proposition. */
+	private final int[] moveOrdering;
+	private final int[] moveLevelOffsets;
+
+	private final int numBases;
+	private final int numInputs;
+	private final int initId;
+	private final int terminalId;
+
+	/** For base i, the id of the component feeding its transition (-1 if none). */
+	private final int[] transitionInputIds;
+
+	private final List<Role> roles;
+	/** Legal proposition ids and the corresponding moves, indexed by role. */
+	private final int[][] legalIds;
+	private final Move[][] legalMoves;
+	/** For every legal, the id of the matching input proposition (-1 if none). */
+	private final int[][] legalInputIds;
+	/** Goal proposition ids and values, indexed by role. */
+	private final int[][] goalIds;
+	private final int[][] goalValues;
+	/** Maps a move to its input proposition id, indexed by role. */
+	private final List<Map<Move, Integer>> inputIdsByMove;
+
+	/**
+	 * Lowers the given propnet. The propnet should not be modified afterwards.
+	 */
+	public FlatPropNet(PropNet propNet)
+	{
+		roles = propNet.getRoles();
+
+		List<Component> layout = new ArrayList<Component>(propNet.getComponents().size());
+		Map<Component, Integer> ids = new HashMap<Component, Integer>();
+		for (Proposition p : propNet.getBasePropositions().values()) {
+			ids.put(p, layout.size());
+			layout.add(p);
+		}
+		numBases = layout.size();
+		for (Proposition p : propNet.getInputPropositions().values()) {
+			ids.put(p, layout.size());
+			layout.add(p);
+		}
+		numInputs = layout.size() - numBases;
+		for (Component c : propNet.getComponents()) {
+			if (!ids.containsKey(c)) {
+				ids.put(c, layout.size());
+				layout.add(c);
+			}
+		}
+		int size = layout.size();
+		components = layout.toArray(new Component[size]);
+
+		Proposition init = propNet.getInitProposition();
+		initId = (init == null) ? -1 : ids.get(init);
+		terminalId = ids.get(propNet.getTerminalProposition());
+
+		types = new int[size];
+		inputOffsets = new int[size + 1];
+		outputOffsets = new int[size + 1];
+		int numInputLinks = 0;
+		int numOutputLinks = 0;
+		for (int i = 0; i < size; i++) {
+			types[i] = classify(i, components[i]);
+			numInputLinks += components[i].getInputs().size();
+			numOutputLinks += components[i].getOutputs().size();
+		}
+		inputIds = new int[numInputLinks];
+		outputIds = new int[numOutputLinks];
+		int in = 0;
+		int out = 0;
+		for (int i = 0; i < size; i++) {
+			inputOffsets[i] = in;
+			for (Component c : components[i].getInputs()) {
+				inputIds[in++] = ids.get(c);
+			}
+			outputOffsets[i] = out;
+			for (Component c : components[i].getOutputs()) {
+				outputIds[out++] = ids.get(c);
+			}
+		}
+		inputOffsets[size] = in;
+		outputOffsets[size] = out;
+
+		transitionInputIds = new int[numBases];
+		for (int i = 0; i < numBases; i++) {
+			transitionInputIds[i] = -1;
+			if (inputOffsets[i + 1] > inputOffsets[i]) {
+				int transition = inputIds[inputOffsets[i]];
+				if (inputOffsets[transition + 1] > inputOffsets[transition]) {
+					transitionInputIds[i] = inputIds[inputOffsets[transition]];
+				}
+			}
+		}
+
+		boolean[] evaluated = new boolean[size];
+		for (int i = 0; i < size; i++) {
+			evaluated[i] = isEvaluated(types[i]);
+		}
+		PropNetOrdering levels = new PropNetOrdering(components, inputOffsets, inputIds, outputOffsets, outputIds, evaluated);
+		ordering = levels.getOrdering();
+		levelOffsets = levels.getLevelOffsets();
+		boolean[] dependsOnMove = new boolean[size];
+		for (int i = numBases; i < numBases + numInputs; i++) {
+			dependsOnMove[i] = true;
+		}
+		for (int c : ordering) {
+			for (int j = inputOffsets[c]; j < inputOffsets[c + 1]; j++) {
+				if (dependsOnMove[inputIds[j]]) {
+					dependsOnMove[c] = true;
+					break;
+				}
+			}
+		}
+		// Each part is levelled on its own, so the move part starts at level 0
+		// on top of the state part.
+		boolean[] inStatePart = new boolean[size];
+		boolean[] inMovePart = new boolean[size];
+		for (int c : ordering) {
+			if (dependsOnMove[c]) {
+				inMovePart[c] = true;
+			} else {
+				inStatePart[c] = true;
+			}
+		}
+		PropNetOrdering stateLevels = new PropNetOrdering(components, inputOffsets, inputIds, outputOffsets, outputIds, inStatePart);
+		stateOrdering = stateLevels.getOrdering();
+		stateLevelOffsets = stateLevels.getLevelOffsets();
+		PropNetOrdering moveLevels = new PropNetOrdering(components, inputOffsets, inputIds, outputOffsets, outputIds, inMovePart);
+		moveOrdering = moveLevels.getOrdering();
+		moveLevelOffsets = moveLevels.getLevelOffsets();
+
+		legalIds = new int[roles.size()][];
+		legalMoves = new Move[roles.size()][];
+		legalInputIds = new int[roles.size()][];
+		goalIds = new int[roles.size()][];
+		goalValues = new int[roles.size()][];
+		inputIdsByMove = new ArrayList<Map<Move, Integer>>(roles.size());
+		Map<Proposition, Proposition> legalInputMap = propNet.getLegalInputMap();
+		for (int r = 0; r < roles.size(); r++) {
+			Role role = roles.get(r);
+
+			Map<Move, Integer> inputsForRole = new HashMap<Move, Integer>();
+			for (int i = numBases; i < numBases + numInputs; i++) {
+				GdlRelation does = (GdlRelation) ((Proposition) components[i]).getName();
+				if (does.get(0).equals(role.getName())) {
+					inputsForRole.put(new Move(does.get(1)), i);
+				}
+			}
+			inputIdsByMove.add(inputsForRole);
+
+			Set<Proposition> legals = propNet.getLegalPropositions().get(role);
+			int numLegals = (legals == null) ? 0 : legals.size();
+			legalIds[r] = new int[numLegals];
+			legalMoves[r] = new Move[numLegals];
+			legalInputIds[r] = new int[numLegals];
+			int k = 0;
+			if (legals != null) {
+				for (Proposition legal : legals) {
+					legalIds[r][k] = ids.get(legal);
+					legalMoves[r][k] = new Move(legal.getName().get(1));
+					Proposition input = legalInputMap.get(legal);
+					legalInputIds[r][k] = (input == null) ? -1 : ids.get(input);
+					k++;
+				}
+			}
+
+			Set<Proposition> goals = propNet.getGoalPropositions().get(role);
+			int numGoals = (goals == null) ? 0 : goals.size();
+			goalIds[r] = new int[numGoals];
+			goalValues[r] = new int[numGoals];
+			k = 0;
+			if (goals != null) {
+				for (Proposition goal : goals) {
+					goalIds[r][k] = ids.get(goal);
+					GdlConstant value = (GdlConstant) ((GdlRelation) goal.getName()).get(1);
+					goalValues[r][k] = Integer.parseInt(value.getValue());
+					k++;
+				}
+			}
+		}
+	}
+
+	private int classify(int id, Component c)
+	{
+		if (id < numBases) {
+			return TYPE_BASE;
+		}
+		if (id < numBases + numInputs) {
+			return TYPE_INPUT;
+		}
+		if (id == initId) {
+			return TYPE_INIT;
+		}
+		if (c instanceof Proposition) {
+			// Propositions without an input can never become true.
+			return c.getInputs().isEmpty() ? TYPE_FALSE : TYPE_VIEW;
+		}
+		if (c instanceof And) {
+			return TYPE_AND;
+		}
+		if (c instanceof Or) {
+			return TYPE_OR;
+		}
+		if (c instanceof Not) {
+			return TYPE_NOT;
+		}
+		if (c instanceof Transition) {
+			return TYPE_TRANSITION;
+		}
+		if (c instanceof Constant) {
+			return c.getValue() ? TYPE_TRUE : TYPE_FALSE;
+		}
+		throw new IllegalArgumentException("Unknown component type: " + c.getClass().getName());
+	}
+
+	/**
+	 * Returns true if the component with the given type has to be computed
+	 * from its inputs, as opposed to being set directly or ignored.
+	 */
+	public static boolean isEvaluated(int type)
+	{
+		return type == TYPE_VIEW || type == TYPE_AND || type == TYPE_OR || type == TYPE_NOT;
+	}
+
+	/**
+	 * Computes the values of every evaluated component in the given ordering,
+	 * reading sources from the values array and writing the results back
+	 * into it.
+	 */
+	public void propagate(boolean[] values, int[] order)
+	{
+		propagate(values, order, 0, order.length);
+	}
+
+	/**
+	 * Computes the values of the components order[from] to order[to - 1],
+	 * as in propagate(values, order).
+	 */
+	public void propagate(boolean[] values, int[] order, int from, int to)
+	{
+		for (int i = from; i < to; i++) {
+			int c = order[i];
+			int start = inputOffsets[c];
+			int end = inputOffsets[c + 1];
+			boolean value;
+			switch (types[c]) {
+			case TYPE_VIEW:
+				value = values[inputIds[start]];
+				break;
+			case TYPE_NOT:
+				value = !values[inputIds[start]];
+				break;
+			case TYPE_AND:
+				value = true;
+				for (int j = start; j < end; j++) {
+					if (!values[inputIds[j]]) {
+						value = false;
+						break;
+					}
+				}
+				break;
+			case TYPE_OR:
+				value = false;
+				for (int j = start; j < end; j++) {
+					if (values[inputIds[j]]) {
+						value = true;
+						break;
+					}
+				}
+				break;
+			default:
+				value = values[c];
+			}
+			values[c] = value;
+		}
+	}
+
+	/**
+	 * Returns a fresh value array with every constant set and everything else
+	 * false.
+	 */
+	public boolean[] newValues()
+	{
+		boolean[] values = new boolean[components.length];
+		for (int c = 0; c < components.length; c++) {
+			values[c] = types[c] == TYPE_TRUE;
+		}
+		return values;
+	}
+
+	/* Getter methods */
+
+	public int size()
+	{
+		return components.length;
+	}
+
+	public Component[] getComponents()
+	{
+		return components;
+	}
+
+	public int[] getTypes()
+	{
+		return types;
+	}
+
+	public int[] getInputOffsets()
+	{
+		return inputOffsets;
+	}
+
+	public int[] getInputIds()
+	{
+		return inputIds;
+	}
+
+	public int[] getOutputOffsets()
+	{
+		return outputOffsets;
+	}
+
+	public int[] getOutputIds()
+	{
+		return outputIds;
+	}
+
+	public int[] getOrdering()
+	{
+		return ordering;
+	}
+
+	public int[] getLevelOffsets()
+	{
+		return levelOffsets;
+	}
+
+	public int[] getStateOrdering()
+	{
+		return stateOrdering;
+	}
+
+	public int[] getStateLevelOffsets()
+	{
+		return stateLevelOffsets;
+	}
+
+	public int[] getMoveOrdering()
+	{
+		return moveOrdering;
+	}
+
+	public int[] getMoveLevelOffsets()
+	{
+		return moveLevelOffsets;
+	}
+
+	public int getNumBases()
+	{
+		return numBases;
+	}
+
+	public int getNumInputs()
+	{
+		return numInputs;
+	}
+
+	/**
+	 * Returns the id of the init proposition, or -1 if there is none.
+	 */
+	public int getInitId()
+	{
+		return initId;
+	}
+
+	public int getTerminalId()
+	{
+		return terminalId;
+	}
+
+	public int[] getTransitionInputIds()
+	{
+		return transitionInputIds;
+	}
+
+	public List<Role> getRoles()
+	{
+		return roles;
+	}
+
+	public int[][] getLegalIds()
+	{
+		return legalIds;
+	}
+
+	public Move[][] getLegalMoves()
+	{
+		return legalMoves;
+	}
+
+	public int[][] getLegalInputIds()
+	{
+		return legalInputIds;
+	}
+
+	public int[][] getGoalIds()
+	{
+		return goalIds;
+	}
+
+	public int[][] getGoalValues()
+	{
+		return goalValues;
+	}
+
+	/**
+	 * Returns the id of the input proposition for the given role making the
+	 * given move, or -1 if the propnet has no such input.
+	 */
+	public int getInputId(int roleIndex, Move move)
+	{
+		Integer id = inputIdsByMove.get(roleIndex).get(move);
+		return (id == null) ? -1 : id;
+	}
+
+	/**
+	 * Returns the base proposition with the given base index.
+	 */
+	public Proposition getBase(int index)
+	{
+		return (Proposition) components[index];
+	}
+}
@@ -0,0 +1,198 @@
+package org.ggp.base.util.propnet.architecture;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ggp.base.util.propnet.architecture.components.Constant;
+import org.ggp.base.util.propnet.architecture.components.Proposition;
+import org.ggp.base.util.propnet.architecture.components.Transition;
+
+/**
+ * A PropNetFactoring splits the base and input propositions of a propnet
+ * into factors: independent subgames whose next state and legal moves
+ * depend only on their own base and input propositions. Only the goal and
+ * terminal logic may combine factors. This is the factoring of "Factoring
+ * General Games using Propositional Automata" by Evan Cox et al.
+ *
+ * The factors are the connected parts of the logic that computes the next
+ * state and the legal moves, with every input proposition joined to its
+ * legal proposition, and without going through constants or the init
+ * proposition. Logic that only feeds goals and terminal is left out, which
+ * is what lets the subgames come apart.
+ *
+ * Input propositions that change no base proposition and whose legality
+ * does not depend on the state, such as a noop that is always legal, are
+ * in no factor; they are listed as inert.
+ */
+public final class PropNetFactoring
+{
+	/** The base and input propositions of one subgame. */
+	public static final class Factor
+	{
+		private final Set<Proposition> basePropositions = new HashSet<Proposition>();
+		private final Set<Proposition> inputPropositions = new HashSet<Proposition>();
+
+		public Set<Proposition> getBasePropositions()
+		{
+			return Collections.unmodifiableSet(basePropositions);
+		}
+
+		/**
+		 * Returns the input propositions of the factor, which is empty for
+		 * parts of the state that change on their own, such as step counters.
+		 */
+		public Set<Proposition> getInputPropositions()
+		{
+			return Collections.unmodifiableSet(inputPropositions);
+		}
+	}
+
+	private final List<Factor> factors;
+	private final Set<Proposition> inertInputPropositions;
+
+	public PropNetFactoring(PropNet propNet)
+	{
+		List<Component> components = new ArrayList<Component>(propNet.getComponents());
+		Map<Component, Integer> ids = new HashMap<Component, Integer>(components.size() * 2);
+		for (int i = 0; i < components.size(); i++) {
+			ids.put(components.get(i), i);
+		}
+		Set<Component> sources = new HashSet<Component>();
+		sources.addAll(propNet.getBasePropositions().values());
+		sources.addAll(propNet.getInputPropositions().values());
+		Proposition init = propNet.getInitProposition();
+
+		// Mark the logic behind every transition and legal proposition.
+		boolean[] inDynamics = new boolean[components.size()];
+		Deque<Component> toVisit = new ArrayDeque<Component>();
+		for (Component c : components) {
+			if (c instanceof Transition) {
+				toVisit.push(c);
+			}
+		}
+		for (Set<Proposition> legals : propNet.getLegalPropositions().values()) {
+			toVisit.addAll(legals);
+		}
+		while (!toVisit.isEmpty()) {
+			Component c = toVisit.pop();
+			int id = ids.get(c);
+			if (inDynamics[id]) {
+				continue;
+			}
+			inDynamics[id] = true;
+			if (sources.contains(c)) {
+				continue;
+			}
+			for (Component input : c.getInputs()) {
+				if (!(input instanceof Constant) && input != init && !inDynamics[ids.get(input)]) {
+					toVisit.push(input);
+				}
+			}
+		}
+
+		int[] parents = new int[components.size()];
+		for (int i = 0; i < parents.length; i++) {
+			parents[i] = i;
+		}
+		for (int i = 0; i < components.size(); i++) {
+			Component c = components.get(i);
+			if (!inDynamics[i]) {
+				continue;
+			}
+			if (c instanceof Transition) {
+				for (Component output : c.getOutputs()) {
+					union(parents, i, ids.get(output));
+				}
+			}
+			if (sources.contains(c)) {
+				continue;
+			}
+			for (Component input : c.getInputs()) {
+				int inputId = ids.get(input);
+				if (inDynamics[inputId]) {
+					union(parents, i, inputId);
+				}
+			}
+		}
+		// The map holds both directions, and joining is symmetric.
+		for (Map.Entry<Proposition, Proposition> entry : propNet.getLegalInputMap().entrySet()) {
+			union(parents, ids.get(entry.getKey()), ids.get(entry.getValue()));
+		}
+
+		Map<Integer, Factor> factorsByRoot = new LinkedHashMap<Integer, Factor>();
+		for (Proposition base : propNet.getBasePropositions().values()) {
+			int root = find(parents, ids.get(base));
+			Factor factor = factorsByRoot.get(root);
+			if (factor == null) {
+				factor = new Factor();
+				factorsByRoot.put(root, factor);
+			}
+			factor.basePropositions.add(base);
+		}
+		inertInputPropositions = new HashSet<Proposition>();
+		for (Proposition input : propNet.getInputPropositions().values()) {
+			Factor factor = factorsByRoot.get(find(parents, ids.get(input)));
+			if (factor == null) {
+				inertInputPropositions.add(input);
+			} else {
+				factor.inputPropositions.add(input);
+			}
+		}
+		factors = new ArrayList<Factor>(factorsByRoot.values());
+	}
+
+	private static int find(int[] parents, int i)
+	{
+		while (parents[i] != i) {
+			parents[i] = parents[parents[i]];
+			i = parents[i];
+		}
+		return i;
+	}
+
+	private static void union(int[] parents, int i, int j)
+	{
+		int a = find(parents, i);
+		int b = find(parents, j);
+		if (a != b) {
+			parents[a] = b;
+		}
+	}
+
+	/** Returns every factor, including those without input propositions. */
+	public List<Factor> getFactors()
+	{
+		return Collections.unmodifiableList(factors);
+	}
+
+	/** Returns the factors in which moves can be made. */
+	public List<Factor> getPlayableFactors()
+	{
+		List<Factor> playable = new ArrayList<Factor>();
+		for (Factor factor : factors) {
+			if (!factor.inputPropositions.isEmpty()) {
+				playable.add(factor);
+			}
+		}
+		return playable;
+	}
+
+	public Set<Proposition> getInertInputPropositions()
+	{
+		return Collections.unmodifiableSet(inertInputPropositions);
+	}
+
+	/** Returns true if moves can be made in more than one independent subgame. */
+	public boolean isFactorable()
+	{
+		return getPlayableFactors().size() > 1;
+	}
+}
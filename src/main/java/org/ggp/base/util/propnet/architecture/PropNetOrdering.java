@@ -0,0 +1,187 @@
+package org.ggp.base.util.propnet.architecture;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ggp.base.util.propnet.architecture.components.Proposition;
+
+import com.google.common.base.Predicate;
+
+/**
+ * A PropNetOrdering is a topological ordering of the components of a
+ * propnet that have to be computed from their inputs, grouped into levels.
+ * Level 0 holds the components whose inputs are all set directly, and every
+ * other component is in the level after the highest level among its inputs,
+ * so the components within one level do not depend on each other and can
+ * be computed in any order, or at the same time.
+ *
+ * The ordering is computed with Kahn's algorithm over integer ids, without
+ * recursion, so it works on propnets of any size and depth. Components that
+ * are not computed are treated as already known, which also breaks the
+ * cycles through base propositions.
+ */
+public final class PropNetOrdering
+{
+	/**
+	 * Accepts every component except the propositions whose type is not
+	 * VIEW, whose values are set directly by the state machines using the
+	 * Proposition types.
+	 */
+	public static final Predicate<Component> COMPUTED_BY_TYPE = new Predicate<Component>() {
+		@Override
+		public boolean apply(Component c) {
+			return !(c instanceof Proposition) || ((Proposition) c).getType() == Proposition.PropType.VIEW;
+		}
+	};
+
+	/** The components, indexed by id. */
+	private final Component[] components;
+	/** Ids of the computed components, level by level. */
+	private final int[] ordering;
+	/** Level k is ordering[levelOffsets[k]] to ordering[levelOffsets[k + 1] - 1]. */
+	private final int[] levelOffsets;
+
+	/**
+	 * Orders the components identified by dense ids, given their adjacency
+	 * in compressed row form and which of them are computed.
+	 *
+	 * @throws IllegalStateException if the computed components form a cycle.
+	 */
+	public PropNetOrdering(Component[] components, int[] inputOffsets, int[] inputIds,
+			int[] outputOffsets, int[] outputIds, boolean[] computed)
+	{
+		this.components = components;
+		int size = computed.length;
+		int[] pending = new int[size];
+		int[] queue = new int[size];
+		int tail = 0;
+		for (int c = 0; c < size; c++) {
+			if (!computed[c]) {
+				continue;
+			}
+			for (int j = inputOffsets[c]; j < inputOffsets[c + 1]; j++) {
+				if (computed[inputIds[j]]) {
+					pending[c]++;
+				}
+			}
+			if (pending[c] == 0) {
+				queue[tail++] = c;
+			}
+		}
+
+		// Each pass takes the whole current level off the queue, and the
+		// components it releases make up the next level.
+		int[] offsets = new int[size + 2];
+		int numLevels = 0;
+		int head = 0;
+		while (head < tail) {
+			offsets[numLevels++] = head;
+			int levelEnd = tail;
+			for (; head < levelEnd; head++) {
+				int c = queue[head];
+				for (int j = outputOffsets[c]; j < outputOffsets[c + 1]; j++) {
+					int o = outputIds[j];
+					if (computed[o] && --pending[o] == 0) {
+						queue[tail++] = o;
+					}
+				}
+			}
+		}
+		offsets[numLevels] = tail;
+
+		int numComputed = 0;
+		for (int c = 0; c < size; c++) {
+			if (computed[c]) {
+				numComputed++;
+			}
+		}
+		if (tail != numComputed) {
+			throw new IllegalStateException("PropNet contains a cycle through computed components");
+		}
+		ordering = Arrays.copyOf(queue, tail);
+		levelOffsets = Arrays.copyOf(offsets, numLevels + 1);
+	}
+
+	/**
+	 * Orders the given components, computing those accepted by the predicate.
+	 *
+	 * @throws IllegalStateException if the computed components form a cycle.
+	 */
+	public static PropNetOrdering create(Collection<? extends Component> components, Predicate<? super Component> computed)
+	{
+		int size = components.size();
+		Component[] byId = components.toArray(new Component[size]);
+		Map<Component, Integer> ids = new HashMap<Component, Integer>(size * 2);
+		for (int i = 0; i < size; i++) {
+			ids.put(byId[i], i);
+		}
+
+		boolean[] isComputed = new boolean[size];
+		int[] inputOffsets = new int[size + 1];
+		int[] outputOffsets = new int[size + 1];
+		int numInputLinks = 0;
+		int numOutputLinks = 0;
+		for (int i = 0; i < size; i++) {
+			isComputed[i] = computed.apply(byId[i]);
+			numInputLinks += byId[i].getInputs().size();
+			numOutputLinks += byId[i].getOutputs().size();
+		}
+		int[] inputIds = new int[numInputLinks];
+		int[] outputIds = new int[numOutputLinks];
+		int in = 0;
+		int out = 0;
+		for (int i = 0; i < size; i++) {
+			inputOffsets[i] = in;
+			// Links to components outside the collection are left out.
+			for (Component c : byId[i].getInputs()) {
+				Integer id = ids.get(c);
+				if (id != null) {
+					inputIds[in++] = id;
+				}
+			}
+			outputOffsets[i] = out;
+			for (Component c : byId[i].getOutputs()) {
+				Integer id = ids.get(c);
+				if (id != null) {
+					outputIds[out++] = id;
+				}
+			}
+		}
+		inputOffsets[size] = in;
+		outputOffsets[size] = out;
+		return new PropNetOrdering(byId, inputOffsets, inputIds, outputOffsets, outputIds, isComputed);
+	}
+
+	/** Returns the ids of the computed components, level by level. */
+	public int[] getOrdering()
+	{
+		return ordering;
+	}
+
+	/**
+	 * Returns the start of every level in getOrdering(), followed by the
+	 * length of the ordering.
+	 */
+	public int[] getLevelOffsets()
+	{
+		return levelOffsets;
+	}
+
+	public int getNumLevels()
+	{
+		return levelOffsets.length - 1;
+	}
+
+	/** Returns the computed components, level by level. */
+	public List<Component> getComponents()
+	{
+		Component[] ordered = new Component[ordering.length];
+		for (int i = 0; i < ordering.length; i++) {
+			ordered[i] = components[ordering[i]];
+		}
+		return Arrays.asList(ordered);
+	}
+}
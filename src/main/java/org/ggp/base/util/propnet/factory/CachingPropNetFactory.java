@@ -0,0 +1,174 @@
+package org.ggp.base.util.propnet.factory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.ggp.base.util.crypto.BaseHashing;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.logging.GamerLogger;
+import org.ggp.base.util.propnet.architecture.PropNet;
+import org.ggp.base.util.propnet.factory.serializer.PropNetSerializer;
+
+
+/**
+ * CachingPropNetFactory creates PropNets with the OptimizingPropNetFactory,
+ * and keeps each one it creates in a cache directory, so that the next time
+ * the same game is played its PropNet is read from disk instead of being
+ * built again.
+ *
+ * Files in the cache are named by a hash of the game description that does
+ * not depend on the order of its rules, and are written with the
+ * PropNetSerializer. A file that cannot be read is replaced by a freshly
+ * built PropNet. Files are written under a temporary name and then moved
+ * into place, so several players can share a cache directory.
+ *
+ * Caching is off unless a directory is set, either with setCacheDirectory
+ * or with the ggp.propnet.cache system property, for example
+ * -Dggp.propnet.cache=$HOME/.ggp-propnet-cache.
+ */
+public final class CachingPropNetFactory
+{
+	/**
+	 * Part of every cache key. Change it whenever the OptimizingPropNetFactory
+	 * starts building different PropNets, so that old files are not used.
+	 */
+	private static final String FACTORY_VERSION = "optimizing-1";
+
+	/** The system property that names the cache directory. */
+	public static final String CACHE_DIRECTORY_PROPERTY = "ggp.propnet.cache";
+
+	private static volatile File cacheDirectory = getDefaultCacheDirectory();
+
+	private CachingPropNetFactory()
+	{
+	}
+
+	private static File getDefaultCacheDirectory()
+	{
+		String directory = System.getProperty(CACHE_DIRECTORY_PROPERTY);
+		return (directory == null || directory.isEmpty()) ? null : new File(directory);
+	}
+
+	/** Returns the cache directory, or null if caching is turned off. */
+	public static File getCacheDirectory()
+	{
+		return cacheDirectory;
+	}
+
+	/** Sets the cache directory; null turns caching off. */
+	public static void setCacheDirectory(File directory)
+	{
+		cacheDirectory = directory;
+	}
+
+	/**
+	 * Returns the PropNet for the game with the given description, from the
+	 * cache if it is there, and otherwise from the OptimizingPropNetFactory.
+	 *
+	 * @throws InterruptedException if the thread is interrupted during
+	 * PropNet creation.
+	 */
+	public static PropNet create(List<Gdl> description) throws InterruptedException
+	{
+		File directory = cacheDirectory;
+		if (directory == null)
+		{
+			return OptimizingPropNetFactory.create(description);
+		}
+		File file = new File(directory, getCacheKey(description) + ".propnet");
+		if (file.isFile())
+		{
+			try
+			{
+				return load(file);
+			}
+			catch (IOException | RuntimeException e)
+			{
+				GamerLogger.logError("StateMachine", "Could not read cached propnet " + file + ", rebuilding it: " + e);
+			}
+		}
+
+		PropNet propNet = OptimizingPropNetFactory.create(description);
+		try
+		{
+			store(propNet, directory, file);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			GamerLogger.logError("StateMachine", "Could not cache propnet in " + file + ": " + e);
+		}
+		return propNet;
+	}
+
+	/**
+	 * Returns the name of the cache file for a game description: the SHA1
+	 * hash of its rules, sorted by their text, the factory version and the
+	 * version of the serialized format.
+	 */
+	static String getCacheKey(List<Gdl> description)
+	{
+		List<String> rules = new ArrayList<String>(description.size());
+		for (Gdl gdl : description)
+		{
+			rules.add(gdl.toString());
+		}
+		Collections.sort(rules);
+
+		StringBuilder canonical = new StringBuilder(FACTORY_VERSION).append('/').append(PropNetSerializer.VERSION);
+		for (String rule : rules)
+		{
+			canonical.append('\n').append(rule);
+		}
+		return BaseHashing.computeSHA1Hash(canonical.toString());
+	}
+
+	private static PropNet load(File file) throws IOException
+	{
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try
+		{
+			return PropNetSerializer.read(in);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static void store(PropNet propNet, File directory, File file) throws IOException
+	{
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Could not create " + directory);
+		}
+		File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+		try
+		{
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(temporary));
+			try
+			{
+				PropNetSerializer.write(propNet, out);
+			}
+			finally
+			{
+				out.close();
+			}
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally
+		{
+			temporary.delete();
+		}
+	}
+}
@@ -12,6 +12,13 @@ import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.ggp.base.util.Pair;
 import org.ggp.base.util.concurrency.ConcurrencyUtils;
@@ -114,6 +121,16 @@ public class OptimizingPropNetFactory {
 	}
 
 	public static PropNet create(List<Gdl> description, boolean verbose) throws InterruptedException {
+		return create(description, verbose, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a PropNet for the game with the given description, adding
+	 * sentence forms that do not depend on each other on up to numThreads
+	 * threads at once. With one thread, every sentence form is added in
+	 * topological order on the calling thread.
+	 */
+	public static PropNet create(List<Gdl> description, boolean verbose, int numThreads) throws InterruptedException {
 		//System.out.println("Building propnet...");
 
 		long startTime = System.currentTimeMillis();
@@ -165,57 +182,73 @@ public class OptimizingPropNetFactory {
 			System.out.println("done");
 
 		List<Role> roles = Role.computeRoles(description);
-		Map<GdlSentence, Component> components = new HashMap<GdlSentence, Component>();
-		Map<GdlSentence, Component> negations = new HashMap<GdlSentence, Component>();
+		//Concurrent, since the sentence forms of a layer write to these at the same time
+		Map<GdlSentence, Component> components = new ConcurrentHashMap<GdlSentence, Component>();
+		Map<GdlSentence, Component> negations = new ConcurrentHashMap<GdlSentence, Component>();
 		Constant trueComponent = new Constant(true);
 		Constant falseComponent = new Constant(false);
 		Map<SentenceForm, FunctionInfo> functionInfoMap = new HashMap<SentenceForm, FunctionInfo>();
 		Map<SentenceForm, Collection<GdlSentence>> completedSentenceFormValues = new HashMap<SentenceForm, Collection<GdlSentence>>();
-		for(SentenceForm form : topologicalOrdering) {
-			ConcurrencyUtils.checkForInterruption();
+		ExecutorService executor = (numThreads > 1) ? newExecutor(numThreads) : null;
+		try {
+			for(List<SentenceForm> layer : getLayers(topologicalOrdering, dependencyGraph, usingBase, usingInput)) {
+				List<SentenceForm> formsToAdd = new ArrayList<SentenceForm>(layer.size());
+				for(SentenceForm form : layer) {
+					ConcurrencyUtils.checkForInterruption();
+
+					if(verbose) {
+						System.out.print("Adding sentence form " + form);
+						System.out.flush();
+					}
+					if(constantChecker.isConstantForm(form)) {
+						if(verbose)
+							System.out.println(" (constant)");
+						//Only add it if it's important
+						if(form.getName().equals(LEGAL)
+								|| form.getName().equals(GOAL)
+								|| form.getName().equals(INIT)) {
+							//Add it
+							for (GdlSentence trueSentence : constantChecker.getTrueSentences(form)) {
+								Proposition trueProp = new Proposition(trueSentence);
+								trueProp.addInput(trueComponent);
+								trueComponent.addOutput(trueProp);
+								components.put(trueSentence, trueComponent);
+							}
+						}
 
-			if(verbose) {
-				System.out.print("Adding sentence form " + form);
-				System.out.flush();
-			}
-			if(constantChecker.isConstantForm(form)) {
-				if(verbose)
-					System.out.println(" (constant)");
-				//Only add it if it's important
-				if(form.getName().equals(LEGAL)
-						|| form.getName().equals(GOAL)
-						|| form.getName().equals(INIT)) {
-					//Add it
-					for (GdlSentence trueSentence : constantChecker.getTrueSentences(form)) {
-						Proposition trueProp = new Proposition(trueSentence);
-						trueProp.addInput(trueComponent);
-						trueComponent.addOutput(trueProp);
-						components.put(trueSentence, trueComponent);
+						if(verbose)
+							System.out.println("Checking whether " + form + " is a functional constant...");
+						addConstantsToFunctionInfo(form, constantChecker, functionInfoMap);
+						addFormToCompletedValues(form, completedSentenceFormValues, constantChecker);
+
+						continue;
 					}
+					if(verbose)
+						System.out.println();
+					formsToAdd.add(form);
 				}
 
-				if(verbose)
-					System.out.println("Checking whether " + form + " is a functional constant...");
-				addConstantsToFunctionInfo(form, constantChecker, functionInfoMap);
-				addFormToCompletedValues(form, completedSentenceFormValues, constantChecker);
-
-				continue;
+				//TODO: Adjust "recursive forms" appropriately
+				//Add a temporary sentence form thingy? ...
+				List<Map<GdlSentence, Component>> temporaryComponents = new ArrayList<Map<GdlSentence, Component>>(formsToAdd.size());
+				List<Map<GdlSentence, Component>> temporaryNegations = new ArrayList<Map<GdlSentence, Component>>(formsToAdd.size());
+				addSentenceForms(formsToAdd, executor, model, components, negations, trueComponent, falseComponent, usingBase, usingInput, temporaryComponents, temporaryNegations, functionInfoMap, constantChecker, completedSentenceFormValues);
+				//Everything below touches the whole network, so it runs one form at a time
+				for(int i = 0; i < formsToAdd.size(); i++) {
+					SentenceForm form = formsToAdd.get(i);
+					//TODO: Pass these over groups of multiple sentence forms
+					if(verbose && !temporaryComponents.get(i).isEmpty())
+						System.out.println("Processing temporary components...");
+					processTemporaryComponents(temporaryComponents.get(i), temporaryNegations.get(i), components, negations, trueComponent, falseComponent);
+					addFormToCompletedValues(form, completedSentenceFormValues, components);
+					//if(verbose)
+						//TODO: Add this, but with the correct total number of components (not just Propositions)
+						//System.out.println("  "+completedSentenceFormValues.get(form).size() + " components added");
+				}
 			}
-			if(verbose)
-				System.out.println();
-			//TODO: Adjust "recursive forms" appropriately
-			//Add a temporary sentence form thingy? ...
-			Map<GdlSentence, Component> temporaryComponents = new HashMap<GdlSentence, Component>();
-			Map<GdlSentence, Component> temporaryNegations = new HashMap<GdlSentence, Component>();
-			addSentenceForm(form, model, components, negations, trueComponent, falseComponent, usingBase, usingInput, Collections.singleton(form), temporaryComponents, temporaryNegations, functionInfoMap, constantChecker, completedSentenceFormValues);
-			//TODO: Pass these over groups of multiple sentence forms
-			if(verbose && !temporaryComponents.isEmpty())
-				System.out.println("Processing temporary components...");
-			processTemporaryComponents(temporaryComponents, temporaryNegations, components, negations, trueComponent, falseComponent);
-			addFormToCompletedValues(form, completedSentenceFormValues, components);
-			//if(verbose)
-				//TODO: Add this, but with the correct total number of components (not just Propositions)
-				//System.out.println("  "+completedSentenceFormValues.get(form).size() + " components added");
+		} finally {
+			if(executor != null)
+				executor.shutdownNow();
 		}
 		//Connect "next" to "true"
 		if(verbose)
@@ -249,6 +282,126 @@ public class OptimizingPropNetFactory {
 		return propnet;
 	}
 
+	private static ExecutorService newExecutor(int numThreads) {
+		return Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "PropNetFactory");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Splits the topological ordering into layers: every sentence form only
+	 * depends on forms in earlier layers (or on itself), under the same
+	 * constraints as getTopologicalOrdering, so the forms of a layer can be
+	 * added in any order or at the same time.
+	 */
+	private static List<List<SentenceForm>> getLayers(List<SentenceForm> topologicalOrdering,
+			Multimap<SentenceForm, SentenceForm> dependencyGraph, boolean usingBase, boolean usingInput) {
+		Map<SentenceForm, Integer> layerOf = new HashMap<SentenceForm, Integer>();
+		List<List<SentenceForm>> layers = new ArrayList<List<SentenceForm>>();
+		for(SentenceForm form : topologicalOrdering) {
+			List<SentenceForm> predecessors = new ArrayList<SentenceForm>(dependencyGraph.get(form));
+			if(usingBase && (form.getName().equals(TRUE) || form.getName().equals(NEXT) || form.getName().equals(INIT)))
+				predecessors.add(form.withName(BASE));
+			if(usingInput && (form.getName().equals(DOES) || form.getName().equals(LEGAL)))
+				predecessors.add(form.withName(INPUT));
+			int layer = 0;
+			for(SentenceForm predecessor : predecessors) {
+				Integer predecessorLayer = layerOf.get(predecessor);
+				if(predecessorLayer != null && !predecessor.equals(form))
+					layer = Math.max(layer, predecessorLayer + 1);
+			}
+			layerOf.put(form, layer);
+			while(layers.size() <= layer)
+				layers.add(new ArrayList<SentenceForm>());
+			layers.get(layer).add(form);
+		}
+		return layers;
+	}
+
+	/**
+	 * Adds sentence forms that do not depend on each other, on the executor
+	 * if there is one and more than one form. The temporary components and
+	 * negations of each form are appended to the given lists, in order.
+	 */
+	private static void addSentenceForms(List<SentenceForm> forms, ExecutorService executor,
+			final SentenceDomainModel model,
+			final Map<GdlSentence, Component> components,
+			final Map<GdlSentence, Component> negations,
+			final Constant trueComponent, final Constant falseComponent,
+			final boolean usingBase, final boolean usingInput,
+			List<Map<GdlSentence, Component>> temporaryComponents, List<Map<GdlSentence, Component>> temporaryNegations,
+			final Map<SentenceForm, FunctionInfo> functionInfoMap, final ConstantChecker constantChecker,
+			final Map<SentenceForm, Collection<GdlSentence>> completedSentenceFormValues) throws InterruptedException {
+		for(int i = 0; i < forms.size(); i++) {
+			temporaryComponents.add(new HashMap<GdlSentence, Component>());
+			temporaryNegations.add(new HashMap<GdlSentence, Component>());
+		}
+		if(executor == null || forms.size() < 2) {
+			for(int i = 0; i < forms.size(); i++) {
+				SentenceForm form = forms.get(i);
+				addSentenceForm(form, model, components, negations, trueComponent, falseComponent, usingBase, usingInput, Collections.singleton(form), temporaryComponents.get(i), temporaryNegations.get(i), functionInfoMap, constantChecker, completedSentenceFormValues);
+			}
+			return;
+		}
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(forms.size());
+		try {
+			for(int i = 0; i < forms.size(); i++) {
+				final SentenceForm form = forms.get(i);
+				final Map<GdlSentence, Component> formTemporaryComponents = temporaryComponents.get(i);
+				final Map<GdlSentence, Component> formTemporaryNegations = temporaryNegations.get(i);
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws InterruptedException {
+						addSentenceForm(form, model, components, negations, trueComponent, falseComponent, usingBase, usingInput, Collections.singleton(form), formTemporaryComponents, formTemporaryNegations, functionInfoMap, constantChecker, completedSentenceFormValues);
+						return null;
+					}
+				}));
+			}
+			for(Future<Void> future : futures) {
+				future.get();
+			}
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof InterruptedException)
+				throw (InterruptedException) cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		} finally {
+			//Stops the other forms of the layer if one failed or we were interrupted
+			for(Future<Void> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/*
+	 * The sentence forms of a layer may all attach outputs to the same
+	 * components of earlier layers, or to the true and false constants, so
+	 * while they are being added, output sets are only touched under the
+	 * component's lock.
+	 */
+	private static void addOutput(Component component, Component output) {
+		synchronized(component) {
+			component.addOutput(output);
+		}
+	}
+
+	private static void removeOutput(Component component, Component output) {
+		synchronized(component) {
+			component.removeOutput(output);
+		}
+	}
+
+
 	/*
 	public static IIPropNet createII(List<Gdl> description, boolean verbose) throws InterruptedException {
 		//System.out.println("Building propnet...");
@@ -882,7 +1035,7 @@ public class OptimizingPropNetFactory {
 		for(Component in : inputs) {
 			if(in instanceof Constant && in.getValue()) {
 				//True constant: connect that to the component, done
-				in.addOutput(output);
+				addOutput(in, output);
 				output.addInput(in);
 				return;
 			}
@@ -896,27 +1049,27 @@ public class OptimizingPropNetFactory {
 		Or or = new Or();
 		for(Component in : inputs) {
 			if(!(in instanceof Constant)) {
-				in.addOutput(or);
+				addOutput(in, or);
 				or.addInput(in);
 			}
 		}
 		//What if they're all false? (Or inputs is empty?) Then no inputs at this point...
 		if(or.getInputs().isEmpty()) {
 			//Hook up to "false"
-			falseProp.addOutput(output);
+			addOutput(falseProp, output);
 			output.addInput(falseProp);
 			return;
 		}
 		//If there's just one, on the other hand, don't use the or gate
 		if(or.getInputs().size() == 1) {
 			Component in = or.getSingleInput();
-			in.removeOutput(or);
+			removeOutput(in, or);
 			or.removeInput(in);
-			in.addOutput(output);
+			addOutput(in, output);
 			output.addInput(in);
 			return;
 		}
-		or.addOutput(output);
+		addOutput(or, output);
 		output.addInput(or);
 	}
 
@@ -994,7 +1147,7 @@ public class OptimizingPropNetFactory {
 					|| alwaysTrueSentence.getName().equals(GOAL)) {
 				Proposition prop = new Proposition(alwaysTrueSentence);
 				//Attach to true
-				trueComponent.addOutput(prop);
+				addOutput(trueComponent, prop);
 				prop.addInput(trueComponent);
 				//Still want the same components;
 				//we just don't want this to be anonymized
@@ -1134,7 +1287,7 @@ public class OptimizingPropNetFactory {
 							Not not = new Not();
 							//Add positive as input
 							not.addInput(positive);
-							positive.addOutput(not);
+							addOutput(positive, not);
 							temporaryNegations.put(transformed, not);
 							conj = not;
 						}
@@ -1150,18 +1303,8 @@ public class OptimizingPropNetFactory {
 								continue; //to the next conjunct
 							}
 
-							//Check if we're sharing a component with another sentence with a negation
-							//(i.e. look for "nots" in our outputs and use those instead)
-							Not existingNotOutput = getNotOutput(positive);
-							if(existingNotOutput != null) {
-								componentsToConnect.add(existingNotOutput);
-								negations.put(transformed, existingNotOutput);
-								continue; //to the next conjunct
-							}
-
-							Not not = new Not();
-							not.addInput(positive);
-							positive.addOutput(not);
+							//Share the "not" of any other sentence with a negation of this component
+							Not not = getOrAddNotOutput(positive);
 							negations.put(transformed, not);
 							conj = not;
 						}
@@ -1203,7 +1346,7 @@ public class OptimizingPropNetFactory {
 					realInputs.add(input);
 				} else {
 					realInputs.add(input.getSingleInput());
-					input.getSingleInput().removeOutput(input);
+					removeOutput(input.getSingleInput(), input);
 					input.removeAllInputs();
 				}
 			}
@@ -1253,13 +1396,23 @@ public class OptimizingPropNetFactory {
 	}
 
 
-	private static Not getNotOutput(Component positive) {
-		for(Component c : positive.getOutputs()) {
-			if(c instanceof Not) {
-				return (Not) c;
+	/**
+	 * Returns the "not" among the outputs of the given component, adding one
+	 * if there is none. The lookup and the addition are atomic, so forms
+	 * built in parallel never give a component two negations.
+	 */
+	private static Not getOrAddNotOutput(Component positive) {
+		synchronized(positive) {
+			for(Component c : positive.getOutputs()) {
+				if(c instanceof Not) {
+					return (Not) c;
+				}
 			}
+			Not not = new Not();
+			not.addInput(positive);
+			positive.addOutput(not);
+			return not;
 		}
-		return null;
 	}
 
 
@@ -1274,7 +1427,7 @@ public class OptimizingPropNetFactory {
 			if(c instanceof Constant && !c.getValue()) {
 				//Connect false (c) to the output
 				output.addInput(c);
-				c.addOutput(output);
+				addOutput(c, output);
 				return;
 			}
 		}
@@ -1283,27 +1436,27 @@ public class OptimizingPropNetFactory {
 		And and = new And();
 		for(Component in : inputs) {
 			if(!(in instanceof Constant)) {
-				in.addOutput(and);
+				addOutput(in, and);
 				and.addInput(in);
 			}
 		}
 		//What if they're all true? (Or inputs is empty?) Then no inputs at this point...
 		if(and.getInputs().isEmpty()) {
 			//Hook up to "true"
-			trueProp.addOutput(output);
+			addOutput(trueProp, output);
 			output.addInput(trueProp);
 			return;
 		}
 		//If there's just one, on the other hand, don't use the and gate
 		if(and.getInputs().size() == 1) {
 			Component in = and.getSingleInput();
-			in.removeOutput(and);
+			removeOutput(in, and);
 			and.removeInput(in);
-			in.addOutput(output);
+			addOutput(in, output);
 			output.addInput(in);
 			return;
 		}
-		and.addOutput(output);
+		addOutput(and, output);
 		output.addInput(and);
 	}
 
@@ -0,0 +1,172 @@
+package org.ggp.base.util.propnet.factory.compiler;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.CannotCompileException;
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.NotFoundException;
+
+import org.ggp.base.util.propnet.architecture.CompiledPropNet;
+import org.ggp.base.util.propnet.architecture.FlatPropNet;
+
+/**
+ * The PropNetCompiler class turns a {@link FlatPropNet} into a
+ * {@link CompiledPropNet}: the state and move orderings are written out as
+ * Java source, one assignment per gate, and compiled to bytecode with
+ * javassist at metagame time.
+ *
+ * The JVM refuses methods over 64KB of bytecode and the JIT gives up on
+ * much smaller ones, so the assignments are split into chunk methods with a
+ * bounded number of operands each; propagateState and propagateMoves just
+ * call their chunks in order.
+ *
+ * Every compiled class gets its own class loader, so it can be collected
+ * once the state machine using it is gone.
+ */
+public final class PropNetCompiler
+{
+	/** Operands per chunk method, which keeps each chunk well under 64KB. */
+	public static final int DEFAULT_MAX_OPERANDS_PER_METHOD = 2000;
+
+	private static final AtomicInteger classCounter = new AtomicInteger();
+
+	private PropNetCompiler()
+	{
+	}
+
+	public static CompiledPropNet compile(FlatPropNet net)
+	{
+		return compile(net, DEFAULT_MAX_OPERANDS_PER_METHOD);
+	}
+
+	/**
+	 * Compiles the given propnet, putting at most maxOperandsPerMethod gate
+	 * inputs in each generated method (a single gate with more inputs still
+	 * gets a method of its own).
+	 *
+	 * @throws IllegalStateException if the generated class fails to compile
+	 * or load.
+	 */
+	public static CompiledPropNet compile(FlatPropNet net, int maxOperandsPerMethod)
+	{
+		String name = CompiledPropNet.class.getName() + "$Generated" + classCounter.incrementAndGet();
+		ClassPool pool = new ClassPool(true);
+		pool.insertClassPath(new ClassClassPath(CompiledPropNet.class));
+		try {
+			CtClass generated = pool.makeClass(name);
+			generated.setSuperclass(pool.get(CompiledPropNet.class.getName()));
+			generated.addConstructor(CtNewConstructor.defaultConstructor(generated));
+			addPropagateMethod(generated, net, "propagateState", net.getStateOrdering(), maxOperandsPerMethod);
+			addPropagateMethod(generated, net, "propagateMoves", net.getMoveOrdering(), maxOperandsPerMethod);
+
+			byte[] bytecode = generated.toBytecode();
+			generated.detach();
+			GeneratedClassLoader loader = new GeneratedClassLoader(CompiledPropNet.class.getClassLoader());
+			return (CompiledPropNet) loader.define(name, bytecode).newInstance();
+		} catch (CannotCompileException e) {
+			throw new IllegalStateException("Could not compile propnet", e);
+		} catch (NotFoundException e) {
+			throw new IllegalStateException("Could not compile propnet", e);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not compile propnet", e);
+		} catch (InstantiationException e) {
+			throw new IllegalStateException("Could not load compiled propnet", e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Could not load compiled propnet", e);
+		}
+	}
+
+	/**
+	 * Adds the public method with the given name, which evaluates the
+	 * ordering through as many private chunk methods as needed.
+	 */
+	private static void addPropagateMethod(CtClass generated, FlatPropNet net, String methodName,
+			int[] ordering, int maxOperandsPerMethod) throws CannotCompileException
+	{
+		int[] types = net.getTypes();
+		int[] inputOffsets = net.getInputOffsets();
+		int[] inputIds = net.getInputIds();
+
+		StringBuilder dispatch = new StringBuilder();
+		dispatch.append("public void ").append(methodName).append("(boolean[] v) {\n");
+		StringBuilder chunk = null;
+		int numChunks = 0;
+		int operands = 0;
+		for (int c : ordering) {
+			int numOperands = inputOffsets[c + 1] - inputOffsets[c];
+			if (chunk != null && operands + numOperands > maxOperandsPerMethod) {
+				generated.addMethod(CtNewMethod.make(chunk.append("}").toString(), generated));
+				chunk = null;
+			}
+			if (chunk == null) {
+				String chunkName = methodName + numChunks++;
+				dispatch.append(chunkName).append("(v);\n");
+				chunk = new StringBuilder();
+				chunk.append("private void ").append(chunkName).append("(boolean[] v) {\n");
+				operands = 0;
+			}
+			appendGate(chunk, c, types[c], inputIds, inputOffsets[c], inputOffsets[c + 1]);
+			operands += numOperands;
+		}
+		if (chunk != null) {
+			generated.addMethod(CtNewMethod.make(chunk.append("}").toString(), generated));
+		}
+		dispatch.append("}");
+		generated.addMethod(CtNewMethod.make(dispatch.toString(), generated));
+	}
+
+	private static void appendGate(StringBuilder out, int c, int type, int[] inputIds, int from, int to)
+	{
+		out.append("v[").append(c).append("] = ");
+		switch (type) {
+		case FlatPropNet.TYPE_VIEW:
+		case FlatPropNet.TYPE_OR:
+			appendOperands(out, inputIds, from, to, " || ", "false");
+			break;
+		case FlatPropNet.TYPE_AND:
+			appendOperands(out, inputIds, from, to, " && ", "true");
+			break;
+		case FlatPropNet.TYPE_NOT:
+			out.append("!(");
+			appendOperands(out, inputIds, from, to, " || ", "false");
+			out.append(")");
+			break;
+		default:
+			throw new IllegalArgumentException("Component " + c + " is not evaluated");
+		}
+		out.append(";\n");
+	}
+
+	private static void appendOperands(StringBuilder out, int[] inputIds, int from, int to,
+			String operator, String empty)
+	{
+		if (from == to) {
+			out.append(empty);
+			return;
+		}
+		for (int j = from; j < to; j++) {
+			if (j > from) {
+				out.append(operator);
+			}
+			out.append("v[").append(inputIds[j]).append("]");
+		}
+	}
+
+	private static final class GeneratedClassLoader extends ClassLoader
+	{
+		GeneratedClassLoader(ClassLoader parent)
+		{
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] bytecode)
+		{
+			return defineClass(name, bytecode, 0, bytecode.length);
+		}
+	}
+}
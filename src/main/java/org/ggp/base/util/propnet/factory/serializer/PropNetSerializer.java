@@ -0,0 +1,367 @@
+package org.ggp.base.util.propnet.factory.serializer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ggp.base.util.gdl.grammar.GdlConstant;
+import org.ggp.base.util.gdl.grammar.GdlFunction;
+import org.ggp.base.util.gdl.grammar.GdlPool;
+import org.ggp.base.util.gdl.grammar.GdlProposition;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.gdl.grammar.GdlTerm;
+import org.ggp.base.util.propnet.architecture.Component;
+import org.ggp.base.util.propnet.architecture.PropNet;
+import org.ggp.base.util.propnet.architecture.components.And;
+import org.ggp.base.util.propnet.architecture.components.Constant;
+import org.ggp.base.util.propnet.architecture.components.Not;
+import org.ggp.base.util.propnet.architecture.components.Or;
+import org.ggp.base.util.propnet.architecture.components.Proposition;
+import org.ggp.base.util.propnet.architecture.components.Transition;
+import org.ggp.base.util.statemachine.Role;
+
+
+/**
+ * PropNetSerializer writes a PropNet in a compact binary form and reads it
+ * back, which is much smaller and faster than Java serialization of the
+ * component graph.
+ *
+ * The form is: a header, the table of constants used by the roles and the
+ * proposition names, the roles, the type of every component (with the name
+ * of each proposition, structurally encoded against the constant table),
+ * and then the outputs of every component as component numbers. Integers
+ * are written as variable-length quantities.
+ *
+ * Base, input, legal, goal, init and terminal propositions are not stored,
+ * since the PropNet constructor finds them again from the proposition names.
+ * Proposition values, types and indices are state of the machine using the
+ * PropNet, and are not stored either.
+ */
+public final class PropNetSerializer
+{
+	private static final int MAGIC = 0x504e4554; // "PNET"
+	/** The version of the format, which changes whenever the format does. */
+	public static final int VERSION = 1;
+
+	private static final int PROPOSITION = 0;
+	private static final int AND = 1;
+	private static final int OR = 2;
+	private static final int NOT = 3;
+	private static final int TRANSITION = 4;
+	private static final int TRUE = 5;
+	private static final int FALSE = 6;
+
+	private PropNetSerializer()
+	{
+	}
+
+	public static void write(PropNet propNet, OutputStream out) throws IOException
+	{
+		List<Component> components = new ArrayList<Component>(propNet.getComponents());
+		Map<Component, Integer> componentIds = new HashMap<Component, Integer>();
+		for (int i = 0; i < components.size(); i++)
+		{
+			componentIds.put(components.get(i), i);
+		}
+
+		Map<GdlConstant, Integer> constantIds = new LinkedHashMap<GdlConstant, Integer>();
+		for (Role role : propNet.getRoles())
+		{
+			recordConstant(role.getName(), constantIds);
+		}
+		for (Proposition proposition : propNet.getPropositions())
+		{
+			recordConstants(proposition.getName(), constantIds);
+		}
+
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		writeInt(data, constantIds.size());
+		for (GdlConstant constant : constantIds.keySet())
+		{
+			data.writeUTF(constant.getValue());
+		}
+		writeInt(data, propNet.getRoles().size());
+		for (Role role : propNet.getRoles())
+		{
+			writeInt(data, constantIds.get(role.getName()));
+		}
+
+		writeInt(data, components.size());
+		for (Component component : components)
+		{
+			if (component instanceof Proposition)
+			{
+				writeInt(data, PROPOSITION);
+				writeSentence(data, ((Proposition) component).getName(), constantIds);
+			}
+			else if (component instanceof And)
+			{
+				writeInt(data, AND);
+			}
+			else if (component instanceof Or)
+			{
+				writeInt(data, OR);
+			}
+			else if (component instanceof Not)
+			{
+				writeInt(data, NOT);
+			}
+			else if (component instanceof Transition)
+			{
+				writeInt(data, TRANSITION);
+			}
+			else if (component instanceof Constant)
+			{
+				writeInt(data, component.getValue() ? TRUE : FALSE);
+			}
+			else
+			{
+				throw new IOException("Cannot serialize component of type " + component.getClass().getName());
+			}
+		}
+		for (Component component : components)
+		{
+			writeInt(data, component.getOutputs().size());
+			for (Component output : component.getOutputs())
+			{
+				writeInt(data, componentIds.get(output));
+			}
+		}
+		data.flush();
+	}
+
+	/**
+	 * Reads a PropNet written by {@link #write(PropNet, OutputStream)}.
+	 *
+	 * @throws IOException if the stream ends early or was not written in
+	 * this version of the format.
+	 */
+	public static PropNet read(InputStream in) throws IOException
+	{
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC || data.readInt() != VERSION)
+		{
+			throw new IOException("Not a serialized PropNet of version " + VERSION);
+		}
+		GdlConstant[] constants = new GdlConstant[readInt(data)];
+		for (int i = 0; i < constants.length; i++)
+		{
+			constants[i] = GdlPool.getConstant(data.readUTF());
+		}
+		int numRoles = readInt(data);
+		List<Role> roles = new ArrayList<Role>(numRoles);
+		for (int i = 0; i < numRoles; i++)
+		{
+			roles.add(new Role(readConstant(data, constants)));
+		}
+
+		Component[] components = new Component[readInt(data)];
+		for (int i = 0; i < components.length; i++)
+		{
+			int type = readInt(data);
+			switch (type)
+			{
+			case PROPOSITION:
+				components[i] = new Proposition(readSentence(data, constants));
+				break;
+			case AND:
+				components[i] = new And();
+				break;
+			case OR:
+				components[i] = new Or();
+				break;
+			case NOT:
+				components[i] = new Not();
+				break;
+			case TRANSITION:
+				components[i] = new Transition();
+				break;
+			case TRUE:
+			case FALSE:
+				components[i] = new Constant(type == TRUE);
+				break;
+			default:
+				throw new IOException("Unknown component type " + type);
+			}
+		}
+		for (Component component : components)
+		{
+			int numOutputs = readInt(data);
+			for (int i = 0; i < numOutputs; i++)
+			{
+				Component output = components[readIndex(data, components.length)];
+				component.addOutput(output);
+				output.addInput(component);
+			}
+		}
+
+		Set<Component> componentSet = new HashSet<Component>(components.length * 2);
+		for (Component component : components)
+		{
+			componentSet.add(component);
+		}
+		return new PropNet(roles, componentSet);
+	}
+
+	private static void recordConstants(GdlSentence sentence, Map<GdlConstant, Integer> constantIds)
+	{
+		recordConstant(sentence.getName(), constantIds);
+		for (int i = 0; i < sentence.arity(); i++)
+		{
+			recordConstants(sentence.get(i), constantIds);
+		}
+	}
+
+	private static void recordConstants(GdlTerm term, Map<GdlConstant, Integer> constantIds)
+	{
+		if (term instanceof GdlFunction)
+		{
+			GdlFunction function = (GdlFunction) term;
+			recordConstant(function.getName(), constantIds);
+			for (int i = 0; i < function.arity(); i++)
+			{
+				recordConstants(function.get(i), constantIds);
+			}
+		}
+		else if (term instanceof GdlConstant)
+		{
+			recordConstant((GdlConstant) term, constantIds);
+		}
+	}
+
+	private static void recordConstant(GdlConstant constant, Map<GdlConstant, Integer> constantIds)
+	{
+		if (!constantIds.containsKey(constant))
+		{
+			constantIds.put(constant, constantIds.size());
+		}
+	}
+
+	// A sentence is its name and its arity plus one, or zero for a proposition.
+	private static void writeSentence(DataOutputStream data, GdlSentence sentence, Map<GdlConstant, Integer> constantIds) throws IOException
+	{
+		writeInt(data, constantIds.get(sentence.getName()));
+		if (sentence instanceof GdlProposition)
+		{
+			writeInt(data, 0);
+			return;
+		}
+		writeInt(data, sentence.arity() + 1);
+		for (int i = 0; i < sentence.arity(); i++)
+		{
+			writeTerm(data, sentence.get(i), constantIds);
+		}
+	}
+
+	// A constant is its number shifted left; a function sets the low bit and is followed by its arity and arguments.
+	private static void writeTerm(DataOutputStream data, GdlTerm term, Map<GdlConstant, Integer> constantIds) throws IOException
+	{
+		if (term instanceof GdlConstant)
+		{
+			writeInt(data, constantIds.get(term) << 1);
+		}
+		else if (term instanceof GdlFunction)
+		{
+			GdlFunction function = (GdlFunction) term;
+			writeInt(data, (constantIds.get(function.getName()) << 1) | 1);
+			writeInt(data, function.arity());
+			for (int i = 0; i < function.arity(); i++)
+			{
+				writeTerm(data, function.get(i), constantIds);
+			}
+		}
+		else
+		{
+			throw new IOException("Cannot serialize the non-ground term " + term);
+		}
+	}
+
+	private static GdlSentence readSentence(DataInputStream data, GdlConstant[] constants) throws IOException
+	{
+		GdlConstant name = readConstant(data, constants);
+		int arity = readInt(data) - 1;
+		if (arity < 0)
+		{
+			return GdlPool.getProposition(name);
+		}
+		List<GdlTerm> body = new ArrayList<GdlTerm>(arity);
+		for (int i = 0; i < arity; i++)
+		{
+			body.add(readTerm(data, constants));
+		}
+		return GdlPool.getRelation(name, body);
+	}
+
+	private static GdlTerm readTerm(DataInputStream data, GdlConstant[] constants) throws IOException
+	{
+		int code = readInt(data);
+		GdlConstant constant = constants[checkIndex(code >>> 1, constants.length)];
+		if ((code & 1) == 0)
+		{
+			return constant;
+		}
+		int arity = readInt(data);
+		List<GdlTerm> body = new ArrayList<GdlTerm>(arity);
+		for (int i = 0; i < arity; i++)
+		{
+			body.add(readTerm(data, constants));
+		}
+		return GdlPool.getFunction(constant, body);
+	}
+
+	private static GdlConstant readConstant(DataInputStream data, GdlConstant[] constants) throws IOException
+	{
+		return constants[readIndex(data, constants.length)];
+	}
+
+	private static int readIndex(DataInputStream data, int size) throws IOException
+	{
+		return checkIndex(readInt(data), size);
+	}
+
+	private static int checkIndex(int index, int size) throws IOException
+	{
+		if (index < 0 || index >= size)
+		{
+			throw new IOException("Index " + index + " out of range");
+		}
+		return index;
+	}
+
+	// Non-negative integers, seven bits at a time, low bits first.
+	private static void writeInt(DataOutputStream data, int value) throws IOException
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			data.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		data.writeByte(value);
+	}
+
+	private static int readInt(DataInputStream data) throws IOException
+	{
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7)
+		{
+			int b = data.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new IOException("Malformed integer");
+	}
+}
@@ -2,6 +2,7 @@ package org.ggp.base.util.prover.aima;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -40,20 +41,116 @@ public final class AimaProver implements Prover
 
 	private final ProverCache fixedAnswerCache = ProverCache.createMultiThreadedCache();
 
+	/** The relations whose answers can depend on does sentences */
+	private final Set<GdlConstant> moveDependentNames;
+
+	/**
+	 * A set of context sentences, usually the contents of a state, along with
+	 * the answers found for it so far. Queries asked with the same context
+	 * share those answers, so asking for the legal moves, goals and
+	 * terminality of one state only derives the view predicates they have in
+	 * common once.
+	 *
+	 * A context with moves added shares the answers that do not depend on
+	 * the moves with the context it was made from.
+	 *
+	 * Contexts are not thread-safe.
+	 */
+	public static final class Context
+	{
+		private final Set<GdlSentence> sentences;
+		private final KnowledgeBase knowledgeBase;
+		private final ProverCache stateCache;
+		private final ProverCache moveCache;
+
+		private Context(Set<GdlSentence> sentences, ProverCache stateCache)
+		{
+			this.sentences = sentences;
+			this.knowledgeBase = new KnowledgeBase(sentences);
+			this.stateCache = stateCache;
+			this.moveCache = ProverCache.createSingleThreadedCache();
+		}
+
+		/**
+		 * Returns a context that also contains the given sentences, which
+		 * should be does sentences.
+		 */
+		public Context withMoves(Set<GdlSentence> moves)
+		{
+			Set<GdlSentence> combined = new HashSet<GdlSentence>(sentences);
+			combined.addAll(moves);
+			return new Context(combined, stateCache);
+		}
+	}
+
 	public AimaProver(List<Gdl> description)
 	{
 		description = DistinctAndNotMover.run(description);
 		knowledgeBase = new KnowledgeBase(Sets.newHashSet(description));
+		moveDependentNames = getMoveDependentNames(description);
+	}
+
+	public static Context createContext(Set<GdlSentence> sentences)
+	{
+		return new Context(sentences, ProverCache.createSingleThreadedCache());
+	}
+
+	private static Set<GdlConstant> getMoveDependentNames(List<Gdl> description)
+	{
+		Set<GdlConstant> names = new HashSet<GdlConstant>();
+		names.add(GdlPool.DOES);
+		boolean changed = true;
+		while (changed)
+		{
+			changed = false;
+			for (Gdl gdl : description)
+			{
+				if (gdl instanceof GdlRule)
+				{
+					GdlRule rule = (GdlRule) gdl;
+					if (!names.contains(rule.getHead().getName()) && dependsOnAny(rule.getBody(), names))
+					{
+						names.add(rule.getHead().getName());
+						changed = true;
+					}
+				}
+			}
+		}
+		return names;
+	}
+
+	private static boolean dependsOnAny(List<GdlLiteral> literals, Set<GdlConstant> names)
+	{
+		for (GdlLiteral literal : literals)
+		{
+			if (literal instanceof GdlSentence && names.contains(((GdlSentence) literal).getName()))
+			{
+				return true;
+			}
+			else if (literal instanceof GdlNot && dependsOnAny(Collections.singletonList(((GdlNot) literal).getBody()), names))
+			{
+				return true;
+			}
+			else if (literal instanceof GdlOr && dependsOnAny(((GdlOr) literal).getDisjuncts(), names))
+			{
+				return true;
+			}
+		}
+		return false;
 	}
 
 	private Set<GdlSentence> ask(GdlSentence query, Set<GdlSentence> context, boolean askOne)
+	{
+		return ask(query, createContext(context), askOne);
+	}
+
+	private Set<GdlSentence> ask(GdlSentence query, Context context, boolean askOne)
 	{
 		LinkedList<GdlLiteral> goals = new LinkedList<GdlLiteral>();
 		goals.add(query);
 
 		Set<Substitution> answers = new HashSet<Substitution>();
-		ask(goals, new KnowledgeBase(context), new Substitution(), ProverCache.createSingleThreadedCache(),
-				new VariableRenamer(), askOne, answers, new RecursionHandler(), new IsConstant());
+		ask(goals, context, new Substitution(), new VariableRenamer(), askOne, answers, new RecursionHandler(), new IsConstant());
 
 		Set<GdlSentence> results = new HashSet<GdlSentence>();
 		for (Substitution theta : answers)
@@ -64,7 +161,7 @@ public final class AimaProver implements Prover
 		return results;
 	}
 
-	private void ask(LinkedList<GdlLiteral> goals, KnowledgeBase context, Substitution theta, ProverCache cache, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler, IsConstant isConstant)
+	private void ask(LinkedList<GdlLiteral> goals, Context context, Substitution theta, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler, IsConstant isConstant)
 	{
 		if (goals.size() == 0)
 		{
@@ -80,22 +177,22 @@ public final class AimaProver implements Prover
 			if (qPrime instanceof GdlDistinct)
 			{
 				GdlDistinct distinct = (GdlDistinct) qPrime;
-				askDistinct(distinct, goals, context, theta, cache, renamer, askOne, results, recursionHandler, isConstant);
+				askDistinct(distinct, goals, context, theta, renamer, askOne, results, recursionHandler, isConstant);
 			}
 			else if (qPrime instanceof GdlNot)
 			{
 				GdlNot not = (GdlNot) qPrime;
-				askNot(not, goals, context, theta, cache, renamer, askOne, results, recursionHandler, isConstant);
+				askNot(not, goals, context, theta, renamer, askOne, results, recursionHandler, isConstant);
 			}
 			else if (qPrime instanceof GdlOr)
 			{
 				GdlOr or = (GdlOr) qPrime;
-				askOr(or, goals, context, theta, cache, renamer, askOne, results, recursionHandler, isConstant);
+				askOr(or, goals, context, theta, renamer, askOne, results, recursionHandler, isConstant);
 			}
 			else
 			{
 				GdlSentence sentence = (GdlSentence) qPrime;
-				askSentence(sentence, goals, context, theta, cache, renamer, askOne, results, recursionHandler, isConstant);
+				askSentence(sentence, goals, context, theta, renamer, askOne, results, recursionHandler, isConstant);
 			}
 
 			goals.addFirst(literal);
@@ -108,29 +205,38 @@ public final class AimaProver implements Prover
 		return ask(query, context, false);
 	}
 
-	private void askDistinct(GdlDistinct distinct, LinkedList<GdlLiteral> goals, KnowledgeBase context, Substitution theta, ProverCache cache, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler, IsConstant isConstant)
+	/**
+	 * Like {@link #askAll(GdlSentence, Set)}, reusing and adding to the
+	 * answers already found for the given context.
+	 */
+	public Set<GdlSentence> askAll(GdlSentence query, Context context)
+	{
+		return ask(query, context, false);
+	}
+
+	private void askDistinct(GdlDistinct distinct, LinkedList<GdlLiteral> goals, Context context, Substitution theta, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler, IsConstant isConstant)
 	{
 		if (!distinct.getArg1().equals(distinct.getArg2()))
 		{
-			ask(goals, context, theta, cache, renamer, askOne, results, recursionHandler, isConstant);
+			ask(goals, context, theta, renamer, askOne, results, recursionHandler, isConstant);
 		} else {
 			isConstant.value = true;
 		}
 	}
 
-	private void askNot(GdlNot not, LinkedList<GdlLiteral> goals, KnowledgeBase context, Substitution theta, ProverCache cache, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler, IsConstant isConstantRet)
+	private void askNot(GdlNot not, LinkedList<GdlLiteral> goals, Context context, Substitution theta, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler, IsConstant isConstantRet)
 	{
 		LinkedList<GdlLiteral> notGoals = new LinkedList<GdlLiteral>();
 		notGoals.add(not.getBody());
 
 		Set<Substitution> notResults = new HashSet<Substitution>();
 		boolean isConstant = true;
-		ask(notGoals, context, theta, cache, renamer, true, notResults, recursionHandler, isConstantRet);
+		ask(notGoals, context, theta, renamer, true, notResults, recursionHandler, isConstantRet);
 		isConstant &= isConstantRet.value;
 
 		if (notResults.size() == 0)
 		{
-			ask(goals, context, theta, cache, renamer, askOne, results, recursionHandler, isConstantRet);
+			ask(goals, context, theta, renamer, askOne, results, recursionHandler, isConstantRet);
 			isConstant &= isConstantRet.value;
 		}
 		isConstantRet.value = isConstant;
@@ -143,13 +249,13 @@ public final class AimaProver implements Prover
 		return (results.size() > 0) ? results.iterator().next() : null;
 	}
 
-	private void askOr(GdlOr or, LinkedList<GdlLiteral> goals, KnowledgeBase context, Substitution theta, ProverCache cache, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler, IsConstant isConstantRet)
+	private void askOr(GdlOr or, LinkedList<GdlLiteral> goals, Context context, Substitution theta, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler, IsConstant isConstantRet)
 	{
 		boolean isConstant = true;
 		for (int i = 0; i < or.arity(); i++)
 		{
 			goals.addFirst(or.get(i));
-			ask(goals, context, theta, cache, renamer, askOne, results, recursionHandler, isConstantRet);
+			ask(goals, context, theta, renamer, askOne, results, recursionHandler, isConstantRet);
 			isConstant &= isConstantRet.value;
 			goals.removeFirst();
 
@@ -161,15 +267,15 @@ public final class AimaProver implements Prover
 		isConstantRet.value = isConstant;
 	}
 
-	private void askSentence(GdlSentence sentence, LinkedList<GdlLiteral> goals, KnowledgeBase context, Substitution theta, ProverCache cache, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler,
+	private void askSentence(GdlSentence sentence, LinkedList<GdlLiteral> goals, Context context, Substitution theta, VariableRenamer renamer, boolean askOne, Set<Substitution> results, RecursionHandler recursionHandler,
 			IsConstant isConstantRet) {
 		Collection<Substitution> sentenceResults = findSentenceResults(sentence,
-				context, theta, cache, renamer, recursionHandler, isConstantRet);
+				context, theta, renamer, recursionHandler, isConstantRet);
 
 		boolean isConstant = isConstantRet.value;
 		for (Substitution thetaPrime : sentenceResults)
 		{
-			ask(goals, context, theta.compose(thetaPrime), cache, renamer, askOne, results, recursionHandler, isConstantRet);
+			ask(goals, context, theta.compose(thetaPrime), renamer, askOne, results, recursionHandler, isConstantRet);
 			isConstant &= isConstantRet.value;
 			if (askOne && (results.size() > 0))
 			{
@@ -180,10 +286,11 @@ public final class AimaProver implements Prover
 	}
 
 	private Collection<Substitution> findSentenceResults(GdlSentence sentence,
-			KnowledgeBase context, Substitution theta,
-			ProverCache cache, VariableRenamer renamer, RecursionHandler recursionHandler,
+			Context context, Substitution theta,
+			VariableRenamer renamer, RecursionHandler recursionHandler,
 			IsConstant isConstantRet) {
 		GdlSentence varRenamedSentence = new VariableRenamer().rename(sentence);
+		ProverCache cache = moveDependentNames.contains(sentence.getName()) ? context.moveCache : context.stateCache;
 		if (!fixedAnswerCache.contains(varRenamedSentence) && !cache.contains(varRenamedSentence))
 		{
 			if (recursionHandler.alreadyAsking.contains(varRenamedSentence)) {
@@ -200,7 +307,7 @@ public final class AimaProver implements Prover
 			recursionHandler.alreadyAsking.add(varRenamedSentence);
 			List<GdlRule> candidates = new ArrayList<GdlRule>();
 			candidates.addAll(knowledgeBase.fetch(sentence));
-			candidates.addAll(context.fetch(sentence));
+			candidates.addAll(context.knowledgeBase.fetch(sentence));
 			boolean isConstant = !isTrueOrDoesSentence(sentence);
 
 			Set<Substitution> sentenceResults = new HashSet<Substitution>();
@@ -217,7 +324,7 @@ public final class AimaProver implements Prover
 						sentenceGoals.add(r.get(i));
 					}
 
-					ask(sentenceGoals, context, theta.compose(thetaPrime), cache, renamer, false, sentenceResults, recursionHandler, isConstantRet);
+					ask(sentenceGoals, context, theta.compose(thetaPrime), renamer, false, sentenceResults, recursionHandler, isConstantRet);
 					isConstant &= isConstantRet.value;
 				}
 			}
@@ -242,7 +349,7 @@ public final class AimaProver implements Prover
 								sentenceGoals.add(r.get(i));
 							}
 
-							ask(sentenceGoals, context, theta.compose(thetaPrime), cache, renamer, false, sentenceResults, recursionHandler, isConstantRet);
+							ask(sentenceGoals, context, theta.compose(thetaPrime), renamer, false, sentenceResults, recursionHandler, isConstantRet);
 							isConstant &= isConstantRet.value;
 						}
 					}
@@ -303,6 +410,15 @@ public final class AimaProver implements Prover
 		return askOne(query, context) != null;
 	}
 
+	/**
+	 * Like {@link #prove(GdlSentence, Set)}, reusing and adding to the
+	 * answers already found for the given context.
+	 */
+	public boolean prove(GdlSentence query, Context context)
+	{
+		return !ask(query, context, true).isEmpty();
+	}
+
 	/*
 	 * Mutable value holder; gets modified by methods it's passed to, as a kind of
 	 * additional return value. Tracks whether queries involve "true" or "does" sentences;
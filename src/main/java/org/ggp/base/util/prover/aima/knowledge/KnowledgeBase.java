@@ -2,48 +2,172 @@ package org.ggp.base.util.prover.aima.knowledge;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.ggp.base.util.gdl.grammar.Gdl;
 import org.ggp.base.util.gdl.grammar.GdlConstant;
+import org.ggp.base.util.gdl.grammar.GdlFunction;
 import org.ggp.base.util.gdl.grammar.GdlPool;
 import org.ggp.base.util.gdl.grammar.GdlRule;
 import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.gdl.grammar.GdlTerm;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
+
+/**
+ * The rules of a game, or the sentences of a context, indexed by the name of
+ * their heads and then by the first argument of their heads.
+ *
+ * A KnowledgeBase is immutable once built, so any number of threads can
+ * fetch from it without locking.
+ */
 public final class KnowledgeBase
 {
-	private final Map<GdlConstant, List<GdlRule>> contents;
+	private final ImmutableMap<GdlConstant, RelationIndex> contents;
+
+	/**
+	 * The rules for one relation. Rules whose head has a variable as its
+	 * first argument can unify with any query, so they are included in
+	 * every list, in the order the rules were given.
+	 */
+	private static final class RelationIndex
+	{
+		private final ImmutableList<GdlRule> all;
+		private final ImmutableList<GdlRule> variableFirst;
+		// Rules whose head starts with the given constant
+		private final ImmutableMap<GdlConstant, ImmutableList<GdlRule>> byConstant;
+		// Rules whose head starts with a function of the given name
+		private final ImmutableMap<GdlConstant, ImmutableList<GdlRule>> byFunction;
+
+		private RelationIndex(List<GdlRule> rules)
+		{
+			Set<GdlConstant> constants = new LinkedHashSet<GdlConstant>();
+			Set<GdlConstant> functions = new LinkedHashSet<GdlConstant>();
+			for (GdlRule rule : rules)
+			{
+				GdlTerm first = getFirstArgument(rule.getHead());
+				if (first instanceof GdlConstant)
+				{
+					constants.add((GdlConstant) first);
+				}
+				else if (first instanceof GdlFunction)
+				{
+					functions.add(((GdlFunction) first).getName());
+				}
+			}
+
+			ImmutableList.Builder<GdlRule> variableFirst = ImmutableList.builder();
+			for (GdlRule rule : rules)
+			{
+				if (getFirstArgument(rule.getHead()) == null)
+				{
+					variableFirst.add(rule);
+				}
+			}
+			ImmutableMap.Builder<GdlConstant, ImmutableList<GdlRule>> byConstant = ImmutableMap.builder();
+			for (GdlConstant constant : constants)
+			{
+				byConstant.put(constant, select(rules, constant, false));
+			}
+			ImmutableMap.Builder<GdlConstant, ImmutableList<GdlRule>> byFunction = ImmutableMap.builder();
+			for (GdlConstant function : functions)
+			{
+				byFunction.put(function, select(rules, function, true));
+			}
+
+			this.all = ImmutableList.copyOf(rules);
+			this.variableFirst = variableFirst.build();
+			this.byConstant = byConstant.build();
+			this.byFunction = byFunction.build();
+		}
+
+		private static ImmutableList<GdlRule> select(List<GdlRule> rules, GdlConstant name, boolean function)
+		{
+			ImmutableList.Builder<GdlRule> selected = ImmutableList.builder();
+			for (GdlRule rule : rules)
+			{
+				GdlTerm first = getFirstArgument(rule.getHead());
+				if (first == null
+						|| (!function && first == name)
+						|| (function && first instanceof GdlFunction && ((GdlFunction) first).getName() == name))
+				{
+					selected.add(rule);
+				}
+			}
+			return selected.build();
+		}
+
+		private List<GdlRule> fetch(GdlSentence sentence)
+		{
+			GdlTerm first = getFirstArgument(sentence);
+			if (first instanceof GdlConstant)
+			{
+				List<GdlRule> rules = byConstant.get(first);
+				return (rules != null) ? rules : variableFirst;
+			}
+			else if (first instanceof GdlFunction)
+			{
+				List<GdlRule> rules = byFunction.get(((GdlFunction) first).getName());
+				return (rules != null) ? rules : variableFirst;
+			}
+			return all;
+		}
+	}
 
 	public KnowledgeBase(Set<? extends Gdl> description)
 	{
-		contents = new HashMap<GdlConstant, List<GdlRule>>();
+		Map<GdlConstant, List<GdlRule>> rules = new HashMap<GdlConstant, List<GdlRule>>();
 		for (Gdl gdl : description)
 		{
 			GdlRule rule = (gdl instanceof GdlRule) ? (GdlRule) gdl : GdlPool.getRule((GdlSentence) gdl);
 			GdlConstant key = rule.getHead().getName();
 
-			if (!contents.containsKey(key))
+			if (!rules.containsKey(key))
 			{
-				contents.put(key, new ArrayList<GdlRule>());
+				rules.put(key, new ArrayList<GdlRule>());
 			}
-			contents.get(key).add(rule);
+			rules.get(key).add(rule);
+		}
+
+		ImmutableMap.Builder<GdlConstant, RelationIndex> contents = ImmutableMap.builder();
+		for (Map.Entry<GdlConstant, List<GdlRule>> entry : rules.entrySet())
+		{
+			contents.put(entry.getKey(), new RelationIndex(entry.getValue()));
 		}
+		this.contents = contents.build();
 	}
 
-	public synchronized List<GdlRule> fetch(GdlSentence sentence)
+	/**
+	 * Returns the rules whose heads might unify with the given sentence.
+	 * Rules whose heads cannot, because the first arguments are different
+	 * constants or functions, are left out.
+	 */
+	public List<GdlRule> fetch(GdlSentence sentence)
 	{
-		GdlConstant key = sentence.getName();
-
-		if (contents.containsKey(key))
+		RelationIndex index = contents.get(sentence.getName());
+		if (index == null)
 		{
-			return contents.get(key);
+			return ImmutableList.of();
 		}
-		else
+		return index.fetch(sentence);
+	}
+
+	/**
+	 * Returns the first argument of the sentence if it is a constant or a
+	 * function, or null if it is a variable or there are no arguments.
+	 */
+	private static GdlTerm getFirstArgument(GdlSentence sentence)
+	{
+		if (sentence.arity() == 0)
 		{
-			return new ArrayList<GdlRule>();
+			return null;
 		}
+		GdlTerm first = sentence.get(0);
+		return (first instanceof GdlConstant || first instanceof GdlFunction) ? first : null;
 	}
-}
\ No newline at end of file
+}
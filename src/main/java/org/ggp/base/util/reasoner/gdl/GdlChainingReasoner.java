@@ -1,9 +1,14 @@
 package org.ggp.base.util.reasoner.gdl;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.ggp.base.util.concurrency.ConcurrencyUtils;
 import org.ggp.base.util.gdl.GdlUtils;
@@ -25,20 +30,34 @@ import org.ggp.base.util.gdl.model.assignments.AssignmentIterator;
 import org.ggp.base.util.gdl.model.assignments.Assignments;
 import org.ggp.base.util.gdl.model.assignments.AssignmentsImpl;
 import org.ggp.base.util.gdl.model.assignments.FunctionInfo;
+import org.ggp.base.util.gdl.model.assignments.IterationOrderCandidate;
 import org.ggp.base.util.gdl.transforms.CommonTransforms;
 import org.ggp.base.util.reasoner.DifferentialForwardChainingReasoner;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.SetMultimap;
 
 /**
  * An implementation of a ForwardChainingReasoner that uses Gdl objects
  * directly and allows for differential processing of rules.
+ *
+ * The sentence forms of rule heads and literals, the variable domains of
+ * rules under the model the reasoner was created with, and the order in
+ * which to assign each rule's variables are cached the first time they are
+ * needed, since the same rules are usually run many times. The reasoner may
+ * be shared between threads.
  */
 public class GdlChainingReasoner implements
 		DifferentialForwardChainingReasoner<GdlRule, GdlSentenceSet> {
 	private final SentenceFormModel model;
 	private final ImmutableMultimap<SentenceForm, GdlSentence> constants;
+	private final ConcurrentMap<GdlSentence, SentenceForm> formCache = new ConcurrentHashMap<GdlSentence, SentenceForm>();
+	private final ConcurrentMap<GdlRule, Map<GdlVariable, Set<GdlConstant>>> varDomainsCache =
+			new ConcurrentHashMap<GdlRule, Map<GdlVariable, Set<GdlConstant>>>();
+	private final ConcurrentMap<List<Object>, IterationOrderCandidate> iterationOrderCache =
+			new ConcurrentHashMap<List<Object>, IterationOrderCandidate>();
 
 	private GdlChainingReasoner(SentenceFormModel model, ImmutableMultimap<SentenceForm, GdlSentence> constants) {
 		this.model = model;
@@ -63,12 +82,14 @@ public class GdlChainingReasoner implements
 			SentenceDomainModel domainModel,
 			GdlSentenceSet sentencesSoFar) throws InterruptedException {
 		ConcurrencyUtils.checkForInterruption();
-		SentenceForm headForm = model.getSentenceForm(rule.getHead());
-		Map<GdlVariable, Set<GdlConstant>> varDomains = SentenceDomainModels.getVarDomains(rule, domainModel, VarDomainOpts.INCLUDE_HEAD);
+		SentenceForm headForm = getForm(rule.getHead());
+		Map<GdlVariable, Set<GdlConstant>> varDomains = getVarDomains(rule, domainModel);
 		Map<SentenceForm, ? extends FunctionInfo> functionInfoMap = sentencesSoFar.getFunctionInfo();
 		Map<SentenceForm, ? extends Collection<GdlSentence>> completedSentenceFormValues = sentencesSoFar.getSentences().asMap();
 
-		AssignmentsImpl assignments = new AssignmentsImpl(rule, varDomains, functionInfoMap, completedSentenceFormValues);
+		Map<GdlVariable, GdlConstant> noPreassignments = Collections.emptyMap();
+		AssignmentsImpl assignments = new AssignmentsImpl(noPreassignments, rule, varDomains, functionInfoMap, completedSentenceFormValues,
+				getIterationOrder(noPreassignments, rule, varDomains, functionInfoMap, completedSentenceFormValues));
 		AssignmentIterator asnItr = assignments.getIterator();
 		GdlSentenceSet sentencesToAdd = GdlSentenceSet.create();
 		while (asnItr.hasNext()) {
@@ -120,17 +141,66 @@ public class GdlChainingReasoner implements
 	private boolean satisfiesSentence(Map<GdlVariable, GdlConstant> assignment,
 			GdlSentence sentence,
 			SetMultimap<SentenceForm, GdlSentence> sentencesSoFar) {
+		// Variables are only ever replaced by constants, so this keeps the literal's form
+		SentenceForm form = getForm(sentence);
 		sentence = CommonTransforms.replaceVariables(sentence, assignment);
-		SentenceForm form = model.getSentenceForm(sentence);
 		return sentencesSoFar.get(form).contains(sentence);
 	}
 
+	private SentenceForm getForm(GdlSentence sentence) {
+		SentenceForm form = formCache.get(sentence);
+		if (form == null) {
+			form = model.getSentenceForm(sentence);
+			formCache.put(sentence, form);
+		}
+		return form;
+	}
+
+	private Map<GdlVariable, Set<GdlConstant>> getVarDomains(GdlRule rule, SentenceDomainModel domainModel) {
+		if (domainModel != model) {
+			return SentenceDomainModels.getVarDomains(rule, domainModel, VarDomainOpts.INCLUDE_HEAD);
+		}
+		Map<GdlVariable, Set<GdlConstant>> varDomains = varDomainsCache.get(rule);
+		if (varDomains == null) {
+			varDomains = SentenceDomainModels.getVarDomains(rule, domainModel, VarDomainOpts.INCLUDE_HEAD);
+			varDomainsCache.put(rule, varDomains);
+		}
+		return varDomains;
+	}
+
 	private boolean satisfiesDistinct(Map<GdlVariable, GdlConstant> assignment,
 			GdlDistinct distinct) {
 		distinct = CommonTransforms.replaceVariables(distinct, assignment);
 		return distinct.getArg1() != distinct.getArg2();
 	}
 
+	/**
+	 * Returns the order in which to assign the variables of the rule. The
+	 * order can be reused as long as the same variables are preassigned and
+	 * the positive literals have the same functional slots, or no sentences
+	 * at all, which is usually the case every time the rule is run.
+	 */
+	private IterationOrderCandidate getIterationOrder(Map<GdlVariable, GdlConstant> preassignments,
+			GdlRule rule, Map<GdlVariable, Set<GdlConstant>> varDomains,
+			Map<SentenceForm, ? extends FunctionInfo> functionInfoMap,
+			Map<SentenceForm, ? extends Collection<GdlSentence>> completedSentenceFormValues) {
+		List<Object> key = new ArrayList<Object>(rule.arity() + 2);
+		key.add(rule);
+		key.add(ImmutableSet.copyOf(preassignments.keySet()));
+		for (GdlLiteral literal : rule.getBody()) {
+			if (literal instanceof GdlSentence) {
+				FunctionInfo functionInfo = functionInfoMap.get(getForm((GdlSentence) literal));
+				key.add((functionInfo == null) ? null : ImmutableList.copyOf(functionInfo.getDependentSlots()));
+			}
+		}
+		IterationOrderCandidate order = iterationOrderCache.get(key);
+		if (order == null) {
+			order = AssignmentsImpl.getBestIterationOrder(preassignments, rule, varDomains, functionInfoMap, completedSentenceFormValues);
+			iterationOrderCache.put(key, order);
+		}
+		return order;
+	}
+
 	@Override
 	public GdlSentenceSet getUnion(
 			GdlSentenceSet oldSentences,
@@ -160,7 +230,7 @@ public class GdlChainingReasoner implements
 		for (GdlLiteral literal : rule.getBody()) {
 			ConcurrencyUtils.checkForInterruption();
 			if (literal instanceof GdlSentence) {
-				SentenceForm literalForm = domainModel.getSentenceForm((GdlSentence) literal);
+				SentenceForm literalForm = getForm((GdlSentence) literal);
 				addRuleResultsForChosenLiteral(
 						rule,
 						(GdlSentence) literal,
@@ -180,15 +250,16 @@ public class GdlChainingReasoner implements
 			SentenceDomainModel domainModel,
 			GdlSentenceSet allSentences,
 			GdlSentenceSet sentencesToAdd) {
-		SentenceForm headForm = model.getSentenceForm(rule.getHead());
-		Map<GdlVariable, Set<GdlConstant>> varDomains = SentenceDomainModels.getVarDomains(rule, domainModel, VarDomainOpts.INCLUDE_HEAD);
+		SentenceForm headForm = getForm(rule.getHead());
+		Map<GdlVariable, Set<GdlConstant>> varDomains = getVarDomains(rule, domainModel);
 		Map<SentenceForm, AddibleFunctionInfo> functionInfoMap = allSentences.getFunctionInfo();
 		Map<SentenceForm, ? extends Collection<GdlSentence>> completedSentenceFormValues = allSentences.getSentences().asMap();
 
 		for (GdlSentence chosenNewSentence : chosenNewSentences) {
 			Map<GdlVariable, GdlConstant> preassignments = GdlUtils.getAssignmentMakingLeftIntoRight(chosenLiteral, chosenNewSentence);
 			if (preassignments != null) {
-				Assignments assignments = new AssignmentsImpl(preassignments, rule, varDomains, functionInfoMap, completedSentenceFormValues);
+				Assignments assignments = new AssignmentsImpl(preassignments, rule, varDomains, functionInfoMap, completedSentenceFormValues,
+						getIterationOrder(preassignments, rule, varDomains, functionInfoMap, completedSentenceFormValues));
 				AssignmentIterator asnItr = assignments.getIterator();
 				while (asnItr.hasNext()) {
 					Map<GdlVariable, GdlConstant> assignment = asnItr.next();
@@ -25,13 +25,21 @@ import com.google.common.collect.SetMultimap;
  */
 public class GdlSentenceSet {
 	private final SetMultimap<SentenceForm, GdlSentence> sentences;
-	private final Map<SentenceForm, AddibleFunctionInfo> functionInfoMap;
+	private final Map<SentenceForm, MutableFunctionInfo> functionInfoMap;
 
 	private GdlSentenceSet() {
 		this.sentences = HashMultimap.create();
 		this.functionInfoMap = Maps.newHashMap();
 	}
 
+	private GdlSentenceSet(GdlSentenceSet other) {
+		this.sentences = HashMultimap.create(other.sentences);
+		this.functionInfoMap = Maps.newHashMapWithExpectedSize(other.functionInfoMap.size());
+		for (Entry<SentenceForm, MutableFunctionInfo> entry : other.functionInfoMap.entrySet()) {
+			functionInfoMap.put(entry.getKey(), MutableFunctionInfo.copyOf(entry.getValue()));
+		}
+	}
+
 	public static GdlSentenceSet create() {
 		return new GdlSentenceSet();
 	}
@@ -42,6 +50,15 @@ public class GdlSentenceSet {
 		return result;
 	}
 
+	/**
+	 * Returns a copy of the given set that can be added to independently.
+	 * This is cheaper than creating a set from the same sentences, since the
+	 * function info is copied rather than recomputed.
+	 */
+	public static GdlSentenceSet copyOf(GdlSentenceSet other) {
+		return new GdlSentenceSet(other);
+	}
+
 	/**
 	 * Returns an unmodifiable view of the sentences in this set.
 	 * Note that this view may change if the collection is concurrently
@@ -78,6 +95,6 @@ public class GdlSentenceSet {
 	 * Returns an unmodifiable view of the function information
 	 */
 	public Map<SentenceForm, AddibleFunctionInfo> getFunctionInfo() {
-		return Collections.unmodifiableMap(functionInfoMap);
+		return Collections.<SentenceForm, AddibleFunctionInfo>unmodifiableMap(functionInfoMap);
 	}
 }
@@ -1,71 +1,173 @@
 package org.ggp.base.util.statemachine;
 
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
 
+import org.ggp.base.util.gdl.grammar.GdlSentence;
 import org.ggp.base.util.propnet.architecture.components.Proposition;
 
-public class InternalMachineState extends MachineState {
+/**
+ * A machine state of a propnet based state machine, stored as a packed bit
+ * vector over the machine's base propositions: bit i of the state is set if
+ * baseTable[i] is true. The base table is shared by every state of the same
+ * machine, so a state costs one long per 64 bases plus its header, and the
+ * hash code is computed once when the state is built.
+ *
+ * States are immutable. They are only equal to states built on the same base
+ * table, which are compared word by word.
+ */
+public final class InternalMachineState extends MachineState implements Comparable<InternalMachineState> {
+
+	private final Proposition[] baseTable;
+
+	private final long[] words;
+
+	private final int hash;
+
+	/**
+	 * Creates a state from the given words, which are not copied and must not
+	 * be modified afterwards.
+	 */
+	public InternalMachineState(Proposition[] baseTable, long[] words) {
+		this.baseTable = baseTable;
+		this.words = words;
+		this.hash = Arrays.hashCode(words);
+	}
 
-	Proposition[] bases;
+	public InternalMachineState(Proposition[] baseTable, BitSet bitMask) {
+		this(baseTable, Arrays.copyOf(bitMask.toLongArray(), getNumWords(baseTable.length)));
+	}
 
-	BitSet bitMask;
+	/**
+	 * Returns the number of longs needed to hold a state over the given
+	 * number of bases.
+	 */
+	public static int getNumWords(int numBases) {
+		return (numBases + 63) >>> 6;
+	}
 
-	public InternalMachineState(Proposition[] newBases, BitSet newBitMask) {
-		bases = newBases;
-		bitMask = newBitMask;
+	/**
+	 * Getter method.
+	 *
+	 * @return The base propositions of the machine, indexed like the bits of
+	 * this state. The array is shared and must not be modified.
+	 */
+	public Proposition[] getBaseTable() {
+		return baseTable;
 	}
 
-	public Proposition[] getBases() {
-		return bases;
+	/**
+	 * Returns the packed bits of this state. The array is shared and must not
+	 * be modified.
+	 */
+	public long[] getWords() {
+		return words;
 	}
 
-	public Proposition getBase(int index) {
-		if (index < bases.length) {
-			return bases[index];
-		}
-		else {
-			System.out.println("Error, index out of range, returning null");
-			return null;
+	/**
+	 * Returns true if the base with the given index is true in this state.
+	 */
+	public boolean get(int index) {
+		return (words[index >>> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Returns the number of true bases.
+	 */
+	public int cardinality() {
+		int count = 0;
+		for (long word : words) {
+			count += Long.bitCount(word);
 		}
+		return count;
 	}
 
+	/**
+	 * Returns a copy of the bits of this state as a BitSet.
+	 */
 	public BitSet getBitMask() {
-		return bitMask;
+		return BitSet.valueOf(words);
 	}
 
+	/**
+	 * Returns the base propositions that are true in this state, in index
+	 * order. A new array is built on every call.
+	 */
+	public Proposition[] getBases() {
+		Proposition[] bases = new Proposition[cardinality()];
+		int k = 0;
+		for (int w = 0; w < words.length; w++) {
+			long word = words[w];
+			while (word != 0) {
+				bases[k++] = baseTable[(w << 6) + Long.numberOfTrailingZeros(word)];
+				word &= word - 1;
+			}
+		}
+		return bases;
+	}
 
+	/**
+	 * Returns the sentences of the true bases. The set is built on every call,
+	 * so search code should work on the bits instead.
+	 */
+	@Override
+	public Set<GdlSentence> getContents() {
+		Set<GdlSentence> contents = new HashSet<GdlSentence>();
+		for (Proposition base : getBases()) {
+			contents.add(base.getName());
+		}
+		return contents;
+	}
+
+	/**
+	 * States are immutable, so there is nothing to copy.
+	 */
 	@Override
 	public InternalMachineState clone() {
-		return new InternalMachineState(bases.clone(), (BitSet) bitMask.clone());
+		return this;
+	}
+
+	/**
+	 * Orders states of the same base table by their words, compared as
+	 * unsigned numbers.
+	 */
+	@Override
+	public int compareTo(InternalMachineState other) {
+		int length = Math.min(words.length, other.words.length);
+		for (int w = 0; w < length; w++) {
+			if (words[w] != other.words[w]) {
+				return (words[w] + Long.MIN_VALUE) < (other.words[w] + Long.MIN_VALUE) ? -1 : 1;
+			}
+		}
+		return words.length - other.words.length;
 	}
 
 	/* Utility methods */
-    @Override
+	@Override
 	public int hashCode()
-    {
-        return bitMask.hashCode();
-    }
+	{
+		return hash;
+	}
 
-    @Override
+	@Override
 	public String toString()
-    {
-    	String str = new String();
-    	for (Proposition base : bases) {
-    		str += base.toString();
-    	}
-    	return str;
-    }
-
-    @Override
+	{
+		return getContents().toString();
+	}
+
+	@Override
 	public boolean equals(Object o)
-    {
-        if ((o != null) && (o instanceof InternalMachineState))
-        {
-            InternalMachineState state = (InternalMachineState) o;
-            return state.getBitMask().equals(bitMask);
-        }
-
-        return false;
-    }
+	{
+		if (o == this) {
+			return true;
+		}
+		if (o instanceof InternalMachineState) {
+			InternalMachineState state = (InternalMachineState) o;
+			return state.baseTable == baseTable && state.hash == hash && Arrays.equals(state.words, words);
+		}
+		return false;
+	}
 
 }
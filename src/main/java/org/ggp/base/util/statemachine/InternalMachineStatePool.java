@@ -0,0 +1,48 @@
+package org.ggp.base.util.statemachine;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An interning pool for machine states. Search trees that reach the same
+ * state along different paths can keep a single canonical instance, which
+ * saves memory and lets later lookups succeed on the identity check in
+ * {@link InternalMachineState#equals(Object)}.
+ *
+ * The pool is safe to use from several threads. It holds on to every state
+ * it is given, so it should be cleared between matches.
+ */
+public final class InternalMachineStatePool {
+
+	private final ConcurrentMap<MachineState, MachineState> states;
+
+	public InternalMachineStatePool() {
+		states = new ConcurrentHashMap<MachineState, MachineState>();
+	}
+
+	/**
+	 * Returns the canonical instance of the given state, adding the state to
+	 * the pool if it is not there yet.
+	 */
+	public InternalMachineState intern(InternalMachineState state) {
+		return (InternalMachineState) intern((MachineState) state);
+	}
+
+	/**
+	 * Returns the canonical instance of the given state. States of other
+	 * machines, such as the prover, are pooled by their contents, so a pool
+	 * should only be given the states of one machine.
+	 */
+	public MachineState intern(MachineState state) {
+		MachineState canonical = states.putIfAbsent(state, state);
+		return (canonical == null) ? state : canonical;
+	}
+
+	public int size() {
+		return states.size();
+	}
+
+	public void clear() {
+		states.clear();
+	}
+}
@@ -377,19 +377,64 @@ public abstract class StateMachine
         return state;
     }
 
+    /**
+     * Plays random joint moves from the given state until reaching the end of
+     * the game, and writes the goal value of every role in the terminal state
+     * into theGoals, in the order of getRoles(). The given state is not
+     * modified.
+     * <p>
+     * Unlike performDepthCharge, this does not hand back the terminal state,
+     * so implementations are free to run the whole playout on internal
+     * buffers without building moves, joint moves or intermediate states.
+     * This version goes through the regular move and transition methods.
+     *
+     * @param theGoals an array with at least one element per role.
+     * @return the number of state changes that were made to reach a terminal
+     * state.
+     */
+    public int performDepthChargeForGoals(MachineState state, final int[] theGoals) throws TransitionDefinitionException, MoveDefinitionException, GoalDefinitionException {
+        return performDepthChargeForGoals(state, theGoals, Long.MAX_VALUE);
+    }
+
+    /**
+     * Like performDepthChargeForGoals, but checks the deadline and the
+     * interrupt flag of the current thread before every state change, and
+     * stops the charge once either is hit.
+     *
+     * @param deadline the time, in milliseconds, at which to stop.
+     * @return the number of state changes that were made to reach a terminal
+     * state, or -1 if the charge was stopped, in which case theGoals is left
+     * unchanged.
+     */
+    public int performDepthChargeForGoals(MachineState state, final int[] theGoals, long deadline) throws TransitionDefinitionException, MoveDefinitionException, GoalDefinitionException {
+        int nDepth = 0;
+        state = state.clone();
+        while(!isTerminal(state)) {
+            if (System.currentTimeMillis() >= deadline || Thread.currentThread().isInterrupted()) {
+                return -1;
+            }
+            nDepth++;
+            state = getNextStateDestructively(state, getRandomJointMove(state));
+        }
+        List<Role> roles = getRoles();
+        for (int i = 0; i < roles.size(); i++) {
+            theGoals[i] = getGoal(state, roles.get(i));
+        }
+        return nDepth;
+    }
+
     public void getAverageDiscountedScoresFromRepeatedDepthCharges(final MachineState state, final double[] avgScores, final double[] avgDepth, final double discountFactor, final int repetitions) throws TransitionDefinitionException, MoveDefinitionException, GoalDefinitionException {
     	avgDepth[0] = 0;
     	for (int j = 0; j < avgScores.length; j++) {
     		avgScores[j] = 0;
     	}
-    	final int[] depth = new int[1];
+    	final int[] goals = new int[getRoles().size()];
     	for (int i = 0; i < repetitions; i++) {
-    		MachineState stateForCharge = state.clone();
-    		stateForCharge = performDepthCharge(stateForCharge, depth);
-    		avgDepth[0] += depth[0];
-    		final double accumulatedDiscountFactor = Math.pow(discountFactor, depth[0]);
+    		int depth = performDepthChargeForGoals(state, goals);
+    		avgDepth[0] += depth;
+    		final double accumulatedDiscountFactor = Math.pow(discountFactor, depth);
     		for (int j = 0; j < avgScores.length; j++) {
-    			avgScores[j] += getGoal(stateForCharge, getRoles().get(j)) * accumulatedDiscountFactor;
+    			avgScores[j] += goals[j] * accumulatedDiscountFactor;
     		}
     	}
     	avgDepth[0] /= repetitions;
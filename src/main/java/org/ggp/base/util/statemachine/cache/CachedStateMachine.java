@@ -9,16 +9,26 @@ import org.ggp.base.util.statemachine.MachineState;
 import org.ggp.base.util.statemachine.Move;
 import org.ggp.base.util.statemachine.Role;
 import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.cache.ConcurrentStateCache.EvictionPolicy;
 import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
 import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
 import org.ggp.base.util.statemachine.exceptions.TransitionDefinitionException;
 
 import com.google.common.collect.ImmutableList;
 
+/**
+ * A state machine that remembers the answers of its backing state machine
+ * for recently seen states. The cache is bounded and sharded, so it is safe
+ * and cheap to share between search threads; states that have not been used
+ * since the previous move are also dropped by doPerMoveWork.
+ */
 public final class CachedStateMachine extends StateMachine
 {
+	/** The number of states cached when no budget is given. */
+	public static final int DEFAULT_MAX_ENTRIES = 1 << 18;
+
 	private final StateMachine backingStateMachine;
-	private final TtlCache<MachineState, Entry> ttlCache;
+	private final ConcurrentStateCache<MachineState, Entry> cache;
 
 	private final class Entry
 	{
@@ -37,19 +47,30 @@ public final class CachedStateMachine extends StateMachine
 	}
 
 	public CachedStateMachine(StateMachine backingStateMachine)
+	{
+		this(backingStateMachine, DEFAULT_MAX_ENTRIES, EvictionPolicy.CLOCK);
+	}
+
+	public CachedStateMachine(StateMachine backingStateMachine, int maxEntries, EvictionPolicy policy)
 	{
 		this.backingStateMachine = backingStateMachine;
-		ttlCache = new TtlCache<MachineState, Entry>(1);
+		cache = new ConcurrentStateCache<MachineState, Entry>(maxEntries, policy);
 	}
 
 	private Entry getEntry(MachineState state)
 	{
-		if (!ttlCache.containsKey(state))
+		Entry entry = cache.get(state);
+		if (entry == null)
 		{
-			ttlCache.put(state, new Entry());
+			Entry created = new Entry();
+			entry = cache.putIfAbsent(state, created);
+			if (entry == null)
+			{
+				entry = created;
+			}
 		}
 
-		return ttlCache.get(state);
+		return entry;
 	}
 
 	@Override
@@ -120,7 +141,15 @@ public final class CachedStateMachine extends StateMachine
 
 	public void prune()
 	{
-		ttlCache.prune();
+		cache.prune();
+	}
+
+	/**
+	 * Getter method, mostly for reading the hit, miss and eviction counters.
+	 */
+	public ConcurrentStateCache<MachineState, ?> getCache()
+	{
+		return cache;
 	}
 
 	@Override
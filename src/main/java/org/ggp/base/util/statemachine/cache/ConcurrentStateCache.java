@@ -0,0 +1,402 @@
+package org.ggp.base.util.statemachine.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is a bounded cache that many threads can use at once. Keys are
+ * spread over independent shards, each with its own lock and its own share
+ * of the entry budget, so threads searching different states rarely wait
+ * on each other. When a shard is full, inserting evicts one of its entries
+ * according to the eviction policy:
+ *
+ * - LRU evicts the least recently used entry. Every lookup reorders the
+ *   shard, so lookups take the shard lock too.
+ * - CLOCK evicts the first entry that has not been used since the clock hand
+ *   last passed it. Lookups only set a flag on the entry and take no lock,
+ *   which makes it the better choice under multi-threaded search.
+ *
+ * Like TtlCache, entries can also be expired by calling prune() once per
+ * turn: an entry that has not been looked up since the previous prune() is
+ * removed, so states from earlier turns do not linger until evicted.
+ *
+ * Hits, misses and evictions (including the ones done by prune) are
+ * counted and can be read at any time.
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public final class ConcurrentStateCache<K, V>
+{
+	public enum EvictionPolicy
+	{
+		LRU,
+		CLOCK
+	}
+
+	private static final class Node<K, V>
+	{
+		final K key;
+		final V value;
+		volatile boolean referenced;
+		volatile int epoch;
+
+		Node(K key, V value, int epoch)
+		{
+			this.key = key;
+			this.value = value;
+			this.epoch = epoch;
+		}
+	}
+
+	private abstract class Shard
+	{
+		final int capacity;
+		// Counted per shard so that threads on different shards never touch the same counter.
+		final AtomicLong hits = new AtomicLong();
+		final AtomicLong misses = new AtomicLong();
+		final AtomicLong evictions = new AtomicLong();
+
+		Shard(int capacity)
+		{
+			this.capacity = capacity;
+		}
+
+		abstract V get(K key);
+		abstract V putIfAbsent(K key, V value);
+		abstract void prune(int currentEpoch);
+		abstract int size();
+		abstract void clear();
+	}
+
+	private final class LruShard extends Shard
+	{
+		private final LinkedHashMap<K, Node<K, V>> contents;
+
+		LruShard(int capacity)
+		{
+			super(capacity);
+			contents = new LinkedHashMap<K, Node<K, V>>(16, 0.75f, true);
+		}
+
+		@Override
+		synchronized V get(K key)
+		{
+			Node<K, V> node = contents.get(key);
+			if (node == null)
+			{
+				misses.incrementAndGet();
+				return null;
+			}
+			hits.incrementAndGet();
+			node.epoch = epoch;
+			return node.value;
+		}
+
+		@Override
+		synchronized V putIfAbsent(K key, V value)
+		{
+			Node<K, V> existing = contents.get(key);
+			if (existing != null)
+			{
+				return existing.value;
+			}
+			contents.put(key, new Node<K, V>(key, value, epoch));
+			if (contents.size() > capacity)
+			{
+				// The iteration order of an access-ordered map starts at the eldest entry.
+				Iterator<Node<K, V>> eldest = contents.values().iterator();
+				eldest.next();
+				eldest.remove();
+				evictions.incrementAndGet();
+			}
+			return null;
+		}
+
+		@Override
+		synchronized void prune(int currentEpoch)
+		{
+			Iterator<Node<K, V>> it = contents.values().iterator();
+			while (it.hasNext())
+			{
+				if (it.next().epoch < currentEpoch)
+				{
+					it.remove();
+					evictions.incrementAndGet();
+				}
+			}
+		}
+
+		@Override
+		synchronized int size()
+		{
+			return contents.size();
+		}
+
+		@Override
+		synchronized void clear()
+		{
+			contents.clear();
+		}
+	}
+
+	private final class ClockShard extends Shard
+	{
+		private final ConcurrentHashMap<K, Node<K, V>> contents;
+		private final Node<K, V>[] ring;
+		private int hand;
+		private int count;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		ClockShard(int capacity)
+		{
+			super(capacity);
+			contents = new ConcurrentHashMap<K, Node<K, V>>();
+			ring = new Node[capacity];
+		}
+
+		@Override
+		V get(K key)
+		{
+			Node<K, V> node = contents.get(key);
+			if (node == null)
+			{
+				misses.incrementAndGet();
+				return null;
+			}
+			hits.incrementAndGet();
+			node.referenced = true;
+			node.epoch = epoch;
+			return node.value;
+		}
+
+		@Override
+		synchronized V putIfAbsent(K key, V value)
+		{
+			Node<K, V> existing = contents.get(key);
+			if (existing != null)
+			{
+				return existing.value;
+			}
+			while (true)
+			{
+				Node<K, V> victim = ring[hand];
+				if (victim == null)
+				{
+					break;
+				}
+				if (count < capacity)
+				{
+					// Pruning left a free slot somewhere further on.
+					hand = (hand + 1) % capacity;
+				}
+				else if (victim.referenced)
+				{
+					victim.referenced = false;
+					hand = (hand + 1) % capacity;
+				}
+				else
+				{
+					contents.remove(victim.key);
+					count--;
+					evictions.incrementAndGet();
+					break;
+				}
+			}
+			Node<K, V> node = new Node<K, V>(key, value, epoch);
+			ring[hand] = node;
+			contents.put(key, node);
+			count++;
+			hand = (hand + 1) % capacity;
+			return null;
+		}
+
+		@Override
+		synchronized void prune(int currentEpoch)
+		{
+			for (int i = 0; i < capacity; i++)
+			{
+				Node<K, V> node = ring[i];
+				if (node != null && node.epoch < currentEpoch)
+				{
+					contents.remove(node.key);
+					ring[i] = null;
+					count--;
+					evictions.incrementAndGet();
+				}
+			}
+		}
+
+		@Override
+		int size()
+		{
+			return contents.size();
+		}
+
+		@Override
+		synchronized void clear()
+		{
+			contents.clear();
+			for (int i = 0; i < capacity; i++)
+			{
+				ring[i] = null;
+			}
+			count = 0;
+			hand = 0;
+		}
+	}
+
+	private final Shard[] shards;
+	private final int maxEntries;
+	private final EvictionPolicy policy;
+
+	// Bumped by every prune; entries remember the epoch they were last used in.
+	private volatile int epoch;
+
+	/**
+	 * Creates a cache with four shards per available processor.
+	 */
+	public ConcurrentStateCache(int maxEntries, EvictionPolicy policy)
+	{
+		this(maxEntries, policy, 4 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a cache holding at most maxEntries entries, split over about
+	 * numShards shards (rounded to a power of two, and to no more shards than
+	 * entries).
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public ConcurrentStateCache(int maxEntries, EvictionPolicy policy, int numShards)
+	{
+		if (maxEntries < 1 || numShards < 1)
+		{
+			throw new IllegalArgumentException("The cache needs at least one entry and one shard");
+		}
+		int shardCount = Integer.highestOneBit(numShards);
+		while (shardCount > 1 && shardCount > maxEntries)
+		{
+			shardCount >>= 1;
+		}
+		this.maxEntries = maxEntries;
+		this.policy = policy;
+		shards = new ConcurrentStateCache.Shard[shardCount];
+		for (int i = 0; i < shardCount; i++)
+		{
+			// Spread the remainder so that the shard capacities add up to maxEntries.
+			int capacity = maxEntries / shardCount + ((i < maxEntries % shardCount) ? 1 : 0);
+			shards[i] = (policy == EvictionPolicy.LRU) ? new LruShard(capacity) : new ClockShard(capacity);
+		}
+	}
+
+	private Shard shardFor(Object key)
+	{
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return shards[h & (shards.length - 1)];
+	}
+
+	/**
+	 * Returns the value cached for the given key, or null if there is none.
+	 */
+	public V get(K key)
+	{
+		return shardFor(key).get(key);
+	}
+
+	/**
+	 * Caches the given value unless the key already has one, possibly
+	 * evicting another entry. Returns the value that was already cached, or
+	 * null if the given value was inserted.
+	 */
+	public V putIfAbsent(K key, V value)
+	{
+		return shardFor(key).putIfAbsent(key, value);
+	}
+
+	/**
+	 * Removes every entry that has not been looked up since the previous
+	 * call to prune.
+	 */
+	public synchronized void prune()
+	{
+		int current = epoch;
+		for (Shard shard : shards)
+		{
+			shard.prune(current);
+		}
+		epoch = current + 1;
+	}
+
+	public void clear()
+	{
+		for (Shard shard : shards)
+		{
+			shard.clear();
+		}
+	}
+
+	public int size()
+	{
+		int size = 0;
+		for (Shard shard : shards)
+		{
+			size += shard.size();
+		}
+		return size;
+	}
+
+	public int getMaxEntries()
+	{
+		return maxEntries;
+	}
+
+	public int getNumShards()
+	{
+		return shards.length;
+	}
+
+	public EvictionPolicy getEvictionPolicy()
+	{
+		return policy;
+	}
+
+	public long getHits()
+	{
+		long total = 0;
+		for (Shard shard : shards)
+		{
+			total += shard.hits.get();
+		}
+		return total;
+	}
+
+	public long getMisses()
+	{
+		long total = 0;
+		for (Shard shard : shards)
+		{
+			total += shard.misses.get();
+		}
+		return total;
+	}
+
+	public long getEvictions()
+	{
+		long total = 0;
+		for (Shard shard : shards)
+		{
+			total += shard.evictions.get();
+		}
+		return total;
+	}
+
+	@Override
+	public String toString()
+	{
+		return policy + " cache: " + size() + "/" + maxEntries + " entries, " + getHits() + " hits, "
+				+ getMisses() + " misses, " + getEvictions() + " evictions";
+	}
+}
@@ -18,7 +18,7 @@ import org.ggp.base.util.propnet.architecture.components.Not;
 import org.ggp.base.util.propnet.architecture.components.Or;
 import org.ggp.base.util.propnet.architecture.components.Proposition;
 import org.ggp.base.util.propnet.architecture.components.Transition;
-import org.ggp.base.util.propnet.factory.OptimizingPropNetFactory;
+import org.ggp.base.util.propnet.factory.CachingPropNetFactory;
 import org.ggp.base.util.statemachine.MachineState;
 import org.ggp.base.util.statemachine.Move;
 import org.ggp.base.util.statemachine.Role;
@@ -53,7 +53,7 @@ public class IISamplePropNetStateMachine extends IIStateMachine {
 	@Override
 	public void initialize(StateMachine stateMachine, List<Gdl> description) throws InterruptedException {
 		normalStateMachine = stateMachine;
-		PropNet originalPropNet = OptimizingPropNetFactory.create(description);
+		PropNet originalPropNet = CachingPropNetFactory.create(description);
 		iipropNet = new IIPropNet(originalPropNet);
 		roles = iipropNet.getRoles();
 		seesPropagationProps = new ArrayList<Proposition>();
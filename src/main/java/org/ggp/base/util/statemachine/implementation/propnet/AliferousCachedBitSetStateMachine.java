@@ -9,7 +9,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-import java.util.Stack;
 
 import org.ggp.base.util.gdl.grammar.Gdl;
 import org.ggp.base.util.gdl.grammar.GdlConstant;
@@ -17,13 +16,14 @@ import org.ggp.base.util.gdl.grammar.GdlRelation;
 import org.ggp.base.util.gdl.grammar.GdlSentence;
 import org.ggp.base.util.propnet.architecture.Component;
 import org.ggp.base.util.propnet.architecture.PropNet;
+import org.ggp.base.util.propnet.architecture.PropNetOrdering;
 import org.ggp.base.util.propnet.architecture.components.And;
 import org.ggp.base.util.propnet.architecture.components.Constant;
 import org.ggp.base.util.propnet.architecture.components.Not;
 import org.ggp.base.util.propnet.architecture.components.Or;
 import org.ggp.base.util.propnet.architecture.components.Proposition;
 import org.ggp.base.util.propnet.architecture.components.Transition;
-import org.ggp.base.util.propnet.factory.OptimizingPropNetFactory;
+import org.ggp.base.util.propnet.factory.CachingPropNetFactory;
 import org.ggp.base.util.statemachine.InternalMachineState;
 import org.ggp.base.util.statemachine.MachineState;
 import org.ggp.base.util.statemachine.Move;
@@ -46,14 +46,10 @@ public class AliferousCachedBitSetStateMachine extends StateMachine {
 	/** The player roles */
 	private List<Role> roles;
 
-	private Set<Move> goodInputs;
-
 	//For faster traversal of the sets.
 	private Proposition[] inputs;
 	private Proposition[] bases;
 
-	private Boolean factoring;
-
 	//private Map<InternalMachineState, Set<Component> > cache;
 	//private Map<InternalMachineState, BitSet> cacheBitSets;
 
@@ -273,21 +269,13 @@ public class AliferousCachedBitSetStateMachine extends StateMachine {
 			//cacheBitSets = new HashMap<InternalMachineState, BitSet>();
 			threadCache = new ArrayList<Set<Component> >();
 			threadBitSets = new ArrayList<BitSet>();
-			propNet = OptimizingPropNetFactory.create(description);
+			propNet = CachingPropNetFactory.create(description);
 			setTypes();
 			roles = propNet.getRoles();
 			for (int i = 0; i < 8; i++) {
 				threadCache.add(new HashSet<Component>());
 				threadBitSets.add(new BitSet());
 			}
-			goodInputs = new HashSet<Move>();
-			if (roles.size() == 1) {
-				numSubGames(roles.get(0));
-				factoring = true;
-			}
-			else {
-				factoring = false;
-			}
 			crystallize(); //freezes the propnet, no more changing components
 			ordering = getOrdering();
 			if (verifySort()) {
@@ -371,11 +359,6 @@ public class AliferousCachedBitSetStateMachine extends StateMachine {
 		List<Move> moves = new ArrayList<Move>();
 		for (Proposition prop : legals) {
 			if (getPropValue(prop, props)) {
-				if (factoring) {
-					if (!goodInputs.contains(getMoveFromProposition(prop))) {
-						continue;
-					}
-				}
 				moves.add(getMoveFromProposition(prop));
 			}
 		}
@@ -523,85 +506,14 @@ public class AliferousCachedBitSetStateMachine extends StateMachine {
 		return newState;
 	}
 
-	/*
-	 * Finds all of the inputs that can lead to a given goal, used in factoring
+	/**
+	 * Returns a state machine for each independent subgame of the propnet,
+	 * or just this machine if the game does not factor.
+	 *
+	 * @see SubgameStateMachine
 	 */
-	private void findInputs(Proposition goal, Set<Move> inputSet) {
-		Set<Component> seen = new HashSet<Component>();
-		Queue<Component> toExplore = new LinkedList<Component>();
-		toExplore.add(goal);
-		while(!toExplore.isEmpty()) {
-			Component c = toExplore.poll();
-			for (Component input : c.getInputs()) {
-				if (seen.contains(input)) {
-					continue;
-				}
-				if (input instanceof Proposition) {
-					Proposition p = (Proposition) input;
-					if ((p.getType() == Proposition.PropType.INPUT)) {
-						inputSet.add(getMoveFromProposition(p));
-						continue;
-					}
-				}
-				toExplore.add(input);
-				seen.add(input);
-			}
-		}
-	}
-
-	/*
-	 * Factors the propnet for the given role. Only to be used in single player games
-	 */
-	public int numSubGames(Role role) {
-		Set<Proposition> goals = propNet.getGoalPropositions().get(role);
-		Set<Proposition> removedGoals = new HashSet<Proposition>();
-		factoring = true;
-		Set<Proposition> newGoals = new HashSet<Proposition>();
-		for (Proposition goal : goals) {
-			if (getGoalValue(goal) == 0) {
-				continue;
-			}
-			Component goalInput = goal.getSingleInput();
-			if (goalInput instanceof Or) {
-				for (Component c : goalInput.getInputs()) {
-					Proposition newGoal = new Proposition(goal.getName());
-					newGoal.addInput(c);
-					c.removeOutput(goalInput);
-					c.addOutput(newGoal);
-					for(Component output : goal.getOutputs()) {
-						newGoal.addOutput(output);
-					}
-					newGoals.add(newGoal);
-					propNet.addComponent(newGoal);
-				}
-				propNet.removeComponent(goalInput);
-				goalInput.removeOutput(goal);
-				goal.removeInput(goalInput);
-				removedGoals.add(goal);
-			}
-		}
-		for (Proposition goal : removedGoals) {
-			propNet.removeComponent(goal);
-			goals.remove(goal);
-		}
-		goals.addAll(newGoals);
-
-		int maxScore = 1;
-		Proposition bestGoal = null;
-
-		for (Proposition goal : goals) {
-			int goalValue = getGoalValue(goal);
-			if (goalValue < maxScore) {
-				continue;
-			}
-			maxScore = getGoalValue(goal);
-			Set<Move> inputSet = new HashSet<Move>();
-			findInputs(goal, inputSet);
-			bestGoal = goal;
-			goodInputs = inputSet;
-		}
-
-		return newGoals.size();
+	public List<StateMachine> getSubgames() {
+		return SubgameStateMachine.createSubgames(this, propNet);
 	}
 
 	/**
@@ -620,68 +532,7 @@ public class AliferousCachedBitSetStateMachine extends StateMachine {
 	 */
 	public List<Component> getOrdering()
 	{
-		// List to contain the topological ordering.
-		List<Component> order = new LinkedList<Component>();
-
-		// All of the components in the PropNet
-		List<Component> components = new ArrayList<Component>(propNet.getComponents());
-
-		// All of the propositions in the PropNet.
-		Stack<Component> stack = new Stack<Component>();
-
-		// Mark all the vertices as not visited
-		Map<Component, Boolean> visited = new HashMap<Component, Boolean>();
-		for (Component c : components){
-			visited.put(c, false);
-		}
-
-		// Call the recursive helper function to store
-		// Topological Sort starting from all vertices
-		// one by one
-		Set<Component> tempVisited = new HashSet<Component>();
-		for (Component c : components){
-			if(!visited.get(c)){
-				tempVisited.clear();
-				topologicalSortUtil(c, visited, stack, tempVisited);
-			}
-		}
-		// Print contents of stack
-		while (!stack.empty()){
-			Component c = stack.pop();
-			if(c instanceof Proposition){
-				Proposition p = (Proposition) c;
-				if(p.getType() == Proposition.PropType.VIEW){
-					order.add(c);
-				}
-			}
-			else{
-				order.add(c);
-			}
-		}
-		return order;
-	}
-
-	void topologicalSortUtil(Component c, Map<Component,Boolean> visited, Stack<Component> stack, Set<Component> tempVisited)
-	{
-		// Mark the current node as visited.
-		if (visited.get(c)) {
-			return;
-		}
-		if (c instanceof Proposition) {
-			Proposition p = (Proposition) c;
-			if (p.getType() != Proposition.PropType.VIEW) {
-				return;
-			}
-		}
-		tempVisited.add(c);
-
-		for (Component output : c.getOutputArray())
-		{
-			topologicalSortUtil(output, visited, stack, tempVisited);
-		}
-		visited.put(c, true);
-		tempVisited.remove(c);
-		stack.push(c);
+		return PropNetOrdering.create(propNet.getComponents(), PropNetOrdering.COMPUTED_BY_TYPE).getComponents();
 	}
 
 	public void getInputProps(Component c, Set<Component> comps) {
@@ -783,18 +634,15 @@ public class AliferousCachedBitSetStateMachine extends StateMachine {
 	 */
 	public InternalMachineState getStateFromBase(Set<Component> props)
 	{
-		ArrayList<Proposition> stateBases = new ArrayList<Proposition>();
-		BitSet bitMask = new BitSet(bases.length);
+		long[] words = new long[InternalMachineState.getNumWords(bases.length)];
 		for (Proposition p : bases)
 		{
 			if (props.contains(p.getSingleInput()))
 			{
-				stateBases.add(p);
-				bitMask.set(p.getIndex());
+				words[p.getIndex() >>> 6] |= 1L << p.getIndex();
 			}
 		}
-		Proposition[] baseArray = new Proposition[stateBases.size()];
-		InternalMachineState state = new InternalMachineState(stateBases.toArray(baseArray), bitMask);
+		InternalMachineState state = new InternalMachineState(bases, words);
 		return state;
 	}
 
@@ -8,7 +8,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-import java.util.Stack;
 
 import org.ggp.base.util.gdl.grammar.Gdl;
 import org.ggp.base.util.gdl.grammar.GdlConstant;
@@ -16,13 +15,14 @@ import org.ggp.base.util.gdl.grammar.GdlRelation;
 import org.ggp.base.util.gdl.grammar.GdlSentence;
 import org.ggp.base.util.propnet.architecture.Component;
 import org.ggp.base.util.propnet.architecture.PropNet;
+import org.ggp.base.util.propnet.architecture.PropNetOrdering;
 import org.ggp.base.util.propnet.architecture.components.And;
 import org.ggp.base.util.propnet.architecture.components.Constant;
 import org.ggp.base.util.propnet.architecture.components.Not;
 import org.ggp.base.util.propnet.architecture.components.Or;
 import org.ggp.base.util.propnet.architecture.components.Proposition;
 import org.ggp.base.util.propnet.architecture.components.Transition;
-import org.ggp.base.util.propnet.factory.OptimizingPropNetFactory;
+import org.ggp.base.util.propnet.factory.CachingPropNetFactory;
 import org.ggp.base.util.statemachine.MachineState;
 import org.ggp.base.util.statemachine.Move;
 import org.ggp.base.util.statemachine.Role;
@@ -44,14 +44,10 @@ public class AliferousCachedForwardPropNetStateMachine extends StateMachine {
 	/** The player roles */
 	private List<Role> roles;
 
-	private Set<Move> goodInputs;
-
 	//For faster traversal of the sets.
 	private Proposition[] inputs;
 	private Proposition[] bases;
 
-	private Boolean factoring;
-
 	private Map<MachineState, Set<Component> > cache;
 
 	private ArrayList<Set<Component> > threadCache;
@@ -255,20 +251,12 @@ public class AliferousCachedForwardPropNetStateMachine extends StateMachine {
 		try {
 			cache = new HashMap<MachineState, Set<Component> >();
 			threadCache = new ArrayList<Set<Component> >();
-			propNet = OptimizingPropNetFactory.create(description);
+			propNet = CachingPropNetFactory.create(description);
 			setTypes();
 			roles = propNet.getRoles();
 			for (int i = 0; i < 8; i++) {
 				threadCache.add(new HashSet<Component>());
 			}
-			goodInputs = new HashSet<Move>();
-			if (roles.size() == 1) {
-				numSubGames(roles.get(0));
-				factoring = true;
-			}
-			else {
-				factoring = false;
-			}
 			crystallize(); //freezes the propnet, no more changing components
 			ordering = getOrdering();
 			if (verifySort()) {
@@ -353,11 +341,6 @@ public class AliferousCachedForwardPropNetStateMachine extends StateMachine {
 		List<Move> moves = new ArrayList<Move>();
 		for (Proposition prop : legals) {
 			if (getPropValue(prop, props)) {
-				if (factoring) {
-					if (!goodInputs.contains(getMoveFromProposition(prop))) {
-						continue;
-					}
-				}
 				moves.add(getMoveFromProposition(prop));
 			}
 		}
@@ -482,79 +465,14 @@ public class AliferousCachedForwardPropNetStateMachine extends StateMachine {
 		return newState;
 	}
 
-	private void findInputs(Proposition goal, Set<Move> inputs) {
-		Set<Component> seen = new HashSet<Component>();
-		Queue<Component> toExplore = new LinkedList<Component>();
-		toExplore.add(goal);
-		while(!toExplore.isEmpty()) {
-			Component c = toExplore.poll();
-			for (Component input : c.getInputs()) {
-				if (seen.contains(input)) {
-					continue;
-				}
-				if (input instanceof Proposition) {
-					Proposition p = (Proposition) input;
-					if ((p.getType() == Proposition.PropType.INPUT)) {
-						inputs.add(getMoveFromProposition(p));
-						continue;
-					}
-				}
-				toExplore.add(input);
-				seen.add(input);
-			}
-		}
-	}
-
-	public int numSubGames(Role role) {
-		Set<Proposition> goals = propNet.getGoalPropositions().get(role);
-		Set<Proposition> removedGoals = new HashSet<Proposition>();
-		factoring = true;
-		Set<Proposition> newGoals = new HashSet<Proposition>();
-		for (Proposition goal : goals) {
-			if (getGoalValue(goal) == 0) {
-				continue;
-			}
-			Component goalInput = goal.getSingleInput();
-			if (goalInput instanceof Or) {
-				for (Component c : goalInput.getInputs()) {
-					Proposition newGoal = new Proposition(goal.getName());
-					newGoal.addInput(c);
-					c.removeOutput(goalInput);
-					c.addOutput(newGoal);
-					for(Component output : goal.getOutputs()) {
-						newGoal.addOutput(output);
-					}
-					newGoals.add(newGoal);
-					propNet.addComponent(newGoal);
-				}
-				propNet.removeComponent(goalInput);
-				goalInput.removeOutput(goal);
-				goal.removeInput(goalInput);
-				removedGoals.add(goal);
-			}
-		}
-		for (Proposition goal : removedGoals) {
-			propNet.removeComponent(goal);
-			goals.remove(goal);
-		}
-		goals.addAll(newGoals);
-
-		int maxScore = 1;
-		Proposition bestGoal = null;
-
-		for (Proposition goal : goals) {
-			int goalValue = getGoalValue(goal);
-			if (goalValue < maxScore) {
-				continue;
-			}
-			maxScore = getGoalValue(goal);
-			Set<Move> inputs = new HashSet<Move>();
-			findInputs(goal, inputs);
-			bestGoal = goal;
-			goodInputs = inputs;
-		}
-
-		return newGoals.size();
+	/**
+	 * Returns a state machine for each independent subgame of the propnet,
+	 * or just this machine if the game does not factor.
+	 *
+	 * @see SubgameStateMachine
+	 */
+	public List<StateMachine> getSubgames() {
+		return SubgameStateMachine.createSubgames(this, propNet);
 	}
 
 	/**
@@ -573,68 +491,7 @@ public class AliferousCachedForwardPropNetStateMachine extends StateMachine {
 	 */
 	public List<Component> getOrdering()
 	{
-		// List to contain the topological ordering.
-		List<Component> order = new LinkedList<Component>();
-
-		// All of the components in the PropNet
-		List<Component> components = new ArrayList<Component>(propNet.getComponents());
-
-		// All of the propositions in the PropNet.
-		Stack<Component> stack = new Stack<Component>();
-
-		// Mark all the vertices as not visited
-		Map<Component, Boolean> visited = new HashMap<Component, Boolean>();
-		for (Component c : components){
-			visited.put(c, false);
-		}
-
-		// Call the recursive helper function to store
-		// Topological Sort starting from all vertices
-		// one by one
-		Set<Component> tempVisited = new HashSet<Component>();
-		for (Component c : components){
-			if(!visited.get(c)){
-				tempVisited.clear();
-				topologicalSortUtil(c, visited, stack, tempVisited);
-			}
-		}
-		// Print contents of stack
-		while (!stack.empty()){
-			Component c = stack.pop();
-			if(c instanceof Proposition){
-				Proposition p = (Proposition) c;
-				if(p.getType() == Proposition.PropType.VIEW){
-					order.add(c);
-				}
-			}
-			else{
-				order.add(c);
-			}
-		}
-		return order;
-	}
-
-	void topologicalSortUtil(Component c, Map<Component,Boolean> visited, Stack<Component> stack, Set<Component> tempVisited)
-	{
-		// Mark the current node as visited.
-		if (visited.get(c)) {
-			return;
-		}
-		if (c instanceof Proposition) {
-			Proposition p = (Proposition) c;
-			if (p.getType() != Proposition.PropType.VIEW) {
-				return;
-			}
-		}
-		tempVisited.add(c);
-
-		for (Component output : c.getOutputArray())
-		{
-			topologicalSortUtil(output, visited, stack, tempVisited);
-		}
-		visited.put(c, true);
-		tempVisited.remove(c);
-		stack.push(c);
+		return PropNetOrdering.create(propNet.getComponents(), PropNetOrdering.COMPUTED_BY_TYPE).getComponents();
 	}
 
 	public void getInputProps(Component c, Set<Component> comps) {
@@ -0,0 +1,63 @@
+package org.ggp.base.util.statemachine.implementation.propnet;
+
+import java.util.List;
+
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.logging.GamerLogger;
+import org.ggp.base.util.propnet.architecture.CompiledPropNet;
+import org.ggp.base.util.propnet.factory.compiler.PropNetCompiler;
+
+/**
+ * A flat propnet state machine whose propagation runs in bytecode generated
+ * for the game at metagame time (see {@link PropNetCompiler}). States are
+ * the same packed InternalMachineStates as in the flat machine; only the gate
+ * evaluation is replaced.
+ *
+ * If the propnet cannot be compiled, the machine logs an error and keeps
+ * evaluating the flat propnet instead.
+ */
+public class AliferousCompiledPropNetStateMachine extends AliferousFlatPropNetStateMachine {
+	/** The generated evaluation code, or null when compilation failed */
+	private CompiledPropNet compiledNet;
+
+	@Override
+	public void initialize(List<Gdl> description) {
+		super.initialize(description);
+		try {
+			long start = System.currentTimeMillis();
+			compiledNet = PropNetCompiler.compile(flatNet);
+			GamerLogger.log("StateMachine", "Compiled propnet in " + (System.currentTimeMillis() - start) + " ms");
+		} catch (IllegalStateException e) {
+			GamerLogger.logError("StateMachine", "Could not compile propnet, falling back to the flat propnet: " + e.getMessage());
+			compiledNet = null;
+		}
+	}
+
+	@Override
+	protected void propagateState(boolean[] values) {
+		if (compiledNet == null) {
+			super.propagateState(values);
+		} else {
+			compiledNet.propagateState(values);
+		}
+	}
+
+	@Override
+	protected void propagateMoves(boolean[] values) {
+		if (compiledNet == null) {
+			super.propagateMoves(values);
+		} else {
+			compiledNet.propagateMoves(values);
+		}
+	}
+
+	/**
+	 * Getter method.
+	 *
+	 * @return The generated evaluation code, or null if the propnet could not
+	 * be compiled.
+	 */
+	public CompiledPropNet getCompiledPropNet() {
+		return compiledNet;
+	}
+}
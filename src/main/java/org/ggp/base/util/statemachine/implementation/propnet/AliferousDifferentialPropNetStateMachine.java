@@ -0,0 +1,108 @@
+package org.ggp.base.util.statemachine.implementation.propnet;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.propnet.architecture.FlatPropNet;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+
+/**
+ * A flat propnet state machine that moves between states by change
+ * propagation. Each thread keeps a {@link DifferentialPropNetState} holding
+ * the component values of the last state it looked at; loading a new state
+ * or joint move only flips the bases and inputs that differ and pushes those
+ * changes along the output arrays.
+ *
+ * This replaces the HashSet snapshots used by updateThreadCache in
+ * AliferousCachedForwardPropNetStateMachine, and needs no thread index: in a
+ * depth charge consecutive states differ in a handful of bases, so the cost
+ * of a transition is proportional to what the move changes.
+ */
+public class AliferousDifferentialPropNetStateMachine extends AliferousFlatPropNetStateMachine {
+
+	private ThreadLocal<ThreadState> threadState;
+
+	private static final class ThreadState {
+		final DifferentialPropNetState net;
+		final int[] activeInputs;
+		final int[] moveInputs;
+		MachineState state;
+
+		ThreadState(FlatPropNet flatNet, int numRoles) {
+			net = new DifferentialPropNetState(flatNet);
+			activeInputs = new int[numRoles];
+			Arrays.fill(activeInputs, -1);
+			moveInputs = new int[numRoles];
+		}
+	}
+
+	@Override
+	public void initialize(List<Gdl> description) {
+		super.initialize(description);
+		final FlatPropNet net = flatNet;
+		final int numRoles = getRoles().size();
+		threadState = new ThreadLocal<ThreadState>() {
+			@Override
+			protected ThreadState initialValue() {
+				return new ThreadState(net, numRoles);
+			}
+		};
+	}
+
+	/**
+	 * Brings this thread's values to the given state by flipping only the
+	 * bases that differ from the previously loaded state.
+	 */
+	@Override
+	protected boolean[] loadState(MachineState state) {
+		ThreadState t = threadState.get();
+		if (t.state != state) {
+			t.net.setBases(getBaseWords(state));
+			t.state = state;
+		}
+		return t.net.getValues();
+	}
+
+	@Override
+	protected boolean[] loadBases(long[] words) {
+		ThreadState t = threadState.get();
+		t.net.setBases(words);
+		t.state = null;
+		return t.net.getValues();
+	}
+
+	/**
+	 * Loads the given state and flips the inputs of the roles whose move
+	 * differs from the previously applied joint move.
+	 */
+	@Override
+	protected boolean[] applyMoves(MachineState state, List<Move> moves) {
+		loadState(state);
+		int[] moveInputs = threadState.get().moveInputs;
+		for (int r = 0; r < moveInputs.length; r++) {
+			moveInputs[r] = flatNet.getInputId(r, moves.get(r));
+		}
+		return loadInputs(moveInputs);
+	}
+
+	@Override
+	protected boolean[] loadInputs(int[] inputIds) {
+		ThreadState t = threadState.get();
+		int[] activeInputs = t.activeInputs;
+		for (int r = 0; r < activeInputs.length; r++) {
+			int input = inputIds[r];
+			if (input != activeInputs[r]) {
+				if (activeInputs[r] >= 0) {
+					t.net.set(activeInputs[r], false);
+				}
+				if (input >= 0) {
+					t.net.set(input, true);
+				}
+				activeInputs[r] = input;
+			}
+		}
+		return t.net.getValues();
+	}
+}
@@ -0,0 +1,456 @@
+package org.ggp.base.util.statemachine.implementation.propnet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.propnet.architecture.Component;
+import org.ggp.base.util.propnet.architecture.FlatPropNet;
+import org.ggp.base.util.propnet.architecture.PropNet;
+import org.ggp.base.util.propnet.architecture.components.Proposition;
+import org.ggp.base.util.propnet.factory.CachingPropNetFactory;
+import org.ggp.base.util.statemachine.InternalMachineState;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
+import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
+import org.ggp.base.util.statemachine.exceptions.TransitionDefinitionException;
+
+/**
+ * A propnet state machine that evaluates a {@link FlatPropNet}: gates are
+ * computed by index over primitive arrays in topological order, instead of
+ * by instanceof dispatch over Component objects and HashSet membership.
+ *
+ * Every thread keeps its own value array along with the state that is
+ * currently loaded into it, so repeated queries on the same state (legal
+ * moves, terminal, goals, next state) only propagate once, and none of the
+ * queries allocate besides the results they return.
+ */
+public class AliferousFlatPropNetStateMachine extends StateMachine {
+	/** The underlying proposition network  */
+	protected PropNet propNet;
+	/** The lowered propnet that all the queries are evaluated on */
+	protected FlatPropNet flatNet;
+	/** The player roles */
+	private List<Role> roles;
+
+	//Cached arrays from the flat propnet, for faster access
+	private int numBases;
+	private int[] stateOrdering;
+	private int[] moveOrdering;
+	private int[] transitionInputIds;
+	private int[][] legalIds;
+	private Move[][] legalMoves;
+	private int[][] legalInputIds;
+	private int[][] goalIds;
+	private int[][] goalValues;
+	private int terminalId;
+
+	/** The base propositions by index, shared by every state we build */
+	private Proposition[] baseTable;
+	/** Used to convert states from other machines */
+	private Map<GdlSentence, Integer> baseIndices;
+
+	private ThreadLocal<Scratch> scratch;
+
+	/*
+	 * Per-thread evaluation buffers. The state field holds the state whose
+	 * bases are loaded into values, with the state-dependent part of the
+	 * propnet already propagated. The move and charge buffers hold the
+	 * inputs and bases of the joint move being applied and the depth charge
+	 * being played.
+	 */
+	private static final class Scratch {
+		final boolean[] values;
+		final int[] activeInputs;
+		final int[] moveInputs;
+		final long[] chargeWords;
+		MachineState state;
+
+		Scratch(boolean[] values, int numRoles, int numBases) {
+			this.values = values;
+			this.activeInputs = new int[numRoles];
+			Arrays.fill(activeInputs, -1);
+			this.moveInputs = new int[numRoles];
+			this.chargeWords = new long[InternalMachineState.getNumWords(numBases)];
+		}
+	}
+
+	/**
+	 * Initializes the state machine by building the propnet and lowering it
+	 * into its flat form.
+	 */
+	@Override
+	public void initialize(List<Gdl> description) {
+		try {
+			propNet = CachingPropNetFactory.create(description);
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		for (Component c : propNet.getComponents()) {
+			c.crystallize();
+		}
+		roles = propNet.getRoles();
+		flatNet = new FlatPropNet(propNet);
+
+		numBases = flatNet.getNumBases();
+		stateOrdering = flatNet.getStateOrdering();
+		moveOrdering = flatNet.getMoveOrdering();
+		transitionInputIds = flatNet.getTransitionInputIds();
+		legalIds = flatNet.getLegalIds();
+		legalMoves = flatNet.getLegalMoves();
+		legalInputIds = flatNet.getLegalInputIds();
+		goalIds = flatNet.getGoalIds();
+		goalValues = flatNet.getGoalValues();
+		terminalId = flatNet.getTerminalId();
+
+		baseTable = new Proposition[numBases];
+		baseIndices = new HashMap<GdlSentence, Integer>();
+		for (int i = 0; i < numBases; i++) {
+			baseTable[i] = flatNet.getBase(i);
+			baseIndices.put(baseTable[i].getName(), i);
+		}
+
+		final FlatPropNet net = flatNet;
+		final int numRoles = roles.size();
+		scratch = new ThreadLocal<Scratch>() {
+			@Override
+			protected Scratch initialValue() {
+				return new Scratch(net.newValues(), numRoles, net.getNumBases());
+			}
+		};
+	}
+
+	/**
+	 * Loads the bases of the given state into this thread's value array and
+	 * propagates them, unless that state is already loaded. Subclasses can
+	 * override this together with applyMoves to change how the propnet is
+	 * evaluated.
+	 *
+	 * @return The values of every component in the given state.
+	 */
+	protected boolean[] loadState(MachineState state) {
+		Scratch s = scratch.get();
+		if (s.state == state) {
+			return s.values;
+		}
+		boolean[] values = loadBases(getBaseWords(state));
+		s.state = state;
+		return values;
+	}
+
+	/**
+	 * Loads the given state and sets the input propositions for the given
+	 * joint move, so that the transitions hold the next state.
+	 *
+	 * @return The values of every component after the moves are applied.
+	 */
+	protected boolean[] applyMoves(MachineState state, List<Move> moves) {
+		loadState(state);
+		int[] moveInputs = scratch.get().moveInputs;
+		for (int r = 0; r < moveInputs.length; r++) {
+			moveInputs[r] = flatNet.getInputId(r, moves.get(r));
+		}
+		return loadInputs(moveInputs);
+	}
+
+	/**
+	 * Sets the bases of this thread's value array to the given packed bits
+	 * and propagates them. The result is not tied to any MachineState, so the
+	 * next loadState always reloads.
+	 *
+	 * @return The values of every component with the given bases.
+	 */
+	protected boolean[] loadBases(long[] words) {
+		Scratch s = scratch.get();
+		boolean[] values = s.values;
+		for (int i = 0; i < numBases; i++) {
+			values[i] = (words[i >>> 6] & (1L << i)) != 0;
+		}
+		propagateState(values);
+		s.state = null;
+		return values;
+	}
+
+	/**
+	 * Sets the input proposition of every role to the given component id, or
+	 * to none where the id is negative, on top of the bases loaded last, and
+	 * propagates them.
+	 *
+	 * @return The values of every component after the moves are applied.
+	 */
+	protected boolean[] loadInputs(int[] inputIds) {
+		Scratch s = scratch.get();
+		boolean[] values = s.values;
+		int[] activeInputs = s.activeInputs;
+		for (int r = 0; r < activeInputs.length; r++) {
+			if (activeInputs[r] >= 0) {
+				values[activeInputs[r]] = false;
+			}
+			activeInputs[r] = inputIds[r];
+			if (activeInputs[r] >= 0) {
+				values[activeInputs[r]] = true;
+			}
+		}
+		propagateMoves(values);
+		return values;
+	}
+
+	/**
+	 * Computes every component that depends only on the bases.
+	 */
+	protected void propagateState(boolean[] values) {
+		flatNet.propagate(values, stateOrdering);
+	}
+
+	/**
+	 * Computes every component that depends on the input propositions.
+	 */
+	protected void propagateMoves(boolean[] values) {
+		flatNet.propagate(values, moveOrdering);
+	}
+
+	/**
+	 * Returns the packed bits of the bases that are true in the given state,
+	 * converting states from other machines if necessary. The result must not
+	 * be modified.
+	 */
+	protected long[] getBaseWords(MachineState state) {
+		if (state instanceof InternalMachineState) {
+			InternalMachineState internal = (InternalMachineState) state;
+			if (internal.getBaseTable() == baseTable) {
+				return internal.getWords();
+			}
+		}
+		long[] words = new long[InternalMachineState.getNumWords(numBases)];
+		for (GdlSentence sentence : state.getContents()) {
+			Integer index = baseIndices.get(sentence);
+			if (index != null) {
+				words[index >>> 6] |= 1L << index;
+			}
+		}
+		return words;
+	}
+
+	protected InternalMachineState readNextState(boolean[] values) {
+		long[] words = new long[InternalMachineState.getNumWords(numBases)];
+		readNextWords(values, words);
+		return new InternalMachineState(baseTable, words);
+	}
+
+	private void readNextWords(boolean[] values, long[] words) {
+		Arrays.fill(words, 0);
+		for (int i = 0; i < numBases; i++) {
+			int source = transitionInputIds[i];
+			if (source >= 0 && values[source]) {
+				words[i >>> 6] |= 1L << i;
+			}
+		}
+	}
+
+	protected int roleIndex(Role role) {
+		return getRoleIndices().get(role);
+	}
+
+	/**
+	 * Computes if the state is terminal.
+	 */
+	@Override
+	public boolean isTerminal(MachineState state) {
+		return loadState(state)[terminalId];
+	}
+
+	/**
+	 * Computes the goal for a role in the current state. Returns 0 if no goal
+	 * proposition is true, and throws a GoalDefinitionException if more than
+	 * one is.
+	 */
+	@Override
+	public int getGoal(MachineState state, Role role)
+			throws GoalDefinitionException {
+		int goal = readGoal(loadState(state), roleIndex(role));
+		if (goal < 0) {
+			throw new GoalDefinitionException(state, role);
+		}
+		return goal;
+	}
+
+	/**
+	 * Returns the goal value of the given role, or -1 unless exactly one goal
+	 * proposition is true, in which case the goal is undefined, as it is for
+	 * the prover.
+	 */
+	private int readGoal(boolean[] values, int r) {
+		int[] ids = goalIds[r];
+		int goal = -1;
+		int count = 0;
+		for (int k = 0; k < ids.length; k++) {
+			if (values[ids[k]]) {
+				goal = goalValues[r][k];
+				count++;
+			}
+		}
+		return (count == 1) ? goal : -1;
+	}
+
+	/**
+	 * Returns the initial state, computed by setting only the init
+	 * proposition and propagating the whole network.
+	 */
+	@Override
+	public InternalMachineState getInitialState() {
+		boolean[] values = flatNet.newValues();
+		int initId = flatNet.getInitId();
+		if (initId >= 0) {
+			values[initId] = true;
+		}
+		propagateState(values);
+		propagateMoves(values);
+		return readNextState(values);
+	}
+
+	/**
+	 * Computes the legal moves for role in state.
+	 */
+	@Override
+	public List<Move> getLegalMoves(MachineState state, Role role)
+			throws MoveDefinitionException {
+		boolean[] values = loadState(state);
+		int r = roleIndex(role);
+		int[] ids = legalIds[r];
+		List<Move> moves = new ArrayList<Move>();
+		for (int k = 0; k < ids.length; k++) {
+			if (values[ids[k]]) {
+				moves.add(legalMoves[r][k]);
+			}
+		}
+		return moves;
+	}
+
+	/**
+	 * Picks a random legal move without building the list of legal moves.
+	 */
+	@Override
+	public Move getRandomMove(MachineState state, Role role) throws MoveDefinitionException {
+		boolean[] values = loadState(state);
+		int r = roleIndex(role);
+		int[] ids = legalIds[r];
+		int count = 0;
+		for (int id : ids) {
+			if (values[id]) {
+				count++;
+			}
+		}
+		if (count == 0) {
+			throw new MoveDefinitionException(state, role);
+		}
+		int choice = ThreadLocalRandom.current().nextInt(count);
+		for (int k = 0; k < ids.length; k++) {
+			if (values[ids[k]] && choice-- == 0) {
+				return legalMoves[r][k];
+			}
+		}
+		throw new MoveDefinitionException(state, role);
+	}
+
+	/**
+	 * Plays the depth charge entirely on this thread's buffers: random legal
+	 * inputs are picked straight from the legal propositions and the next
+	 * bases are read from the transitions into a reused word array, so no
+	 * moves, lists or states are built until a definition error needs one.
+	 */
+	@Override
+	public int performDepthChargeForGoals(MachineState state, int[] theGoals)
+			throws MoveDefinitionException, GoalDefinitionException {
+		return performDepthChargeForGoals(state, theGoals, Long.MAX_VALUE);
+	}
+
+	/**
+	 * The same depth charge, checking the deadline and the interrupt flag
+	 * before every step.
+	 */
+	@Override
+	public int performDepthChargeForGoals(MachineState state, int[] theGoals, long deadline)
+			throws MoveDefinitionException, GoalDefinitionException {
+		Scratch s = scratch.get();
+		long[] words = s.chargeWords;
+		int[] inputs = s.moveInputs;
+		System.arraycopy(getBaseWords(state), 0, words, 0, words.length);
+		boolean[] values = loadBases(words);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int depth = 0;
+		while (!values[terminalId]) {
+			if (System.currentTimeMillis() >= deadline || Thread.currentThread().isInterrupted()) {
+				return -1;
+			}
+			for (int r = 0; r < inputs.length; r++) {
+				int[] ids = legalIds[r];
+				int count = 0;
+				for (int id : ids) {
+					if (values[id]) {
+						count++;
+					}
+				}
+				if (count == 0) {
+					throw new MoveDefinitionException(new InternalMachineState(baseTable, words.clone()), roles.get(r));
+				}
+				int choice = random.nextInt(count);
+				for (int k = 0; k < ids.length; k++) {
+					if (values[ids[k]] && choice-- == 0) {
+						inputs[r] = legalInputIds[r][k];
+						break;
+					}
+				}
+			}
+			values = loadInputs(inputs);
+			readNextWords(values, words);
+			values = loadBases(words);
+			depth++;
+		}
+		for (int r = 0; r < roles.size(); r++) {
+			theGoals[r] = readGoal(values, r);
+			if (theGoals[r] < 0) {
+				throw new GoalDefinitionException(new InternalMachineState(baseTable, words.clone()), roles.get(r));
+			}
+		}
+		return depth;
+	}
+
+	/**
+	 * Computes the next state given state and the list of moves. Only the
+	 * part of the propnet that depends on the moves is propagated if the
+	 * state is already loaded in this thread.
+	 */
+	@Override
+	public MachineState getNextState(MachineState state, List<Move> moves)
+			throws TransitionDefinitionException {
+		return readNextState(applyMoves(state, moves));
+	}
+
+	@Override
+	public MachineState getMachineStateFromSentenceList(Set<GdlSentence> sentenceList) {
+		return new InternalMachineState(baseTable, getBaseWords(new MachineState(sentenceList)));
+	}
+
+	@Override
+	public List<Role> getRoles() {
+		return roles;
+	}
+
+	/**
+	 * Getter method.
+	 *
+	 * @return The lowered propnet this machine evaluates.
+	 */
+	public FlatPropNet getFlatPropNet() {
+		return flatNet;
+	}
+}
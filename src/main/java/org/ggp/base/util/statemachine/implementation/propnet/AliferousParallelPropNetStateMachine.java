@@ -0,0 +1,136 @@
+package org.ggp.base.util.statemachine.implementation.propnet;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.propnet.architecture.FlatPropNet;
+
+/**
+ * A flat propnet state machine that evaluates the propnet level by level
+ * (see {@link org.ggp.base.util.propnet.architecture.PropNetOrdering}),
+ * splitting every level with at least minParallelLevel components into
+ * chunks that run in parallel on a fork/join pool. Components within a
+ * level do not depend on each other, so the chunks need no coordination
+ * beyond waiting for the whole level before starting the next one.
+ *
+ * This only pays off for propnets with tens of thousands of components per
+ * level, where a single getNextState takes milliseconds. Smaller levels are
+ * evaluated on the calling thread, and a propnet without any level large
+ * enough is evaluated exactly as in the flat machine.
+ */
+public class AliferousParallelPropNetStateMachine extends AliferousFlatPropNetStateMachine {
+	/** Shared by all the parallel machines, so that they do not each start a thread per processor. */
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+
+	private final int minParallelLevel;
+	private final int chunkSize;
+
+	private int[] stateOrdering;
+	private int[] stateLevelOffsets;
+	private int[] moveOrdering;
+	private int[] moveLevelOffsets;
+	private boolean parallelState;
+	private boolean parallelMoves;
+
+	public AliferousParallelPropNetStateMachine() {
+		this(8192, 2048);
+	}
+
+	/**
+	 * @param minParallelLevel The number of components a level needs for it
+	 * to be split between threads.
+	 * @param chunkSize The number of components evaluated by each task.
+	 */
+	public AliferousParallelPropNetStateMachine(int minParallelLevel, int chunkSize) {
+		this.minParallelLevel = minParallelLevel;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public void initialize(List<Gdl> description) {
+		super.initialize(description);
+		stateOrdering = flatNet.getStateOrdering();
+		stateLevelOffsets = flatNet.getStateLevelOffsets();
+		moveOrdering = flatNet.getMoveOrdering();
+		moveLevelOffsets = flatNet.getMoveLevelOffsets();
+		parallelState = hasLargeLevel(stateLevelOffsets);
+		parallelMoves = hasLargeLevel(moveLevelOffsets);
+	}
+
+	private boolean hasLargeLevel(int[] levelOffsets) {
+		for (int level = 0; level < levelOffsets.length - 1; level++) {
+			if (levelOffsets[level + 1] - levelOffsets[level] >= minParallelLevel) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	protected void propagateState(boolean[] values) {
+		if (parallelState) {
+			propagateLevels(values, stateOrdering, stateLevelOffsets);
+		} else {
+			super.propagateState(values);
+		}
+	}
+
+	@Override
+	protected void propagateMoves(boolean[] values) {
+		if (parallelMoves) {
+			propagateLevels(values, moveOrdering, moveLevelOffsets);
+		} else {
+			super.propagateMoves(values);
+		}
+	}
+
+	private void propagateLevels(boolean[] values, int[] order, int[] levelOffsets) {
+		for (int level = 0; level < levelOffsets.length - 1; level++) {
+			int from = levelOffsets[level];
+			int to = levelOffsets[level + 1];
+			if (to - from < minParallelLevel) {
+				flatNet.propagate(values, order, from, to);
+			} else {
+				POOL.invoke(new Chunk(flatNet, values, order, from, to, chunkSize));
+			}
+		}
+	}
+
+	/**
+	 * Evaluates a slice of one level, splitting it in half until the pieces
+	 * are no larger than the chunk size. Joining the tasks makes their
+	 * writes to the value array visible to the thread that continues with
+	 * the next level.
+	 */
+	@SuppressWarnings("serial")
+	private static final class Chunk extends RecursiveAction {
+		private final FlatPropNet net;
+		private final boolean[] values;
+		private final int[] order;
+		private final int from;
+		private final int to;
+		private final int chunkSize;
+
+		Chunk(FlatPropNet net, boolean[] values, int[] order, int from, int to, int chunkSize) {
+			this.net = net;
+			this.values = values;
+			this.order = order;
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= chunkSize) {
+				net.propagate(values, order, from, to);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new Chunk(net, values, order, from, middle, chunkSize),
+					new Chunk(net, values, order, middle, to, chunkSize));
+		}
+	}
+}
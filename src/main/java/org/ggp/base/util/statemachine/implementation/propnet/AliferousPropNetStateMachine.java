@@ -3,11 +3,9 @@ package org.ggp.base.util.statemachine.implementation.propnet;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 
 import org.ggp.base.util.gdl.grammar.Gdl;
 import org.ggp.base.util.gdl.grammar.GdlConstant;
@@ -15,12 +13,13 @@ import org.ggp.base.util.gdl.grammar.GdlRelation;
 import org.ggp.base.util.gdl.grammar.GdlSentence;
 import org.ggp.base.util.propnet.architecture.Component;
 import org.ggp.base.util.propnet.architecture.PropNet;
+import org.ggp.base.util.propnet.architecture.PropNetOrdering;
 import org.ggp.base.util.propnet.architecture.components.And;
 import org.ggp.base.util.propnet.architecture.components.Not;
 import org.ggp.base.util.propnet.architecture.components.Or;
 import org.ggp.base.util.propnet.architecture.components.Proposition;
 import org.ggp.base.util.propnet.architecture.components.Transition;
-import org.ggp.base.util.propnet.factory.OptimizingPropNetFactory;
+import org.ggp.base.util.propnet.factory.CachingPropNetFactory;
 import org.ggp.base.util.statemachine.MachineState;
 import org.ggp.base.util.statemachine.Move;
 import org.ggp.base.util.statemachine.Role;
@@ -150,10 +149,10 @@ public class AliferousPropNetStateMachine extends StateMachine {
 	@Override
 	public void initialize(List<Gdl> description) {
 		try {
-			propNet = OptimizingPropNetFactory.create(description);
+			propNet = CachingPropNetFactory.create(description);
 			roles = propNet.getRoles();
-			ordering = getOrdering();
 			setTypes();
+			ordering = getOrdering();
 		} catch (InterruptedException e) {
 			throw new RuntimeException(e);
 		}
@@ -271,62 +270,15 @@ public class AliferousPropNetStateMachine extends StateMachine {
 	 */
 	public List<Proposition> getOrdering()
 	{
-		// List to contain the topological ordering.
-		List<Proposition> order = new LinkedList<Proposition>();
-
-		// All of the components in the PropNet
-		List<Component> components = new ArrayList<Component>(propNet.getComponents());
-
-		// All of the propositions in the PropNet.
-		List<Proposition> propositions = new ArrayList<Proposition>(propNet.getPropositions());
-
-		Stack<Component> stack = new Stack<Component>();
-
-		// Mark all the vertices as not visited
-		Map<Component, Boolean> visited = new HashMap<Component, Boolean>();
-		for (Component c : components){
-			visited.put(c, false);
-		}
-
-		// Call the recursive helper function to store
-		// Topological Sort starting from all vertices
-		// one by one
-		for (Component c : components){
-			if(!visited.get(c)){
-				topologicalSortUtil(c, visited, stack);
-			}
-		}
-		// Print contents of stack
-		while (!stack.empty()){
-			Component c = stack.pop();
-			if(propositions.contains(c)){
-				Proposition q = (Proposition) c;
-				if(isViewProp(q)){
-					order.add(q);
-				}
+		List<Proposition> order = new ArrayList<Proposition>();
+		for (Component c : PropNetOrdering.create(propNet.getComponents(), PropNetOrdering.COMPUTED_BY_TYPE).getComponents()) {
+			if (c instanceof Proposition) {
+				order.add((Proposition) c);
 			}
 		}
 		return order;
 	}
 
-	void topologicalSortUtil(Component c, Map<Component,Boolean> visited, Stack<Component> stack)
-	{
-		// Mark the current node as visited.
-		visited.put(c, true);
-
-		// Recur for all the vertices adjacent to this
-		// vertex
-
-		for (Component output : c.getOutputs())
-		{
-			if (!visited.get(output))
-				topologicalSortUtil(output, visited, stack);
-		}
-
-		// Push current vertex to stack which stores result
-		stack.push(c);
-	}
-
 
 
 
@@ -0,0 +1,158 @@
+package org.ggp.base.util.statemachine.implementation.propnet;
+
+import org.ggp.base.util.propnet.architecture.FlatPropNet;
+
+/**
+ * The values of every component of a {@link FlatPropNet}, kept up to date by
+ * change propagation. Besides its value, every component has a counter of
+ * how many of its inputs are currently true, so when a component flips only
+ * its outputs' counters need adjusting: an AND is true when all its inputs
+ * are, an OR or a view proposition when any is, and a NOT when none is.
+ *
+ * Setting the bases of a new state or the inputs of a new joint move thus
+ * only touches the part of the network that actually changes, instead of
+ * re-running the whole topological ordering.
+ *
+ * Instances are not thread-safe; each thread should own its own.
+ */
+public final class DifferentialPropNetState {
+	private final FlatPropNet net;
+	private final int[] types;
+	private final int[] outputOffsets;
+	private final int[] outputIds;
+	private final int[] numInputs;
+	private final int numBases;
+
+	private final boolean[] values;
+	private final int[] counters;
+
+	/*
+	 * Pending flips. A component that flips to true is pushed as its id,
+	 * one that flips to false as ~id, so that every flip is applied to the
+	 * counters exactly once even if the component flips again before it is
+	 * processed.
+	 */
+	private int[] stack;
+	private int stackSize;
+
+	public DifferentialPropNetState(FlatPropNet net) {
+		this.net = net;
+		types = net.getTypes();
+		outputOffsets = net.getOutputOffsets();
+		outputIds = net.getOutputIds();
+		numBases = net.getNumBases();
+
+		int size = net.size();
+		int[] inputOffsets = net.getInputOffsets();
+		int[] inputIds = net.getInputIds();
+		numInputs = new int[size];
+		for (int c = 0; c < size; c++) {
+			numInputs[c] = inputOffsets[c + 1] - inputOffsets[c];
+		}
+
+		// Start from the state where every source is false, evaluated in full.
+		values = net.newValues();
+		net.propagate(values, net.getOrdering());
+		counters = new int[size];
+		for (int c = 0; c < size; c++) {
+			for (int j = inputOffsets[c]; j < inputOffsets[c + 1]; j++) {
+				if (values[inputIds[j]]) {
+					counters[c]++;
+				}
+			}
+		}
+		stack = new int[64];
+	}
+
+	/**
+	 * Returns the current values of every component. The array is live and
+	 * must not be modified.
+	 */
+	public boolean[] getValues() {
+		return values;
+	}
+
+	/**
+	 * Sets a source component (a base, input or init proposition) and
+	 * propagates the change.
+	 */
+	public void set(int id, boolean value) {
+		if (values[id] != value) {
+			values[id] = value;
+			push(value ? id : ~id);
+			propagate();
+		}
+	}
+
+	/**
+	 * Sets the bases to the given packed state, propagating only the bases that
+	 * differ from the ones currently set.
+	 */
+	public void setBases(long[] words) {
+		for (int i = 0; i < numBases; i++) {
+			boolean value = (words[i >>> 6] & (1L << i)) != 0;
+			if (values[i] != value) {
+				values[i] = value;
+				push(value ? i : ~i);
+			}
+		}
+		propagate();
+	}
+
+	private void push(int entry) {
+		if (stackSize == stack.length) {
+			int[] larger = new int[stack.length * 2];
+			System.arraycopy(stack, 0, larger, 0, stackSize);
+			stack = larger;
+		}
+		stack[stackSize++] = entry;
+	}
+
+	private void propagate() {
+		while (stackSize > 0) {
+			int entry = stack[--stackSize];
+			int c;
+			int delta;
+			if (entry >= 0) {
+				c = entry;
+				delta = 1;
+			} else {
+				c = ~entry;
+				delta = -1;
+			}
+			for (int j = outputOffsets[c]; j < outputOffsets[c + 1]; j++) {
+				int o = outputIds[j];
+				int count = counters[o] += delta;
+				boolean value;
+				switch (types[o]) {
+				case FlatPropNet.TYPE_VIEW:
+				case FlatPropNet.TYPE_OR:
+					value = count > 0;
+					break;
+				case FlatPropNet.TYPE_AND:
+					value = count == numInputs[o];
+					break;
+				case FlatPropNet.TYPE_NOT:
+					value = count == 0;
+					break;
+				default:
+					// Transitions and sources are not driven by their inputs.
+					continue;
+				}
+				if (value != values[o]) {
+					values[o] = value;
+					push(value ? o : ~o);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Getter method.
+	 *
+	 * @return The propnet these values belong to.
+	 */
+	public FlatPropNet getFlatPropNet() {
+		return net;
+	}
+}
@@ -0,0 +1,147 @@
+package org.ggp.base.util.statemachine.implementation.propnet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.gdl.grammar.GdlConstant;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.propnet.architecture.PropNet;
+import org.ggp.base.util.propnet.architecture.PropNetFactoring;
+import org.ggp.base.util.propnet.architecture.components.Proposition;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
+import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
+import org.ggp.base.util.statemachine.exceptions.TransitionDefinitionException;
+
+/**
+ * A state machine for one factor of a game (see {@link PropNetFactoring}).
+ * It plays the whole game on its backing state machine, but only offers the
+ * moves of its own factor, along with the inert moves that belong to no
+ * factor, so a search on it explores that subgame rather than the product
+ * of all of them. Goals and terminality are those of the whole game.
+ *
+ * A role that has no move of the factor in some state is offered all of
+ * its legal moves there, so that every state still has a joint move.
+ */
+public final class SubgameStateMachine extends StateMachine
+{
+	private final StateMachine backingStateMachine;
+	private final Map<Role, Set<Move>> moves;
+
+	/**
+	 * @param moves For every role, the moves of the factor together with the
+	 * inert moves.
+	 */
+	public SubgameStateMachine(StateMachine backingStateMachine, Map<Role, Set<Move>> moves)
+	{
+		this.backingStateMachine = backingStateMachine;
+		this.moves = moves;
+	}
+
+	/**
+	 * Returns one state machine per playable factor of the propnet, each
+	 * backed by the given machine for the same game, or just the given
+	 * machine if the game has fewer than two playable factors.
+	 */
+	public static List<StateMachine> createSubgames(StateMachine backingStateMachine, PropNet propNet)
+	{
+		PropNetFactoring factoring = new PropNetFactoring(propNet);
+		if (!factoring.isFactorable()) {
+			return Collections.singletonList(backingStateMachine);
+		}
+		List<StateMachine> subgames = new ArrayList<StateMachine>();
+		for (PropNetFactoring.Factor factor : factoring.getPlayableFactors()) {
+			Map<Role, Set<Move>> moves = new HashMap<Role, Set<Move>>();
+			for (Role role : propNet.getRoles()) {
+				moves.put(role, new HashSet<Move>());
+			}
+			addMoves(factor.getInputPropositions(), moves);
+			addMoves(factoring.getInertInputPropositions(), moves);
+			subgames.add(new SubgameStateMachine(backingStateMachine, moves));
+		}
+		return subgames;
+	}
+
+	// Input propositions are named (does role move).
+	private static void addMoves(Set<Proposition> inputs, Map<Role, Set<Move>> moves)
+	{
+		for (Proposition input : inputs) {
+			GdlSentence name = input.getName();
+			Set<Move> roleMoves = moves.get(new Role((GdlConstant) name.get(0)));
+			if (roleMoves != null) {
+				roleMoves.add(new Move(name.get(1)));
+			}
+		}
+	}
+
+	@Override
+	public List<Move> getLegalMoves(MachineState state, Role role) throws MoveDefinitionException
+	{
+		List<Move> legalMoves = backingStateMachine.getLegalMoves(state, role);
+		Set<Move> factorMoves = moves.get(role);
+		List<Move> subgameMoves = new ArrayList<Move>(legalMoves.size());
+		for (Move move : legalMoves) {
+			if (factorMoves.contains(move)) {
+				subgameMoves.add(move);
+			}
+		}
+		return subgameMoves.isEmpty() ? legalMoves : subgameMoves;
+	}
+
+	@Override
+	public MachineState getNextState(MachineState state, List<Move> moves) throws TransitionDefinitionException
+	{
+		return backingStateMachine.getNextState(state, moves);
+	}
+
+	@Override
+	public boolean isTerminal(MachineState state)
+	{
+		return backingStateMachine.isTerminal(state);
+	}
+
+	@Override
+	public int getGoal(MachineState state, Role role) throws GoalDefinitionException
+	{
+		return backingStateMachine.getGoal(state, role);
+	}
+
+	@Override
+	public void initialize(List<Gdl> description)
+	{
+		// The backing machine is already initialized, and is shared with the
+		// other subgames, which initializing it again would reset.
+	}
+
+	@Override
+	public List<Role> getRoles()
+	{
+		return backingStateMachine.getRoles();
+	}
+
+	@Override
+	public MachineState getInitialState()
+	{
+		return backingStateMachine.getInitialState();
+	}
+
+	/** Returns the moves offered for the role whenever any of them is legal. */
+	public Set<Move> getSubgameMoves(Role role)
+	{
+		return Collections.unmodifiableSet(moves.get(role));
+	}
+
+	public StateMachine getBackingStateMachine()
+	{
+		return backingStateMachine;
+	}
+}
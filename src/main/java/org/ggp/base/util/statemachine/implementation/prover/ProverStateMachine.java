@@ -1,7 +1,9 @@
 package org.ggp.base.util.statemachine.implementation.prover;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.ggp.base.util.gdl.grammar.Gdl;
@@ -9,7 +11,6 @@ import org.ggp.base.util.gdl.grammar.GdlConstant;
 import org.ggp.base.util.gdl.grammar.GdlRelation;
 import org.ggp.base.util.gdl.grammar.GdlSentence;
 import org.ggp.base.util.logging.GamerLogger;
-import org.ggp.base.util.prover.Prover;
 import org.ggp.base.util.prover.aima.AimaProver;
 import org.ggp.base.util.statemachine.MachineState;
 import org.ggp.base.util.statemachine.Move;
@@ -27,8 +28,32 @@ import com.google.common.collect.ImmutableList;
 public class ProverStateMachine extends StateMachine
 {
 	private MachineState initialState;
-	private Prover prover;
+	private AimaProver prover;
 	private ImmutableList<Role> roles;
+	private ThreadLocal<StateAnswers> lastAnswers;
+
+	/**
+	 * The answers found so far for the last state a thread asked about. The
+	 * legal moves, goals and terminality of a state are each found for all
+	 * roles with one query the first time they are needed, and every query
+	 * about the state, including for its next states, shares one prover
+	 * context so the view predicates they have in common are only derived
+	 * once.
+	 */
+	private static final class StateAnswers
+	{
+		private final MachineState state;
+		private final AimaProver.Context context;
+		private Map<GdlConstant, Set<GdlSentence>> legals;
+		private Map<GdlConstant, Set<GdlSentence>> goals;
+		private Boolean terminal;
+
+		private StateAnswers(MachineState state)
+		{
+			this.state = state;
+			this.context = AimaProver.createContext(ProverQueryBuilder.getContext(state));
+		}
+	}
 
 	/**
 	 * Initialize must be called before using the StateMachine
@@ -43,9 +68,56 @@ public class ProverStateMachine extends StateMachine
 	{
 		prover = new AimaProver(description);
 		roles = ImmutableList.copyOf(Role.computeRoles(description));
+		lastAnswers = new ThreadLocal<StateAnswers>();
 		initialState = computeInitialState();
 	}
 
+	private StateAnswers getAnswers(MachineState state)
+	{
+		StateAnswers answers = lastAnswers.get();
+		if (answers == null || !answers.state.equals(state))
+		{
+			answers = new StateAnswers(state);
+			lastAnswers.set(answers);
+		}
+		return answers;
+	}
+
+	/**
+	 * Groups the answers to a query over all roles by the role in their
+	 * first argument.
+	 */
+	private static Map<GdlConstant, Set<GdlSentence>> groupByRole(Set<GdlSentence> results)
+	{
+		Map<GdlConstant, Set<GdlSentence>> grouped = new HashMap<GdlConstant, Set<GdlSentence>>();
+		for (GdlSentence result : results)
+		{
+			if (!(result.get(0) instanceof GdlConstant))
+			{
+				continue;
+			}
+			GdlConstant role = (GdlConstant) result.get(0);
+			Set<GdlSentence> roleResults = grouped.get(role);
+			if (roleResults == null)
+			{
+				roleResults = new HashSet<GdlSentence>();
+				grouped.put(role, roleResults);
+			}
+			roleResults.add(result);
+		}
+		return grouped;
+	}
+
+	private static Set<GdlSentence> getRoleResults(Map<GdlConstant, Set<GdlSentence>> grouped, Role role)
+	{
+		Set<GdlSentence> results = grouped.get(role.getName());
+		if (results == null)
+		{
+			return new HashSet<GdlSentence>();
+		}
+		return results;
+	}
+
 	private MachineState computeInitialState()
 	{
 		Set<GdlSentence> results = prover.askAll(ProverQueryBuilder.getInitQuery(), new HashSet<GdlSentence>());
@@ -55,7 +127,12 @@ public class ProverStateMachine extends StateMachine
 	@Override
 	public int getGoal(MachineState state, Role role) throws GoalDefinitionException
 	{
-		Set<GdlSentence> results = prover.askAll(ProverQueryBuilder.getGoalQuery(role), ProverQueryBuilder.getContext(state));
+		StateAnswers answers = getAnswers(state);
+		if (answers.goals == null)
+		{
+			answers.goals = groupByRole(prover.askAll(ProverQueryBuilder.getGoalQuery(), answers.context));
+		}
+		Set<GdlSentence> results = getRoleResults(answers.goals, role);
 
 		if (results.size() != 1)
 		{
@@ -85,7 +162,12 @@ public class ProverStateMachine extends StateMachine
 	@Override
 	public List<Move> getLegalMoves(MachineState state, Role role) throws MoveDefinitionException
 	{
-		Set<GdlSentence> results = prover.askAll(ProverQueryBuilder.getLegalQuery(role), ProverQueryBuilder.getContext(state));
+		StateAnswers answers = getAnswers(state);
+		if (answers.legals == null)
+		{
+			answers.legals = groupByRole(prover.askAll(ProverQueryBuilder.getLegalQuery(), answers.context));
+		}
+		Set<GdlSentence> results = getRoleResults(answers.legals, role);
 
 		if (results.size() == 0)
 		{
@@ -98,7 +180,12 @@ public class ProverStateMachine extends StateMachine
 	@Override
 	public MachineState getNextState(MachineState state, List<Move> moves) throws TransitionDefinitionException
 	{
-		Set<GdlSentence> results = prover.askAll(ProverQueryBuilder.getNextQuery(), ProverQueryBuilder.getContext(state, getRoles(), moves));
+		Set<GdlSentence> does = new HashSet<GdlSentence>();
+		for (int i = 0; i < roles.size(); i++)
+		{
+			does.add(ProverQueryBuilder.toDoes(roles.get(i), moves.get(i)));
+		}
+		Set<GdlSentence> results = prover.askAll(ProverQueryBuilder.getNextQuery(), getAnswers(state).context.withMoves(does));
 
 		for (GdlSentence sentence : results)
 		{
@@ -120,6 +207,11 @@ public class ProverStateMachine extends StateMachine
 	@Override
 	public boolean isTerminal(MachineState state)
 	{
-		return prover.prove(ProverQueryBuilder.getTerminalQuery(), ProverQueryBuilder.getContext(state));
+		StateAnswers answers = getAnswers(state);
+		if (answers.terminal == null)
+		{
+			answers.terminal = prover.prove(ProverQueryBuilder.getTerminalQuery(), answers.context);
+		}
+		return answers.terminal;
 	}
 }
\ No newline at end of file
@@ -21,8 +21,10 @@ public final class ProverQueryBuilder
 
 	private final static GdlConstant DOES = GdlPool.getConstant("does");
 	private final static GdlConstant GOAL = GdlPool.getConstant("goal");
+	private final static GdlRelation GOAL_QUERY = GdlPool.getRelation(GOAL, new GdlTerm[] { GdlPool.getVariable("?r"), GdlPool.getVariable("?x") });
 	private final static GdlRelation INIT_QUERY = GdlPool.getRelation(GdlPool.getConstant("init"), new GdlTerm[] { GdlPool.getVariable("?x") });
 	private final static GdlConstant LEGAL = GdlPool.getConstant("legal");
+	private final static GdlRelation LEGAL_QUERY = GdlPool.getRelation(LEGAL, new GdlTerm[] { GdlPool.getVariable("?r"), GdlPool.getVariable("?x") });
 	private final static GdlRelation NEXT_QUERY = GdlPool.getRelation(GdlPool.getConstant("next"), new GdlTerm[] { GdlPool.getVariable("?x") });
 	private final static GdlRelation ROLE_QUERY = GdlPool.getRelation(GdlPool.getConstant("role"), new GdlTerm[] { GdlPool.getVariable("?x") });
 	private final static GdlProposition TERMINAL_QUERY = GdlPool.getProposition(GdlPool.getConstant("terminal"));
@@ -43,6 +45,12 @@ public final class ProverQueryBuilder
 		return context;
 	}
 
+	/** Returns a query for the goals of every role at once */
+	public static GdlRelation getGoalQuery()
+	{
+		return GOAL_QUERY;
+	}
+
 	public static GdlRelation getGoalQuery(Role role)
 	{
 		return GdlPool.getRelation(GOAL, new GdlTerm[] { role.getName(), VARIABLE });
@@ -53,6 +61,12 @@ public final class ProverQueryBuilder
 		return INIT_QUERY;
 	}
 
+	/** Returns a query for the legal moves of every role at once */
+	public static GdlRelation getLegalQuery()
+	{
+		return LEGAL_QUERY;
+	}
+
 	public static GdlRelation getLegalQuery(Role role)
 	{
 		return GdlPool.getRelation(LEGAL, new GdlTerm[] { role.getName(), VARIABLE });
@@ -0,0 +1,348 @@
+package org.ggp.base.util.statemachine.implementation.reasoner;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.gdl.grammar.GdlConstant;
+import org.ggp.base.util.gdl.grammar.GdlPool;
+import org.ggp.base.util.gdl.grammar.GdlRule;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.gdl.model.DependencyGraphs;
+import org.ggp.base.util.gdl.model.SentenceDomainModel;
+import org.ggp.base.util.gdl.model.SentenceDomainModelFactory;
+import org.ggp.base.util.gdl.model.SentenceForm;
+import org.ggp.base.util.gdl.transforms.DeORer;
+import org.ggp.base.util.gdl.transforms.GdlCleaner;
+import org.ggp.base.util.gdl.transforms.VariableConstrainer;
+import org.ggp.base.util.reasoner.gdl.GdlChainingReasoner;
+import org.ggp.base.util.reasoner.gdl.GdlSentenceSet;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
+import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
+import org.ggp.base.util.statemachine.exceptions.TransitionDefinitionException;
+import org.ggp.base.util.statemachine.implementation.prover.query.ProverQueryBuilder;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A state machine that answers queries by forward chaining with a
+ * {@link GdlChainingReasoner}, instead of proving each query top-down like
+ * the ProverStateMachine does.
+ *
+ * The first query on a state computes, in one bottom-up pass over the
+ * strata of the rules, every sentence that holds in that state and does not
+ * depend on the moves: views, legal moves, goals and terminal. Further
+ * queries on the same state are answered from that result. getNextState
+ * then only has to run the rules that depend on does, on top of it.
+ *
+ * Every thread keeps the result for the last state it queried, so the
+ * usual sequence of queries in a depth charge materializes each state once.
+ *
+ * Unlike a propnet, nothing is grounded ahead of time, so this is meant as
+ * the fallback for games whose propnet is too large to build in time.
+ */
+public class ForwardChainingStateMachine extends StateMachine {
+	private static final GdlConstant TRUE = GdlPool.getConstant("true");
+	private static final GdlConstant DOES = GdlPool.getConstant("does");
+	private static final GdlConstant NEXT = GdlPool.getConstant("next");
+	private static final GdlConstant INIT = GdlPool.getConstant("init");
+	private static final GdlConstant LEGAL = GdlPool.getConstant("legal");
+	private static final GdlConstant GOAL = GdlPool.getConstant("goal");
+	private static final GdlConstant TERMINAL = GdlPool.getConstant("terminal");
+
+	private SentenceDomainModel model;
+	private GdlChainingReasoner reasoner;
+	private ImmutableList<Role> roles;
+	private MachineState initialState;
+
+	/**
+	 * The sentences that are true in every state, constant rules included,
+	 * that the other rules can read. Every state starts from a copy of these.
+	 */
+	private GdlSentenceSet constantSentences;
+	/** Strata of the rules that depend on the state but not on the moves */
+	private List<Set<SentenceForm>> stateStrata;
+	/** Strata of the rules that depend on the moves */
+	private List<Set<SentenceForm>> moveStrata;
+
+	/** Forms of the true and does sentences seen so far, which are costly to recompute */
+	private ConcurrentMap<GdlSentence, SentenceForm> inputForms;
+	private ThreadLocal<Materialized> lastMaterialized;
+
+	/*
+	 * Everything that holds in one state, before any moves are made.
+	 */
+	private static final class Materialized {
+		final MachineState state;
+		final GdlSentenceSet sentences;
+		final List<List<Move>> legalMoves;
+		// -1 where a role does not have exactly one goal
+		final int[] goals;
+		final boolean terminal;
+
+		Materialized(MachineState state, GdlSentenceSet sentences, List<List<Move>> legalMoves, int[] goals, boolean terminal) {
+			this.state = state;
+			this.sentences = sentences;
+			this.legalMoves = legalMoves;
+			this.goals = goals;
+			this.terminal = terminal;
+		}
+	}
+
+	@Override
+	public void initialize(List<Gdl> description) {
+		try {
+			// The same preprocessing as GameFlow; the reasoner requires constrained variables and no ORs
+			description = GdlCleaner.run(description);
+			description = DeORer.run(description);
+			description = VariableConstrainer.replaceFunctionValuedVariables(description);
+
+			model = SentenceDomainModelFactory.createWithCartesianDomains(description);
+			reasoner = GdlChainingReasoner.create(model);
+			roles = ImmutableList.copyOf(Role.computeRoles(description));
+
+			HashMultimap<SentenceForm, SentenceForm> dependencyGraph = HashMultimap.create(model.getDependencyGraph());
+			Set<SentenceForm> moveDependentForms = DependencyGraphs.getMatchingAndDownstream(
+					model.getSentenceForms(), dependencyGraph, new Predicate<SentenceForm>() {
+						@Override
+						public boolean apply(SentenceForm form) {
+							return form.getName() == DOES;
+						}
+					});
+			List<Set<SentenceForm>> constantStrata = new ArrayList<Set<SentenceForm>>();
+			stateStrata = new ArrayList<Set<SentenceForm>>();
+			moveStrata = new ArrayList<Set<SentenceForm>>();
+			for (Set<SentenceForm> stratum : DependencyGraphs.toposortSafe(model.getSentenceForms(), dependencyGraph)) {
+				// Constant forms only depend on constant forms, so strata are never mixed
+				SentenceForm form = stratum.iterator().next();
+				if (model.getConstantSentenceForms().contains(form)) {
+					constantStrata.add(stratum);
+				} else if (moveDependentForms.contains(form)) {
+					moveStrata.add(stratum);
+				} else {
+					stateStrata.add(stratum);
+				}
+			}
+
+			GdlSentenceSet constants = reasoner.getConstantSentences();
+			chain(constants, constantStrata);
+
+			Set<GdlSentence> initialContents = new HashSet<GdlSentence>();
+			Set<SentenceForm> usedForms = getFormsUsedBy(stateStrata);
+			usedForms.addAll(getFormsUsedBy(moveStrata));
+			constantSentences = GdlSentenceSet.create();
+			for (Map.Entry<SentenceForm, GdlSentence> entry : constants.getSentences().entries()) {
+				SentenceForm form = entry.getKey();
+				if (form.getName() == INIT) {
+					initialContents.add(GdlPool.getRelation(TRUE, entry.getValue().getBody()));
+				}
+				// Constant forms are left out unless a rule reads them or they answer a query
+				if (usedForms.contains(form) || !model.getConstantSentenceForms().contains(form)
+						|| isQueried(form.getName())) {
+					constantSentences.put(form, entry.getValue());
+				}
+			}
+			initialState = new MachineState(initialContents);
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		inputForms = new ConcurrentHashMap<GdlSentence, SentenceForm>();
+		lastMaterialized = new ThreadLocal<Materialized>();
+	}
+
+	private SentenceForm getInputForm(GdlSentence sentence) {
+		SentenceForm form = inputForms.get(sentence);
+		if (form == null) {
+			form = model.getSentenceForm(sentence);
+			inputForms.put(sentence, form);
+		}
+		return form;
+	}
+
+	/**
+	 * Runs the rules of the given strata in order, adding their results to
+	 * the given sentences. Within a stratum, rules are first run in full and
+	 * then differentially on the newly derived sentences until nothing
+	 * changes, as in ConstantCheckerFactory.
+	 */
+	private void chain(GdlSentenceSet sentences, List<Set<SentenceForm>> strata) throws InterruptedException {
+		for (Set<SentenceForm> stratum : strata) {
+			GdlSentenceSet newlyTrueSentences = GdlSentenceSet.create();
+			for (SentenceForm form : stratum) {
+				for (GdlRule rule : model.getRules(form)) {
+					GdlSentenceSet ruleResults = reasoner.getRuleResults(rule, model, sentences);
+					for (Map.Entry<SentenceForm, GdlSentence> entry : ruleResults.getSentences().entries()) {
+						if (!sentences.containsSentence(entry.getKey(), entry.getValue())) {
+							sentences.put(entry.getKey(), entry.getValue());
+							newlyTrueSentences.put(entry.getKey(), entry.getValue());
+						}
+					}
+				}
+			}
+			if (stratum.size() == 1 && !isRecursive(stratum.iterator().next())) {
+				continue;
+			}
+
+			while (!newlyTrueSentences.getSentences().isEmpty()) {
+				GdlSentenceSet newInThisPass = GdlSentenceSet.create();
+				for (SentenceForm form : stratum) {
+					for (GdlRule rule : model.getRules(form)) {
+						GdlSentenceSet ruleResults = reasoner.getRuleResultsForNewSentences(rule, model, sentences, newlyTrueSentences);
+						newInThisPass.putAll(ruleResults.getSentences());
+					}
+				}
+				sentences.putAll(newInThisPass.getSentences());
+				newlyTrueSentences = newInThisPass;
+			}
+		}
+	}
+
+	private Set<SentenceForm> getFormsUsedBy(List<Set<SentenceForm>> strata) {
+		Set<SentenceForm> usedForms = new HashSet<SentenceForm>();
+		for (Set<SentenceForm> stratum : strata) {
+			for (SentenceForm form : stratum) {
+				usedForms.addAll(model.getDependencyGraph().get(form));
+			}
+		}
+		return usedForms;
+	}
+
+	private static boolean isQueried(GdlConstant name) {
+		return name == LEGAL || name == GOAL || name == TERMINAL || name == NEXT;
+	}
+
+	private boolean isRecursive(SentenceForm form) {
+		return model.getDependencyGraph().containsEntry(form, form);
+	}
+
+	/**
+	 * Returns everything that holds in the given state, reusing this thread's
+	 * last result if it was for the same state.
+	 */
+	private Materialized materialize(MachineState state) {
+		Materialized materialized = lastMaterialized.get();
+		if (materialized != null && materialized.state.equals(state)) {
+			return materialized;
+		}
+
+		GdlSentenceSet sentences = GdlSentenceSet.copyOf(constantSentences);
+		for (GdlSentence sentence : state.getContents()) {
+			sentences.put(getInputForm(sentence), sentence);
+		}
+		try {
+			chain(sentences, stateStrata);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+
+		List<List<Move>> legalMoves = new ArrayList<List<Move>>(roles.size());
+		for (int i = 0; i < roles.size(); i++) {
+			legalMoves.add(new ArrayList<Move>());
+		}
+		int[] goals = new int[roles.size()];
+		int[] numGoals = new int[roles.size()];
+		boolean terminal = false;
+		Map<Role, Integer> roleIndices = getRoleIndices();
+		for (Map.Entry<SentenceForm, GdlSentence> entry : sentences.getSentences().entries()) {
+			GdlConstant name = entry.getKey().getName();
+			GdlSentence sentence = entry.getValue();
+			if (name == LEGAL) {
+				Integer roleIndex = roleIndices.get(new Role((GdlConstant) sentence.get(0)));
+				if (roleIndex != null) {
+					legalMoves.get(roleIndex).add(new Move(sentence.get(1)));
+				}
+			} else if (name == GOAL) {
+				Integer roleIndex = roleIndices.get(new Role((GdlConstant) sentence.get(0)));
+				if (roleIndex != null) {
+					numGoals[roleIndex]++;
+					try {
+						goals[roleIndex] = Integer.parseInt(sentence.get(1).toString());
+					} catch (NumberFormatException e) {
+						numGoals[roleIndex]++;
+					}
+				}
+			} else if (name == TERMINAL) {
+				terminal = true;
+			}
+		}
+		for (int i = 0; i < roles.size(); i++) {
+			if (numGoals[i] != 1) {
+				goals[i] = -1;
+			}
+		}
+
+		materialized = new Materialized(state, sentences, legalMoves, goals, terminal);
+		lastMaterialized.set(materialized);
+		return materialized;
+	}
+
+	@Override
+	public int getGoal(MachineState state, Role role) throws GoalDefinitionException {
+		int goal = materialize(state).goals[getRoleIndices().get(role)];
+		if (goal < 0) {
+			throw new GoalDefinitionException(state, role);
+		}
+		return goal;
+	}
+
+	@Override
+	public boolean isTerminal(MachineState state) {
+		return materialize(state).terminal;
+	}
+
+	@Override
+	public List<Role> getRoles() {
+		return roles;
+	}
+
+	@Override
+	public MachineState getInitialState() {
+		return initialState;
+	}
+
+	@Override
+	public List<Move> getLegalMoves(MachineState state, Role role) throws MoveDefinitionException {
+		List<Move> moves = materialize(state).legalMoves.get(getRoleIndices().get(role));
+		if (moves.isEmpty()) {
+			throw new MoveDefinitionException(state, role);
+		}
+		return new ArrayList<Move>(moves);
+	}
+
+	@Override
+	public MachineState getNextState(MachineState state, List<Move> moves) throws TransitionDefinitionException {
+		Materialized materialized = materialize(state);
+		// The materialized sentences are shared, so the moves go into a copy
+		GdlSentenceSet sentences = GdlSentenceSet.copyOf(materialized.sentences);
+		for (int i = 0; i < roles.size(); i++) {
+			GdlSentence does = ProverQueryBuilder.toDoes(roles.get(i), moves.get(i));
+			sentences.put(getInputForm(does), does);
+		}
+		try {
+			chain(sentences, moveStrata);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+
+		Set<GdlSentence> contents = new HashSet<GdlSentence>();
+		for (Map.Entry<SentenceForm, GdlSentence> entry : sentences.getSentences().entries()) {
+			if (entry.getKey().getName() == NEXT) {
+				contents.add(GdlPool.getRelation(TRUE, entry.getValue().getBody()));
+			}
+		}
+		return new MachineState(contents);
+	}
+}
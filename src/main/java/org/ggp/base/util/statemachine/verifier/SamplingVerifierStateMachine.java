@@ -0,0 +1,275 @@
+package org.ggp.base.util.statemachine.verifier;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.logging.GamerLogger;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
+import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
+import org.ggp.base.util.statemachine.exceptions.TransitionDefinitionException;
+
+/**
+ * A state machine that answers with a fast subject machine, and checks a
+ * sample of those answers against a trusted reference machine, such as the
+ * prover, in the background. The checks run on a single thread shared by
+ * all the verifiers, and a check is skipped rather than queued when that
+ * thread falls behind, so the caller never waits for the reference.
+ *
+ * The first disagreement is logged, and from then on every question goes
+ * to the reference machine instead, so the rest of the match is played
+ * with the trusted rules. A check on which the reference machine itself
+ * fails is only logged.
+ */
+public final class SamplingVerifierStateMachine extends StateMachine
+{
+	private static final ThreadPoolExecutor checker = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<Runnable>(1024), new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "SamplingVerifier");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	static {
+		checker.allowCoreThreadTimeOut(true);
+	}
+
+	private final StateMachine subject;
+	private final StateMachine reference;
+	private final double sampleRate;
+	private final AtomicInteger pendingChecks = new AtomicInteger();
+	private final AtomicInteger mismatches = new AtomicInteger();
+	private volatile boolean useReference = false;
+
+	/**
+	 * @param sampleRate The fraction of answers to check, from 0 to 1.
+	 */
+	public SamplingVerifierStateMachine(StateMachine subject, StateMachine reference, double sampleRate)
+	{
+		this.subject = subject;
+		this.reference = reference;
+		this.sampleRate = sampleRate;
+	}
+
+	@Override
+	public void initialize(List<Gdl> description)
+	{
+		subject.initialize(description);
+		reference.initialize(description);
+	}
+
+	@Override
+	public String getName()
+	{
+		return "SamplingVerifier(" + subject.getName() + ")";
+	}
+
+	@Override
+	public List<Role> getRoles()
+	{
+		return subject.getRoles();
+	}
+
+	@Override
+	public MachineState getInitialState()
+	{
+		if (useReference) {
+			synchronized (reference) {
+				return reference.getInitialState();
+			}
+		}
+		return subject.getInitialState();
+	}
+
+	@Override
+	public List<Move> getLegalMoves(final MachineState state, final Role role) throws MoveDefinitionException
+	{
+		if (useReference) {
+			synchronized (reference) {
+				return reference.getLegalMoves(toReference(state), role);
+			}
+		}
+		final List<Move> moves = subject.getLegalMoves(state, role);
+		if (shouldSample()) {
+			final List<Move> answer = new ArrayList<Move>(moves);
+			check(new Check() {
+				@Override
+				public String compare() throws Exception {
+					List<Move> expected = reference.getLegalMoves(toReference(state), role);
+					if (new HashSet<Move>(expected).equals(new HashSet<Move>(answer))) {
+						return null;
+					}
+					return "legal moves for " + role + " in " + state + ": " + answer + " instead of " + expected;
+				}
+			});
+		}
+		return moves;
+	}
+
+	@Override
+	public MachineState getNextState(final MachineState state, final List<Move> moves) throws TransitionDefinitionException
+	{
+		if (useReference) {
+			synchronized (reference) {
+				return reference.getNextState(toReference(state), moves);
+			}
+		}
+		final MachineState next = subject.getNextState(state, moves);
+		if (shouldSample()) {
+			check(new Check() {
+				@Override
+				public String compare() throws Exception {
+					MachineState expected = reference.getNextState(toReference(state), moves);
+					if (expected.getContents().equals(next.getContents())) {
+						return null;
+					}
+					return "next state after " + moves + " in " + state + ": " + next + " instead of " + expected;
+				}
+			});
+		}
+		return next;
+	}
+
+	@Override
+	public boolean isTerminal(final MachineState state)
+	{
+		if (useReference) {
+			synchronized (reference) {
+				return reference.isTerminal(toReference(state));
+			}
+		}
+		final boolean terminal = subject.isTerminal(state);
+		if (shouldSample()) {
+			check(new Check() {
+				@Override
+				public String compare() {
+					boolean expected = reference.isTerminal(toReference(state));
+					if (expected == terminal) {
+						return null;
+					}
+					return "terminality of " + state + ": " + terminal + " instead of " + expected;
+				}
+			});
+		}
+		return terminal;
+	}
+
+	@Override
+	public int getGoal(final MachineState state, final Role role) throws GoalDefinitionException
+	{
+		if (useReference) {
+			synchronized (reference) {
+				return reference.getGoal(toReference(state), role);
+			}
+		}
+		final int goal = subject.getGoal(state, role);
+		if (shouldSample()) {
+			check(new Check() {
+				@Override
+				public String compare() throws Exception {
+					int expected = reference.getGoal(toReference(state), role);
+					if (expected == goal) {
+						return null;
+					}
+					return "goal of " + role + " in " + state + ": " + goal + " instead of " + expected;
+				}
+			});
+		}
+		return goal;
+	}
+
+	/** Returns how many sampled answers disagreed with the reference machine. */
+	public int getMismatchCount()
+	{
+		return mismatches.get();
+	}
+
+	/** Returns true once a disagreement has switched this machine to the reference machine. */
+	public boolean isUsingReference()
+	{
+		return useReference;
+	}
+
+	/** Waits until the checks submitted so far have run, for at most the given time. */
+	boolean awaitChecks(long timeoutMillis) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (pendingChecks.get() > 0) {
+			if (System.currentTimeMillis() > deadline) {
+				return false;
+			}
+			Thread.sleep(10);
+		}
+		return true;
+	}
+
+	private boolean shouldSample()
+	{
+		return sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+	}
+
+	// The states of the subject machine are given to the reference by their contents.
+	private MachineState toReference(MachineState state)
+	{
+		return reference.getMachineStateFromSentenceList(state.getContents());
+	}
+
+	/** A comparison with the reference machine, returning a description of the mismatch if there is one. */
+	private interface Check
+	{
+		String compare() throws Exception;
+	}
+
+	private void check(final Check check)
+	{
+		pendingChecks.incrementAndGet();
+		try {
+			checker.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						String mismatch;
+						synchronized (reference) {
+							mismatch = check.compare();
+						}
+						if (mismatch != null) {
+							reportMismatch(mismatch);
+						}
+					} catch (Exception e) {
+						// A failing reference proves nothing about the subject,
+						// and should not be relied on for the rest of the match.
+						GamerLogger.logError("StateMachine", "Sampling verifier: " + reference.getName() + " failed on a check of " + subject.getName() + ": " + e);
+					} finally {
+						pendingChecks.decrementAndGet();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// The checker is behind, so this answer goes unchecked.
+			pendingChecks.decrementAndGet();
+		}
+	}
+
+	private void reportMismatch(String mismatch)
+	{
+		mismatches.incrementAndGet();
+		if (!useReference) {
+			GamerLogger.logError("StateMachine", "Sampling verifier: " + subject.getName() + " disagrees with " + reference.getName() + " on the " + mismatch + ". Using " + reference.getName() + " from now on.");
+			useReference = true;
+		}
+	}
+}
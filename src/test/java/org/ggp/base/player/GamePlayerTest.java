@@ -0,0 +1,48 @@
+package org.ggp.base.player;
+
+import java.net.Socket;
+
+import org.ggp.base.player.gamer.statemachine.random.RandomGamer;
+import org.ggp.base.util.http.HttpReader;
+import org.ggp.base.util.http.HttpRequest;
+import org.ggp.base.util.http.HttpWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GamePlayerTest extends Assert {
+
+    @Test
+    public void testSilentClientDoesNotBlockOtherRequests() throws Exception {
+        GamePlayer player = new GamePlayer(9147, new RandomGamer());
+        player.start();
+        // A client that connects but never sends its request.
+        Socket silent = new Socket("127.0.0.1", player.getGamerPort());
+        try {
+            Socket client = new Socket("127.0.0.1", player.getGamerPort());
+            try {
+                HttpWriter.writeAsClient(client, "127.0.0.1", "( info )", "RandomGamer");
+                String response = HttpReader.readAsClient(client, 2000);
+                assertTrue(response, response.contains("available"));
+            } finally {
+                client.close();
+            }
+        } finally {
+            silent.close();
+            player.shutdown();
+        }
+    }
+
+    @Test
+    public void testKeptAliveConnectionServesSeveralRequests() throws Exception {
+        GamePlayer player = new GamePlayer(9147, new RandomGamer());
+        player.start();
+        try {
+            for (int i = 0; i < 3; i++) {
+                String response = HttpRequest.issuePooledRequest("127.0.0.1", player.getGamerPort(), "RandomGamer", "( info )", 2000);
+                assertTrue(response, response.contains("available"));
+            }
+        } finally {
+            player.shutdown();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.ggp.base.player.gamer.statemachine;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousFlatPropNetStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DepthChargeExecutorTest extends Assert {
+
+    @Test
+    public void testDepthCharges() throws Exception {
+        StateMachine machine = new AliferousFlatPropNetStateMachine();
+        machine.initialize(new TestGameRepository().getGame("ticTacToe").getRules());
+        Role role = machine.getRoles().get(0);
+        DepthChargeExecutor pool = new DepthChargeExecutor(4);
+        try {
+            float average = pool.runDepthCharges(machine, machine.getInitialState(), role, 100,
+                    System.currentTimeMillis() + 10000);
+            assertTrue(average > 0 && average < 100);
+
+            // Nothing runs once the deadline has passed.
+            assertEquals(0, pool.runDepthCharges(machine, machine.getInitialState(), role, 100,
+                    System.currentTimeMillis() - 1), 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testWorkersAreReused() throws Exception {
+        DepthChargeExecutor pool = new DepthChargeExecutor(2);
+        try {
+            Set<String> threadNames = new HashSet<String>();
+            for (int batch = 0; batch < 10; batch++) {
+                List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+                for (int i = 0; i < 4; i++) {
+                    tasks.add(new Callable<String>() {
+                        @Override
+                        public String call() {
+                            return Thread.currentThread().getName();
+                        }
+                    });
+                }
+                List<String> names = pool.invokeAll(tasks, System.currentTimeMillis() + 10000);
+                assertEquals(4, names.size());
+                threadNames.addAll(names);
+            }
+            assertTrue(threadNames.size() <= 2);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeadlineCancelsSlowTasks() throws Exception {
+        DepthChargeExecutor pool = new DepthChargeExecutor(1);
+        try {
+            List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    Thread.sleep(60000);
+                    return 1;
+                }
+            });
+            long start = System.currentTimeMillis();
+            assertTrue(pool.invokeAll(tasks, start + 200).isEmpty());
+            assertTrue(System.currentTimeMillis() - start < 5000);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.ggp.base.player.gamer.statemachine.mcts;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.ggp.base.player.gamer.statemachine.DepthChargeExecutor;
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.exceptions.MoveDefinitionException;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousFlatPropNetStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MctsTreeTest extends Assert {
+
+    @Test
+    public void testConcurrentScoreUpdates() throws Exception {
+        final MctsNode node = new MctsNode(null, null, null, true);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            final float score = (i % 2 == 0) ? 40 : 60;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        node.addVirtualLoss();
+                        node.addScore(score);
+                        node.removeVirtualLoss();
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80000, node.getNumVisits());
+        assertEquals(0, node.getVirtualLosses());
+        assertEquals(50, node.getScore(), 0.5);
+    }
+
+    @Test
+    public void testSingleWinnerExpansion() throws Exception {
+        MctsNode node = new MctsNode(null, null, null, true);
+        assertTrue(node.tryClaimExpansion());
+        assertFalse(node.tryClaimExpansion());
+        assertTrue(node.getChildren().isEmpty());
+
+        List<MctsNode> children = new ArrayList<MctsNode>();
+        children.add(new MctsNode(null, node, null, false));
+        assertTrue(node.publishChildren(children));
+        assertFalse(node.publishChildren(new ArrayList<MctsNode>()));
+        assertEquals(1, node.getChildren().size());
+        assertEquals(1, node.getChildren().get(0).getDepth());
+    }
+
+    @Test
+    public void testFailedExpansionIsReleased() throws Exception {
+        StateMachine machine = new AliferousFlatPropNetStateMachine() {
+            private boolean failed = false;
+
+            @Override
+            public List<Move> getLegalMoves(MachineState state, Role role) throws MoveDefinitionException {
+                if (!failed) {
+                    failed = true;
+                    throw new MoveDefinitionException(state, role);
+                }
+                return super.getLegalMoves(state, role);
+            }
+        };
+        machine.initialize(new TestGameRepository().getGame("ticTacToe").getRules());
+        MctsTree tree = new MctsTree(machine, machine.getRoles().get(0), machine.getInitialState());
+        MctsNode root = tree.getRoot();
+        try {
+            tree.expand(root);
+            fail();
+        } catch (MoveDefinitionException e) {
+            // The first expansion fails, and must not keep the node claimed.
+        }
+        assertFalse(root.isExpanded());
+        tree.expand(root);
+        assertEquals(9, root.getChildren().size());
+
+        // Once the children are published the claim stays taken.
+        root.releaseExpansion();
+        assertFalse(root.tryClaimExpansion());
+    }
+
+    @Test
+    public void testSetRootKeepsRetainedStatesInterned() throws Exception {
+        StateMachine machine = new AliferousFlatPropNetStateMachine();
+        machine.initialize(new TestGameRepository().getGame("ticTacToe").getRules());
+        MctsTree tree = new MctsTree(machine, machine.getRoles().get(0), machine.getInitialState());
+        tree.expand(tree.getRoot());
+        MctsNode minNode = tree.getRoot().getChildren().get(0);
+        tree.expand(minNode);
+        MctsNode newRoot = minNode.getChildren().get(0);
+        tree.expand(newRoot);
+        tree.expand(newRoot.getChildren().get(0));
+        int before = tree.getStatePool().size();
+
+        tree.setRoot(newRoot);
+        // The states below the new root are kept, the pruned ones are not.
+        Set<MachineState> retained = new HashSet<MachineState>();
+        retained.add(newRoot.getState());
+        for (MctsNode child : newRoot.getChildren()) {
+            for (MctsNode grandchild : child.getChildren()) {
+                retained.add(grandchild.getState());
+            }
+        }
+        assertEquals(retained.size(), tree.getStatePool().size());
+        assertTrue(tree.getStatePool().size() < before);
+        MachineState copy = machine.getMachineStateFromSentenceList(newRoot.getState().getContents());
+        assertSame(newRoot.getState(), tree.getStatePool().intern(copy));
+    }
+
+    @Test
+    public void testParallelSearch() throws Exception {
+        StateMachine machine = new AliferousFlatPropNetStateMachine();
+        machine.initialize(new TestGameRepository().getGame("ticTacToe").getRules());
+        MctsTree tree = new MctsTree(machine, machine.getRoles().get(0), machine.getInitialState());
+
+        DepthChargeExecutor pool = new DepthChargeExecutor(4);
+        int iterations = tree.search(pool, System.currentTimeMillis() + 1000);
+        pool.shutdown();
+        assertTrue(iterations > 0);
+        MctsNode root = tree.getRoot();
+        assertEquals(iterations, root.getNumVisits());
+        assertEquals(9, root.getChildren().size());
+        checkConsistent(root);
+    }
+
+    // Every visit of a node past its first went to one of its children, and
+    // no virtual loss is left behind once the search is over.
+    private static void checkConsistent(MctsNode node) {
+        assertEquals(0, node.getVirtualLosses());
+        int childVisits = 0;
+        for (MctsNode child : node.getChildren()) {
+            assertSame(node, child.getParent());
+            childVisits += child.getNumVisits();
+            checkConsistent(child);
+        }
+        assertTrue(childVisits <= node.getNumVisits());
+    }
+}
@@ -0,0 +1,119 @@
+package org.ggp.base.server.threads;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.ggp.base.server.GameServer;
+import org.ggp.base.server.event.ServerConnectionErrorEvent;
+import org.ggp.base.server.event.ServerTimeoutEvent;
+import org.ggp.base.util.game.Game;
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.http.HttpReader;
+import org.ggp.base.util.http.HttpWriter;
+import org.ggp.base.util.match.Match;
+import org.ggp.base.util.observer.Event;
+import org.ggp.base.util.observer.Observer;
+import org.ggp.base.util.statemachine.Role;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RequestThreadTest extends Assert {
+
+    @Test
+    public void testQueuedRequestsKeepTheirDeadlines() throws Exception {
+        // The player accepts connections but never answers.
+        ServerSocket listener = new ServerSocket(0);
+        Game game = new TestGameRepository().getGame("ticTacToe");
+        Match match = new Match("requestThreadTest", -1, 1, 1, game, "");
+        List<String> hosts = Arrays.asList("127.0.0.1", "127.0.0.1");
+        List<Integer> ports = Arrays.asList(listener.getLocalPort(), listener.getLocalPort());
+        GameServer server = new GameServer(match, hosts, ports);
+        final List<Event> timeouts = Collections.synchronizedList(new ArrayList<Event>());
+        server.addObserver(new Observer() {
+            @Override
+            public void observe(Event event) {
+                if (event instanceof ServerTimeoutEvent) {
+                    timeouts.add(event);
+                }
+            }
+        });
+
+        // With a single thread, the second request waits for the first one
+        // to time out, by which point its own deadline has passed as well.
+        RequestThread.setMaxThreads(1);
+        try {
+            List<RequestThread> requests = new ArrayList<RequestThread>();
+            for (Role role : server.getStateMachine().getRoles()) {
+                requests.add(new StopRequestThread(server, match, null, role, "127.0.0.1", listener.getLocalPort(), ""));
+            }
+            long start = System.currentTimeMillis();
+            for (RequestThread request : requests) {
+                request.submit();
+            }
+            for (RequestThread request : requests) {
+                request.await();
+            }
+            long elapsed = System.currentTimeMillis() - start;
+            assertEquals(2, timeouts.size());
+            assertTrue("Took " + elapsed + "ms", elapsed < 1800);
+        } finally {
+            RequestThread.setMaxThreads(128);
+            listener.close();
+        }
+    }
+
+    @Test
+    public void testHandlingErrorIsReportedAsConnectionError() throws Exception {
+        // The player answers, but the response cannot be handled.
+        final ServerSocket listener = new ServerSocket(0);
+        Thread player = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Socket connection = listener.accept();
+                    HttpReader.readAsServer(connection, 5000);
+                    HttpWriter.writeAsServer(connection, "busted");
+                    connection.close();
+                } catch (IOException e) {
+                    ;
+                }
+            }
+        };
+        player.start();
+        Game game = new TestGameRepository().getGame("ticTacToe");
+        Match match = new Match("requestThreadTest", -1, 1, 1, game, "");
+        List<String> hosts = Arrays.asList("127.0.0.1", "127.0.0.1");
+        List<Integer> ports = Arrays.asList(listener.getLocalPort(), listener.getLocalPort());
+        GameServer server = new GameServer(match, hosts, ports);
+        final List<Event> errors = Collections.synchronizedList(new ArrayList<Event>());
+        server.addObserver(new Observer() {
+            @Override
+            public void observe(Event event) {
+                if (event instanceof ServerConnectionErrorEvent) {
+                    errors.add(event);
+                }
+            }
+        });
+        try {
+            Role role = server.getStateMachine().getRoles().get(0);
+            RequestThread request = new RequestThread(server, role, "127.0.0.1", listener.getLocalPort(), "", 5000, "ping") {
+                @Override
+                protected void handleResponse(String response) {
+                    throw new IllegalStateException("Unexpected response: " + response);
+                }
+            };
+            request.submit();
+            request.await();
+            assertEquals(1, errors.size());
+            assertEquals(role, ((ServerConnectionErrorEvent) errors.get(0)).getRole());
+        } finally {
+            player.join(5000);
+            listener.close();
+        }
+    }
+}
@@ -1,39 +1,79 @@
 package org.ggp.base.test;
 
 import org.ggp.base.apps.tiltyard.TiltyardRequestFarmTest;
+import org.ggp.base.player.GamePlayerTest;
 import org.ggp.base.player.gamer.clojure.ClojureGamerTest;
 import org.ggp.base.player.gamer.python.PythonGamerTest;
+import org.ggp.base.player.gamer.statemachine.DepthChargeExecutorTest;
+import org.ggp.base.player.gamer.statemachine.mcts.MctsTreeTest;
+import org.ggp.base.server.threads.RequestThreadTest;
 import org.ggp.base.util.crypto.BaseCryptographyTest;
 import org.ggp.base.util.crypto.CanonicalJSONTest;
 import org.ggp.base.util.crypto.SignableJSONTest;
 import org.ggp.base.util.game.GameParsingTest;
+import org.ggp.base.util.gdl.factory.GdlFactoryTest;
+import org.ggp.base.util.gdl.grammar.GdlPoolTest;
 import org.ggp.base.util.gdl.model.DependencyGraphsTest;
 import org.ggp.base.util.gdl.model.SimpleSentenceFormTest;
 import org.ggp.base.util.gdl.scrambler.GdlRendererTest;
 import org.ggp.base.util.gdl.scrambler.GdlScramblerTest;
 import org.ggp.base.util.gdl.transforms.GdlCleanerTest;
 import org.ggp.base.util.http.HttpTest;
+import org.ggp.base.util.match.MatchJournalTest;
 import org.ggp.base.util.presence.InfoResponseTest;
+import org.ggp.base.util.propnet.architecture.PropNetFactoringTest;
+import org.ggp.base.util.propnet.architecture.PropNetOrderingTest;
+import org.ggp.base.util.propnet.factory.CachingPropNetFactoryTest;
+import org.ggp.base.util.propnet.factory.OptimizingPropNetFactoryTest;
+import org.ggp.base.util.prover.aima.knowledge.KnowledgeBaseTest;
+import org.ggp.base.util.statemachine.InternalMachineStateTest;
+import org.ggp.base.util.statemachine.cache.ConcurrentStateCacheTest;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousCompiledPropNetStateMachineTest;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousDifferentialPropNetStateMachineTest;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousFlatPropNetStateMachineTest;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousParallelPropNetStateMachineTest;
 import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachineTest;
+import org.ggp.base.util.statemachine.implementation.reasoner.ForwardChainingStateMachineTest;
+import org.ggp.base.util.statemachine.verifier.SamplingVerifierStateMachineTest;
 import org.ggp.base.validator.StaticValidationTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
+	AliferousCompiledPropNetStateMachineTest.class,
+	AliferousDifferentialPropNetStateMachineTest.class,
+	AliferousFlatPropNetStateMachineTest.class,
+	AliferousParallelPropNetStateMachineTest.class,
 	BaseCryptographyTest.class,
+	CachingPropNetFactoryTest.class,
 	CanonicalJSONTest.class,
 	ClojureGamerTest.class,
+	ConcurrentStateCacheTest.class,
+	DepthChargeExecutorTest.class,
 	DependencyGraphsTest.class,
+	ForwardChainingStateMachineTest.class,
+	GamePlayerTest.class,
 	GameParsingTest.class,
 	GdlCleanerTest.class,
+	GdlFactoryTest.class,
+	GdlPoolTest.class,
 	GdlRendererTest.class,
 	GdlScramblerTest.class,
 	HttpTest.class,
 	InfoResponseTest.class,
+	InternalMachineStateTest.class,
+	KnowledgeBaseTest.class,
+	MatchJournalTest.class,
+	MctsTreeTest.class,
 	NoTabsInRulesheetsTest.class,
+	OptimizingPropNetFactoryTest.class,
+	PropNetFactoringTest.class,
+	PropNetOrderingTest.class,
 	ProverStateMachineTest.class,
 	PythonGamerTest.class,
+	RequestThreadTest.class,
+	SamplingVerifierStateMachineTest.class,
 	SignableJSONTest.class,
 	SimpleSentenceFormTest.class,
 	StaticValidationTest.class,
@@ -0,0 +1,81 @@
+package org.ggp.base.util.gdl.factory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.gdl.factory.exceptions.GdlFormatException;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.gdl.grammar.GdlPool;
+import org.ggp.base.util.gdl.grammar.GdlTerm;
+import org.ggp.base.util.symbol.factory.SymbolFactory;
+import org.ggp.base.util.symbol.factory.exceptions.SymbolFormatException;
+import org.ggp.base.util.symbol.grammar.SymbolList;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GdlFactoryTest extends Assert {
+
+    @Test
+    public void testRulesheetsMatchSymbolRoute() throws Exception {
+        TestGameRepository repository = new TestGameRepository();
+        for (String gameKey : repository.getGameKeys()) {
+            String rulesheet = repository.getGame(gameKey).getRulesheet();
+            assertEquals(gameKey, viaSymbols(rulesheet), GdlFactory.createFromList(rulesheet));
+        }
+    }
+
+    @Test
+    public void testExpressionsMatchSymbolRoute() throws Exception {
+        for (String gdl : Arrays.asList(
+                "terminal",
+                "(foo)",
+                "( true ( cell 1 1 b ) )",
+                "(<= (legal ?p noop) (true (control ?q))\n\t(distinct ?p ?q))",
+                "(<= terminal (NOT (true (step 3)) extra) (Or (a) b (c ?x)))",
+                "(<= (p ?x) (distinct ?x a (ignored)) (not q))",
+                "(?x a)",
+                "(role white) trailing (ignored")) {
+            assertSame(gdl, GdlFactory.create(SymbolFactory.create(gdl)), GdlFactory.create(gdl));
+        }
+        for (String term : Arrays.asList("a", "?x", "(mark 1 ?y)", "(f (g (h ?x)) b) extra")) {
+            assertSame(term, GdlFactory.createTerm(SymbolFactory.create(term)), GdlFactory.createTerm(term));
+        }
+        assertEquals(Arrays.asList(GdlFactory.create("(a b)"), GdlFactory.create("(<= c (d))")),
+                GdlFactory.createList("(a b) (<= c (d))"));
+        assertEquals(Arrays.asList(GdlFactory.create("a")), GdlFactory.createList("a (b c)"));
+        assertEquals(Arrays.asList(GdlFactory.createTerm("(b ?c)"), GdlFactory.createTerm("(d)")),
+                GdlFactory.createTermList("(b ?c) (d)"));
+        assertEquals(Arrays.<GdlTerm>asList(GdlPool.getVariable("?a")), GdlFactory.createTermList("?a (b c)"));
+    }
+
+    @Test
+    public void testMalformedInputIsReportedAsBefore() throws Exception {
+        for (String gdl : Arrays.asList("(a b", "((a) b)", "()", "(<=)", "(<= (p) (distinct a))")) {
+            try {
+                GdlFactory.create(gdl);
+                fail(gdl);
+            } catch (GdlFormatException | SymbolFormatException e) {
+                // Expected
+            } catch (RuntimeException e) {
+                // The Symbol route lets some conversion errors escape as they are.
+            }
+        }
+        try {
+            GdlFactory.createTerm("(f a");
+            fail();
+        } catch (SymbolFormatException e) {
+            // Expected
+        }
+    }
+
+    private static List<Gdl> viaSymbols(String rulesheet) throws Exception {
+        List<Gdl> rules = new ArrayList<Gdl>();
+        SymbolList list = (SymbolList) SymbolFactory.create(rulesheet);
+        for (int i = 0; i < list.size(); i++) {
+            rules.add(GdlFactory.create(list.get(i)));
+        }
+        return rules;
+    }
+}
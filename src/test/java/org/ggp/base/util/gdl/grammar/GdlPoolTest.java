@@ -0,0 +1,100 @@
+package org.ggp.base.util.gdl.grammar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.ggp.base.util.gdl.factory.GdlFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GdlPoolTest extends Assert {
+
+    @Test
+    public void testFunctionsAndRelationsAreInterned() throws Exception {
+        GdlConstant cell = GdlPool.getConstant("cell");
+        GdlConstant one = GdlPool.getConstant("1");
+        GdlVariable x = GdlPool.getVariable("?x");
+        List<GdlTerm> body = new ArrayList<GdlTerm>(Arrays.<GdlTerm>asList(one, x));
+
+        GdlFunction function = GdlPool.getFunction(cell, body);
+        assertSame(function, GdlPool.getFunction(cell, new GdlTerm[] {one, x}));
+        assertSame(function, GdlFactory.createTerm("(cell 1 ?x)"));
+        // Changing the list the function was built from must not affect the pool.
+        body.set(1, one);
+        assertSame(function, GdlPool.getFunction(cell, new GdlTerm[] {one, x}));
+        assertNotSame(function, GdlPool.getFunction(cell, body));
+
+        // Functions and relations with the same name and arguments are different objects.
+        GdlRelation relation = GdlPool.getRelation(cell, new GdlTerm[] {one, x});
+        assertSame(relation, GdlFactory.create("(cell 1 ?x)"));
+        assertSame(relation, function.toSentence());
+
+        GdlRelation nested = GdlPool.getRelation(GdlPool.TRUE, new GdlTerm[] {function});
+        assertSame(nested, GdlFactory.create("(true (cell 1 ?x))"));
+        assertNotSame(nested, GdlPool.getRelation(GdlPool.TRUE, new GdlTerm[] {GdlPool.getFunction(cell, new GdlTerm[] {x, one})}));
+    }
+
+    @Test
+    public void testRulesAndLiteralsAreInterned() throws Exception {
+        String rule = "(<= (legal ?p (mark ?x ?y)) (true (cell ?x ?y b)) (not (true (control ?q))) (distinct ?p ?q) (or (role ?p) (role ?q)))";
+        GdlRule parsed = (GdlRule) GdlFactory.create(rule);
+        assertSame(parsed, GdlFactory.create(rule));
+        assertSame(parsed, GdlPool.getRule(parsed.getHead(), new ArrayList<GdlLiteral>(parsed.getBody())));
+        assertSame(parsed.get(1), GdlPool.getNot(((GdlNot) parsed.get(1)).getBody()));
+        assertSame(parsed.get(2), GdlPool.getDistinct(GdlPool.getVariable("?p"), GdlPool.getVariable("?q")));
+        assertNotSame(parsed.get(2), GdlPool.getDistinct(GdlPool.getVariable("?q"), GdlPool.getVariable("?p")));
+        assertSame(parsed.get(3), GdlPool.getOr(((GdlOr) parsed.get(3)).getDisjuncts()));
+
+        GdlRule fact = GdlPool.getRule(parsed.getHead());
+        assertNotSame(parsed, fact);
+        assertSame(fact, GdlPool.getRule(parsed.getHead(), new GdlLiteral[0]));
+    }
+
+    @Test
+    public void testConcurrentCreationGivesOneObject() throws Exception {
+        final int threadCount = 4;
+        final GdlSentence[][] created = new GdlSentence[threadCount][200];
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < threadCount; t++) {
+            final int thread = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 200; i++) {
+                        GdlTerm cell = GdlPool.getFunction(GdlPool.getConstant("concurrentCell"),
+                                new GdlTerm[] {GdlPool.getConstant(Integer.toString(i)), GdlPool.getConstant("b")});
+                        created[thread][i] = GdlPool.getRelation(GdlPool.TRUE, new GdlTerm[] {cell});
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int t = 1; t < threadCount; t++) {
+            for (int i = 0; i < 200; i++) {
+                assertSame(created[0][i], created[t][i]);
+            }
+        }
+    }
+
+    @Test
+    public void testTermIdsAreDistinct() throws Exception {
+        Set<Integer> ids = new HashSet<Integer>();
+        Set<GdlTerm> terms = new HashSet<GdlTerm>();
+        for (String term : Arrays.asList("a", "b", "?a", "?b", "(f a)", "(f b)", "(f ?a)", "(g a)", "(f (f a))")) {
+            terms.add(GdlFactory.createTerm(term));
+        }
+        for (GdlTerm term : terms) {
+            ids.add(term.getId());
+        }
+        assertEquals(9, ids.size());
+        assertEquals(GdlPool.TRUE.getId(), GdlPool.getConstant("true").getId());
+    }
+}
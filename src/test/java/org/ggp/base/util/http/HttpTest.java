@@ -7,6 +7,9 @@ import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Assert;
 import org.junit.Ignore;
@@ -66,8 +69,145 @@ public class HttpTest extends Assert {
         doClientEchoCheckOverGET(testPair, "1234567890abcdefgijklmnopqrstuvwxyz!@#$%^&*()1234567890", "");
     }
 
+	@Test
+    public void testPooledRequestsReuseConnection() throws Exception {
+        // The server accepts a single connection, so the second request
+        // times out unless it is sent on the same connection as the first.
+        final ServerSocket listener = new ServerSocket(0);
+        Thread server = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Socket connection = listener.accept();
+                    echoWithKeepAlive(connection);
+                    echoWithKeepAlive(connection);
+                    connection.close();
+                } catch (IOException e) {
+                    ;
+                }
+            }
+        };
+        server.start();
+        try {
+            assertEquals("HELLO", HttpRequest.issuePooledRequest("127.0.0.1", listener.getLocalPort(), "", "hello", 5000));
+            assertEquals("WORLD", HttpRequest.issuePooledRequest("127.0.0.1", listener.getLocalPort(), "", "world", 5000));
+        } finally {
+            server.join(5000);
+            listener.close();
+        }
+    }
+
+	@Test
+    public void testPooledRequestRetriesClosedConnection() throws Exception {
+        // The server closes each connection after answering with keep-alive,
+        // so the second request finds its pooled connection closed.
+        final ServerSocket listener = new ServerSocket(0);
+        Thread server = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 2; i++) {
+                        Socket connection = listener.accept();
+                        echoWithKeepAlive(connection);
+                        connection.close();
+                    }
+                } catch (IOException e) {
+                    ;
+                }
+            }
+        };
+        server.start();
+        try {
+            assertEquals("HELLO", HttpRequest.issuePooledRequest("127.0.0.1", listener.getLocalPort(), "", "hello", 5000));
+            Thread.sleep(100);
+            assertEquals("WORLD", HttpRequest.issuePooledRequest("127.0.0.1", listener.getLocalPort(), "", "world", 5000));
+        } finally {
+            server.join(5000);
+            listener.close();
+        }
+    }
+
+	@Test
+    public void testPooledRequestIsNotResentAfterResponseStarted() throws Exception {
+        // The server starts answering the second request on the kept-alive
+        // connection and then drops it, so the request must not be sent again.
+        final ServerSocket listener = new ServerSocket(0);
+        final AtomicBoolean resent = new AtomicBoolean();
+        Thread server = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Socket connection = listener.accept();
+                    echoWithKeepAlive(connection);
+                    HttpReader.readAsServer(connection, 5000, new HashMap<String, String>());
+                    PrintWriter pw = new PrintWriter(connection.getOutputStream());
+                    pw.print("HTTP/1.0 200 OK\r\n");
+                    pw.flush();
+                    connection.close();
+                    listener.setSoTimeout(1000);
+                    listener.accept().close();
+                    resent.set(true);
+                } catch (IOException e) {
+                    ;
+                }
+            }
+        };
+        server.start();
+        try {
+            assertEquals("HELLO", HttpRequest.issuePooledRequest("127.0.0.1", listener.getLocalPort(), "", "hello", 5000));
+            try {
+                HttpRequest.issuePooledRequest("127.0.0.1", listener.getLocalPort(), "", "world", 5000);
+                fail();
+            } catch (IOException e) {
+                ;
+            }
+        } finally {
+            server.join(5000);
+            listener.close();
+        }
+        assertFalse(resent.get());
+    }
+
+	@Test
+    public void testExpiredPooledConnectionIsClosed() throws Exception {
+        // The player is never contacted again after its first request, so
+        // only the sweep of the whole pool can close its idle connection.
+        final ServerSocket listener = new ServerSocket(0);
+        final AtomicBoolean closed = new AtomicBoolean();
+        Thread server = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Socket connection = listener.accept();
+                    echoWithKeepAlive(connection);
+                    connection.setSoTimeout(5000);
+                    closed.set(connection.getInputStream().read() < 0);
+                    connection.close();
+                } catch (IOException e) {
+                    ;
+                }
+            }
+        };
+        server.start();
+        try {
+            assertEquals("HELLO", HttpRequest.issuePooledRequest("127.0.0.1", listener.getLocalPort(), "", "hello", 5000));
+            HttpRequest.closeExpiredConnections(System.currentTimeMillis() + HttpRequest.POOL_IDLE_TIMEOUT);
+        } finally {
+            server.join(5000);
+            listener.close();
+        }
+        assertTrue(closed.get());
+    }
+
     // Helper functions for running specific checks.
 
+    private static void echoWithKeepAlive(Socket connection) throws IOException {
+        Map<String, String> headers = new HashMap<String, String>();
+        String data = HttpReader.readAsServer(connection, 5000, headers);
+        assertEquals("keep-alive", headers.get("connection"));
+        HttpWriter.writeAsServer(connection, data.toUpperCase(), true);
+    }
+
     private void doSimpleEchoCheck(SocketPair p, String data, String playerName) throws IOException {
         HttpWriter.writeAsClient(p.client, "", data, playerName);
         String readData = HttpReader.readAsServer(p.server);
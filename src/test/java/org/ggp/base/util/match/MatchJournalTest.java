@@ -0,0 +1,83 @@
+package org.ggp.base.util.match;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ggp.base.util.game.Game;
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+import external.JSON.JSONObject;
+
+public class MatchJournalTest extends Assert {
+
+    @Test
+    public void testReplayMatchesFullJSON() throws Exception {
+        Game game = new TestGameRepository().getGame("ticTacToe");
+        Match match = new Match("journalTest", -1, 10, 10, game, null);
+        File file = File.createTempFile("match", ".journal");
+        try {
+            MatchJournal journal = new MatchJournal(file);
+            playAndJournal(match, journal);
+            journal.close();
+
+            JSONObject expected = new JSONObject(match.toJSON());
+            JSONObject replayed = new JSONObject(MatchJournal.replay(file));
+            for (String key : Arrays.asList("matchId", "randomToken", "startTime", "states", "moves", "stateTimes", "errors", "goalValues", "isCompleted")) {
+                assertEquals(key, expected.get(key).toString(), replayed.get(key).toString());
+            }
+            Match loaded = new Match(replayed.toString(), game, null);
+            assertEquals(match.getStateHistory(), loaded.getStateHistory());
+            assertEquals(match.getMoveHistory(), loaded.getMoveHistory());
+            assertTrue(loaded.isCompleted());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReplayIgnoresCutOffLastLine() throws Exception {
+        Game game = new TestGameRepository().getGame("ticTacToe");
+        Match match = new Match("journalTest", -1, 10, 10, game, null);
+        File file = File.createTempFile("match", ".journal");
+        try {
+            MatchJournal journal = new MatchJournal(file);
+            playAndJournal(match, journal);
+            journal.close();
+            FileWriter writer = new FileWriter(file, true);
+            writer.write("{\"states\": [\"( (cell 1 1 x) ");
+            writer.close();
+
+            JSONObject replayed = new JSONObject(MatchJournal.replay(file));
+            assertEquals(new JSONObject(match.toJSON()).get("states").toString(), replayed.get("states").toString());
+        } finally {
+            file.delete();
+        }
+    }
+
+    // Plays random moves, saving to the journal after every move as GameServer does.
+    private static void playAndJournal(Match match, MatchJournal journal) throws Exception {
+        StateMachine stateMachine = new ProverStateMachine();
+        stateMachine.initialize(match.getGame().getRules());
+        MachineState state = stateMachine.getInitialState();
+        match.appendState(state.getContents());
+        match.appendNoErrors();
+        while (!stateMachine.isTerminal(state)) {
+            journal.append(match);
+            List<Move> moves = stateMachine.getRandomJointMove(state);
+            match.appendMoves2(moves);
+            state = stateMachine.getNextState(state, moves);
+            match.appendState(state.getContents());
+            match.appendNoErrors();
+        }
+        match.markCompleted(stateMachine.getGoals(state));
+        journal.append(match);
+    }
+}
@@ -0,0 +1,104 @@
+package org.ggp.base.util.propnet.architecture;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ggp.base.util.game.Game;
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.propnet.factory.OptimizingPropNetFactory;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.propnet.SubgameStateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PropNetFactoringTest extends Assert {
+
+    /** A single player flips two lights, each of which only depends on its own moves. */
+    private static final String TWO_LIGHTS =
+            "(role player) " +
+            "(light a) (light b) " +
+            "(init (step 0)) " +
+            "(<= (legal player (flip ?l)) (light ?l) (not (true (on ?l)))) " +
+            "(<= (legal player (wait ?l)) (light ?l) (true (on ?l))) " +
+            "(<= (next (on ?l)) (does player (flip ?l))) " +
+            "(<= (next (on ?l)) (true (on ?l))) " +
+            "(<= (next (step ?y)) (true (step ?x)) (succ ?x ?y)) " +
+            "(succ 0 1) (succ 1 2) (succ 2 3) " +
+            "(<= terminal (true (step 3))) " +
+            "(<= (goal player 100) (true (on a)) (true (on b))) " +
+            "(<= (goal player 0) (not (true (on a)))) " +
+            "(<= (goal player 0) (true (on a)) (not (true (on b))))";
+
+    @Test
+    public void testIndependentLightsAreFactored() throws Exception {
+        List<Gdl> description = Game.createEphemeralGame(Game.preprocessRulesheet(TWO_LIGHTS)).getRules();
+        PropNet propNet = OptimizingPropNetFactory.create(description);
+        PropNetFactoring factoring = new PropNetFactoring(propNet);
+        assertTrue(factoring.isFactorable());
+        assertEquals(2, factoring.getPlayableFactors().size());
+        for (PropNetFactoring.Factor factor : factoring.getPlayableFactors()) {
+            assertEquals(2, factor.getInputPropositions().size());
+        }
+
+        StateMachine prover = new ProverStateMachine();
+        prover.initialize(description);
+        Role player = prover.getRoles().get(0);
+        MachineState initial = prover.getInitialState();
+        assertEquals(2, prover.getLegalMoves(initial, player).size());
+        List<StateMachine> subgames = SubgameStateMachine.createSubgames(prover, propNet);
+        assertEquals(2, subgames.size());
+        String first = subgames.get(0).getLegalMoves(initial, player).toString();
+        String second = subgames.get(1).getLegalMoves(initial, player).toString();
+        assertEquals(1, subgames.get(0).getLegalMoves(initial, player).size());
+        assertEquals(1, subgames.get(1).getLegalMoves(initial, player).size());
+        assertFalse(first.equals(second));
+
+        // Goals and terminality are still those of the whole game.
+        StateMachine subgame = subgames.get(0);
+        MachineState state = initial;
+        for (int i = 0; i < 3; i++) {
+            Move move = subgame.getLegalMoves(state, player).get(0);
+            state = subgame.getNextState(state, Collections.singletonList(move));
+        }
+        assertTrue(subgame.isTerminal(state));
+        assertEquals(prover.getGoal(state, player), subgame.getGoal(state, player));
+    }
+
+    @Test
+    public void testSubgameDoesNotReinitializeBackingMachine() throws Exception {
+        List<Gdl> description = Game.createEphemeralGame(Game.preprocessRulesheet(TWO_LIGHTS)).getRules();
+        final AtomicInteger initializations = new AtomicInteger();
+        StateMachine prover = new ProverStateMachine() {
+            @Override
+            public void initialize(List<Gdl> description) {
+                initializations.incrementAndGet();
+                super.initialize(description);
+            }
+        };
+        prover.initialize(description);
+        List<StateMachine> subgames = SubgameStateMachine.createSubgames(prover, OptimizingPropNetFactory.create(description));
+        for (StateMachine subgame : subgames) {
+            subgame.initialize(description);
+        }
+        assertEquals(1, initializations.get());
+    }
+
+    @Test
+    public void testTicTacToeIsNotFactored() throws Exception {
+        List<Gdl> description = new TestGameRepository().getGame("ticTacToe").getRules();
+        PropNet propNet = OptimizingPropNetFactory.create(description);
+        assertFalse(new PropNetFactoring(propNet).isFactorable());
+
+        StateMachine prover = new ProverStateMachine();
+        prover.initialize(description);
+        List<StateMachine> subgames = SubgameStateMachine.createSubgames(prover, propNet);
+        assertEquals(1, subgames.size());
+        assertSame(prover, subgames.get(0));
+    }
+}
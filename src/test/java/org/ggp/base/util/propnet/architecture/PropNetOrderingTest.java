@@ -0,0 +1,93 @@
+package org.ggp.base.util.propnet.architecture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.propnet.architecture.components.Not;
+import org.ggp.base.util.propnet.architecture.components.Proposition;
+import org.ggp.base.util.propnet.factory.OptimizingPropNetFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+
+public class PropNetOrderingTest extends Assert {
+
+    @Test
+    public void testLevelsFollowInputs() throws Exception {
+        for (String gameKey : Arrays.asList("ticTacToe", "connectFour", "test_case_3c")) {
+            PropNet propNet = OptimizingPropNetFactory.create(new TestGameRepository().getGame(gameKey).getRules());
+            FlatPropNet flatNet = new FlatPropNet(propNet);
+            int[] ordering = flatNet.getOrdering();
+            int[] levelOffsets = flatNet.getLevelOffsets();
+            int[] types = flatNet.getTypes();
+
+            int[] levels = new int[flatNet.size()];
+            Arrays.fill(levels, -1);
+            for (int level = 0; level < levelOffsets.length - 1; level++) {
+                assertTrue(gameKey, levelOffsets[level] < levelOffsets[level + 1]);
+                for (int i = levelOffsets[level]; i < levelOffsets[level + 1]; i++) {
+                    levels[ordering[i]] = level;
+                }
+            }
+            assertEquals(gameKey, ordering.length, levelOffsets[levelOffsets.length - 1]);
+
+            int numEvaluated = 0;
+            for (int c = 0; c < flatNet.size(); c++) {
+                if (!FlatPropNet.isEvaluated(types[c])) {
+                    assertEquals(gameKey, -1, levels[c]);
+                    continue;
+                }
+                numEvaluated++;
+                int highestInput = -1;
+                for (int j = flatNet.getInputOffsets()[c]; j < flatNet.getInputOffsets()[c + 1]; j++) {
+                    highestInput = Math.max(highestInput, levels[flatNet.getInputIds()[j]]);
+                }
+                assertEquals(gameKey, highestInput + 1, levels[c]);
+            }
+            assertEquals(gameKey, numEvaluated, ordering.length);
+        }
+    }
+
+    @Test
+    public void testDeepChainDoesNotRecurse() {
+        // Deep enough that a recursive depth-first search would overflow the stack.
+        int depth = 200000;
+        List<Component> components = new ArrayList<Component>();
+        Component previous = new Proposition(null);
+        components.add(previous);
+        for (int i = 0; i < depth; i++) {
+            Component not = new Not();
+            not.addInput(previous);
+            previous.addOutput(not);
+            components.add(not);
+            previous = not;
+        }
+        PropNetOrdering ordering = PropNetOrdering.create(components, Predicates.not(Predicates.equalTo(components.get(0))));
+        assertEquals(depth, ordering.getNumLevels());
+
+        Map<Component, Integer> positions = new HashMap<Component, Integer>();
+        List<Component> ordered = ordering.getComponents();
+        for (int i = 0; i < ordered.size(); i++) {
+            positions.put(ordered.get(i), i);
+        }
+        for (int i = 1; i < depth; i++) {
+            assertEquals(i - 1, (int) positions.get(components.get(i)));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCycleIsRejected() {
+        Component first = new Not();
+        Component second = new Not();
+        first.addOutput(second);
+        second.addInput(first);
+        second.addOutput(first);
+        first.addInput(second);
+        PropNetOrdering.create(Arrays.asList(first, second), Predicates.<Component>alwaysTrue());
+    }
+}
@@ -0,0 +1,129 @@
+package org.ggp.base.util.propnet.factory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.propnet.architecture.Component;
+import org.ggp.base.util.propnet.architecture.PropNet;
+import org.ggp.base.util.propnet.architecture.components.Constant;
+import org.ggp.base.util.propnet.architecture.components.Proposition;
+import org.ggp.base.util.propnet.factory.serializer.PropNetSerializer;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousFlatPropNetStateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.ggp.base.util.statemachine.verifier.StateMachineVerifier;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CachingPropNetFactoryTest extends Assert {
+
+    private static final List<String> GAMES = Arrays.asList("ticTacToe", "connectFour",
+            "simpleMutex", "test_case_1a", "test_case_3c", "test_case_5c");
+
+    @Test
+    public void testSerializedPropNetMatchesOriginal() throws Exception {
+        for (String gameKey : GAMES) {
+            List<Gdl> description = new TestGameRepository().getGame(gameKey).getRules();
+            PropNet original = OptimizingPropNetFactory.create(description);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            PropNetSerializer.write(original, out);
+            PropNet copy = PropNetSerializer.read(new ByteArrayInputStream(out.toByteArray()));
+
+            assertEquals(gameKey, original.getRoles(), copy.getRoles());
+            assertEquals(gameKey, original.getBasePropositions().keySet(), copy.getBasePropositions().keySet());
+            assertEquals(gameKey, original.getInputPropositions().keySet(), copy.getInputPropositions().keySet());
+            assertEquals(gameKey, original.getInitProposition() == null, copy.getInitProposition() == null);
+            assertEquals(gameKey, original.getTerminalProposition() == null, copy.getTerminalProposition() == null);
+            assertEquals(gameKey, getSignatures(original), getSignatures(copy));
+        }
+    }
+
+    @Test
+    public void testCacheKeyIgnoresRuleOrder() throws Exception {
+        List<Gdl> description = new TestGameRepository().getGame("ticTacToe").getRules();
+        List<Gdl> shuffled = new ArrayList<Gdl>(description);
+        Collections.shuffle(shuffled, new Random(0));
+        assertEquals(CachingPropNetFactory.getCacheKey(description), CachingPropNetFactory.getCacheKey(shuffled));
+        assertFalse(CachingPropNetFactory.getCacheKey(description).equals(
+                CachingPropNetFactory.getCacheKey(description.subList(1, description.size()))));
+    }
+
+    @Test
+    public void testCachedPropNetIsUsedAndReplacedWhenUnreadable() throws Exception {
+        File directory = File.createTempFile("propnet-cache", "");
+        assertTrue(directory.delete());
+        File previousDirectory = CachingPropNetFactory.getCacheDirectory();
+        CachingPropNetFactory.setCacheDirectory(directory);
+        try {
+            List<Gdl> description = new TestGameRepository().getGame("connectFour").getRules();
+            File file = new File(directory, CachingPropNetFactory.getCacheKey(description) + ".propnet");
+            PropNet built = CachingPropNetFactory.create(description);
+            assertTrue(file.isFile());
+            assertEquals(getSignatures(built), getSignatures(CachingPropNetFactory.create(description)));
+
+            // Machines built from the cached propnet play the same game.
+            StateMachine prover = new ProverStateMachine();
+            prover.initialize(description);
+            StateMachine cached = new AliferousFlatPropNetStateMachine();
+            cached.initialize(description);
+            assertTrue(StateMachineVerifier.checkMachineConsistency(prover, cached, 1000));
+
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(new byte[] { 1, 2, 3 });
+            out.close();
+            assertEquals(getSignatures(built), getSignatures(CachingPropNetFactory.create(description)));
+            assertTrue(file.length() > 3);
+        } finally {
+            CachingPropNetFactory.setCacheDirectory(previousDirectory);
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * Counts the components of the propnet by their own description and the
+     * descriptions of their inputs and outputs, which two propnets built for
+     * the same game share however their components are ordered.
+     */
+    private static Map<String, Integer> getSignatures(PropNet propNet) {
+        Map<String, Integer> signatures = new HashMap<String, Integer>();
+        for (Component component : propNet.getComponents()) {
+            String signature = describe(component) + " " + describeAll(component.getInputs()) + " " + describeAll(component.getOutputs());
+            Integer count = signatures.get(signature);
+            signatures.put(signature, (count == null) ? 1 : count + 1);
+        }
+        return signatures;
+    }
+
+    private static String describeAll(Iterable<Component> components) {
+        List<String> descriptions = new ArrayList<String>();
+        for (Component component : components) {
+            descriptions.add(describe(component));
+        }
+        Collections.sort(descriptions);
+        return descriptions.toString();
+    }
+
+    private static String describe(Component component) {
+        if (component instanceof Proposition) {
+            return ((Proposition) component).getName().toString();
+        }
+        if (component instanceof Constant) {
+            return "Constant" + component.getValue();
+        }
+        return component.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,60 @@
+package org.ggp.base.util.propnet.factory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.propnet.architecture.PropNet;
+import org.ggp.base.util.propnet.architecture.components.Proposition;
+import org.ggp.base.util.statemachine.Role;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OptimizingPropNetFactoryTest extends Assert {
+
+    private static final List<String> GAMES = Arrays.asList("ticTacToe", "connectFour",
+            "simpleMutex", "test_case_1a", "test_case_2a", "test_case_3c", "test_case_5c");
+
+    @Test
+    public void testParallelConstructionMatchesSequential() throws Exception {
+        for (String gameKey : GAMES) {
+            List<Gdl> description = new TestGameRepository().getGame(gameKey).getRules();
+            PropNet sequential = OptimizingPropNetFactory.create(description, false, 1);
+            for (int i = 0; i < 3; i++) {
+                PropNet parallel = OptimizingPropNetFactory.create(description, false, 4);
+                assertEquals(gameKey, sequential.getRoles(), parallel.getRoles());
+                assertEquals(gameKey, getNames(sequential.getBasePropositions()), getNames(parallel.getBasePropositions()));
+                assertEquals(gameKey, getNames(sequential.getInputPropositions()), getNames(parallel.getInputPropositions()));
+                for (Role role : sequential.getRoles()) {
+                    assertEquals(gameKey, getNames(sequential.getLegalPropositions().get(role)),
+                            getNames(parallel.getLegalPropositions().get(role)));
+                    assertEquals(gameKey, getNames(sequential.getGoalPropositions().get(role)),
+                            getNames(parallel.getGoalPropositions().get(role)));
+                }
+                // The same gates, wired the same way, and no duplicated negations.
+                assertEquals(gameKey, sequential.getSize(), parallel.getSize());
+                assertEquals(gameKey, sequential.getNumAnds(), parallel.getNumAnds());
+                assertEquals(gameKey, sequential.getNumOrs(), parallel.getNumOrs());
+                assertEquals(gameKey, sequential.getNumNots(), parallel.getNumNots());
+                assertEquals(gameKey, sequential.getNumLinks(), parallel.getNumLinks());
+            }
+        }
+    }
+
+    private static Set<GdlSentence> getNames(Map<GdlSentence, Proposition> propositions) {
+        return new HashSet<GdlSentence>(propositions.keySet());
+    }
+
+    private static Set<GdlSentence> getNames(Set<Proposition> propositions) {
+        Set<GdlSentence> names = new HashSet<GdlSentence>();
+        for (Proposition proposition : propositions) {
+            names.add(proposition.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,60 @@
+package org.ggp.base.util.prover.aima.knowledge;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.ggp.base.util.gdl.factory.GdlFactory;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.gdl.grammar.GdlPool;
+import org.ggp.base.util.gdl.grammar.GdlRule;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KnowledgeBaseTest extends Assert {
+
+    @Test
+    public void testFetchByFirstArgument() throws Exception {
+        Set<Gdl> description = new HashSet<Gdl>();
+        for (String gdl : Arrays.asList(
+                "(legal xplayer noop)",
+                "(legal oplayer noop)",
+                "(<= (legal ?p (mark ?x ?y)) (true (cell ?x ?y b)))",
+                "(true (cell 1 1 b))",
+                "(true (cell 1 2 x))",
+                "(true (control xplayer))",
+                "terminal")) {
+            description.add(GdlFactory.create(gdl));
+        }
+        KnowledgeBase knowledgeBase = new KnowledgeBase(description);
+
+        assertEquals(rules("(legal xplayer noop)", "(<= (legal ?p (mark ?x ?y)) (true (cell ?x ?y b)))"),
+                fetch(knowledgeBase, "(legal xplayer ?m)"));
+        assertEquals(rules("(<= (legal ?p (mark ?x ?y)) (true (cell ?x ?y b)))"),
+                fetch(knowledgeBase, "(legal robot ?m)"));
+        assertEquals(3, fetch(knowledgeBase, "(legal ?p ?m)").size());
+
+        assertEquals(rules("(true (cell 1 1 b))", "(true (cell 1 2 x))"),
+                fetch(knowledgeBase, "(true (cell ?x ?y b))"));
+        assertEquals(rules("(true (control xplayer))"), fetch(knowledgeBase, "(true (control ?p))"));
+        assertEquals(rules(), fetch(knowledgeBase, "(true control)"));
+        assertEquals(rules(), fetch(knowledgeBase, "(true (step ?n))"));
+
+        assertEquals(rules("terminal"), fetch(knowledgeBase, "terminal"));
+        assertEquals(rules(), fetch(knowledgeBase, "(goal ?p ?v)"));
+    }
+
+    private static Set<GdlRule> fetch(KnowledgeBase knowledgeBase, String query) throws Exception {
+        return new HashSet<GdlRule>(knowledgeBase.fetch((GdlSentence) GdlFactory.create(query)));
+    }
+
+    private static Set<GdlRule> rules(String... gdls) throws Exception {
+        Set<GdlRule> rules = new HashSet<GdlRule>();
+        for (String gdl : gdls) {
+            Gdl parsed = GdlFactory.create(gdl);
+            rules.add((parsed instanceof GdlRule) ? (GdlRule) parsed : GdlPool.getRule((GdlSentence) parsed));
+        }
+        return rules;
+    }
+}
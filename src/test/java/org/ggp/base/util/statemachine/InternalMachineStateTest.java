@@ -0,0 +1,88 @@
+package org.ggp.base.util.statemachine;
+
+import java.util.List;
+import java.util.Set;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.propnet.architecture.components.Proposition;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousFlatPropNetStateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InternalMachineStateTest extends Assert {
+
+    @Test
+    public void testContentsRoundTrip() throws Exception {
+        StateMachine machine = getMachine("connectFour");
+        MachineState state = machine.getInitialState();
+        for (int i = 0; i < 10 && !machine.isTerminal(state); i++) {
+            state = machine.getRandomNextState(state);
+        }
+        InternalMachineState internal = (InternalMachineState) state;
+        Set<GdlSentence> contents = internal.getContents();
+        assertEquals(internal.cardinality(), contents.size());
+        for (Proposition base : internal.getBases()) {
+            assertTrue(contents.contains(base.getName()));
+        }
+
+        MachineState rebuilt = machine.getMachineStateFromSentenceList(contents);
+        assertEquals(internal, rebuilt);
+        assertEquals(internal.hashCode(), rebuilt.hashCode());
+        assertEquals(0, internal.compareTo((InternalMachineState) rebuilt));
+        assertSame(internal, internal.clone());
+    }
+
+    @Test
+    public void testOrderingAndEquality() throws Exception {
+        StateMachine machine = getMachine("ticTacToe");
+        InternalMachineState initial = (InternalMachineState) machine.getInitialState();
+        InternalMachineState next = (InternalMachineState) machine.getRandomNextState(initial);
+        assertFalse(initial.equals(next));
+        assertEquals(-Integer.signum(initial.compareTo(next)), Integer.signum(next.compareTo(initial)));
+        assertTrue(initial.compareTo(next) != 0);
+
+        // States built on another machine's base table are never equal.
+        StateMachine other = getMachine("ticTacToe");
+        assertFalse(initial.equals(other.getInitialState()));
+        assertEquals(initial.getContents(), other.getInitialState().getContents());
+    }
+
+    @Test
+    public void testPool() throws Exception {
+        StateMachine machine = getMachine("ticTacToe");
+        InternalMachineStatePool pool = new InternalMachineStatePool();
+        MachineState first = machine.getInitialState();
+        MachineState second = machine.getInitialState();
+        assertNotSame(first, second);
+        assertSame(first, pool.intern(first));
+        assertSame(first, pool.intern(second));
+        assertEquals(1, pool.size());
+
+        pool.intern(machine.getRandomNextState(first));
+        assertEquals(2, pool.size());
+        pool.clear();
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testPoolWithProverStates() throws Exception {
+        StateMachine machine = new ProverStateMachine();
+        machine.initialize(new TestGameRepository().getGame("ticTacToe").getRules());
+        InternalMachineStatePool pool = new InternalMachineStatePool();
+        MachineState first = machine.getInitialState();
+        MachineState second = new MachineState(first.getContents());
+        assertSame(first, pool.intern(first));
+        assertSame(first, pool.intern(second));
+        assertEquals(1, pool.size());
+    }
+
+    private static StateMachine getMachine(String gameKey) {
+        List<Gdl> description = new TestGameRepository().getGame(gameKey).getRules();
+        StateMachine machine = new AliferousFlatPropNetStateMachine();
+        machine.initialize(description);
+        return machine;
+    }
+}
@@ -0,0 +1,118 @@
+package org.ggp.base.util.statemachine.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ggp.base.util.statemachine.cache.ConcurrentStateCache.EvictionPolicy;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentStateCacheTest extends Assert {
+
+    @Test
+    public void testLruEviction() {
+        ConcurrentStateCache<Integer, String> cache = new ConcurrentStateCache<Integer, String>(3, EvictionPolicy.LRU, 1);
+        assertNull(cache.putIfAbsent(1, "a"));
+        assertNull(cache.putIfAbsent(2, "b"));
+        assertNull(cache.putIfAbsent(3, "c"));
+        assertEquals("a", cache.get(1));
+        assertNull(cache.putIfAbsent(4, "d"));
+
+        // 2 was the least recently used entry.
+        assertNull(cache.get(2));
+        assertEquals("a", cache.get(1));
+        assertEquals("c", cache.get(3));
+        assertEquals("d", cache.get(4));
+        assertEquals(3, cache.size());
+        assertEquals(4, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testClockEviction() {
+        ConcurrentStateCache<Integer, String> cache = new ConcurrentStateCache<Integer, String>(3, EvictionPolicy.CLOCK, 1);
+        cache.putIfAbsent(1, "a");
+        cache.putIfAbsent(2, "b");
+        cache.putIfAbsent(3, "c");
+        cache.get(1);
+        cache.get(3);
+        cache.putIfAbsent(4, "d");
+
+        // 2 was the only entry not used since the hand last passed it.
+        assertNull(cache.get(2));
+        assertEquals("a", cache.get(1));
+        assertEquals("c", cache.get(3));
+        assertEquals("d", cache.get(4));
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testPutIfAbsentKeepsFirstValue() {
+        for (EvictionPolicy policy : EvictionPolicy.values()) {
+            ConcurrentStateCache<Integer, String> cache = new ConcurrentStateCache<Integer, String>(10, policy);
+            assertNull(cache.putIfAbsent(1, "a"));
+            assertEquals("a", cache.putIfAbsent(1, "b"));
+            assertEquals("a", cache.get(1));
+        }
+    }
+
+    @Test
+    public void testPrune() {
+        for (EvictionPolicy policy : EvictionPolicy.values()) {
+            ConcurrentStateCache<Integer, String> cache = new ConcurrentStateCache<Integer, String>(10, policy, 2);
+            cache.putIfAbsent(1, "a");
+            cache.putIfAbsent(2, "b");
+            cache.prune();
+            assertEquals(2, cache.size());
+
+            // Only the entry used since the last prune survives the next one.
+            cache.get(1);
+            cache.prune();
+            assertEquals(1, cache.size());
+            assertEquals("a", cache.get(1));
+            assertEquals(1, cache.getEvictions());
+
+            // Pruned slots are reused before anything is evicted.
+            for (int i = 10; i < 19; i++) {
+                cache.putIfAbsent(i, "x");
+            }
+            assertEquals(10, cache.size());
+            assertEquals(1, cache.getEvictions());
+        }
+    }
+
+    @Test
+    public void testConcurrentAccessStaysBounded() throws Exception {
+        for (EvictionPolicy policy : EvictionPolicy.values()) {
+            final ConcurrentStateCache<Integer, Integer> cache = new ConcurrentStateCache<Integer, Integer>(1000, policy, 8);
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int t = 0; t < 4; t++) {
+                final int offset = t * 100000;
+                threads.add(new Thread() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < 20000; i++) {
+                            int key = offset + i % 3000;
+                            Integer value = cache.get(key);
+                            if (value == null) {
+                                cache.putIfAbsent(key, key);
+                            } else {
+                                assertEquals(key, (int) value);
+                            }
+                        }
+                    }
+                });
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue(cache.size() <= 1000);
+            assertEquals(80000, cache.getHits() + cache.getMisses());
+        }
+    }
+}
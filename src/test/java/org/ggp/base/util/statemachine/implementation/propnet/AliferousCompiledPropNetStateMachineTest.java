@@ -0,0 +1,55 @@
+package org.ggp.base.util.statemachine.implementation.propnet;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.propnet.architecture.CompiledPropNet;
+import org.ggp.base.util.propnet.architecture.FlatPropNet;
+import org.ggp.base.util.propnet.factory.compiler.PropNetCompiler;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AliferousCompiledPropNetStateMachineTest extends Assert {
+
+    @Test
+    public void testConsistencyWithProver() throws Exception {
+        for (String gameKey : AliferousFlatPropNetStateMachineTest.GAMES) {
+            List<Gdl> description = new TestGameRepository().getGame(gameKey).getRules();
+            StateMachine prover = new ProverStateMachine();
+            prover.initialize(description);
+            AliferousCompiledPropNetStateMachine compiled = new AliferousCompiledPropNetStateMachine();
+            compiled.initialize(description);
+            assertNotNull(gameKey, compiled.getCompiledPropNet());
+            AliferousFlatPropNetStateMachineTest.checkConsistency(gameKey, prover, compiled, 10);
+        }
+    }
+
+    @Test
+    public void testSmallChunksMatchFlatPropagation() throws Exception {
+        List<Gdl> description = new TestGameRepository().getGame("connectFour").getRules();
+        AliferousFlatPropNetStateMachine machine = new AliferousFlatPropNetStateMachine();
+        machine.initialize(description);
+        FlatPropNet net = machine.getFlatPropNet();
+        // One gate per method, to exercise the chunking.
+        CompiledPropNet compiled = PropNetCompiler.compile(net, 1);
+
+        Random random = new Random(0);
+        int numSources = net.getNumBases() + net.getNumInputs();
+        for (int i = 0; i < 50; i++) {
+            boolean[] expected = net.newValues();
+            for (int c = 0; c < numSources; c++) {
+                expected[c] = random.nextBoolean();
+            }
+            boolean[] actual = expected.clone();
+            net.propagate(expected, net.getOrdering());
+            compiled.propagateState(actual);
+            compiled.propagateMoves(actual);
+            assertTrue(Arrays.equals(expected, actual));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.ggp.base.util.statemachine.implementation.propnet;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
+import org.ggp.base.util.propnet.architecture.components.Proposition;
+import org.ggp.base.util.statemachine.InternalMachineState;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AliferousDifferentialPropNetStateMachineTest extends Assert {
+
+    @Test
+    public void testConsistencyWithProver() throws Exception {
+        for (String gameKey : AliferousFlatPropNetStateMachineTest.GAMES) {
+            List<Gdl> description = new TestGameRepository().getGame(gameKey).getRules();
+            StateMachine prover = new ProverStateMachine();
+            prover.initialize(description);
+            StateMachine differential = new AliferousDifferentialPropNetStateMachine();
+            differential.initialize(description);
+            AliferousFlatPropNetStateMachineTest.checkConsistency(gameKey, prover, differential, 10);
+        }
+    }
+
+    @Test
+    public void testDepthCharges() throws Exception {
+        for (String gameKey : AliferousFlatPropNetStateMachineTest.GAMES) {
+            List<Gdl> description = new TestGameRepository().getGame(gameKey).getRules();
+            StateMachine prover = new ProverStateMachine();
+            prover.initialize(description);
+            StateMachine differential = new AliferousDifferentialPropNetStateMachine();
+            differential.initialize(description);
+            AliferousFlatPropNetStateMachineTest.checkDepthCharges(gameKey, prover, differential, 5);
+        }
+    }
+
+    @Test
+    public void testRevisitingEarlierStates() throws Exception {
+        List<Gdl> description = new TestGameRepository().getGame("connectFour").getRules();
+        StateMachine flat = new AliferousFlatPropNetStateMachine();
+        flat.initialize(description);
+        StateMachine differential = new AliferousDifferentialPropNetStateMachine();
+        differential.initialize(description);
+
+        // Walk down one game, then query the states again in reverse so that
+        // every load has to undo the changes of several moves at once.
+        List<MachineState> states = new ArrayList<MachineState>();
+        MachineState state = flat.getInitialState();
+        while (!flat.isTerminal(state)) {
+            states.add(state);
+            state = flat.getRandomNextState(state);
+        }
+        states.add(state);
+        for (int i = states.size() - 1; i >= 0; i -= 3) {
+            MachineState visited = states.get(i);
+            assertEquals(flat.isTerminal(visited), differential.isTerminal(visited));
+            for (Role role : flat.getRoles()) {
+                assertEquals(new HashSet<Move>(flat.getLegalMoves(visited, role)),
+                        new HashSet<Move>(differential.getLegalMoves(visited, role)));
+            }
+            if (!flat.isTerminal(visited)) {
+                List<Move> jointMove = flat.getRandomJointMove(visited);
+                assertEquals(getBaseNames(flat.getNextState(visited, jointMove)),
+                        getBaseNames(differential.getNextState(visited, jointMove)));
+            }
+        }
+    }
+
+    // The two machines build separate propnets, so their bit masks differ.
+    private static Set<GdlSentence> getBaseNames(MachineState state) {
+        Set<GdlSentence> names = new HashSet<GdlSentence>();
+        for (Proposition base : ((InternalMachineState) state).getBases()) {
+            names.add(base.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,167 @@
+package org.ggp.base.util.statemachine.implementation.propnet;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.ggp.base.util.game.Game;
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AliferousFlatPropNetStateMachineTest extends Assert {
+
+    /** A single move game whose only goal is only true before the move. */
+    private static final String NO_TERMINAL_GOAL =
+            "(role player) " +
+            "(init (step 0)) " +
+            "(<= (legal player noop) (true (step 0))) " +
+            "(<= (next (step 1)) (true (step 0))) " +
+            "(<= terminal (true (step 1))) " +
+            "(<= (goal player 100) (true (step 0)))";
+
+    protected static final List<String> GAMES = Arrays.asList("ticTacToe", "connectFour",
+            "simpleMutex", "test_case_1a", "test_case_3c", "test_case_5c");
+
+    @Test
+    public void testConsistencyWithProver() throws Exception {
+        for (String gameKey : GAMES) {
+            List<Gdl> description = new TestGameRepository().getGame(gameKey).getRules();
+            StateMachine prover = new ProverStateMachine();
+            prover.initialize(description);
+            StateMachine flat = new AliferousFlatPropNetStateMachine();
+            flat.initialize(description);
+            checkConsistency(gameKey, prover, flat, 10);
+        }
+    }
+
+    @Test
+    public void testDepthCharges() throws Exception {
+        for (String gameKey : GAMES) {
+            List<Gdl> description = new TestGameRepository().getGame(gameKey).getRules();
+            StateMachine prover = new ProverStateMachine();
+            prover.initialize(description);
+            StateMachine flat = new AliferousFlatPropNetStateMachine();
+            flat.initialize(description);
+            checkDepthCharges(gameKey, prover, flat, 5);
+        }
+    }
+
+    @Test
+    public void testUndefinedGoalThrows() throws Exception {
+        List<Gdl> description = Game.createEphemeralGame(Game.preprocessRulesheet(NO_TERMINAL_GOAL)).getRules();
+        StateMachine prover = new ProverStateMachine();
+        prover.initialize(description);
+        StateMachine flat = new AliferousFlatPropNetStateMachine();
+        flat.initialize(description);
+        for (StateMachine machine : Arrays.asList(prover, flat)) {
+            MachineState terminal = machine.getRandomNextState(machine.getInitialState());
+            assertTrue(machine.isTerminal(terminal));
+            try {
+                machine.getGoal(terminal, machine.getRoles().get(0));
+                fail(machine.getName());
+            } catch (GoalDefinitionException e) {
+                // No goal proposition is true in the terminal state.
+            }
+            try {
+                machine.performDepthChargeForGoals(machine.getInitialState(), new int[1]);
+                fail(machine.getName());
+            } catch (GoalDefinitionException e) {
+                // The depth charge ends in that same state.
+            }
+        }
+    }
+
+    @Test
+    public void testDepthChargeDeadline() throws Exception {
+        List<Gdl> description = new TestGameRepository().getGame("connectFour").getRules();
+        StateMachine prover = new ProverStateMachine();
+        prover.initialize(description);
+        StateMachine flat = new AliferousFlatPropNetStateMachine();
+        flat.initialize(description);
+        for (StateMachine machine : Arrays.asList(prover, flat)) {
+            int[] goals = new int[] { -1, -1 };
+            long past = System.currentTimeMillis() - 1;
+            assertEquals(-1, machine.performDepthChargeForGoals(machine.getInitialState(), goals, past));
+            assertArrayEquals(new int[] { -1, -1 }, goals);
+
+            Thread.currentThread().interrupt();
+            try {
+                assertEquals(-1, machine.performDepthChargeForGoals(machine.getInitialState(), goals, Long.MAX_VALUE));
+            } finally {
+                Thread.interrupted();
+            }
+            assertTrue(machine.performDepthChargeForGoals(machine.getInitialState(), goals, Long.MAX_VALUE) > 0);
+        }
+    }
+
+    /**
+     * Plays random games with the reference machine, checking after every
+     * step that the subject agrees on legal moves, terminality and goals.
+     */
+    protected static void checkConsistency(String gameKey, StateMachine reference, StateMachine subject, int numGames) throws Exception {
+        assertEquals(gameKey, reference.getRoles(), subject.getRoles());
+        for (int game = 0; game < numGames; game++) {
+            MachineState referenceState = reference.getInitialState();
+            MachineState subjectState = subject.getInitialState();
+            while (true) {
+                assertEquals(gameKey, reference.isTerminal(referenceState), subject.isTerminal(subjectState));
+                if (reference.isTerminal(referenceState)) {
+                    assertEquals(gameKey, reference.getGoals(referenceState), subject.getGoals(subjectState));
+                    break;
+                }
+                for (Role role : reference.getRoles()) {
+                    assertEquals(gameKey,
+                            new HashSet<Move>(reference.getLegalMoves(referenceState, role)),
+                            new HashSet<Move>(subject.getLegalMoves(subjectState, role)));
+                }
+                List<Move> jointMove = reference.getRandomJointMove(referenceState);
+                referenceState = reference.getNextState(referenceState, jointMove);
+                subjectState = subject.getNextState(subjectState, jointMove);
+            }
+        }
+    }
+
+    /**
+     * Plays random games with the reference machine, running a depth charge
+     * with the subject from every state along the way and checking that the
+     * subject still answers for that state correctly afterwards.
+     */
+    protected static void checkDepthCharges(String gameKey, StateMachine reference, StateMachine subject, int numGames) throws Exception {
+        int[] goals = new int[reference.getRoles().size()];
+        for (int game = 0; game < numGames; game++) {
+            MachineState referenceState = reference.getInitialState();
+            MachineState subjectState = subject.getInitialState();
+            while (true) {
+                int depth = subject.performDepthChargeForGoals(subjectState, goals);
+                if (reference.isTerminal(referenceState)) {
+                    assertEquals(gameKey, 0, depth);
+                    for (int i = 0; i < goals.length; i++) {
+                        assertEquals(gameKey, (int) reference.getGoals(referenceState).get(i), goals[i]);
+                    }
+                    break;
+                }
+                assertTrue(gameKey, depth > 0);
+                for (int goal : goals) {
+                    assertTrue(gameKey, goal >= 0 && goal <= 100);
+                }
+                assertFalse(gameKey, subject.isTerminal(subjectState));
+                for (Role role : reference.getRoles()) {
+                    assertEquals(gameKey,
+                            new HashSet<Move>(reference.getLegalMoves(referenceState, role)),
+                            new HashSet<Move>(subject.getLegalMoves(subjectState, role)));
+                }
+                List<Move> jointMove = reference.getRandomJointMove(referenceState);
+                referenceState = reference.getNextState(referenceState, jointMove);
+                subjectState = subject.getNextState(subjectState, jointMove);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.ggp.base.util.statemachine.implementation.propnet;
+
+import java.util.List;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AliferousParallelPropNetStateMachineTest extends Assert {
+
+    @Test
+    public void testConsistencyWithProver() throws Exception {
+        for (String gameKey : AliferousFlatPropNetStateMachineTest.GAMES) {
+            List<Gdl> description = new TestGameRepository().getGame(gameKey).getRules();
+            StateMachine prover = new ProverStateMachine();
+            prover.initialize(description);
+            // Tiny thresholds, so that even these small games are split between threads.
+            StateMachine parallel = new AliferousParallelPropNetStateMachine(2, 1);
+            parallel.initialize(description);
+            AliferousFlatPropNetStateMachineTest.checkConsistency(gameKey, prover, parallel, 10);
+        }
+    }
+
+    @Test
+    public void testDepthCharges() throws Exception {
+        for (String gameKey : AliferousFlatPropNetStateMachineTest.GAMES) {
+            List<Gdl> description = new TestGameRepository().getGame(gameKey).getRules();
+            StateMachine prover = new ProverStateMachine();
+            prover.initialize(description);
+            StateMachine parallel = new AliferousParallelPropNetStateMachine(2, 1);
+            parallel.initialize(description);
+            AliferousFlatPropNetStateMachineTest.checkDepthCharges(gameKey, prover, parallel, 5);
+        }
+    }
+}
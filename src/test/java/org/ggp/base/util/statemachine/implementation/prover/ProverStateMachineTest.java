@@ -3,16 +3,22 @@ package org.ggp.base.util.statemachine.implementation.prover;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.ggp.base.util.game.TestGameRepository;
 import org.ggp.base.util.gdl.grammar.Gdl;
 import org.ggp.base.util.gdl.grammar.GdlConstant;
 import org.ggp.base.util.gdl.grammar.GdlPool;
+import org.ggp.base.util.gdl.grammar.GdlSentence;
 import org.ggp.base.util.gdl.grammar.GdlTerm;
+import org.ggp.base.util.prover.aima.AimaProver;
 import org.ggp.base.util.statemachine.MachineState;
 import org.ggp.base.util.statemachine.Move;
 import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.implementation.prover.query.ProverQueryBuilder;
+import org.ggp.base.util.statemachine.implementation.prover.result.ProverResultParser;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -184,6 +190,38 @@ public class ProverStateMachineTest extends Assert {
         assertEquals(Collections.singletonList(100), sm.getGoals(state));
     }
 
+    @Test
+    public void testSharedContextMatchesUnsharedQueries() throws Exception {
+        for (String gameKey : Arrays.asList("ticTacToe", "connectFour", "simpleMutex", "test_case_3c", "test_case_5c")) {
+            List<Gdl> desc = new TestGameRepository().getGame(gameKey).getRules();
+            sm.initialize(desc);
+            AimaProver prover = new AimaProver(desc);
+            for (int game = 0; game < 5; game++) {
+                MachineState state = sm.getInitialState();
+                while (true) {
+                    Set<GdlSentence> context = ProverQueryBuilder.getContext(state);
+                    assertEquals(gameKey, prover.prove(ProverQueryBuilder.getTerminalQuery(), context), sm.isTerminal(state));
+                    if (sm.isTerminal(state)) {
+                        for (Role role : sm.getRoles()) {
+                            assertEquals(gameKey, prover.askAll(ProverQueryBuilder.getGoalQuery(role), context).iterator().next().get(1).toString(),
+                                    Integer.toString(sm.getGoal(state, role)));
+                        }
+                        break;
+                    }
+                    for (Role role : sm.getRoles()) {
+                        assertEquals(gameKey, new HashSet<Move>(new ProverResultParser().toMoves(prover.askAll(ProverQueryBuilder.getLegalQuery(role), context))),
+                                new HashSet<Move>(sm.getLegalMoves(state, role)));
+                    }
+                    List<Move> jointMove = sm.getRandomJointMove(state);
+                    MachineState nextState = sm.getNextState(state, jointMove);
+                    Set<GdlSentence> nextContext = ProverQueryBuilder.getContext(state, sm.getRoles(), jointMove);
+                    assertEquals(gameKey, new ProverResultParser().toState(prover.askAll(ProverQueryBuilder.getNextQuery(), nextContext)), nextState);
+                    state = nextState;
+                }
+            }
+        }
+    }
+
     protected Move move(String description) {
         String[] parts = description.split(" ");
         GdlConstant head = GdlPool.getConstant(parts[0]);
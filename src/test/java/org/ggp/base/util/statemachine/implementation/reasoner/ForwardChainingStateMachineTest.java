@@ -0,0 +1,54 @@
+package org.ggp.base.util.statemachine.implementation.reasoner;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Move;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ForwardChainingStateMachineTest extends Assert {
+
+    private static final List<String> GAMES = Arrays.asList("ticTacToe", "connectFour",
+            "simpleMutex", "test_case_1a", "test_case_3c", "test_case_5c");
+
+    @Test
+    public void testConsistencyWithProver() throws Exception {
+        for (String gameKey : GAMES) {
+            List<Gdl> description = new TestGameRepository().getGame(gameKey).getRules();
+            StateMachine prover = new ProverStateMachine();
+            prover.initialize(description);
+            StateMachine chaining = new ForwardChainingStateMachine();
+            chaining.initialize(description);
+
+            assertEquals(gameKey, prover.getRoles(), chaining.getRoles());
+            for (int game = 0; game < 10; game++) {
+                MachineState state = prover.getInitialState();
+                assertEquals(gameKey, state, chaining.getInitialState());
+                while (true) {
+                    assertEquals(gameKey, prover.isTerminal(state), chaining.isTerminal(state));
+                    if (prover.isTerminal(state)) {
+                        assertEquals(gameKey, prover.getGoals(state), chaining.getGoals(state));
+                        break;
+                    }
+                    for (Role role : prover.getRoles()) {
+                        assertEquals(gameKey,
+                                new HashSet<Move>(prover.getLegalMoves(state, role)),
+                                new HashSet<Move>(chaining.getLegalMoves(state, role)));
+                    }
+                    List<Move> jointMove = prover.getRandomJointMove(state);
+                    MachineState nextState = prover.getNextState(state, jointMove);
+                    assertEquals(gameKey, nextState, chaining.getNextState(state, jointMove));
+                    state = nextState;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.ggp.base.util.statemachine.verifier;
+
+import java.util.List;
+
+import org.ggp.base.util.game.TestGameRepository;
+import org.ggp.base.util.gdl.grammar.Gdl;
+import org.ggp.base.util.statemachine.MachineState;
+import org.ggp.base.util.statemachine.Role;
+import org.ggp.base.util.statemachine.StateMachine;
+import org.ggp.base.util.statemachine.exceptions.GoalDefinitionException;
+import org.ggp.base.util.statemachine.implementation.propnet.AliferousFlatPropNetStateMachine;
+import org.ggp.base.util.statemachine.implementation.prover.ProverStateMachine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SamplingVerifierStateMachineTest extends Assert {
+
+    @Test
+    public void testAgreeingMachineIsKept() throws Exception {
+        List<Gdl> description = new TestGameRepository().getGame("ticTacToe").getRules();
+        SamplingVerifierStateMachine machine = new SamplingVerifierStateMachine(
+                new AliferousFlatPropNetStateMachine(), new ProverStateMachine(), 1.0);
+        machine.initialize(description);
+        for (int i = 0; i < 5; i++) {
+            playRandomly(machine);
+        }
+        assertTrue(machine.awaitChecks(30000));
+        assertEquals(0, machine.getMismatchCount());
+        assertFalse(machine.isUsingReference());
+    }
+
+    @Test
+    public void testDisagreeingMachineIsReplacedByReference() throws Exception {
+        List<Gdl> description = new TestGameRepository().getGame("ticTacToe").getRules();
+        StateMachine wrongGoals = new AliferousFlatPropNetStateMachine() {
+            @Override
+            public int getGoal(MachineState state, Role role) throws GoalDefinitionException {
+                return 42;
+            }
+        };
+        SamplingVerifierStateMachine machine = new SamplingVerifierStateMachine(wrongGoals, new ProverStateMachine(), 1.0);
+        machine.initialize(description);
+        MachineState state = machine.getInitialState();
+        while (!machine.isTerminal(state)) {
+            state = machine.getNextState(state, machine.getRandomJointMove(state));
+        }
+        assertTrue(machine.awaitChecks(30000));
+        assertFalse(machine.isUsingReference());
+        Role role = machine.getRoles().get(0);
+        assertEquals(42, machine.getGoal(state, role));
+        assertTrue(machine.awaitChecks(30000));
+        assertEquals(1, machine.getMismatchCount());
+        assertTrue(machine.isUsingReference());
+
+        // From then on, the answers come from the reference machine.
+        StateMachine prover = new ProverStateMachine();
+        prover.initialize(description);
+        assertEquals(prover.getGoal(prover.getMachineStateFromSentenceList(state.getContents()), role), machine.getGoal(state, role));
+        playRandomly(machine);
+    }
+
+    @Test
+    public void testFailingReferenceIsNotSwitchedTo() throws Exception {
+        List<Gdl> description = new TestGameRepository().getGame("ticTacToe").getRules();
+        StateMachine brokenReference = new ProverStateMachine() {
+            @Override
+            public int getGoal(MachineState state, Role role) throws GoalDefinitionException {
+                throw new GoalDefinitionException(state, role);
+            }
+        };
+        SamplingVerifierStateMachine machine = new SamplingVerifierStateMachine(
+                new AliferousFlatPropNetStateMachine(), brokenReference, 1.0);
+        machine.initialize(description);
+        playRandomly(machine);
+        assertTrue(machine.awaitChecks(30000));
+        assertEquals(0, machine.getMismatchCount());
+        assertFalse(machine.isUsingReference());
+    }
+
+    private static void playRandomly(StateMachine machine) throws Exception {
+        MachineState state = machine.getInitialState();
+        while (!machine.isTerminal(state)) {
+            state = machine.getNextState(state, machine.getRandomJointMove(state));
+        }
+        machine.getGoals(state);
+    }
+}